@@ -0,0 +1,147 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.metrics;
+
+import javax.annotation.Nullable;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base class for JDK Flight Recorder events emitted at the main processing stages of the library.
+ *
+ * <p>
+ * Events carry the entityID of the peer involved, the binding, the number of bytes processed and the outcome,
+ * where each is known. Emitting code should follow the usual pattern of calling {@link #begin()} before the
+ * operation and populating and committing the event afterwards only if {@link #shouldCommit()} is true, so that
+ * the cost when recording is disabled is limited to allocating the event.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+@Category("OpenSAML")
+@StackTrace(false)
+public abstract class AbstractProcessingEvent extends Event {
+
+    /** Outcome of an operation which completed successfully. */
+    public static final String OUTCOME_SUCCESS = "success";
+
+    /** Outcome of an operation which completed but did not produce a result, e.g. an untrusted signature. */
+    public static final String OUTCOME_FAILURE = "failure";
+
+    /** Outcome of an operation which raised an exception. */
+    public static final String OUTCOME_ERROR = "error";
+
+    /** The entityID of the peer. */
+    @Label("Entity ID")
+    @Description("The entityID of the peer involved in the operation, if known")
+    private String entityID;
+
+    /** The binding. */
+    @Label("Binding")
+    @Description("The binding or protocol over which the message was exchanged, if known")
+    private String binding;
+
+    /** The number of bytes processed. */
+    @Label("Bytes")
+    @Description("The number of bytes processed by the operation, or 0 if unknown")
+    @DataAmount
+    private long bytes;
+
+    /** The outcome. */
+    @Label("Outcome")
+    @Description("The outcome of the operation")
+    private String outcome;
+
+    /**
+     * Get the entityID of the peer.
+     *
+     * @return the entityID
+     */
+    @Nullable public String getEntityID() {
+        return entityID;
+    }
+
+    /**
+     * Set the entityID of the peer.
+     *
+     * @param id the entityID
+     */
+    public void setEntityID(@Nullable final String id) {
+        entityID = id;
+    }
+
+    /**
+     * Get the binding.
+     *
+     * @return the binding
+     */
+    @Nullable public String getBinding() {
+        return binding;
+    }
+
+    /**
+     * Set the binding.
+     *
+     * @param uri the binding
+     */
+    public void setBinding(@Nullable final String uri) {
+        binding = uri;
+    }
+
+    /**
+     * Get the number of bytes processed.
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Set the number of bytes processed.
+     *
+     * @param count the number of bytes
+     */
+    public void setBytes(final long count) {
+        bytes = count;
+    }
+
+    /**
+     * Get the outcome.
+     *
+     * @return the outcome
+     */
+    @Nullable public String getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Set the outcome.
+     *
+     * @param result the outcome
+     */
+    public void setOutcome(@Nullable final String result) {
+        outcome = result;
+    }
+
+}
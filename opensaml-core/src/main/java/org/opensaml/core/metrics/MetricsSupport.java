@@ -21,12 +21,14 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.opensaml.core.config.ConfigurationService;
+import org.opensaml.core.metrics.impl.DisabledMetric;
 
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.Timer.Context;
 
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
 /**
@@ -229,6 +231,46 @@ public final class MetricsSupport {
         return metric == registeredMetric;
     }
     
+    /**
+     * Get the timer registered under the given name in the metric registry installed into the runtime,
+     * creating it if necessary.
+     * 
+     * <p>
+     * If the registry is a {@link FilteredMetricRegistry}, the result will be a disabled stand-in when the
+     * registry's filter rejects the name, see {@link #isEnabled(Metric)}.
+     * </p>
+     * 
+     * @param name the name of the timer
+     * 
+     * @return the timer, or null if no registry is installed
+     * 
+     * @since 4.0.0
+     */
+    @Nullable public static Timer getTimer(@Nonnull @NotEmpty final String name) {
+        Constraint.isNotNull(name, "Metric name was null");
+        
+        final MetricRegistry metricRegistry = getMetricRegistry();
+        return metricRegistry != null ? metricRegistry.timer(name) : null;
+    }
+    
+    /**
+     * Get whether a metric instance will actually record anything.
+     * 
+     * <p>
+     * Callers may use this to avoid the cost of measuring an event, such as reading the clock, when the
+     * result would be discarded.
+     * </p>
+     * 
+     * @param metric the metric, may be null
+     * 
+     * @return true iff the metric is non-null and not a disabled stand-in
+     * 
+     * @since 4.0.0
+     */
+    public static boolean isEnabled(@Nullable final Metric metric) {
+        return metric != null && !(metric instanceof DisabledMetric);
+    }
+    
     /**
      * Start the specified timer.
      * 
@@ -0,0 +1,783 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.persist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSource;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.utilities.java.support.annotation.ParameterName;
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+/**
+ * Implementation of {@link XMLObjectLoadSaveManager} which stores all serialized XML in a single
+ * append-only file, rather than one file per object as with {@link FilesystemLoadSaveManager}.
+ *
+ * <p>
+ * Each save, removal or key update appends a small record to the file, and an in-memory index of
+ * record offsets is maintained, so individual operations do not rewrite the whole file. The file is
+ * compacted when superseded records come to occupy more space than the live data.
+ * </p>
+ *
+ * <p>
+ * Each record carries a CRC-32 checksum and is forced to the storage device before the operation returns.
+ * A trailing record left truncated or torn by an interrupted write fails its checksum, and it and anything
+ * after it are discarded when the file is next opened. If compaction fails, the original file is reopened
+ * and remains in use, and compaction is not attempted again until the superseded data has doubled.
+ * </p>
+ *
+ * <p>
+ * Reads of the serialized bytes are serialized on this instance, but parsing happens outside of
+ * any lock, so concurrent callers of {@link #load(String)} may parse in parallel.
+ * </p>
+ *
+ * @param <T> the specific base XML object type being managed
+ *
+ * @since 4.0.0
+ */
+@ThreadSafe
+public class SingleFileLoadSaveManager<T extends XMLObject> extends AbstractConditionalLoadXMLObjectLoadSaveManager<T>
+        implements Closeable {
+
+    /** File format magic number. */
+    private static final int MAGIC = 0x4F534C53;
+
+    /** File format version. */
+    private static final int VERSION = 2;
+
+    /** Length of the file header. */
+    private static final int HEADER_LENGTH = 8;
+
+    /** Length of the checksum which trails each record. */
+    private static final int CHECKSUM_LENGTH = 4;
+
+    /** Record type for a save. */
+    private static final byte RECORD_PUT = 1;
+
+    /** Record type for a removal. */
+    private static final byte RECORD_REMOVE = 2;
+
+    /** Record type for a key update. */
+    private static final byte RECORD_RENAME = 3;
+
+    /** Minimum number of bytes of superseded data before compaction is considered. */
+    private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+    /** Logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(SingleFileLoadSaveManager.class);
+
+    /** The file used for storage. */
+    @Nonnull private final File file;
+
+    /** Parser pool instance for deserializing XML. */
+    @Nonnull private final ParserPool parserPool;
+
+    /** Index of live keys to their record location. */
+    @Nonnull private final Map<String, RecordLocation> index;
+
+    /** The open storage file. */
+    @Nullable private RandomAccessFile storage;
+
+    /** Number of bytes of the file occupied by superseded records. */
+    private long garbageBytes;
+
+    /** Minimum number of bytes of superseded data before compaction is next considered. */
+    private long compactionThreshold;
+
+    /**
+     * Constructor.
+     *
+     * @param storageFile the storage file, must be an absolute path
+     *
+     * @throws IOException if the storage file can not be opened or created
+     */
+    public SingleFileLoadSaveManager(
+            @ParameterName(name="storageFile") @Nonnull final File storageFile) throws IOException {
+        this(storageFile, null, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param storageFile the storage file, must be an absolute path
+     * @param pp the parser pool instance to use
+     * @param conditionalLoad whether {@link #load(String)} should behave
+     *      as defined in {@link ConditionalLoadXMLObjectLoadSaveManager}
+     *
+     * @throws IOException if the storage file can not be opened or created
+     */
+    public SingleFileLoadSaveManager(
+            @ParameterName(name="storageFile") @Nonnull final File storageFile,
+            @ParameterName(name="parserPool") @Nullable final ParserPool pp,
+            @ParameterName(name="conditionalLoad") final boolean conditionalLoad) throws IOException {
+
+        super(conditionalLoad);
+
+        file = Constraint.isNotNull(storageFile, "Storage File instance was null");
+        Constraint.isTrue(file.isAbsolute(), "Storage file specified was not an absolute path");
+        if (file.exists()) {
+            Constraint.isTrue(file.isFile(), "Existing storage file path was not a file");
+        } else if (file.getParentFile() != null && !file.getParentFile().exists()) {
+            Constraint.isTrue(file.getParentFile().mkdirs(), "Storage file directory could not be created");
+        }
+
+        if (pp != null) {
+            parserPool = pp;
+        } else {
+            parserPool = Constraint.isNotNull(XMLObjectProviderRegistrySupport.getParserPool(),
+                    "Specified ParserPool was null and global ParserPool was not available");
+        }
+
+        index = new HashMap<>();
+        open();
+    }
+
+    /**
+     * Get the storage file.
+     *
+     * @return the storage file
+     */
+    @Nonnull public File getFile() {
+        return file;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Set<String> listKeys() throws IOException {
+        return Collections.unmodifiableSet(new HashSet<>(index.keySet()));
+    }
+
+    /** {@inheritDoc} */
+    public Iterable<Pair<String, T>> listAll() throws IOException {
+        final Set<String> keys = listKeys();
+        return new Iterable<Pair<String, T>>() {
+            public Iterator<Pair<String, T>> iterator() {
+                return new KeyIterator(keys.iterator());
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean exists(final String key) throws IOException {
+        return index.containsKey(checkKey(key));
+    }
+
+    /** {@inheritDoc} */
+    public T load(final String key) throws IOException {
+        final byte[] source;
+        synchronized (this) {
+            final RecordLocation location = index.get(checkKey(key));
+            if (location == null) {
+                log.debug("Record with key '{}' does not exist", key);
+                clearLoadLastModified(key);
+                return null;
+            }
+            if (isLoadConditionally() && isUnmodifiedSinceLastLoad(key)) {
+                log.debug("Record with key '{}' has not been modified since the last request, returning null", key);
+                return null;
+            }
+            source = readBytes(location);
+            updateLoadLastModified(key, location.modified);
+        }
+
+        try (final ByteArrayInputStream bais = new ByteArrayInputStream(source)) {
+            final XMLObject xmlObject = XMLObjectSupport.unmarshallFromInputStream(parserPool, bais);
+            xmlObject.getObjectMetadata().put(new XMLObjectSource(source));
+            return (T) xmlObject;
+        } catch (final XMLParserException | UnmarshallingException e) {
+            throw new IOException(String.format("Error loading record with key '%s' from file: %s", key,
+                    file.getAbsolutePath()), e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    protected synchronized boolean isUnmodifiedSinceLastLoad(@Nonnull final String key) throws IOException {
+        final RecordLocation location = index.get(key);
+        if (location == null) {
+            return false;
+        }
+        return getLoadLastModified(key) != null && !location.modified.isAfter(getLoadLastModified(key));
+    }
+
+    /** {@inheritDoc} */
+    public void save(final String key, final T xmlObject) throws IOException {
+        save(key, xmlObject, false);
+    }
+
+    /** {@inheritDoc} */
+    public void save(final String key, final T xmlObject, final boolean overwrite) throws IOException {
+        final String checkedKey = checkKey(key);
+        final byte[] source = serialize(xmlObject);
+        final Instant modified = Instant.now();
+
+        final ByteArrayOutputStream record = new ByteArrayOutputStream(source.length + checkedKey.length() + 32);
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(RECORD_PUT);
+        out.writeUTF(checkedKey);
+        out.writeLong(modified.toEpochMilli());
+        out.writeInt(source.length);
+        final int headerLength = out.size();
+        out.write(source);
+        writeChecksum(record, out);
+
+        synchronized (this) {
+            if (!overwrite && index.containsKey(checkedKey)) {
+                throw new IOException(
+                        String.format("Record already exists for key '%s' and overwrite not indicated", checkedKey));
+            }
+            final long recordOffset = append(record.toByteArray());
+            final RecordLocation previous = index.put(checkedKey, new RecordLocation(recordOffset, headerLength,
+                    source.length, Instant.ofEpochMilli(modified.toEpochMilli())));
+            if (previous != null) {
+                garbageBytes += previous.recordLength();
+            }
+            compactIfNecessary();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean remove(final String key) throws IOException {
+        final String checkedKey = checkKey(key);
+        final RecordLocation previous = index.get(checkedKey);
+        if (previous == null) {
+            return false;
+        }
+
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(RECORD_REMOVE);
+        out.writeUTF(checkedKey);
+        writeChecksum(record, out);
+        append(record.toByteArray());
+
+        index.remove(checkedKey);
+        garbageBytes += previous.recordLength() + record.size();
+        clearLoadLastModified(checkedKey);
+        compactIfNecessary();
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean updateKey(final String currentKey, final String newKey) throws IOException {
+        final String checkedCurrentKey = checkKey(currentKey);
+        final String checkedNewKey = checkKey(newKey);
+        final RecordLocation location = index.get(checkedCurrentKey);
+        if (location == null) {
+            return false;
+        }
+        if (index.containsKey(checkedNewKey)) {
+            throw new IOException(String.format("Specified new key already exists: %s", checkedNewKey));
+        }
+
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(RECORD_RENAME);
+        out.writeUTF(checkedCurrentKey);
+        out.writeUTF(checkedNewKey);
+        writeChecksum(record, out);
+        append(record.toByteArray());
+
+        index.remove(checkedCurrentKey);
+        index.put(checkedNewKey, location);
+        garbageBytes += record.size();
+        updateLoadLastModified(checkedNewKey, getLoadLastModified(checkedCurrentKey));
+        clearLoadLastModified(checkedCurrentKey);
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void close() throws IOException {
+        if (storage != null) {
+            storage.close();
+            storage = null;
+        }
+    }
+
+    /**
+     * Validate and normalize a key.
+     *
+     * @param key the input key
+     * @return the normalized key
+     */
+    @Nonnull private String checkKey(@Nullable final String key) {
+        return Constraint.isNotNull(StringSupport.trimOrNull(key), "Input key was null or empty");
+    }
+
+    /**
+     * Complete a record by appending the checksum of its content.
+     *
+     * @param record the buffer holding the record
+     * @param out the stream writing to the buffer
+     * @throws IOException if the checksum can not be written
+     */
+    private static void writeChecksum(@Nonnull final ByteArrayOutputStream record,
+            @Nonnull final DataOutputStream out) throws IOException {
+        out.flush();
+        final byte[] content = record.toByteArray();
+        out.writeInt(checksum(content, content.length));
+        out.flush();
+    }
+
+    /**
+     * Compute the checksum of record content.
+     *
+     * @param content the record content
+     * @param length the number of bytes of content
+     * @return the checksum
+     */
+    private static int checksum(@Nonnull final byte[] content, final int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(content, 0, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Obtain the serialized form of an object.
+     *
+     * @param xmlObject the object to serialize
+     * @return the serialized bytes
+     * @throws IOException if the object can not be serialized
+     */
+    @Nonnull private byte[] serialize(@Nonnull final T xmlObject) throws IOException {
+        final List<XMLObjectSource> sources = xmlObject.getObjectMetadata().get(XMLObjectSource.class);
+        if (sources.size() == 1) {
+            log.debug("XMLObject contained 1 XMLObjectSource instance, persisting existing byte[]");
+            return sources.get(0).getObjectSource();
+        }
+
+        log.debug("XMLObject contained {} XMLObjectSource instances, persisting marshalled object", sources.size());
+        try {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            XMLObjectSupport.marshallToOutputStream(xmlObject, baos);
+            return baos.toByteArray();
+        } catch (final MarshallingException e) {
+            throw new IOException("Error serializing XMLObject", e);
+        }
+    }
+
+    /**
+     * Open the storage file, creating it if necessary, and rebuild the index from its records.
+     *
+     * @throws IOException if the file can not be opened or is not in the expected format
+     */
+    private synchronized void open() throws IOException {
+        storage = new RandomAccessFile(file, "rw");
+        index.clear();
+        garbageBytes = 0;
+        compactionThreshold = COMPACTION_THRESHOLD;
+
+        if (storage.length() == 0) {
+            storage.writeInt(MAGIC);
+            storage.writeInt(VERSION);
+            return;
+        }
+
+        if (storage.length() < HEADER_LENGTH || storage.readInt() != MAGIC || storage.readInt() != VERSION) {
+            storage.close();
+            storage = null;
+            throw new IOException(String.format("File is not a supported storage file: %s", file.getAbsolutePath()));
+        }
+
+        final long fileLength = storage.length();
+        long position = storage.getFilePointer();
+        try {
+            while (position < fileLength) {
+                final byte type = storage.readByte();
+                final String key = storage.readUTF();
+                String newKey = null;
+                Instant modified = null;
+                int length = 0;
+                int headerLength = 0;
+                if (type == RECORD_PUT) {
+                    modified = Instant.ofEpochMilli(storage.readLong());
+                    length = storage.readInt();
+                    headerLength = (int) (storage.getFilePointer() - position);
+                    if (length < 0 || storage.getFilePointer() + length + CHECKSUM_LENGTH > fileLength) {
+                        throw new EOFException();
+                    }
+                    storage.seek(storage.getFilePointer() + length);
+                } else if (type == RECORD_REMOVE) {
+                    // No further content.
+                } else if (type == RECORD_RENAME) {
+                    newKey = storage.readUTF();
+                } else {
+                    log.warn("Unknown record type {} at offset {} in file: {}", type, position,
+                            file.getAbsolutePath());
+                    throw new EOFException();
+                }
+
+                if (!verifyChecksum(position, storage.getFilePointer(), fileLength)) {
+                    log.warn("Record at offset {} failed its checksum in file: {}", position,
+                            file.getAbsolutePath());
+                    throw new EOFException();
+                }
+
+                if (type == RECORD_PUT) {
+                    final RecordLocation previous =
+                            index.put(key, new RecordLocation(position, headerLength, length, modified));
+                    if (previous != null) {
+                        garbageBytes += previous.recordLength();
+                    }
+                } else if (type == RECORD_REMOVE) {
+                    final RecordLocation previous = index.remove(key);
+                    if (previous != null) {
+                        garbageBytes += previous.recordLength();
+                    }
+                    garbageBytes += storage.getFilePointer() - position;
+                } else {
+                    final RecordLocation location = index.remove(key);
+                    if (location != null) {
+                        index.put(newKey, location);
+                    }
+                    garbageBytes += storage.getFilePointer() - position;
+                }
+                position = storage.getFilePointer();
+            }
+        } catch (final EOFException | UTFDataFormatException e) {
+            log.warn("Discarding {} bytes of truncated or corrupt data from offset {} in file: {}",
+                    fileLength - position, position, file.getAbsolutePath());
+            storage.setLength(position);
+            storage.getChannel().force(false);
+        }
+
+        log.debug("Opened storage file '{}' with {} live records", file.getAbsolutePath(), index.size());
+        compactIfNecessary();
+    }
+
+    /**
+     * Append a record to the storage file.
+     *
+     * <p>
+     * If the record can not be written, the file is truncated back to its previous length, so that a partial
+     * record does not hide records appended after it when the file is next opened. If even that fails, the
+     * file is closed and this manager can no longer be used.
+     * </p>
+     *
+     * @param record the serialized record
+     * @return the offset at which the record was written
+     * @throws IOException if the record can not be written
+     */
+    private long append(@Nonnull final byte[] record) throws IOException {
+        final RandomAccessFile raf = getStorage();
+        final long offset = raf.length();
+        raf.seek(offset);
+        try {
+            writeRecord(raf, record);
+        } catch (final IOException e) {
+            try {
+                raf.setLength(offset);
+            } catch (final IOException e2) {
+                log.error("Unable to discard partial record at offset {}, closing storage file: {}", offset,
+                        file.getAbsolutePath(), e2);
+                e.addSuppressed(e2);
+                close();
+            }
+            throw e;
+        }
+        return offset;
+    }
+
+    /**
+     * Write a record at the current position of the storage file and force it to disk.
+     *
+     * @param raf the storage file
+     * @param record the serialized record
+     * @throws IOException if the record can not be written, in which case part of it may have been written
+     */
+    protected void writeRecord(@Nonnull final RandomAccessFile raf, @Nonnull final byte[] record)
+            throws IOException {
+        raf.write(record);
+        raf.getChannel().force(false);
+    }
+
+    /**
+     * Read the checksum trailing a record and verify it against the record content.
+     *
+     * <p>
+     * On return the file pointer is positioned after the checksum.
+     * </p>
+     *
+     * @param start the offset of the start of the record
+     * @param end the offset of the end of the record content, at which the checksum starts
+     * @param fileLength the length of the file
+     * @return true if the checksum matches
+     * @throws IOException if the record can not be read, or the checksum is missing
+     */
+    private boolean verifyChecksum(final long start, final long end, final long fileLength) throws IOException {
+        if (end + CHECKSUM_LENGTH > fileLength) {
+            throw new EOFException();
+        }
+        final byte[] content = new byte[(int) (end - start)];
+        storage.seek(start);
+        storage.readFully(content);
+        return storage.readInt() == checksum(content, content.length);
+    }
+
+    /**
+     * Read the serialized object bytes of a record.
+     *
+     * @param location the record location
+     * @return the serialized object bytes
+     * @throws IOException if the bytes can not be read
+     */
+    @Nonnull private byte[] readBytes(@Nonnull final RecordLocation location) throws IOException {
+        final RandomAccessFile raf = getStorage();
+        final byte[] bytes = new byte[location.dataLength];
+        raf.seek(location.offset + location.headerLength);
+        raf.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Get the open storage file.
+     *
+     * @return the open storage file
+     * @throws IOException if this manager has been closed
+     */
+    @Nonnull private RandomAccessFile getStorage() throws IOException {
+        if (storage == null) {
+            throw new IOException("Storage file has been closed");
+        }
+        return storage;
+    }
+
+    /**
+     * Rewrite the storage file containing only live records, if superseded records occupy more space
+     * than live records.
+     *
+     * <p>
+     * If the rewrite fails, the original file remains in use and compaction is deferred until the
+     * superseded data has doubled.
+     * </p>
+     *
+     * @throws IOException if the original file can not be reopened after a failed rewrite
+     */
+    private void compactIfNecessary() throws IOException {
+        final long liveBytes = getStorage().length() - HEADER_LENGTH - garbageBytes;
+        if (garbageBytes < compactionThreshold || garbageBytes < liveBytes) {
+            return;
+        }
+
+        log.debug("Compacting storage file '{}', superseded bytes: {}, live bytes: {}", file.getAbsolutePath(),
+                garbageBytes, liveBytes);
+
+        final File temp = new File(file.getAbsolutePath() + ".compact");
+        final Map<String, RecordLocation> newIndex = new HashMap<>(index.size());
+        try {
+            try (final RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+                out.setLength(0);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                for (final Map.Entry<String, RecordLocation> entry : index.entrySet()) {
+                    final RecordLocation location = entry.getValue();
+                    final byte[] source = readBytes(location);
+                    final ByteArrayOutputStream record = new ByteArrayOutputStream(source.length + 64);
+                    final DataOutputStream data = new DataOutputStream(record);
+                    data.writeByte(RECORD_PUT);
+                    data.writeUTF(entry.getKey());
+                    data.writeLong(location.modified.toEpochMilli());
+                    data.writeInt(source.length);
+                    final int headerLength = data.size();
+                    data.write(source);
+                    writeChecksum(record, data);
+                    final long offset = out.getFilePointer();
+                    out.write(record.toByteArray());
+                    newIndex.put(entry.getKey(), new RecordLocation(offset, headerLength, source.length,
+                            location.modified));
+                }
+                out.getFD().sync();
+            }
+
+            storage.close();
+            storage = null;
+            moveCompactedFile(temp, file);
+        } catch (final IOException e) {
+            log.warn("Compaction of storage file '{}' failed, continuing with uncompacted file",
+                    file.getAbsolutePath(), e);
+            Files.deleteIfExists(temp.toPath());
+            if (storage == null) {
+                storage = new RandomAccessFile(file, "rw");
+            }
+            compactionThreshold = Math.max(COMPACTION_THRESHOLD, garbageBytes * 2);
+            return;
+        }
+
+        storage = new RandomAccessFile(file, "rw");
+        index.clear();
+        index.putAll(newIndex);
+        garbageBytes = 0;
+        compactionThreshold = COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * Replace the storage file with its compacted copy.
+     *
+     * @param compacted the compacted copy
+     * @param target the storage file
+     * @throws IOException if the file can not be replaced, in which case the storage file is unchanged
+     */
+    protected void moveCompactedFile(@Nonnull final File compacted, @Nonnull final File target) throws IOException {
+        Files.move(compacted.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Location of a live record within the storage file.
+     */
+    private static final class RecordLocation {
+
+        /** Offset of the start of the record. */
+        private final long offset;
+
+        /** Length of the record preceding the serialized object bytes. */
+        private final int headerLength;
+
+        /** Length of the serialized object bytes. */
+        private final int dataLength;
+
+        /** Time at which the record was written. */
+        @Nonnull private final Instant modified;
+
+        /**
+         * Constructor.
+         *
+         * @param recordOffset offset of the start of the record
+         * @param recordHeaderLength length of the record preceding the serialized object bytes
+         * @param length length of the serialized object bytes
+         * @param modifiedTime time at which the record was written
+         */
+        private RecordLocation(final long recordOffset, final int recordHeaderLength, final int length,
+                @Nonnull final Instant modifiedTime) {
+            offset = recordOffset;
+            headerLength = recordHeaderLength;
+            dataLength = length;
+            modified = modifiedTime;
+        }
+
+        /**
+         * Get the total length of the record.
+         *
+         * @return the record length
+         */
+        private long recordLength() {
+            return headerLength + dataLength + CHECKSUM_LENGTH;
+        }
+    }
+
+    /**
+     * Iterator which provides lazy loading of the managed objects.
+     */
+    private class KeyIterator implements Iterator<Pair<String, T>> {
+
+        /** Iterator for the keys. */
+        @Nonnull private final Iterator<String> keysIter;
+
+        /** Current value to return from next(). */
+        @Nullable private Pair<String, T> current;
+
+        /**
+         * Constructor.
+         *
+         * @param keys snapshot of keys at time of construction
+         */
+        public KeyIterator(@Nonnull final Iterator<String> keys) {
+            keysIter = keys;
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasNext() {
+            if (current == null) {
+                current = getNext();
+            }
+            return current != null;
+        }
+
+        /** {@inheritDoc} */
+        public Pair<String, T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Pair<String, T> temp = current;
+            current = null;
+            return temp;
+        }
+
+        /** {@inheritDoc} */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Internal support to get the next item for iteration.
+         *
+         * @return the next item for iteration, or null if no more items
+         */
+        @Nullable private Pair<String, T> getNext() {
+            while (keysIter.hasNext()) {
+                final String key = keysIter.next();
+                try {
+                    final T xmlObject = load(key);
+                    if (xmlObject != null) {
+                        return new Pair<>(key, xmlObject);
+                    } else {
+                        log.warn("Record with key '{}' was removed since iterator creation, skipping", key);
+                    }
+                } catch (final IOException e) {
+                    log.warn("Error loading record with key '{}'", key, e);
+                }
+            }
+            return null;
+        }
+
+    }
+
+}
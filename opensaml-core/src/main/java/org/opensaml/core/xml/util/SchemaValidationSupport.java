@@ -0,0 +1,83 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.validation.Schema;
+
+import net.shibboleth.utilities.java.support.xml.BasicParserPool;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Helper methods for recording and checking that a document was schema-validated while it was parsed.
+ *
+ * <p>
+ * A {@link BasicParserPool} configured with a {@link Schema} validates each document while building its DOM,
+ * in a single pass over the input. Code which parses with such a pool may mark the resulting document, so that
+ * later stages which would validate the same DOM against the same schema can skip the redundant traversal.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+public final class SchemaValidationSupport {
+
+    /** DOM user data key under which the schema a document was validated against is stored. */
+    @Nonnull public static final String USER_DATA_KEY_SCHEMA =
+            "org.opensaml.core.xml.util.SchemaValidationSupport.schema";
+
+    /** Constructor. */
+    private SchemaValidationSupport() {
+    }
+
+    /**
+     * Mark a document as validated if the pool that parsed it validates against a schema.
+     *
+     * @param parserPool the pool that parsed the document
+     * @param document the parsed document
+     */
+    public static void markIfValidatedOnParse(@Nonnull final ParserPool parserPool,
+            @Nonnull final Document document) {
+        if (parserPool instanceof BasicParserPool) {
+            final Schema schema = ((BasicParserPool) parserPool).getSchema();
+            if (schema != null) {
+                document.setUserData(USER_DATA_KEY_SCHEMA, schema, null);
+            }
+        }
+    }
+
+    /**
+     * Get whether the document owning a node was validated against a schema when it was parsed.
+     *
+     * @param node the node to check
+     * @param schema the schema
+     *
+     * @return true iff the node's document was marked as validated against the schema
+     */
+    public static boolean isValidatedOnParse(@Nullable final Node node, @Nonnull final Schema schema) {
+        if (node == null) {
+            return false;
+        }
+        final Document document = node instanceof Document ? (Document) node : node.getOwnerDocument();
+        return document != null && document.getUserData(USER_DATA_KEY_SCHEMA) == schema;
+    }
+
+}
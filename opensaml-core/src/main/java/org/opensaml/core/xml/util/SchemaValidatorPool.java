@@ -0,0 +1,113 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.transform.Source;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.xml.sax.SAXException;
+
+/**
+ * A pool of {@link Validator} instances for a single {@link Schema}.
+ *
+ * <p>
+ * A {@link Validator} is not thread-safe but is reusable once reset, so rather than creating one for each
+ * document validated, callers borrow one from the pool for the duration of a call to
+ * {@link #validate(Source)}. The pool grows on demand and retains up to a fixed number of idle instances.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+@ThreadSafe
+public class SchemaValidatorPool {
+
+    /** Default maximum number of idle validators retained. */
+    public static final int DEFAULT_MAX_IDLE = 16;
+
+    /** The schema. */
+    @Nonnull private final Schema schema;
+
+    /** Idle validators. */
+    @Nonnull private final BlockingQueue<Validator> idle;
+
+    /**
+     * Constructor.
+     *
+     * @param theSchema the schema to validate against
+     */
+    public SchemaValidatorPool(@Nonnull final Schema theSchema) {
+        this(theSchema, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param theSchema the schema to validate against
+     * @param maxIdle maximum number of idle validators to retain
+     */
+    public SchemaValidatorPool(@Nonnull final Schema theSchema, final int maxIdle) {
+        schema = Constraint.isNotNull(theSchema, "Schema cannot be null");
+        idle = new ArrayBlockingQueue<>(
+                (int) Constraint.isGreaterThan(0, maxIdle, "Maximum idle must be greater than zero"));
+    }
+
+    /**
+     * Get the schema validated against.
+     *
+     * @return the schema
+     */
+    @Nonnull public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Validate a source against the schema.
+     *
+     * @param source the source to validate
+     *
+     * @throws SAXException if the source is not valid
+     * @throws IOException if the source cannot be read
+     */
+    public void validate(@Nonnull final Source source) throws SAXException, IOException {
+        Validator validator = idle.poll();
+        if (validator == null) {
+            validator = schema.newValidator();
+        }
+
+        try {
+            validator.validate(source);
+        } finally {
+            try {
+                validator.reset();
+                idle.offer(validator);
+            } catch (final RuntimeException e) {
+                // Leave a validator that cannot be reset for the garbage collector.
+            }
+        }
+    }
+
+}
@@ -188,6 +188,7 @@ public final class XMLObjectSupport {
 
         try {
             final Document messageDoc = parserPool.parse(inputStream);
+            SchemaValidationSupport.markIfValidatedOnParse(parserPool, messageDoc);
             final Element messageElem = messageDoc.getDocumentElement();
 
             if (log.isTraceEnabled()) {
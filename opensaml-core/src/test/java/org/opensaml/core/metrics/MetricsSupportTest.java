@@ -23,6 +23,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
 
 /**
@@ -108,4 +109,15 @@ public class MetricsSupportTest {
         Assert.assertFalse(MetricsSupport.isMetricInstanceRegisteredUnderName(name, gauge2, registry));
     }
 
+    @Test
+    public void testIsEnabled() {
+        FilteredMetricRegistry filtered = new FilteredMetricRegistry();
+        Assert.assertFalse(MetricsSupport.isEnabled(null));
+        Assert.assertFalse(MetricsSupport.isEnabled(filtered.timer("test1")));
+        Assert.assertTrue(MetricsSupport.isEnabled(registry.timer("test1")));
+        
+        filtered.setMetricFilter(MetricFilter.ALL);
+        Assert.assertTrue(MetricsSupport.isEnabled(filtered.timer("test1")));
+    }
+
 }
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.persist;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.util.XMLObjectSource;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Sets;
+
+import net.shibboleth.utilities.java.support.collection.Pair;
+
+public class SingleFileLoadSaveManagerTest extends XMLObjectBaseTestCase {
+
+    private File storageFile;
+
+    private SingleFileLoadSaveManager<SimpleXMLObject> manager;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        storageFile = File.createTempFile("single-file-load-save-manager-test", ".dat");
+        storageFile.deleteOnExit();
+        Files.delete(storageFile.toPath());
+
+        manager = new SingleFileLoadSaveManager<>(storageFile);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        manager.close();
+        Files.deleteIfExists(storageFile.toPath());
+    }
+
+    @Test
+    public void emptyFile() throws IOException {
+        testState(Sets.<String>newHashSet());
+    }
+
+    @Test
+    public void saveLoadUpdateRemove() throws IOException {
+        Assert.assertNull(manager.load("bogus"));
+
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.save("baz", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        testState(Sets.newHashSet("foo", "bar", "baz"));
+
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME), true);
+        testState(Sets.newHashSet("foo", "bar", "baz"));
+
+        try {
+            manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME), false);
+            Assert.fail("Should have failed on duplicate save without overwrite");
+        } catch (IOException e) {
+            // expected, do nothing
+        }
+
+        Assert.assertTrue(manager.updateKey("foo", "foo2"));
+        Assert.assertFalse(manager.updateKey("foo", "foo2"));
+        testState(Sets.newHashSet("foo2", "bar", "baz"));
+
+        Assert.assertFalse(manager.remove("foo"));
+        Assert.assertTrue(manager.remove("foo2"));
+        testState(Sets.newHashSet("bar", "baz"));
+    }
+
+    @Test
+    public void reopen() throws IOException {
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.save("baz", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        Assert.assertTrue(manager.updateKey("foo", "foo2"));
+        Assert.assertTrue(manager.remove("bar"));
+        manager.close();
+
+        manager = new SingleFileLoadSaveManager<>(storageFile);
+        testState(Sets.newHashSet("foo2", "baz"));
+    }
+
+    @Test
+    public void truncatedRecord() throws IOException {
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.close();
+
+        // Simulate an interrupted write of the last record
+        try (RandomAccessFile raf = new RandomAccessFile(storageFile, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        manager = new SingleFileLoadSaveManager<>(storageFile);
+        testState(Sets.newHashSet("foo"));
+
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        testState(Sets.newHashSet("foo", "bar"));
+    }
+
+    @Test
+    public void corruptRecord() throws IOException {
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.close();
+
+        // Simulate a torn write of the last record which left its length intact but its content damaged
+        try (RandomAccessFile raf = new RandomAccessFile(storageFile, "rw")) {
+            raf.seek(raf.length() - 10);
+            final int b = raf.read();
+            raf.seek(raf.length() - 10);
+            raf.write(b ^ 0xFF);
+        }
+
+        manager = new SingleFileLoadSaveManager<>(storageFile);
+        testState(Sets.newHashSet("foo"));
+
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        testState(Sets.newHashSet("foo", "bar"));
+    }
+
+    @Test
+    public void failedAppend() throws IOException {
+        manager.close();
+        final AtomicInteger writes = new AtomicInteger();
+        manager = new SingleFileLoadSaveManager<SimpleXMLObject>(storageFile) {
+            protected void writeRecord(final RandomAccessFile raf, final byte[] record) throws IOException {
+                if (writes.incrementAndGet() == 2) {
+                    // Simulate a write which fails part way through the record
+                    raf.write(record, 0, record.length / 2);
+                    throw new IOException("Simulated write failure");
+                }
+                super.writeRecord(raf, record);
+            }
+        };
+
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        try {
+            manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+            Assert.fail("Should have failed on simulated write failure");
+        } catch (IOException e) {
+            // expected, do nothing
+        }
+        testState(Sets.newHashSet("foo"));
+
+        // Records appended after the failure must survive a reopen
+        manager.save("baz", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        manager.save("bar", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        testState(Sets.newHashSet("foo", "bar", "baz"));
+
+        manager.close();
+        manager = new SingleFileLoadSaveManager<>(storageFile);
+        testState(Sets.newHashSet("foo", "bar", "baz"));
+    }
+
+    @Test
+    public void failedCompaction() throws IOException {
+        manager.close();
+        final AtomicInteger moveAttempts = new AtomicInteger();
+        manager = new SingleFileLoadSaveManager<SimpleXMLObject>(storageFile) {
+            protected void moveCompactedFile(final File compacted, final File target) throws IOException {
+                if (moveAttempts.incrementAndGet() == 1) {
+                    throw new IOException("Simulated move failure");
+                }
+                super.moveCompactedFile(compacted, target);
+            }
+        };
+
+        final StringBuilder value = new StringBuilder();
+        while (value.length() < 256 * 1024) {
+            value.append("0123456789abcdef");
+        }
+        final SimpleXMLObject large = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        large.setValue(value.toString());
+
+        manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        // Superseded data passes the compaction threshold, and the first attempt fails.
+        for (int i = 0; i < 6 && moveAttempts.get() == 0; i++) {
+            manager.save("bar", large, true);
+        }
+        Assert.assertEquals(moveAttempts.get(), 1);
+        Assert.assertFalse(new File(storageFile.getAbsolutePath() + ".compact").exists());
+        testState(Sets.newHashSet("foo", "bar"));
+
+        // Compaction is deferred until the superseded data has doubled, and then succeeds.
+        final long uncompactedLength = storageFile.length();
+        for (int i = 0; i < 12 && moveAttempts.get() == 1; i++) {
+            manager.save("bar", large, true);
+        }
+        Assert.assertEquals(moveAttempts.get(), 2);
+        Assert.assertTrue(storageFile.length() < uncompactedLength);
+        testState(Sets.newHashSet("foo", "bar"));
+
+        manager.close();
+        manager = new SingleFileLoadSaveManager<>(storageFile);
+        testState(Sets.newHashSet("foo", "bar"));
+    }
+
+    @Test(expectedExceptions=IOException.class)
+    public void invalidFile() throws IOException {
+        manager.close();
+        Files.write(storageFile.toPath(), "not a storage file".getBytes());
+        manager = new SingleFileLoadSaveManager<>(storageFile);
+    }
+
+    // Helpers
+
+    private void testState(Set<String> expectedKeys) throws IOException {
+        Assert.assertEquals(manager.listKeys(), expectedKeys);
+        for (String expectedKey : expectedKeys) {
+            Assert.assertTrue(manager.exists(expectedKey));
+            SimpleXMLObject sxo = manager.load(expectedKey);
+            Assert.assertNotNull(sxo);
+            Assert.assertEquals(sxo.getObjectMetadata().get(XMLObjectSource.class).size(), 1);
+        }
+
+        int sawCount = 0;
+        for (Pair<String,SimpleXMLObject> entry : manager.listAll()) {
+            sawCount++;
+            Assert.assertTrue(expectedKeys.contains(entry.getFirst()));
+            Assert.assertNotNull(entry.getSecond());
+        }
+        Assert.assertEquals(sawCount, expectedKeys.size());
+    }
+
+}
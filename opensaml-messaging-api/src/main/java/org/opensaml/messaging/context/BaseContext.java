@@ -20,13 +20,14 @@ package org.opensaml.messaging.context;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
-import net.shibboleth.utilities.java.support.collection.ClassIndexedSet;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport;
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport.ObjectType;
@@ -49,7 +50,8 @@ import org.slf4j.LoggerFactory;
  * Access to subcontexts is class-based.  The parent context may hold only
  * one instance of a given class at a given time.  This class-based indexing approach
  * is used to enforce type-safety over the subcontext instances returned from the parent context,
- * and avoids the need for casting.
+ * and avoids the need for casting. Subcontexts are iterated in the order in which they were added,
+ * a replacement taking the position of the subcontext it replaces.
  * </p>
  * 
  * <p>
@@ -61,6 +63,12 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class BaseContext implements Iterable<BaseContext> {
 
+    /** Marker for a class name which could not be loaded. */
+    @Nonnull private static final Object CLASS_NOT_FOUND = new Object();
+
+    /** Cache of the result of loading each class name passed to {@link #getSubcontext(String, boolean)}. */
+    @Nonnull private static final Map<String,Object> CLASS_CACHE = new ConcurrentHashMap<>();
+
     /** Logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(BaseContext.class);
     
@@ -68,14 +76,14 @@ public abstract class BaseContext implements Iterable<BaseContext> {
     @Nullable private BaseContext parent;
 
     /** The subcontexts being managed. */
-    @Nonnull @NonnullElements private ClassIndexedSet<BaseContext> subcontexts;
+    @Nonnull @NonnullElements private SubcontextSet subcontexts;
     
     /** Flag indicating whether subcontexts should, by default, be created if they do not exist. */
     private boolean autoCreateSubcontexts;
     
     /** Constructor. Generates a random context id. */
     public BaseContext() {
-        subcontexts = new ClassIndexedSet<>();
+        subcontexts = new SubcontextSet();
     }
     
     /**
@@ -164,18 +172,39 @@ public abstract class BaseContext implements Iterable<BaseContext> {
      */ 
     @Nullable public BaseContext getSubcontext(@Nonnull @NotEmpty final String className, final boolean autocreate)
             throws ClassNotFoundException {
-        try {
-            return getSubcontext(Class.forName(className).asSubclass(BaseContext.class), autocreate);
-        } catch (final ClassNotFoundException e) {
-            if (!autocreate) {
-                for (final BaseContext child : this) {
-                    if (child.getClass().getSimpleName().equals(className)) {
-                        return child;
-                    }
+        final Class<?> clazz = loadClass(className);
+        if (clazz != null) {
+            return getSubcontext(clazz.asSubclass(BaseContext.class), autocreate);
+        }
+        
+        if (!autocreate) {
+            for (final BaseContext child : this) {
+                if (child.getClass().getSimpleName().equals(className)) {
+                    return child;
                 }
             }
-            throw e;
         }
+        throw new ClassNotFoundException(className);
+    }
+    
+    /**
+     * Load a class by name, caching the outcome so that repeated lookups of the same name, including
+     * simple names which cannot be loaded, do not repeat the class loader search.
+     * 
+     * @param className the name of the class
+     * @return the class, or null if it could not be found
+     */
+    @Nullable private static Class<?> loadClass(@Nonnull @NotEmpty final String className) {
+        Object cached = CLASS_CACHE.get(className);
+        if (cached == null) {
+            try {
+                cached = Class.forName(className);
+            } catch (final ClassNotFoundException e) {
+                cached = CLASS_NOT_FOUND;
+            }
+            CLASS_CACHE.putIfAbsent(className, cached);
+        }
+        return cached != CLASS_NOT_FOUND ? (Class<?>) cached : null;
     }
     
     /**
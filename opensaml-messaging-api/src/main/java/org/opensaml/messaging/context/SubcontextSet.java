@@ -0,0 +1,216 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.messaging.context;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Storage for the subcontexts of a {@link BaseContext}, holding at most one instance of each context class.
+ *
+ * <p>
+ * Each context class is assigned a stable integer slot on first use. Children are held in a small array in
+ * insertion order alongside their slots, so that lookup by class is a scan of a few integers rather than
+ * a hash lookup. A replacement child takes the position of the child it replaces.
+ * </p>
+ *
+ * <p>
+ * This class is not thread-safe, matching the contract of {@link BaseContext}.
+ * </p>
+ */
+final class SubcontextSet implements Iterable<BaseContext> {
+
+    /** Source of slot numbers. */
+    @Nonnull private static final AtomicInteger NEXT_SLOT = new AtomicInteger();
+
+    /** Slot assigned to each context class. */
+    @Nonnull private static final ClassValue<Integer> SLOTS = new ClassValue<Integer>() {
+        protected Integer computeValue(final Class<?> type) {
+            return NEXT_SLOT.getAndIncrement();
+        }
+    };
+
+    /** Initial capacity of the arrays. */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** The children, in insertion order. */
+    @Nonnull private BaseContext[] children;
+
+    /** The slot of each child. */
+    @Nonnull private int[] slots;
+
+    /** The number of children. */
+    private int size;
+
+    /** Modification count, for fail-fast iteration. */
+    private int modCount;
+
+    /** Constructor. */
+    SubcontextSet() {
+        children = new BaseContext[INITIAL_CAPACITY];
+        slots = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Get the slot assigned to a context class.
+     *
+     * @param clazz the context class
+     *
+     * @return the slot
+     */
+    static int slotOf(@Nonnull final Class<?> clazz) {
+        return SLOTS.get(clazz);
+    }
+
+    /**
+     * Get the child of the given class.
+     *
+     * @param <T> the type of the child
+     * @param clazz the class of the child
+     *
+     * @return the child, or null
+     */
+    @Nullable <T extends BaseContext> T get(@Nonnull final Class<T> clazz) {
+        final int position = positionOf(slotOf(clazz));
+        return position >= 0 ? clazz.cast(children[position]) : null;
+    }
+
+    /**
+     * Get whether there is a child of the given class.
+     *
+     * @param clazz the class of the child
+     *
+     * @return true iff there is a child of the class
+     */
+    boolean contains(@Nonnull final Class<?> clazz) {
+        return positionOf(slotOf(clazz)) >= 0;
+    }
+
+    /**
+     * Add a child.
+     *
+     * @param child the child to add
+     * @param replace whether to replace an existing child of the same class
+     *
+     * @throws IllegalArgumentException if there is an existing child of the same class and replace is false
+     */
+    void add(@Nonnull final BaseContext child, final boolean replace) {
+        final int slot = slotOf(child.getClass());
+        final int position = positionOf(slot);
+        if (position >= 0) {
+            if (!replace) {
+                throw new IllegalArgumentException("Set already contains a member of index class "
+                        + child.getClass().getName());
+            }
+            children[position] = child;
+            modCount++;
+            return;
+        }
+
+        if (size == children.length) {
+            children = Arrays.copyOf(children, size * 2);
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        children[size] = child;
+        slots[size] = slot;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Remove a child.
+     *
+     * @param child the child to remove
+     *
+     * @return true iff the child was present
+     */
+    boolean remove(@Nonnull final BaseContext child) {
+        final int position = positionOf(slotOf(child.getClass()));
+        if (position < 0 || children[position] != child) {
+            return false;
+        }
+
+        final int moved = size - position - 1;
+        if (moved > 0) {
+            System.arraycopy(children, position + 1, children, position, moved);
+            System.arraycopy(slots, position + 1, slots, position, moved);
+        }
+        size--;
+        children[size] = null;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Remove all children.
+     */
+    void clear() {
+        Arrays.fill(children, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public Iterator<BaseContext> iterator() {
+        return new Iterator<BaseContext>() {
+
+            /** Position of the next child. */
+            private int next;
+
+            /** Expected modification count. */
+            private final int expectedModCount = modCount;
+
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            public BaseContext next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return children[next++];
+            }
+        };
+    }
+
+    /**
+     * Get the position of the child with the given slot.
+     *
+     * @param slot the slot
+     *
+     * @return the position, or -1
+     */
+    private int positionOf(final int slot) {
+        for (int i = 0; i < size; i++) {
+            if (slots[i] == slot) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
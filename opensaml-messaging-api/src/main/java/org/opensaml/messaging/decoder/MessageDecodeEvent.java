@@ -0,0 +1,61 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.messaging.decoder;
+
+import javax.annotation.Nullable;
+
+import org.opensaml.core.metrics.AbstractProcessingEvent;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for the decoding of an inbound message by a {@link MessageDecoder}.
+ *
+ * @since 4.0.0
+ */
+@Name("org.opensaml.MessageDecode")
+@Label("Message Decode")
+@Description("Decoding of an inbound message")
+public class MessageDecodeEvent extends AbstractProcessingEvent {
+
+    /** The decoder class name. */
+    @Label("Decoder")
+    @Description("The class of the message decoder")
+    private String decoder;
+
+    /**
+     * Get the decoder class name.
+     *
+     * @return the decoder class name
+     */
+    @Nullable public String getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * Set the decoder class name.
+     *
+     * @param name the decoder class name
+     */
+    public void setDecoder(@Nullable final String name) {
+        decoder = name;
+    }
+
+}
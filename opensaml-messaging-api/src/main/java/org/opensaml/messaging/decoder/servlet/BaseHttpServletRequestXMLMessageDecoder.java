@@ -28,11 +28,13 @@ import net.shibboleth.utilities.java.support.xml.ParserPool;
 import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 import net.shibboleth.utilities.java.support.xml.XMLParserException;
 
+import org.opensaml.core.metrics.AbstractProcessingEvent;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.messaging.decoder.MessageDecodeEvent;
 import org.opensaml.messaging.decoder.MessageDecoder;
 import org.opensaml.messaging.decoder.MessageDecodingException;
 import org.slf4j.Logger;
@@ -63,17 +65,55 @@ public abstract class BaseHttpServletRequestXMLMessageDecoder<MessageType extend
 
     /** {@inheritDoc} */
     public void decode() throws MessageDecodingException {
-        log.debug("Beginning to decode message from HttpServletRequest");
-        
-        log.debug("HttpServletRequest indicated Content-Type: {}", getHttpServletRequest().getContentType());
-        
-        validateHttpRequest(getHttpServletRequest());
-        
-        super.decode();
-        
-        logDecodedMessage();
-
-        log.debug("Successfully decoded message from HttpServletRequest.");
+        final MessageDecodeEvent event = new MessageDecodeEvent();
+        event.begin();
+        String outcome = AbstractProcessingEvent.OUTCOME_ERROR;
+        try {
+            log.debug("Beginning to decode message from HttpServletRequest");
+            
+            log.debug("HttpServletRequest indicated Content-Type: {}", getHttpServletRequest().getContentType());
+            
+            validateHttpRequest(getHttpServletRequest());
+            
+            super.decode();
+            outcome = AbstractProcessingEvent.OUTCOME_SUCCESS;
+            
+            logDecodedMessage();
+    
+            log.debug("Successfully decoded message from HttpServletRequest.");
+        } finally {
+            if (event.shouldCommit()) {
+                event.setOutcome(outcome);
+                populateDecodeEvent(event);
+                event.commit();
+            }
+        }
+    }
+    
+    /**
+     * Populate the event recorded for a decode operation.
+     * 
+     * <p>
+     * The default implementation records the decoder class and the size of the request body, or of the query
+     * string if there is no body. Subclasses may override to add the binding and peer entityID, and should
+     * tolerate the message context being absent if decoding failed.
+     * </p>
+     * 
+     * @param event the event to populate
+     * 
+     * @since 4.0.0
+     */
+    protected void populateDecodeEvent(@Nonnull final MessageDecodeEvent event) {
+        event.setDecoder(getClass().getName());
+        final HttpServletRequest request = getHttpServletRequest();
+        if (request != null) {
+            final int length = request.getContentLength();
+            if (length >= 0) {
+                event.setBytes(length);
+            } else if (request.getQueryString() != null) {
+                event.setBytes(request.getQueryString().length());
+            }
+        }
     }
     
     /**
@@ -118,7 +118,39 @@ public class BaseContextTest {
         
         Assert.assertFalse(iterator.hasNext());
     }
-    
+
+    /**
+     *  Test iteration order of multiple subcontexts across replacement and removal.
+     */
+    public void testIterationOrder() {
+        TestContext parent = new TestContext();
+        TestContext child1 = new TestContext();
+        MessageContext child2 = new MessageContext();
+        ScratchContext child3 = new ScratchContext();
+
+        parent.addSubcontext(child1);
+        parent.addSubcontext(child2);
+        parent.addSubcontext(child3);
+
+        Iterator<BaseContext> iterator = parent.iterator();
+        Assert.assertTrue(iterator.next() == child1);
+        Assert.assertTrue(iterator.next() == child2);
+        Assert.assertTrue(iterator.next() == child3);
+        Assert.assertFalse(iterator.hasNext());
+
+        MessageContext replacement = new MessageContext();
+        parent.addSubcontext(replacement, true);
+        parent.removeSubcontext(child1);
+
+        iterator = parent.iterator();
+        Assert.assertTrue(iterator.next() == replacement);
+        Assert.assertTrue(iterator.next() == child3);
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertNull(child2.getParent());
+        Assert.assertFalse(parent.containsSubcontext(TestContext.class));
+        Assert.assertTrue(parent.getSubcontext(ScratchContext.class) == child3);
+    }
+
     /**
      *  Test that calling remove() on the iterator throws the expected exception.
      */
@@ -233,6 +265,14 @@ public class BaseContextTest {
         BaseContext child = parent.getSubcontext("TestContext");
         Assert.assertNotNull(child);
         Assert.assertTrue(child instanceof TestContext);
+
+        // Repeat lookups are answered from the class name cache.
+        Assert.assertTrue(parent.getSubcontext("TestContext") == child);
+        Assert.assertTrue(parent.getSubcontext("org.opensaml.messaging.context.TestContext") == child);
+
+        TestContext other = new TestContext();
+        other.addSubcontext(new ScratchContext());
+        Assert.assertTrue(other.getSubcontext("ScratchContext") instanceof ScratchContext);
     }
 
     @Test(expectedExceptions = ClassNotFoundException.class)
@@ -20,33 +20,52 @@ package org.opensaml.messaging.handler.impl;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.messaging.context.MessageContext;
 import org.opensaml.messaging.handler.AbstractMessageHandler;
 import org.opensaml.messaging.handler.MessageHandler;
 import org.opensaml.messaging.handler.MessageHandlerChain;
 import org.opensaml.messaging.handler.MessageHandlerException;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Collections2;
 
 /**
  * A basic implementation of {@link MessageHandlerChain}.
  * 
+ * <p>
+ * Each invocation of a member handler is recorded in a {@link Timer} named for the handler class with the suffix
+ * {@link #METRIC_TIMER_INVOKE}, obtained via {@link MetricsSupport}. With a
+ * {@link org.opensaml.core.metrics.FilteredMetricRegistry}, a timer is only active if the registry's filter
+ * enables it, and otherwise the clock is not read. Timers are resolved on each invocation, so changes to the
+ * filter take effect immediately.
+ * </p>
+ * 
  * @param <MessageType> the type of message being handled
  */
 public class BasicMessageHandlerChain<MessageType> extends AbstractMessageHandler<MessageType> 
     implements MessageHandlerChain<MessageType> {
 
+    /** Suffix of the name of the per-class handler invocation timer. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_INVOKE = "timer.invoke";
+
     /** The list of members of the handler chain. */
     @NonnullAfterInit @NonnullElements private List<MessageHandler<MessageType>> members;
     
+    /** Names of the invocation timers, parallel to the members and computed on first use. */
+    @Nullable private String[] memberTimerNames;
+    
     /** 
      * {@inheritDoc}
      * 
@@ -78,14 +97,44 @@ public class BasicMessageHandlerChain<MessageType> extends AbstractMessageHandle
         } else {
             members = Collections.EMPTY_LIST;
         }
+        memberTimerNames = null;
     }
 
     /** {@inheritDoc} */
     public void doInvoke(@Nonnull final MessageContext<MessageType> msgContext) throws MessageHandlerException {
         if (members != null) {
+            final String[] timerNames = getMemberTimerNames();
+            int i = 0;
             for (final MessageHandler handler: members) {
-                handler.invoke(msgContext);
+                final Timer timer = MetricsSupport.getTimer(timerNames[i++]);
+                if (!MetricsSupport.isEnabled(timer)) {
+                    handler.invoke(msgContext);
+                } else {
+                    final long start = System.nanoTime();
+                    try {
+                        handler.invoke(msgContext);
+                    } finally {
+                        timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get the names of the invocation timers of the members.
+     * 
+     * @return the timer names, parallel to the members
+     */
+    @Nonnull private String[] getMemberTimerNames() {
+        String[] names = memberTimerNames;
+        if (names == null) {
+            names = new String[members.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = MetricRegistry.name(members.get(i).getClass(), METRIC_TIMER_INVOKE);
             }
+            memberTimerNames = names;
         }
+        return names;
     }
 }
\ No newline at end of file
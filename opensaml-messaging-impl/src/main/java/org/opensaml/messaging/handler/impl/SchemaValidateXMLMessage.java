@@ -22,11 +22,14 @@ import java.io.IOException;
 import javax.annotation.Nonnull;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.validation.Schema;
-import javax.xml.validation.Validator;
 
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.util.SchemaValidationSupport;
+import org.opensaml.core.xml.util.SchemaValidatorPool;
 import org.opensaml.messaging.context.MessageContext;
 import org.opensaml.messaging.handler.AbstractMessageHandler;
 import org.opensaml.messaging.handler.MessageHandlerException;
@@ -34,21 +37,37 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer.Context;
+
 /**
  * A handler that schema validates an XML-based message.
  * 
+ * <p>If the message was decoded with a parser pool configured with the same schema, it was validated while it
+ * was parsed and is not validated again.</p>
+ * 
  * @param <MessageType> type of message on which to operate
  * 
  * @pre <pre>MessageContext.getMessage().getDOM() != null</pre>
  */
 public class SchemaValidateXMLMessage<MessageType extends XMLObject> extends AbstractMessageHandler<MessageType> {
 
+    /**
+     * Suffix of the name of the per-class validation timer.
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_VALIDATE = "timer.validate";
+
     /** Class logger. */
     @Nonnull private Logger log = LoggerFactory.getLogger(SchemaValidateXMLMessage.class);
 
     /** Schema used to validate incoming messages. */
     @Nonnull private final Schema validationSchema;
 
+    /** Pool of validators for the schema. */
+    @Nonnull private final SchemaValidatorPool validatorPool;
+
     /**
      * Constructor.
      * 
@@ -56,6 +75,7 @@ public class SchemaValidateXMLMessage<MessageType extends XMLObject> extends Abs
      */
     public SchemaValidateXMLMessage(@Nonnull final Schema schema) {
         validationSchema = Constraint.isNotNull(schema, "Schema cannot be null");
+        validatorPool = new SchemaValidatorPool(validationSchema);
     }
 
     /**
@@ -93,11 +113,18 @@ public class SchemaValidateXMLMessage<MessageType extends XMLObject> extends Abs
     protected void doInvoke(@Nonnull final MessageContext<MessageType> messageContext)
             throws MessageHandlerException {
 
+        if (SchemaValidationSupport.isValidatedOnParse(messageContext.getMessage().getDOM(), validationSchema)) {
+            log.debug("{} Message {} was schema validated when parsed", getLogPrefix(),
+                    messageContext.getMessage().getElementQName());
+            return;
+        }
+
         log.debug("{} Attempting to schema validate incoming message", getLogPrefix());
 
+        final Context context = MetricsSupport.startTimer(
+                MetricsSupport.getTimer(MetricRegistry.name(getClass(), METRIC_TIMER_VALIDATE)));
         try {
-            final Validator schemaValidator = validationSchema.newValidator();
-            schemaValidator.validate(new DOMSource(messageContext.getMessage().getDOM()));
+            validatorPool.validate(new DOMSource(messageContext.getMessage().getDOM()));
         } catch (final SAXException e) {
             log.debug("{} Message {} is not schema-valid", getLogPrefix(), messageContext.getMessage()
                     .getElementQName(), e);
@@ -105,6 +132,8 @@ public class SchemaValidateXMLMessage<MessageType extends XMLObject> extends Abs
         } catch (final IOException e) {
             log.debug("{} Unable to read message", getLogPrefix(), e);
             throw new MessageHandlerException("Unable to read message.", e);
+        } finally {
+            MetricsSupport.stopTimer(context);
         }
 
         log.debug("{} Message {} is valid", getLogPrefix(), messageContext.getMessage().getElementQName());
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.messaging.handler.impl;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.config.ConfigurationService;
+import org.opensaml.core.metrics.FilteredMetricRegistry;
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.handler.AbstractMessageHandler;
+import org.opensaml.messaging.handler.MessageHandler;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+
+/** Unit test for {@link BasicMessageHandlerChain}. */
+public class BasicMessageHandlerChainTest {
+
+    private MetricRegistry previous;
+
+    private FilteredMetricRegistry registry;
+
+    @BeforeMethod public void setUp() {
+        previous = ConfigurationService.get(MetricRegistry.class);
+        registry = new FilteredMetricRegistry();
+        ConfigurationService.register(MetricRegistry.class, registry);
+    }
+
+    @AfterMethod public void tearDown() {
+        if (previous != null) {
+            ConfigurationService.register(MetricRegistry.class, previous);
+        } else {
+            ConfigurationService.deregister(MetricRegistry.class);
+        }
+    }
+
+    @Test public void testInvoke() throws Exception {
+        final FirstHandler first = new FirstHandler();
+        final SecondHandler second = new SecondHandler();
+        final BasicMessageHandlerChain<Object> chain = buildChain(first, second);
+
+        chain.invoke(new MessageContext<>());
+        Assert.assertEquals(first.invocations, 1);
+        Assert.assertEquals(second.invocations, 1);
+        Assert.assertTrue(registry.getTimers().isEmpty());
+    }
+
+    @Test public void testPerHandlerTimers() throws Exception {
+        final String firstName = MetricRegistry.name(FirstHandler.class, BasicMessageHandlerChain.METRIC_TIMER_INVOKE);
+        final String secondName =
+                MetricRegistry.name(SecondHandler.class, BasicMessageHandlerChain.METRIC_TIMER_INVOKE);
+
+        final BasicMessageHandlerChain<Object> chain = buildChain(new FirstHandler(), new SecondHandler());
+
+        // Only the first handler is enabled.
+        registry.setMetricFilter((name, metric) -> firstName.equals(name));
+        chain.invoke(new MessageContext<>());
+        chain.invoke(new MessageContext<>());
+        Assert.assertEquals(registry.getTimers().get(firstName).getCount(), 2);
+        Assert.assertFalse(registry.getTimers().containsKey(secondName));
+
+        // Filter changes apply to a chain already in use.
+        registry.setMetricFilter(MetricFilter.ALL);
+        chain.invoke(new MessageContext<>());
+        Assert.assertEquals(registry.getTimers().get(firstName).getCount(), 3);
+        Assert.assertEquals(registry.getTimers().get(secondName).getCount(), 1);
+
+        registry.setMetricFilter(null);
+        chain.invoke(new MessageContext<>());
+        Assert.assertEquals(registry.getTimers().get(firstName).getCount(), 3);
+        Assert.assertEquals(registry.getTimers().get(secondName).getCount(), 1);
+    }
+
+    private BasicMessageHandlerChain<Object> buildChain(@Nonnull final MessageHandler<Object> first,
+            @Nonnull final MessageHandler<Object> second) throws Exception {
+        final BasicMessageHandlerChain<Object> chain = new BasicMessageHandlerChain<>();
+        chain.setHandlers(Arrays.asList(first, second));
+        chain.initialize();
+        return chain;
+    }
+
+    private static class FirstHandler extends AbstractMessageHandler<Object> {
+        private int invocations;
+
+        protected void doInvoke(@Nonnull final MessageContext<Object> messageContext) {
+            invocations++;
+        }
+    }
+
+    private static class SecondHandler extends AbstractMessageHandler<Object> {
+        private int invocations;
+
+        protected void doInvoke(@Nonnull final MessageContext<Object> messageContext) {
+            invocations++;
+        }
+    }
+
+}
@@ -23,8 +23,11 @@ import org.opensaml.messaging.context.MessageContext;
 import org.opensaml.messaging.handler.MessageHandlerException;
 import org.opensaml.messaging.handler.impl.SchemaValidateXMLMessage;
 
+import net.shibboleth.utilities.java.support.xml.BasicParserPool;
 import net.shibboleth.utilities.java.support.xml.SchemaBuilder;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
 
+import org.opensaml.core.config.ConfigurationService;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.mock.SimpleXMLObject;
@@ -32,9 +35,12 @@ import org.opensaml.core.xml.mock.SimpleXMLObjectBuilder;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
+import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.MetricRegistry;
+
 /** Unit test for {@link SchemaValidateXMLMessage}. */
 public class SchemaValidateXMLMessageTest extends XMLObjectBaseTestCase {
 
@@ -129,4 +135,47 @@ public class SchemaValidateXMLMessageTest extends XMLObjectBaseTestCase {
         
         handler.invoke(messageContext);
     }
+
+    /** Test that validation is timed, and skipped for a message validated by its parser. */
+    @Test public void testValidatedOnParse() throws Exception {
+
+        final MetricRegistry previousRegistry = ConfigurationService.get(MetricRegistry.class);
+        final MetricRegistry registry = new MetricRegistry();
+        ConfigurationService.register(MetricRegistry.class, registry);
+        try {
+            final SchemaValidateXMLMessage handler = new SchemaValidateXMLMessage(schema);
+            handler.initialize();
+            final String timerName = MetricRegistry.name(SchemaValidateXMLMessage.class,
+                    SchemaValidateXMLMessage.METRIC_TIMER_VALIDATE);
+
+            final MessageContext messageContext = new MessageContext();
+            messageContext.setMessage(XMLObjectSupport.unmarshallFromInputStream(parserPool,
+                    new ClassPathResource(VALID_XML_FILE).getInputStream()));
+            handler.invoke(messageContext);
+            Assert.assertEquals(registry.timer(timerName).getCount(), 1);
+
+            final BasicParserPool validatingPool = new BasicParserPool();
+            validatingPool.setSchema(schema);
+            validatingPool.initialize();
+
+            messageContext.setMessage(XMLObjectSupport.unmarshallFromInputStream(validatingPool,
+                    new ClassPathResource(VALID_XML_FILE).getInputStream()));
+            handler.invoke(messageContext);
+            Assert.assertEquals(registry.timer(timerName).getCount(), 1);
+
+            try {
+                XMLObjectSupport.unmarshallFromInputStream(validatingPool,
+                        new ClassPathResource(INVALID_XML_FILE).getInputStream());
+                Assert.fail("Expected XMLParserException");
+            } catch (final XMLParserException e) {
+                // expected
+            }
+        } finally {
+            if (previousRegistry != null) {
+                ConfigurationService.register(MetricRegistry.class, previousRegistry);
+            } else {
+                ConfigurationService.deregister(MetricRegistry.class);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -17,6 +17,8 @@
 
 package org.opensaml.profile.action;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
@@ -27,17 +29,29 @@ import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.component.AbstractInitializableComponent;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.profile.context.EventContext;
 import org.opensaml.profile.context.MetricContext;
 import org.opensaml.profile.context.PreviousEventContext;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 /**
  * Base class for profile actions.
  * 
  * This base class is annotated with {@link Prototype} to indicate that it is stateful.
  * 
+ * <p>
+ * Each execution is recorded in a {@link Timer} named for the action class with the suffix
+ * {@link #METRIC_TIMER_EXECUTE}, obtained via {@link MetricsSupport}. With a
+ * {@link org.opensaml.core.metrics.FilteredMetricRegistry}, the timer is only active if the registry's filter
+ * enables it, and otherwise the clock is not read. The timer is resolved on each execution, so changes to the
+ * filter take effect immediately.
+ * </p>
+ * 
  * @param <InboundMessageType> type of in-bound message
  * @param <OutboundMessageType> type of out-bound message
  */
@@ -45,6 +59,9 @@ import org.slf4j.LoggerFactory;
 public abstract class AbstractProfileAction<InboundMessageType, OutboundMessageType>
         extends AbstractInitializableComponent implements ProfileAction<InboundMessageType, OutboundMessageType> {
 
+    /** Suffix of the name of the per-class execution timer. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_EXECUTE = "timer.execute";
+
     /** Cached log prefix. */
     @Nullable private String logPrefix;
     
@@ -53,6 +70,9 @@ public abstract class AbstractProfileAction<InboundMessageType, OutboundMessageT
 
     /** Current HTTP response, if available. */
     @Nullable private HttpServletResponse httpServletResponse;
+    
+    /** Name of the execution timer, computed on first use. */
+    @Nullable private String executeTimerName;
 
     /**
      * Get the current HTTP request if available.
@@ -98,6 +118,25 @@ public abstract class AbstractProfileAction<InboundMessageType, OutboundMessageT
     @Override public void execute(
             @Nonnull final ProfileRequestContext<InboundMessageType, OutboundMessageType> profileRequestContext) {
 
+        final Timer timer = getExecuteTimer();
+        final long start = timer != null ? System.nanoTime() : 0;
+        try {
+            executeSteps(profileRequestContext);
+        } finally {
+            if (timer != null) {
+                timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+    
+    /**
+     * Run the pre-execution, execution and post-execution steps.
+     * 
+     * @param profileRequestContext the current IdP profile request context
+     */
+    private void executeSteps(
+            @Nonnull final ProfileRequestContext<InboundMessageType, OutboundMessageType> profileRequestContext) {
+
         // Clear any existing EventContext that might be hanging around, and if it exists,
         // copy the Event to a PreviousEventContext. Don't clear any existing PreviousEventContext
         // because it may be from an earlier error of interest to other actions.
@@ -223,6 +262,21 @@ public abstract class AbstractProfileAction<InboundMessageType, OutboundMessageT
         doPostExecute(profileRequestContext);
     }
 
+    /**
+     * Get the execution timer, if one is installed and enabled.
+     * 
+     * @return the timer, or null
+     */
+    @Nullable private Timer getExecuteTimer() {
+        String name = executeTimerName;
+        if (name == null) {
+            name = MetricRegistry.name(getClass(), METRIC_TIMER_EXECUTE);
+            executeTimerName = name;
+        }
+        final Timer timer = MetricsSupport.getTimer(name);
+        return MetricsSupport.isEnabled(timer) ? timer : null;
+    }
+
     /**
      * Return a prefix for logging messages for this component.
      * 
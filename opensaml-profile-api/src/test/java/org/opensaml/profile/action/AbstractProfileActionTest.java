@@ -19,11 +19,16 @@ package org.opensaml.profile.action;
 
 import javax.annotation.Nonnull;
 
+import org.opensaml.core.config.ConfigurationService;
+import org.opensaml.core.metrics.FilteredMetricRegistry;
 import org.opensaml.profile.context.ProfileRequestContext;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+
 /** Unit test for {@link AbstractProfileAction}. */
 public class AbstractProfileActionTest {
 
@@ -107,6 +112,73 @@ public class AbstractProfileActionTest {
         }
     }
 
+    /** Test the execution timer. */
+    @Test
+    public void testExecuteTimer() throws Exception {
+        final MetricRegistry previous = ConfigurationService.get(MetricRegistry.class);
+        final FilteredMetricRegistry registry = new FilteredMetricRegistry();
+        ConfigurationService.register(MetricRegistry.class, registry);
+        try {
+            final String name =
+                    MetricRegistry.name(BaseProfileAction.class, AbstractProfileAction.METRIC_TIMER_EXECUTE);
+
+            // No filter, so the timer is disabled.
+            BaseProfileAction action = new BaseProfileAction();
+            action.initialize();
+            action.execute(new ProfileRequestContext());
+            Assert.assertTrue(action.didPost);
+            Assert.assertFalse(registry.getTimers().containsKey(name));
+
+            registry.setMetricFilter(MetricFilter.ALL);
+            action = new BaseProfileAction();
+            action.initialize();
+            action.execute(new ProfileRequestContext());
+            action.execute(new ProfileRequestContext());
+            Assert.assertEquals(registry.getTimers().get(name).getCount(), 2);
+        } finally {
+            if (previous != null) {
+                ConfigurationService.register(MetricRegistry.class, previous);
+            } else {
+                ConfigurationService.deregister(MetricRegistry.class);
+            }
+        }
+    }
+
+    /** Test that changes to the metric filter take effect on an action already in use. */
+    @Test
+    public void testExecuteTimerFilterToggle() throws Exception {
+        final MetricRegistry previous = ConfigurationService.get(MetricRegistry.class);
+        final FilteredMetricRegistry registry = new FilteredMetricRegistry();
+        ConfigurationService.register(MetricRegistry.class, registry);
+        try {
+            final String name =
+                    MetricRegistry.name(BaseProfileAction.class, AbstractProfileAction.METRIC_TIMER_EXECUTE);
+
+            final BaseProfileAction action = new BaseProfileAction();
+            action.initialize();
+            action.execute(new ProfileRequestContext());
+            Assert.assertFalse(registry.getTimers().containsKey(name));
+
+            registry.setMetricFilter(MetricFilter.ALL);
+            action.execute(new ProfileRequestContext());
+            Assert.assertEquals(registry.getTimers().get(name).getCount(), 1);
+
+            registry.setMetricFilter(null);
+            action.execute(new ProfileRequestContext());
+            Assert.assertEquals(registry.getTimers().get(name).getCount(), 1);
+
+            registry.setMetricFilter(MetricFilter.ALL);
+            action.execute(new ProfileRequestContext());
+            Assert.assertEquals(registry.getTimers().get(name).getCount(), 2);
+        } finally {
+            if (previous != null) {
+                ConfigurationService.register(MetricRegistry.class, previous);
+            } else {
+                ConfigurationService.deregister(MetricRegistry.class);
+            }
+        }
+    }
+
     private class BaseProfileAction extends AbstractProfileAction {
         private boolean didPre = false;
         private boolean didExec = false;
@@ -20,7 +20,6 @@ package org.opensaml.saml.common.binding;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -29,16 +28,21 @@ import javax.xml.namespace.QName;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.component.AbstractIdentifiedInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.saml.criterion.EndpointCriterion;
 import org.opensaml.saml.criterion.RoleDescriptorCriterion;
+import org.opensaml.saml.metadata.EndpointIndex;
 import org.opensaml.saml.saml2.metadata.Endpoint;
-import org.opensaml.saml.saml2.metadata.IndexedEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * Base implementation that resolves and validates protocol/profile endpoints using a combination of supplied
  * parameters and SAML metadata.
@@ -65,19 +69,49 @@ import org.slf4j.LoggerFactory;
  * <p>Subclasses should override the {{@link #doCheckEndpoint(CriteriaSet, Endpoint)} method to implement
  * further criteria.</p>
  * 
+ * <p>Candidate endpoints are obtained from an {@link EndpointIndex} attached to the role, which is built once
+ * per role instance and so once per metadata refresh. Subclasses may override
+ * {@link #selectIndexedCandidates(CriteriaSet, EndpointIndex.TypeIndex)} to narrow the candidates via the
+ * index. The counters {@link #METRIC_COUNTER_INDEX_HIT} and {@link #METRIC_COUNTER_INDEX_FALLBACK}, qualified
+ * by the component ID, record whether candidates were narrowed or all endpoints of the type were scanned.</p>
+ * 
  * @param <EndpointType> type of endpoint
  */
 public abstract class AbstractEndpointResolver<EndpointType extends Endpoint>
         extends AbstractIdentifiedInitializableComponent implements EndpointResolver<EndpointType> {
 
+    /** Metric name for the counter of resolutions whose candidates were narrowed via the endpoint index. */
+    @Nonnull public static final String METRIC_COUNTER_INDEX_HIT = "counter.endpointIndex.hit";
+
+    /** Metric name for the counter of resolutions which scanned all endpoints of the requested type. */
+    @Nonnull public static final String METRIC_COUNTER_INDEX_FALLBACK = "counter.endpointIndex.fallback";
+
     /** Class logger. */
     @Nonnull private Logger log = LoggerFactory.getLogger(AbstractEndpointResolver.class);
     
+    /** Counter for index hits. */
+    @Nullable private Counter indexHits;
+
+    /** Counter for fallback scans. */
+    @Nullable private Counter indexFallbacks;
+
     /** Constructor. */
     public AbstractEndpointResolver() {
         super.setId(getClass().getName());
     }
 
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        
+        final MetricRegistry metricRegistry = MetricsSupport.getMetricRegistry();
+        if (metricRegistry != null) {
+            indexHits = metricRegistry.counter(MetricRegistry.name(getId(), METRIC_COUNTER_INDEX_HIT));
+            indexFallbacks = metricRegistry.counter(MetricRegistry.name(getId(), METRIC_COUNTER_INDEX_FALLBACK));
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     @Nonnull @NonnullElements public Iterable<EndpointType> resolve(@Nullable final CriteriaSet criteria)
@@ -94,7 +128,7 @@ public abstract class AbstractEndpointResolver<EndpointType extends Endpoint>
             }
         }
         
-        final List<EndpointType> candidates = getCandidatesFromMetadata(criteria);
+        final List<EndpointType> candidates = new ArrayList<>(getCandidatesFromMetadata(criteria));
         final Iterator<EndpointType> i = candidates.iterator();
         while (i.hasNext()) {
             if (!doCheckEndpoint(criteria, i.next())) {
@@ -142,6 +176,25 @@ public abstract class AbstractEndpointResolver<EndpointType extends Endpoint>
     protected boolean doCheckEndpoint(@Nonnull final CriteriaSet criteria, @Nonnull final EndpointType endpoint) {
         return true;
     }
+    
+    /**
+     * Use the endpoint index to select a subset of the endpoints of the requested type that must include
+     * every endpoint which {@link #doCheckEndpoint(CriteriaSet, Endpoint)} could accept, in the order of
+     * {@link EndpointIndex.TypeIndex#getAll()}.
+     * 
+     * <p>The default implementation returns null, so every endpoint of the requested type is a candidate.</p>
+     * 
+     * @param criteria input criteria set
+     * @param endpoints the index of the endpoints of the requested type
+     * 
+     * @return the selected candidates, or null if no narrowing was possible
+     * 
+     * @since 4.0.0
+     */
+    @Nullable @NonnullElements protected List<Endpoint> selectIndexedCandidates(@Nonnull final CriteriaSet criteria,
+            @Nonnull final EndpointIndex.TypeIndex endpoints) {
+        return null;
+    }
 
     /**
      * Verify that the required {@link EndpointCriterion} is present.
@@ -184,7 +237,7 @@ public abstract class AbstractEndpointResolver<EndpointType extends Endpoint>
     }
     
     /**
-     * Get a mutable list of endpoints of a given type found in the metadata role contained in a
+     * Get a list of endpoints of a given type found in the metadata role contained in a
      * {@link RoleDescriptorCriterion} (or an empty list if no metadata exists).
      * 
      * <p>The endpoint type to extract is based on the candidate endpoint in an
@@ -193,7 +246,7 @@ public abstract class AbstractEndpointResolver<EndpointType extends Endpoint>
      * 
      * @param criteria input criteria set
      * 
-     * @return mutable list of endpoints from the metadata
+     * @return unmodifiable list of endpoints from the metadata
      */
     @Nonnull @NonnullElements private List<EndpointType> getCandidatesFromMetadata(
             @Nonnull final CriteriaSet criteria) {
@@ -202,7 +255,7 @@ public abstract class AbstractEndpointResolver<EndpointType extends Endpoint>
         final RoleDescriptorCriterion role = criteria.get(RoleDescriptorCriterion.class);
         if (role == null) {
             log.debug("{} No metadata supplied, no candidate endpoints to return", getLogPrefix());
-            return new ArrayList<>();
+            return Collections.emptyList();
         }
         
         // Determine the QName type of endpoints to extract based on candidate type.
@@ -212,69 +265,31 @@ public abstract class AbstractEndpointResolver<EndpointType extends Endpoint>
             endpointType = epCriterion.getEndpoint().getElementQName();
         }
         
-        // Return the endpoints in the metadata of the candidate type.
-        final List<Endpoint> endpoints = role.getRole().getEndpoints(endpointType);
-        if (endpoints.isEmpty()) {
+        // Return the endpoints in the metadata of the candidate type, narrowed via the index if possible.
+        final EndpointIndex.TypeIndex endpoints = EndpointIndex.get(role.getRole()).getEndpoints(endpointType);
+        if (endpoints.getAll().isEmpty()) {
             log.debug("{} No endpoints in metadata of type {}", getLogPrefix(), endpointType);
-        } else {
-            log.debug("{} Returning {} candidate endpoints of type {}", getLogPrefix(), endpoints.size(),
-                    endpointType);
+            return Collections.emptyList();
         }
         
-        return sortCandidates(endpoints);
-    }
-    
-    /**
-     * Copy and sort the endpoints such that the default endpoint by SAML rules comes first.
-     * 
-     * @param candidates input list of endpoints
-     * 
-     * @return a new list containing the endpoints such that the default is first
-     */
-    // Checkstyle: CyclomaticComplexity OFF
-    @Nonnull @NonnullElements private List<EndpointType> sortCandidates(
-            @Nonnull @NonnullElements final List<Endpoint> candidates) {
-        
-        // Use a linked list, and move the default endpoint to the head of the list.
-        // SAML defaulting rules apply to IndexedEnpdoint types, and require checking
-        // for the isDefault attribute. The default is the one marked true, or if none are,
-        // the first not marked false.
-        EndpointType hardDefault = null;
-        EndpointType softDefault = null;
-        final LinkedList<EndpointType> toReturn = new LinkedList();
-        for (final Endpoint endpoint : candidates) {
-            if (hardDefault == null && endpoint instanceof IndexedEndpoint) {
-                final Boolean flag = ((IndexedEndpoint) endpoint).isDefault();
-                if (flag != null) {
-                    if (flag.booleanValue()) {
-                        hardDefault = (EndpointType) endpoint;
-                        if (softDefault != null) {
-                            toReturn.addFirst(softDefault);
-                            softDefault = null;
-                        }
-                    } else {
-                        toReturn.addLast((EndpointType) endpoint);
-                    }
-                } else if (hardDefault == null && softDefault == null) {
-                    softDefault = (EndpointType) endpoint;
-                } else {
-                    toReturn.addLast((EndpointType) endpoint);
-                }
-            } else {
-                toReturn.addLast((EndpointType) endpoint);
+        List<Endpoint> candidates = selectIndexedCandidates(criteria, endpoints);
+        if (candidates != null) {
+            if (indexHits != null) {
+                indexHits.inc();
+            }
+        } else {
+            candidates = endpoints.getAll();
+            if (indexFallbacks != null) {
+                indexFallbacks.inc();
             }
         }
         
-        if (hardDefault != null) {
-            toReturn.addFirst(hardDefault);
-        } else if (softDefault != null) {
-            toReturn.addFirst(softDefault);
-        }
-       
-        return toReturn;
+        log.debug("{} Returning {} candidate endpoints of type {}", getLogPrefix(), candidates.size(),
+                endpointType);
+        
+        return (List<EndpointType>) (List<? extends Endpoint>) candidates;
     }
-    // Checkstyle: CyclomaticComplexity ON
-
+    
     /**
      * Return a prefix for logging messages for this component.
      * 
@@ -17,7 +17,6 @@
 
 package org.opensaml.saml.common.profile.logic;
 
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -27,19 +26,10 @@ import java.util.regex.Pattern;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import org.opensaml.core.xml.XMLObject;
-import org.opensaml.core.xml.schema.XSAny;
-import org.opensaml.core.xml.schema.XSBase64Binary;
-import org.opensaml.core.xml.schema.XSBoolean;
-import org.opensaml.core.xml.schema.XSDateTime;
-import org.opensaml.core.xml.schema.XSInteger;
-import org.opensaml.core.xml.schema.XSString;
-import org.opensaml.core.xml.schema.XSURI;
 import org.opensaml.saml.ext.saml2mdattr.EntityAttributes;
+import org.opensaml.saml.metadata.EntityAttributesTags;
 import org.opensaml.saml.saml2.core.Attribute;
-import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
-import org.opensaml.saml.saml2.metadata.Extensions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,11 +46,13 @@ import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.logic.Predicate;
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
-import net.shibboleth.utilities.java.support.xml.DOMTypeSupport;
 
 /**
  * Predicate to determine whether an {@link EntityDescriptor} or its parent groups contain an {@link EntityAttributes}
  * extension {@link Attribute} that matches the predicate's criteria. 
+ * 
+ * <p>If an {@link EntityAttributesTags} instance has been attached to the entity's object metadata, typically
+ * by an entity attributes metadata index, it is used in place of walking the metadata tree.</p>
  */
 public class EntityAttributesPredicate implements Predicate<EntityDescriptor> {
 
@@ -148,49 +140,36 @@ public class EntityAttributesPredicate implements Predicate<EntityDescriptor> {
         return ImmutableList.copyOf(candidateSet);
     }
 
-// Checkstyle: CyclomaticComplexity OFF
+    /**
+     * Get whether all the candidates must match.
+     * 
+     * @return true iff all the candidates must match
+     * 
+     * @since 4.0.0
+     */
+    public boolean getMatchAll() {
+        return matchAll;
+    }
+
     /** {@inheritDoc} */
     public boolean test(@Nullable final EntityDescriptor input) {
         if (input == null) {
             return false;
         }
         
-        Collection<Attribute> entityAttributes = null;
-
-        // Check for a tag match in the EntityAttributes extension of the entity and its parent(s).
-        Extensions exts = input.getExtensions();
-        if (exts != null) {
-            final List<XMLObject> children = exts.getUnknownXMLObjects(EntityAttributes.DEFAULT_ELEMENT_NAME);
-            if (!children.isEmpty() && children.get(0) instanceof EntityAttributes) {
-                if (entityAttributes == null) {
-                    entityAttributes = new ArrayList<>();
-                }
-                entityAttributes.addAll(((EntityAttributes) children.get(0)).getAttributes());
-            }
-        }
-
-        EntitiesDescriptor group = (EntitiesDescriptor) input.getParent();
-        while (group != null) {
-            exts = group.getExtensions();
-            if (exts != null) {
-                final List<XMLObject> children = exts.getUnknownXMLObjects(EntityAttributes.DEFAULT_ELEMENT_NAME);
-                if (!children.isEmpty() && children.get(0) instanceof EntityAttributes) {
-                    if (entityAttributes == null) {
-                        entityAttributes = new ArrayList<>();
-                    }
-                    entityAttributes.addAll(((EntityAttributes) children.get(0)).getAttributes());
-                }
-            }
-            group = (EntitiesDescriptor) group.getParent();
-        }
+        // Use the tags precomputed when the entity was indexed, if available, otherwise check for tags
+        // in the EntityAttributes extension of the entity and its parent(s).
+        final List<EntityAttributesTags> precomputed = input.getObjectMetadata().get(EntityAttributesTags.class);
+        final EntityAttributesTags tags = !precomputed.isEmpty() ? precomputed.get(0)
+                : EntityAttributesTags.fromEntityDescriptor(input);
 
-        if (entityAttributes == null || entityAttributes.isEmpty()) {
+        if (tags.isEmpty()) {
             log.debug("no EntityAttributes extension found for {}", input.getEntityID());
             return false;
         }
         
         // If we find a matching tag, we win. Each tag is treated in OR fashion.
-        final EntityAttributesMatcher matcher = new EntityAttributesMatcher(entityAttributes);
+        final EntityAttributesMatcher matcher = new EntityAttributesMatcher(tags);
         
         if (matchAll) {
             return Iterables.all(candidateSet, matcher::test);
@@ -321,21 +300,19 @@ public class EntityAttributesPredicate implements Predicate<EntityDescriptor> {
      */
     private class EntityAttributesMatcher implements Predicate<Candidate> {
         
-        /** Class logger. */
-        @Nonnull private final Logger log = LoggerFactory.getLogger(EntityAttributesPredicate.class);
-        
         /** Population to evaluate for a match. */
-        private final Collection<Attribute> attributes;
+        @Nonnull private final EntityAttributesTags tags;
         
         /**
          * Constructor.
          *
-         * @param attrs population to evaluate for a match
+         * @param entityTags population to evaluate for a match
          */
-        public EntityAttributesMatcher(@Nonnull @NonnullElements final Collection<Attribute> attrs) {
-            attributes = Constraint.isNotNull(attrs, "Extension attributes cannot be null");
+        public EntityAttributesMatcher(@Nonnull final EntityAttributesTags entityTags) {
+            tags = Constraint.isNotNull(entityTags, "Extension attributes cannot be null");
         }
                 
+// Checkstyle: CyclomaticComplexity OFF
         /** {@inheritDoc} */
         public boolean test(@Nonnull final Candidate input) {
             final List<String> tagvals = input.values;
@@ -345,40 +322,23 @@ public class EntityAttributesPredicate implements Predicate<EntityDescriptor> {
             final boolean[] valflags = new boolean[tagvals.size()];
             final boolean[] expflags = new boolean[tagexps.size()];
 
-            // Check each attribute/tag in the populated set.
-            for (final Attribute a : attributes) {
-                // Compare Name and NameFormat for a matching tag.
-                if (a.getName() != null && a.getName().equals(input.getName())
-                        && (input.getNameFormat() == null || input.getNameFormat().equals(a.getNameFormat()))) {
+            // Check each attribute/tag with a matching Name in the populated set.
+            for (final EntityAttributesTags.Tag a : tags.getTags(input.getName())) {
+                // Compare NameFormat for a matching tag.
+                if (input.getNameFormat() == null || input.getNameFormat().equals(a.getNameFormat())) {
 
-                    // Check each tag value's simple content for a value match.
+                    // Check each tag value for a value match.
                     for (int tagindex = 0; tagindex < tagvals.size(); ++tagindex) {
                         final String tagvalstr = tagvals.get(tagindex);
-
-                        final List<XMLObject> cvals = a.getAttributeValues();
-                        for (final XMLObject cval : cvals) {
-                            final String cvalstr = xmlObjectToString(cval);
-                            if (tagvalstr != null && cvalstr != null) {
-                                if (tagvalstr.equals(cvalstr)) {
-                                    valflags[tagindex] = true;
-                                    break;
-                                } else if (trimTags) {
-                                    if (tagvalstr.equals(cvalstr.trim())) {
-                                        valflags[tagindex] = true;
-                                        break;
-                                    }
-                                }
-                            }
+                        if (tagvalstr != null && a.hasValue(tagvalstr, trimTags)) {
+                            valflags[tagindex] = true;
                         }
                     }
 
                     // Check each tag regular expression for a match.
                     for (int tagindex = 0; tagindex < tagexps.size(); ++tagindex) {
-
-                        final List<XMLObject> cvals = a.getAttributeValues();
-                        for (final XMLObject cval : cvals) {
-                            final String cvalstr = xmlObjectToString(cval);
-                            if (tagexps.get(tagindex) != null && cvalstr != null) {
+                        for (final String cvalstr : a.getValues()) {
+                            if (tagexps.get(tagindex) != null) {
                                 if (tagexps.get(tagindex).matcher(cvalstr).matches()) {
                                     expflags[tagindex] = true;
                                     break;
@@ -403,44 +363,7 @@ public class EntityAttributesPredicate implements Predicate<EntityDescriptor> {
 
             return true;
         }
-     
-        /**
-         * Convert an XMLObject to a String if the type of recognized.
-         * 
-         * @param object object to convert
-         * @return the converted value, or null
-         */
-        @Nullable private String xmlObjectToString(@Nonnull final XMLObject object) {
-            String toMatch = null;
-            if (object instanceof XSString) {
-                toMatch = ((XSString) object).getValue();
-            } else if (object instanceof XSURI) {
-                toMatch = ((XSURI) object).getValue();
-            } else if (object instanceof XSBoolean) {
-                toMatch = ((XSBoolean) object).getValue().getValue() ? "1" : "0";
-            } else if (object instanceof XSInteger) {
-                toMatch = ((XSInteger) object).getValue().toString();
-            } else if (object instanceof XSDateTime) {
-                final Instant dt = ((XSDateTime) object).getValue();
-                if (dt != null) {
-                    toMatch = DOMTypeSupport.instantToString(dt);
-                }
-            } else if (object instanceof XSBase64Binary) {
-                toMatch = ((XSBase64Binary) object).getValue();
-            } else if (object instanceof XSAny) {
-                final XSAny wc = (XSAny) object;
-                if (wc.getUnknownAttributes().isEmpty() && wc.getUnknownXMLObjects().isEmpty()) {
-                    toMatch = wc.getTextContent();
-                }
-            }
-            if (toMatch != null) {
-                return toMatch;
-            }
-            log.warn("Unrecognized XMLObject type ({}), unable to convert to a string for comparison",
-                    object.getClass().getName());
-            return null;
-        }
     }
-// Checkstyle: CyclomaticComplexity OFF
+// Checkstyle: CyclomaticComplexity ON
 
 }
\ No newline at end of file
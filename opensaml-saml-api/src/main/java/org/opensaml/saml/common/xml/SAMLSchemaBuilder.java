@@ -32,6 +32,7 @@ import net.shibboleth.utilities.java.support.xml.ClasspathResolver;
 import net.shibboleth.utilities.java.support.xml.SchemaBuilder;
 
 import org.opensaml.core.xml.XMLRuntimeException;
+import org.opensaml.core.xml.util.SchemaValidatorPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
@@ -134,6 +135,9 @@ public class SAMLSchemaBuilder {
     /** Cached copy of the schema produced by the builder. */
     @Nullable private Schema cachedSchema;
 
+    /** Pool of validators for the cached schema. */
+    @Nullable private SchemaValidatorPool cachedValidatorPool;
+
     /** Reference to SAML 1.x schemas to apply. */
     @Nonnull @NonnullElements @NotEmpty private String[] saml1xSchemas;
     
@@ -186,6 +190,7 @@ public class SAMLSchemaBuilder {
     public synchronized void setSchemaBuilder(@Nonnull final SchemaBuilder builder) {
         schemaBuilder = Constraint.isNotNull(builder, "SchemaBuilder cannot be null");
         cachedSchema = null;
+        cachedValidatorPool = null;
         configureBuilder();
     }
 
@@ -215,6 +220,23 @@ public class SAMLSchemaBuilder {
         }
     }
 
+    /**
+     * Get a pool of validators for the schema returned by {@link #getSAMLSchema()}.
+     * 
+     * @return validator pool
+     * 
+     * @throws SAXException thrown if a schema object cannot be created
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull public synchronized SchemaValidatorPool getSAMLValidatorPool() throws SAXException {
+        final Schema schema = getSAMLSchema();
+        if (cachedValidatorPool == null || cachedValidatorPool.getSchema() != schema) {
+            cachedValidatorPool = new SchemaValidatorPool(schema);
+        }
+        return cachedValidatorPool;
+    }
+
     /**
      * Configure the appropriate {@link SchemaBuilder} with the right set of schemas.
      */
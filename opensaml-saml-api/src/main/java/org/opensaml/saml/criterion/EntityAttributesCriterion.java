@@ -0,0 +1,99 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.criterion;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.saml.common.profile.logic.EntityAttributesPredicate;
+import org.opensaml.saml.metadata.criteria.entity.EvaluableEntityDescriptorCriterion;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * {@link net.shibboleth.utilities.java.support.resolver.Criterion} representing a set of
+ * {@link org.opensaml.saml.ext.saml2mdattr.EntityAttributes} tags which an entity must carry, as
+ * expressed by an {@link EntityAttributesPredicate}.
+ *
+ * <p>
+ * Metadata resolvers with an entity attributes index use the criterion to narrow the candidate entities,
+ * and evaluate it as a predicate over the remaining candidates.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+public final class EntityAttributesCriterion implements EvaluableEntityDescriptorCriterion {
+
+    /** The predicate expressing the tags to match. */
+    @Nonnull private final EntityAttributesPredicate predicate;
+
+    /**
+     * Constructor.
+     *
+     * @param entityAttributesPredicate the predicate expressing the tags to match
+     */
+    public EntityAttributesCriterion(@Nonnull final EntityAttributesPredicate entityAttributesPredicate) {
+        predicate = Constraint.isNotNull(entityAttributesPredicate, "EntityAttributesPredicate cannot be null");
+    }
+
+    /**
+     * Get the predicate expressing the tags to match.
+     *
+     * @return the predicate
+     */
+    @Nonnull public EntityAttributesPredicate getPredicate() {
+        return predicate;
+    }
+
+    /** {@inheritDoc} */
+    public boolean test(final EntityDescriptor entityDescriptor) {
+        return predicate.test(entityDescriptor);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("EntityAttributesCriterion [candidates=");
+        builder.append(predicate.getCandidates().size());
+        builder.append(", matchAll=");
+        builder.append(predicate.getMatchAll());
+        builder.append("]");
+        return builder.toString();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return predicate.hashCode();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj instanceof EntityAttributesCriterion) {
+            return predicate.equals(((EntityAttributesCriterion) obj).predicate);
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import org.opensaml.saml.saml2.metadata.Endpoint;
+import org.opensaml.saml.saml2.metadata.IndexedEndpoint;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * A bean class which holds a precomputed lookup structure over the {@link Endpoint}s of a
+ * {@link RoleDescriptor}, keyed by endpoint type and then by binding, index and location. It will typically
+ * be attached to a role descriptor via its {@link org.opensaml.core.xml.XMLObject#getObjectMetadata()} the
+ * first time it is needed, see {@link #get(RoleDescriptor)}, and so lives as long as that instance of the
+ * metadata.
+ *
+ * <p>
+ * Every list returned preserves the SAML defaulting order, in which the default endpoint of an indexed
+ * endpoint type comes first.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+public final class EndpointIndex {
+
+    /** The role whose endpoints are indexed. */
+    @Nonnull private final RoleDescriptor role;
+
+    /** Endpoints, by endpoint type. */
+    @Nonnull private final Map<QName, TypeIndex> types;
+
+    /**
+     * Constructor.
+     *
+     * @param roleDescriptor the role whose endpoints are to be indexed
+     */
+    public EndpointIndex(@Nonnull final RoleDescriptor roleDescriptor) {
+        role = Constraint.isNotNull(roleDescriptor, "RoleDescriptor cannot be null");
+        types = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the index attached to a role, attaching a new one if necessary.
+     *
+     * @param roleDescriptor the role
+     *
+     * @return the index for the role
+     */
+    @Nonnull public static EndpointIndex get(@Nonnull final RoleDescriptor roleDescriptor) {
+        final Lock readLock = roleDescriptor.getObjectMetadata().getReadWriteLock().readLock();
+        readLock.lock();
+        try {
+            final List<EndpointIndex> existing = roleDescriptor.getObjectMetadata().get(EndpointIndex.class);
+            if (!existing.isEmpty()) {
+                return existing.get(0);
+            }
+        } finally {
+            readLock.unlock();
+        }
+
+        final Lock writeLock = roleDescriptor.getObjectMetadata().getReadWriteLock().writeLock();
+        writeLock.lock();
+        try {
+            final List<EndpointIndex> existing = roleDescriptor.getObjectMetadata().get(EndpointIndex.class);
+            if (!existing.isEmpty()) {
+                return existing.get(0);
+            }
+            final EndpointIndex index = new EndpointIndex(roleDescriptor);
+            roleDescriptor.getObjectMetadata().put(index);
+            return index;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Get the endpoints of a given type, built on first use.
+     *
+     * @param endpointType the endpoint element or schema type
+     *
+     * @return the endpoints of the type
+     */
+    @Nonnull public TypeIndex getEndpoints(@Nonnull final QName endpointType) {
+        return types.computeIfAbsent(endpointType, t -> new TypeIndex(role.getEndpoints(t)));
+    }
+
+    /**
+     * The endpoints of a single type.
+     */
+    public static final class TypeIndex {
+
+        /** All endpoints, default first. */
+        @Nonnull @NonnullElements private final List<Endpoint> all;
+
+        /** Endpoints by binding. */
+        @Nonnull private final Map<String, List<Endpoint>> byBinding;
+
+        /** Endpoints by index. */
+        @Nonnull private final Map<Integer, List<Endpoint>> byIndex;
+
+        /** Endpoints by location or response location. */
+        @Nonnull private final Map<String, List<Endpoint>> byLocation;
+
+        /**
+         * Constructor.
+         *
+         * @param endpoints the endpoints of the type, in document order
+         */
+        private TypeIndex(@Nonnull @NonnullElements final List<Endpoint> endpoints) {
+            all = Collections.unmodifiableList(new ArrayList<>(sort(endpoints)));
+            byBinding = new HashMap<>();
+            byIndex = new HashMap<>();
+            byLocation = new HashMap<>();
+            for (final Endpoint endpoint : all) {
+                if (endpoint.getBinding() != null) {
+                    byBinding.computeIfAbsent(endpoint.getBinding(), k -> new ArrayList<>(1)).add(endpoint);
+                }
+                if (endpoint instanceof IndexedEndpoint && ((IndexedEndpoint) endpoint).getIndex() != null) {
+                    byIndex.computeIfAbsent(((IndexedEndpoint) endpoint).getIndex(), k -> new ArrayList<>(1))
+                        .add(endpoint);
+                }
+                if (endpoint.getLocation() != null) {
+                    byLocation.computeIfAbsent(endpoint.getLocation(), k -> new ArrayList<>(1)).add(endpoint);
+                }
+                if (endpoint.getResponseLocation() != null
+                        && !endpoint.getResponseLocation().equals(endpoint.getLocation())) {
+                    byLocation.computeIfAbsent(endpoint.getResponseLocation(), k -> new ArrayList<>(1))
+                        .add(endpoint);
+                }
+            }
+        }
+
+        /**
+         * Get all the endpoints.
+         *
+         * @return the endpoints
+         */
+        @Nonnull @NonnullElements @Unmodifiable public List<Endpoint> getAll() {
+            return all;
+        }
+
+        /**
+         * Get the endpoints with the given binding.
+         *
+         * @param binding the binding
+         *
+         * @return the endpoints
+         */
+        @Nonnull @NonnullElements @Unmodifiable public List<Endpoint> getByBinding(@Nonnull final String binding) {
+            return lookup(byBinding, binding);
+        }
+
+        /**
+         * Get the endpoints with the given index.
+         *
+         * @param index the index
+         *
+         * @return the endpoints
+         */
+        @Nonnull @NonnullElements @Unmodifiable public List<Endpoint> getByIndex(@Nonnull final Integer index) {
+            return lookup(byIndex, index);
+        }
+
+        /**
+         * Get the endpoints whose location or response location is the given location.
+         *
+         * @param location the location
+         *
+         * @return the endpoints
+         */
+        @Nonnull @NonnullElements @Unmodifiable public List<Endpoint> getByLocation(
+                @Nonnull final String location) {
+            return lookup(byLocation, location);
+        }
+
+        /**
+         * Look up a key in one of the maps.
+         *
+         * @param <K> key type
+         * @param map the map
+         * @param key the key
+         *
+         * @return the endpoints
+         */
+        @Nonnull @NonnullElements @Unmodifiable private static <K> List<Endpoint> lookup(
+                @Nonnull final Map<K, List<Endpoint>> map, @Nullable final K key) {
+            final List<Endpoint> endpoints = map.get(key);
+            return endpoints != null ? Collections.unmodifiableList(endpoints) : Collections.<Endpoint>emptyList();
+        }
+
+        /**
+         * Copy and sort the endpoints such that the default endpoint by SAML rules comes first.
+         *
+         * @param candidates input list of endpoints
+         *
+         * @return a new list containing the endpoints such that the default is first
+         */
+        // Checkstyle: CyclomaticComplexity OFF
+        @Nonnull @NonnullElements private static List<Endpoint> sort(
+                @Nonnull @NonnullElements final List<Endpoint> candidates) {
+
+            // Use a linked list, and move the default endpoint to the head of the list.
+            // SAML defaulting rules apply to IndexedEnpdoint types, and require checking
+            // for the isDefault attribute. The default is the one marked true, or if none are,
+            // the first not marked false.
+            Endpoint hardDefault = null;
+            Endpoint softDefault = null;
+            final LinkedList<Endpoint> toReturn = new LinkedList<>();
+            for (final Endpoint endpoint : candidates) {
+                if (hardDefault == null && endpoint instanceof IndexedEndpoint) {
+                    final Boolean flag = ((IndexedEndpoint) endpoint).isDefault();
+                    if (flag != null) {
+                        if (flag.booleanValue()) {
+                            hardDefault = endpoint;
+                            if (softDefault != null) {
+                                toReturn.addFirst(softDefault);
+                                softDefault = null;
+                            }
+                        } else {
+                            toReturn.addLast(endpoint);
+                        }
+                    } else if (hardDefault == null && softDefault == null) {
+                        softDefault = endpoint;
+                    } else {
+                        toReturn.addLast(endpoint);
+                    }
+                } else {
+                    toReturn.addLast(endpoint);
+                }
+            }
+
+            if (hardDefault != null) {
+                toReturn.addFirst(hardDefault);
+            } else if (softDefault != null) {
+                toReturn.addFirst(softDefault);
+            }
+
+            return toReturn;
+        }
+        // Checkstyle: CyclomaticComplexity ON
+    }
+
+}
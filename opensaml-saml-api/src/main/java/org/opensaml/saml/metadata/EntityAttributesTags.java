@@ -0,0 +1,269 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.schema.XSAny;
+import org.opensaml.core.xml.schema.XSBase64Binary;
+import org.opensaml.core.xml.schema.XSBoolean;
+import org.opensaml.core.xml.schema.XSDateTime;
+import org.opensaml.core.xml.schema.XSInteger;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.schema.XSURI;
+import org.opensaml.saml.ext.saml2mdattr.EntityAttributes;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.Extensions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.xml.DOMTypeSupport;
+
+/**
+ * A bean class which holds a precomputed, hash-indexed view of the {@link EntityAttributes} extension
+ * {@link Attribute}s which apply to an {@link EntityDescriptor}, including those inherited from its
+ * ancestor {@link EntitiesDescriptor} groups. It will typically be attached to an entity descriptor
+ * via its {@link XMLObject#getObjectMetadata()} when the entity is indexed.
+ *
+ * @since 4.0.0
+ */
+public final class EntityAttributesTags {
+
+    /** Class logger. */
+    @Nonnull private static final Logger LOG = LoggerFactory.getLogger(EntityAttributesTags.class);
+
+    /** Tags, indexed by Attribute Name. */
+    @Nonnull @NonnullElements private final Map<String, List<Tag>> tagsByName;
+
+    /**
+     * Constructor.
+     *
+     * @param attributes the attributes from which to build the tags
+     */
+    public EntityAttributesTags(@Nonnull @NonnullElements final List<Attribute> attributes) {
+        tagsByName = new HashMap<>();
+        for (final Attribute attribute : attributes) {
+            if (attribute.getName() != null) {
+                tagsByName.computeIfAbsent(attribute.getName(), k -> new ArrayList<>(1)).add(new Tag(attribute));
+            }
+        }
+    }
+
+    /**
+     * Build the tags which apply to an entity by walking the entity's extensions and those of its
+     * ancestor groups.
+     *
+     * @param descriptor the entity descriptor
+     *
+     * @return the tags
+     */
+    @Nonnull public static EntityAttributesTags fromEntityDescriptor(@Nonnull final EntityDescriptor descriptor) {
+        final List<Attribute> attributes = new ArrayList<>();
+        addAttributes(descriptor.getExtensions(), attributes);
+        XMLObject parent = descriptor.getParent();
+        while (parent instanceof EntitiesDescriptor) {
+            addAttributes(((EntitiesDescriptor) parent).getExtensions(), attributes);
+            parent = parent.getParent();
+        }
+        return new EntityAttributesTags(attributes);
+    }
+
+    /**
+     * Get whether there are no tags.
+     *
+     * @return true iff there are no tags
+     */
+    public boolean isEmpty() {
+        return tagsByName.isEmpty();
+    }
+
+    /**
+     * Get the tags with the given Attribute Name.
+     *
+     * @param name the Attribute Name
+     *
+     * @return the tags with that name
+     */
+    @Nonnull @NonnullElements @Unmodifiable @NotLive public List<Tag> getTags(@Nonnull final String name) {
+        final List<Tag> tags = tagsByName.get(name);
+        return tags != null ? Collections.unmodifiableList(tags) : Collections.<Tag>emptyList();
+    }
+
+    /**
+     * Get all the tags.
+     *
+     * @return all the tags
+     */
+    @Nonnull @NonnullElements @Unmodifiable @NotLive public List<Tag> getTags() {
+        final List<Tag> tags = new ArrayList<>();
+        for (final List<Tag> named : tagsByName.values()) {
+            tags.addAll(named);
+        }
+        return Collections.unmodifiableList(tags);
+    }
+
+    /**
+     * Convert an XMLObject to a String if the type is recognized.
+     *
+     * @param object object to convert
+     * @return the converted value, or null
+     */
+    @Nullable public static String xmlObjectToString(@Nonnull final XMLObject object) {
+        String toMatch = null;
+        if (object instanceof XSString) {
+            toMatch = ((XSString) object).getValue();
+        } else if (object instanceof XSURI) {
+            toMatch = ((XSURI) object).getValue();
+        } else if (object instanceof XSBoolean) {
+            toMatch = ((XSBoolean) object).getValue().getValue() ? "1" : "0";
+        } else if (object instanceof XSInteger) {
+            toMatch = ((XSInteger) object).getValue().toString();
+        } else if (object instanceof XSDateTime) {
+            final Instant dt = ((XSDateTime) object).getValue();
+            if (dt != null) {
+                toMatch = DOMTypeSupport.instantToString(dt);
+            }
+        } else if (object instanceof XSBase64Binary) {
+            toMatch = ((XSBase64Binary) object).getValue();
+        } else if (object instanceof XSAny) {
+            final XSAny wc = (XSAny) object;
+            if (wc.getUnknownAttributes().isEmpty() && wc.getUnknownXMLObjects().isEmpty()) {
+                toMatch = wc.getTextContent();
+            }
+        }
+        if (toMatch != null) {
+            return toMatch;
+        }
+        LOG.warn("Unrecognized XMLObject type ({}), unable to convert to a string for comparison",
+                object.getClass().getName());
+        return null;
+    }
+
+    /**
+     * Add the attributes of the {@link EntityAttributes} extension, if any.
+     *
+     * @param exts the extensions, may be null
+     * @param attributes the list to add to
+     */
+    private static void addAttributes(@Nullable final Extensions exts, @Nonnull final List<Attribute> attributes) {
+        if (exts != null) {
+            final List<XMLObject> children = exts.getUnknownXMLObjects(EntityAttributes.DEFAULT_ELEMENT_NAME);
+            if (!children.isEmpty() && children.get(0) instanceof EntityAttributes) {
+                attributes.addAll(((EntityAttributes) children.get(0)).getAttributes());
+            }
+        }
+    }
+
+    /**
+     * The string values of a single tag {@link Attribute}.
+     */
+    public static final class Tag {
+
+        /** Attribute Name. */
+        @Nonnull private final String name;
+
+        /** Attribute NameFormat. */
+        @Nullable private final String nameFormat;
+
+        /** The values, in document order. */
+        @Nonnull @NonnullElements private final List<String> values;
+
+        /** The values, for exact lookup. */
+        @Nonnull @NonnullElements private final Set<String> valueSet;
+
+        /** The trimmed values, for lookup ignoring whitespace. */
+        @Nonnull @NonnullElements private final Set<String> trimmedValueSet;
+
+        /**
+         * Constructor.
+         *
+         * @param attribute the tag attribute
+         */
+        private Tag(@Nonnull final Attribute attribute) {
+            name = attribute.getName();
+            nameFormat = attribute.getNameFormat();
+            values = new ArrayList<>(attribute.getAttributeValues().size());
+            valueSet = new HashSet<>();
+            trimmedValueSet = new HashSet<>();
+            for (final XMLObject value : attribute.getAttributeValues()) {
+                final String str = xmlObjectToString(value);
+                if (str != null) {
+                    values.add(str);
+                    valueSet.add(str);
+                    trimmedValueSet.add(str.trim());
+                }
+            }
+        }
+
+        /**
+         * Get the Attribute Name.
+         *
+         * @return the Attribute Name
+         */
+        @Nonnull public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the Attribute NameFormat.
+         *
+         * @return the Attribute NameFormat
+         */
+        @Nullable public String getNameFormat() {
+            return nameFormat;
+        }
+
+        /**
+         * Get the values.
+         *
+         * @return the values
+         */
+        @Nonnull @NonnullElements @Unmodifiable @NotLive public List<String> getValues() {
+            return Collections.unmodifiableList(values);
+        }
+
+        /**
+         * Get whether the tag has a value, optionally ignoring surrounding whitespace in the tag's values.
+         *
+         * @param value the value to check for
+         * @param trim whether to ignore surrounding whitespace in the tag's values
+         *
+         * @return true iff the tag has the value
+         */
+        public boolean hasValue(@Nonnull final String value, final boolean trim) {
+            return valueSet.contains(value) || (trim && trimmedValueSet.contains(value));
+        }
+    }
+
+}
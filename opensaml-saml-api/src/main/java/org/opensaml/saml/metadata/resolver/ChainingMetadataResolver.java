@@ -17,21 +17,30 @@
 
 package org.opensaml.saml.metadata.resolver;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.collection.Pair;
 import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
@@ -49,6 +58,18 @@ import com.google.common.collect.ImmutableList;
  * 
  * The Iterable of entity descriptors returned is the first non-null and non-empty Iterable found while iterating over
  * the registered resolvers in resolver list order.
+ * 
+ * <p>
+ * If {@link #isParallelResolution()} is enabled, the registered resolvers are instead queried concurrently,
+ * each subject to {@link #getMemberResolutionTimeout()}, and the result of the first resolver in list order
+ * which answered is returned. See {@link MemberResolverInvoker} for details.
+ * </p>
+ * 
+ * <p>
+ * If {@link #isFrontCacheEnabled()} is enabled, the outcome of simple entityID-based queries is cached,
+ * recording either the resolver which answered or, for a short time, the absence of an answer.
+ * See {@link MemberResolutionCache} for details.
+ * </p>
  */
 public class ChainingMetadataResolver extends AbstractIdentifiableInitializableComponent implements MetadataResolver,
         RefreshableMetadataResolver, ClearableMetadataResolver {
@@ -59,9 +80,46 @@ public class ChainingMetadataResolver extends AbstractIdentifiableInitializableC
     /** Registered resolvers. */
     @Nonnull @NonnullElements private List<MetadataResolver> resolvers;
 
+    /** Whether the registered resolvers are queried concurrently. */
+    private boolean parallelResolution;
+
+    /** Executor used for concurrent resolution. */
+    @Nullable private ExecutorService executorService;
+
+    /** Whether we created our own executor during initialization. */
+    private boolean createdOwnExecutorService;
+
+    /** Maximum number of threads in the private executor created for concurrent resolution. */
+    @Positive private int maxResolutionThreads;
+
+    /** Per-resolver timeout for concurrent resolution. */
+    @Nonnull private Duration memberResolutionTimeout;
+
+    /** Base name for Metrics instrumentation names, if instrumentation is enabled. */
+    @Nullable private String metricsBaseName;
+
+    /** Invoker for the registered resolvers. */
+    @NonnullAfterInit private MemberResolverInvoker invoker;
+
+    /** Whether the front cache of resolution outcomes is enabled. */
+    private boolean frontCacheEnabled;
+
+    /** Maximum number of entries held by the front cache. */
+    @Positive private long frontCacheMaxSize;
+
+    /** Time-to-live of negative front cache entries. */
+    @Nonnull private Duration frontCacheNegativeTTL;
+
+    /** Front cache of resolution outcomes, if enabled. */
+    @Nullable private MemberResolutionCache frontCache;
+
     /** Constructor. */
     public ChainingMetadataResolver() {
         resolvers = Collections.emptyList();
+        memberResolutionTimeout = Duration.ofSeconds(5);
+        maxResolutionThreads = MemberResolverInvoker.DEFAULT_MAX_THREADS;
+        frontCacheMaxSize = 10000;
+        frontCacheNegativeTTL = Duration.ofMinutes(1);
     }
 
     /**
@@ -93,6 +151,215 @@ public class ChainingMetadataResolver extends AbstractIdentifiableInitializableC
         resolvers = new ArrayList<>(Collections2.filter(newResolvers, Predicates.notNull()));
     }
 
+    /**
+     * Get whether the registered resolvers are queried concurrently.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if resolvers are queried concurrently, false if in turn
+     */
+    public boolean isParallelResolution() {
+        return parallelResolution;
+    }
+
+    /**
+     * Set whether the registered resolvers are queried concurrently.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if resolvers should be queried concurrently, false if in turn
+     */
+    public void setParallelResolution(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        parallelResolution = flag;
+    }
+
+    /**
+     * Get the executor used for concurrent resolution.
+     * 
+     * @return the executor, or null
+     */
+    @Nullable public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Set the executor used for concurrent resolution.
+     * 
+     * <p>
+     * If not supplied and {@link #isParallelResolution()} is enabled, a private executor will be created
+     * at initialization time and shut down when this resolver is destroyed.
+     * </p>
+     * 
+     * @param executor the executor, may be null
+     */
+    public void setExecutorService(@Nullable final ExecutorService executor) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        executorService = executor;
+    }
+
+    /**
+     * Get the maximum number of threads in the private executor created for concurrent resolution.
+     * 
+     * <p>
+     * Once this many member resolutions are in flight, further members are treated as having failed
+     * rather than queued. Not applicable if an executor is supplied.
+     * </p>
+     * 
+     * <p>Defaults to: {@link MemberResolverInvoker#DEFAULT_MAX_THREADS}.</p>
+     * 
+     * @return the maximum number of threads
+     */
+    @Positive public int getMaxResolutionThreads() {
+        return maxResolutionThreads;
+    }
+
+    /**
+     * Set the maximum number of threads in the private executor created for concurrent resolution.
+     * 
+     * <p>Defaults to: {@link MemberResolverInvoker#DEFAULT_MAX_THREADS}.</p>
+     * 
+     * @param threads the maximum number of threads
+     */
+    public void setMaxResolutionThreads(@Positive final int threads) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        maxResolutionThreads = (int) Constraint.isGreaterThan(0, threads, "Thread count must be positive");
+    }
+
+    /**
+     * Get the per-resolver timeout for concurrent resolution.
+     * 
+     * <p>Defaults to: 5 seconds.</p>
+     * 
+     * @return the timeout
+     */
+    @Nonnull public Duration getMemberResolutionTimeout() {
+        return memberResolutionTimeout;
+    }
+
+    /**
+     * Set the per-resolver timeout for concurrent resolution.
+     * 
+     * <p>Defaults to: 5 seconds.</p>
+     * 
+     * @param timeout the timeout
+     */
+    public void setMemberResolutionTimeout(@Nonnull final Duration timeout) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        Constraint.isNotNull(timeout, "Timeout cannot be null");
+        Constraint.isFalse(timeout.isNegative() || timeout.isZero(), "Timeout must be positive");
+
+        memberResolutionTimeout = timeout;
+    }
+
+    /**
+     * Get whether the front cache of resolution outcomes is enabled.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if enabled, false otherwise
+     */
+    public boolean isFrontCacheEnabled() {
+        return frontCacheEnabled;
+    }
+
+    /**
+     * Set whether the front cache of resolution outcomes is enabled.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if enabled, false otherwise
+     */
+    public void setFrontCacheEnabled(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        frontCacheEnabled = flag;
+    }
+
+    /**
+     * Get the maximum number of positive, and separately of negative, entries held by the front cache.
+     * 
+     * <p>Defaults to: 10000.</p>
+     * 
+     * @return the maximum size
+     */
+    @Positive public long getFrontCacheMaxSize() {
+        return frontCacheMaxSize;
+    }
+
+    /**
+     * Set the maximum number of positive, and separately of negative, entries held by the front cache.
+     * 
+     * <p>Defaults to: 10000.</p>
+     * 
+     * @param size the maximum size
+     */
+    public void setFrontCacheMaxSize(@Positive final long size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        frontCacheMaxSize = Constraint.isGreaterThan(0, size, "Size must be greater than zero");
+    }
+
+    /**
+     * Get the time-to-live of negative front cache entries.
+     * 
+     * <p>Defaults to: 1 minute.</p>
+     * 
+     * @return the negative time-to-live
+     */
+    @Nonnull public Duration getFrontCacheNegativeTTL() {
+        return frontCacheNegativeTTL;
+    }
+
+    /**
+     * Set the time-to-live of negative front cache entries.
+     * 
+     * <p>Defaults to: 1 minute.</p>
+     * 
+     * @param ttl the negative time-to-live
+     */
+    public void setFrontCacheNegativeTTL(@Nonnull final Duration ttl) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        Constraint.isNotNull(ttl, "TTL cannot be null");
+        Constraint.isFalse(ttl.isNegative() || ttl.isZero(), "TTL must be positive");
+
+        frontCacheNegativeTTL = ttl;
+    }
+
+    /**
+     * Get the base name for Metrics instrumentation.
+     * 
+     * <p>Defaults to: null, i.e. no instrumentation.</p>
+     * 
+     * @return the Metrics base name, or null
+     */
+    @Nullable public String getMetricsBaseName() {
+        return metricsBaseName;
+    }
+
+    /**
+     * Set the base name for Metrics instrumentation.
+     * 
+     * <p>
+     * Instrumentation of the member resolvers is only performed if a base name is set.
+     * </p>
+     * 
+     * @param baseName the Metrics base name, or null for no instrumentation
+     */
+    public void setMetricsBaseName(@Nullable final String baseName) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        metricsBaseName = StringSupport.trimOrNull(baseName);
+    }
+
     /** {@inheritDoc} */
     @Override public boolean isRequireValidMetadata() {
         log.warn("Attempt to access unsupported requireValidMetadata property on ChainingMetadataResolver");
@@ -135,24 +402,65 @@ public class ChainingMetadataResolver extends AbstractIdentifiableInitializableC
     @Nonnull public Iterable<EntityDescriptor> resolve(@Nullable final CriteriaSet criteria) throws ResolverException {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
 
-        for (final MetadataResolver resolver : resolvers) {
-            try {
-                final Iterable<EntityDescriptor> descriptors = resolver.resolve(criteria);
-                if (descriptors != null && descriptors.iterator().hasNext()) {
-                    return descriptors;
+        final MemberResolutionCache.CacheKey cacheKey = frontCache != null ? frontCache.buildKey(criteria) : null;
+        long cacheGeneration = 0;
+        if (cacheKey != null) {
+            frontCache.checkForMemberUpdates();
+            cacheGeneration = frontCache.getGeneration();
+            if (frontCache.isNegative(cacheKey)) {
+                log.debug("Front cache indicates no resolver answers for {}", cacheKey);
+                return Collections.emptyList();
+            }
+            final MetadataResolver owner = frontCache.getOwner(cacheKey);
+            if (owner != null) {
+                try {
+                    final Iterable<EntityDescriptor> descriptors = owner.resolve(criteria);
+                    if (descriptors != null && descriptors.iterator().hasNext()) {
+                        return descriptors;
+                    }
+                } catch (final ResolverException e) {
+                    log.warn("Error retrieving metadata from cached resolver of type {}, proceeding to full chain",
+                            owner.getClass().getName(), e);
                 }
-            } catch (final ResolverException e) {
-                log.warn("Error retrieving metadata from resolver of type {}, proceeding to next resolver",
-                        resolver.getClass().getName(), e);
-                continue;
+                frontCache.invalidate(cacheKey);
             }
         }
 
-        return Collections.emptyList();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final Pair<MetadataResolver, Iterable<EntityDescriptor>> result = invoker.invoke(criteria, 
+                new MemberResolverInvoker.MemberOperation<Pair<MetadataResolver, Iterable<EntityDescriptor>>>() {
+                    public Pair<MetadataResolver, Iterable<EntityDescriptor>> apply(final MetadataResolver resolver, 
+                            final CriteriaSet memberCriteria) throws ResolverException {
+                        return new Pair<>(resolver, resolver.resolve(memberCriteria));
+                    }
+                }, 
+                new Predicate<Pair<MetadataResolver, Iterable<EntityDescriptor>>>() {
+                    public boolean test(final Pair<MetadataResolver, Iterable<EntityDescriptor>> candidate) {
+                        return candidate != null && candidate.getSecond() != null
+                                && candidate.getSecond().iterator().hasNext();
+                    }
+                },
+                failed);
+
+        if (result == null) {
+            // Don't record an answer as authoritatively absent if a resolver failed to give one.
+            if (cacheKey != null && !failed.get()) {
+                frontCache.recordNegative(cacheKey, cacheGeneration);
+            }
+            return Collections.emptyList();
+        }
+
+        if (cacheKey != null) {
+            frontCache.recordPositive(cacheKey, result.getFirst(), cacheGeneration);
+        }
+        return result.getSecond();
     }
     
     /** {@inheritDoc} */
     public void clear() throws ResolverException {
+        if (frontCache != null) {
+            frontCache.invalidateAll();
+        }
         for (final MetadataResolver resolver : resolvers) {
             if (resolver instanceof ClearableMetadataResolver) {
                 ((ClearableMetadataResolver) resolver).clear();
@@ -162,6 +470,9 @@ public class ChainingMetadataResolver extends AbstractIdentifiableInitializableC
 
     /** {@inheritDoc} */
     public void clear(final String entityID) throws ResolverException {
+        if (frontCache != null) {
+            frontCache.invalidateAll();
+        }
         for (final MetadataResolver resolver : resolvers) {
             if (resolver instanceof ClearableMetadataResolver) {
                 ((ClearableMetadataResolver) resolver).clear(entityID);
@@ -171,6 +482,9 @@ public class ChainingMetadataResolver extends AbstractIdentifiableInitializableC
 
     /** {@inheritDoc} */
     @Override public void refresh() throws ResolverException {
+        if (frontCache != null) {
+            frontCache.invalidateAll();
+        }
         for (final MetadataResolver resolver : resolvers) {
             if (resolver instanceof RefreshableMetadataResolver) {
                 ((RefreshableMetadataResolver) resolver).refresh();
@@ -217,12 +531,36 @@ public class ChainingMetadataResolver extends AbstractIdentifiableInitializableC
             log.warn("ChainingMetadataResolver was not configured with any member MetadataResolvers");
             resolvers = Collections.emptyList();
         }
+
+        if (isParallelResolution() && executorService == null) {
+            log.debug("ChainingMetadataResolver '{}' creating private executor for parallel resolution", getId());
+            executorService = MemberResolverInvoker.newExecutorService("ChainingMetadataResolver-" + getId(),
+                    getMaxResolutionThreads());
+            createdOwnExecutorService = true;
+        }
+
+        invoker = new MemberResolverInvoker(resolvers, isParallelResolution() ? executorService : null,
+                getMemberResolutionTimeout(), getMetricsBaseName());
+
+        if (isFrontCacheEnabled()) {
+            frontCache = new MemberResolutionCache(resolvers, getFrontCacheMaxSize(), getFrontCacheNegativeTTL(),
+                    getMetricsBaseName());
+        }
     }
 
     /** {@inheritDoc} */
     @Override protected void doDestroy() {
         super.doDestroy();
         resolvers = Collections.emptyList();
+        if (createdOwnExecutorService) {
+            executorService.shutdownNow();
+        }
+        executorService = null;
+        invoker = null;
+        if (frontCache != null) {
+            frontCache.deregisterMetrics();
+            frontCache = null;
+        }
     }
 
 }
\ No newline at end of file
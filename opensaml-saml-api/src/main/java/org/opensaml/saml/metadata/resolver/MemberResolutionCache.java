@@ -0,0 +1,428 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.metrics.MetricsSupport;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.criterion.ProtocolCriterion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.resolver.Criterion;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+
+/**
+ * Bounded front cache of resolution outcomes for metadata resolvers which delegate to an ordered list of
+ * member resolvers.
+ *
+ * <p>
+ * Positive outcomes record the member resolver which answered, so that a repeated lookup need only consult
+ * that member. Negative outcomes are recorded with a short time-to-live, so that repeated lookups of unknown
+ * entityIDs do not walk every member. All entries are discarded whenever the {@link
+ * RefreshableMetadataResolver#getLastUpdate()} value of any member changes.
+ * </p>
+ *
+ * <p>
+ * Each such discard advances a generation number. Callers capture the generation via {@link #getGeneration()}
+ * before consulting the members and supply it when recording the outcome, so that an outcome computed against
+ * member state which has since been discarded is never recorded.
+ * </p>
+ *
+ * <p>
+ * Only criteria sets consisting solely of an {@link EntityIdCriterion} and optionally an
+ * {@link EntityRoleCriterion} and/or a {@link ProtocolCriterion} are cacheable. Anything else may carry
+ * arbitrary predicates whose outcome cannot be safely cached.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+public class MemberResolutionCache {
+
+    /** Metric name for the counter of positive cache hits. */
+    public static final String METRIC_COUNTER_POSITIVE_HIT = "counter.frontCache.positiveHit";
+
+    /** Metric name for the counter of negative cache hits. */
+    public static final String METRIC_COUNTER_NEGATIVE_HIT = "counter.frontCache.negativeHit";
+
+    /** Metric name for the counter of cache misses. */
+    public static final String METRIC_COUNTER_MISS = "counter.frontCache.miss";
+
+    /** Metric name for the counter of cache invalidations due to member updates. */
+    public static final String METRIC_COUNTER_INVALIDATION = "counter.frontCache.invalidation";
+
+    /** Metric name for the gauge of the number of cache entries. */
+    public static final String METRIC_GAUGE_SIZE = "gauge.frontCache.size";
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(MemberResolutionCache.class);
+
+    /** The ordered member resolvers. */
+    @Nonnull @NonnullElements private final List<MetadataResolver> resolvers;
+
+    /** Cache of positive outcomes, mapping to the answering member. */
+    @Nonnull private final Cache<CacheKey, MetadataResolver> positiveCache;
+
+    /** Cache of negative outcomes. */
+    @Nonnull private final Cache<CacheKey, Boolean> negativeCache;
+
+    /** Generation of the cache contents, advanced whenever all entries are discarded. */
+    @Nonnull private final AtomicLong generation;
+
+    /** The member last update times against which the current cache contents were established. */
+    @Nonnull private volatile Instant[] memberLastUpdates;
+
+    /** Base name for Metrics instrumentation, may be null. */
+    @Nullable private final String metricsBaseName;
+
+    /** Counter for positive hits. */
+    @Nullable private final Counter positiveHits;
+
+    /** Counter for negative hits. */
+    @Nullable private final Counter negativeHits;
+
+    /** Counter for misses. */
+    @Nullable private final Counter misses;
+
+    /** Counter for invalidations. */
+    @Nullable private final Counter invalidations;
+
+    /** Gauge for the number of cache entries. */
+    @Nullable private final Gauge<Long> gaugeSize;
+
+    /**
+     * Constructor.
+     *
+     * @param members the ordered member resolvers
+     * @param maxSize the maximum number of positive, and separately of negative, entries to hold
+     * @param negativeTTL the time-to-live of negative entries
+     * @param baseName the base name for Metrics instrumentation, or null to disable instrumentation
+     */
+    public MemberResolutionCache(@Nonnull @NonnullElements final List<MetadataResolver> members,
+            final long maxSize, @Nonnull final Duration negativeTTL, @Nullable final String baseName) {
+        resolvers = ImmutableList.copyOf(Constraint.isNotNull(members, "Member resolver list cannot be null"));
+        Constraint.isGreaterThan(0, maxSize, "Maximum cache size must be greater than 0");
+        Constraint.isNotNull(negativeTTL, "Negative TTL cannot be null");
+        Constraint.isFalse(negativeTTL.isNegative() || negativeTTL.isZero(), "Negative TTL must be positive");
+
+        positiveCache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+        negativeCache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(negativeTTL.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        generation = new AtomicLong();
+        memberLastUpdates = currentMemberLastUpdates();
+
+        metricsBaseName = baseName;
+        final MetricRegistry metricRegistry = baseName != null ? MetricsSupport.getMetricRegistry() : null;
+        if (metricRegistry != null) {
+            positiveHits = metricRegistry.counter(MetricRegistry.name(baseName, METRIC_COUNTER_POSITIVE_HIT));
+            negativeHits = metricRegistry.counter(MetricRegistry.name(baseName, METRIC_COUNTER_NEGATIVE_HIT));
+            misses = metricRegistry.counter(MetricRegistry.name(baseName, METRIC_COUNTER_MISS));
+            invalidations = metricRegistry.counter(MetricRegistry.name(baseName, METRIC_COUNTER_INVALIDATION));
+            gaugeSize = MetricsSupport.register(MetricRegistry.name(baseName, METRIC_GAUGE_SIZE),
+                    new Gauge<Long>() {
+                        public Long getValue() {
+                            return positiveCache.size() + negativeCache.size();
+                        }},
+                    true);
+        } else {
+            positiveHits = null;
+            negativeHits = null;
+            misses = null;
+            invalidations = null;
+            gaugeSize = null;
+        }
+    }
+
+    /**
+     * Build the cache key for the supplied criteria.
+     *
+     * @param criteria the criteria to evaluate
+     *
+     * @return the cache key, or null if the criteria are not cacheable
+     */
+    @Nullable public CacheKey buildKey(@Nullable final CriteriaSet criteria) {
+        if (criteria == null) {
+            return null;
+        }
+
+        final EntityIdCriterion entityIdCriterion = criteria.get(EntityIdCriterion.class);
+        if (entityIdCriterion == null) {
+            return null;
+        }
+
+        final EntityRoleCriterion roleCriterion = criteria.get(EntityRoleCriterion.class);
+        final ProtocolCriterion protocolCriterion = criteria.get(ProtocolCriterion.class);
+
+        int expectedSize = 1;
+        if (roleCriterion != null) {
+            expectedSize++;
+        }
+        if (protocolCriterion != null) {
+            expectedSize++;
+        }
+        if (criteria.size() != expectedSize) {
+            return null;
+        }
+
+        final String entityID = StringSupport.trimOrNull(entityIdCriterion.getEntityId());
+        if (entityID == null) {
+            return null;
+        }
+
+        return new CacheKey(entityID,
+                roleCriterion != null ? roleCriterion.getRole() : null,
+                protocolCriterion != null ? protocolCriterion.getProtocol() : null);
+    }
+
+    /**
+     * Discard all entries if any member resolver's last update time has changed since the current
+     * entries were established.
+     */
+    public void checkForMemberUpdates() {
+        final Instant[] current = currentMemberLastUpdates();
+        if (!Arrays.equals(current, memberLastUpdates)) {
+            log.debug("Member resolver last update time changed, invalidating front cache");
+            invalidateAll();
+            memberLastUpdates = current;
+            if (invalidations != null) {
+                invalidations.inc();
+            }
+        }
+    }
+
+    /**
+     * Get the current generation of the cache contents.
+     *
+     * <p>
+     * This should be captured after {@link #checkForMemberUpdates()} and before consulting the members.
+     * </p>
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Get whether a negative outcome is cached for the key.
+     *
+     * @param key the cache key
+     *
+     * @return true if a live negative outcome is cached
+     */
+    public boolean isNegative(@Nonnull final CacheKey key) {
+        if (negativeCache.getIfPresent(key) != null) {
+            if (negativeHits != null) {
+                negativeHits.inc();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the member resolver which previously answered for the key.
+     *
+     * @param key the cache key
+     *
+     * @return the owning member resolver, or null
+     */
+    @Nullable public MetadataResolver getOwner(@Nonnull final CacheKey key) {
+        final MetadataResolver owner = positiveCache.getIfPresent(key);
+        if (owner != null) {
+            if (positiveHits != null) {
+                positiveHits.inc();
+            }
+        } else if (misses != null) {
+            misses.inc();
+        }
+        return owner;
+    }
+
+    /**
+     * Record a positive outcome, unless the cache contents have been discarded since the outcome was computed.
+     *
+     * @param key the cache key
+     * @param owner the member resolver which answered
+     * @param expectedGeneration the generation captured before the members were consulted
+     */
+    public void recordPositive(@Nonnull final CacheKey key, @Nonnull final MetadataResolver owner,
+            final long expectedGeneration) {
+        if (generation.get() != expectedGeneration) {
+            log.debug("Front cache was invalidated during resolution, not recording outcome for {}", key);
+            return;
+        }
+        negativeCache.invalidate(key);
+        positiveCache.put(key, owner);
+        recheckGeneration(key, expectedGeneration);
+    }
+
+    /**
+     * Record a negative outcome, unless the cache contents have been discarded since the outcome was computed.
+     *
+     * @param key the cache key
+     * @param expectedGeneration the generation captured before the members were consulted
+     */
+    public void recordNegative(@Nonnull final CacheKey key, final long expectedGeneration) {
+        if (generation.get() != expectedGeneration) {
+            log.debug("Front cache was invalidated during resolution, not recording outcome for {}", key);
+            return;
+        }
+        positiveCache.invalidate(key);
+        negativeCache.put(key, Boolean.TRUE);
+        recheckGeneration(key, expectedGeneration);
+    }
+
+    /**
+     * Discard an outcome just recorded if a concurrent discard of all entries advanced the generation
+     * between the caller's check and its write, since that discard may already have passed over the key.
+     *
+     * @param key the cache key
+     * @param expectedGeneration the generation captured before the members were consulted
+     */
+    private void recheckGeneration(@Nonnull final CacheKey key, final long expectedGeneration) {
+        if (generation.get() != expectedGeneration) {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Discard any outcome recorded for the key.
+     *
+     * @param key the cache key
+     */
+    public void invalidate(@Nonnull final CacheKey key) {
+        positiveCache.invalidate(key);
+        negativeCache.invalidate(key);
+    }
+
+    /**
+     * Discard all entries.
+     */
+    public void invalidateAll() {
+        // Advance first, so that a concurrent record either sees the new generation or is cleared below.
+        generation.incrementAndGet();
+        positiveCache.invalidateAll();
+        negativeCache.invalidateAll();
+    }
+
+    /**
+     * Deregister any Metrics instrumentation which was registered by this instance.
+     */
+    public void deregisterMetrics() {
+        if (gaugeSize != null) {
+            MetricsSupport.remove(MetricRegistry.name(metricsBaseName, METRIC_GAUGE_SIZE), gaugeSize);
+        }
+    }
+
+    /**
+     * Get the current last update times of the member resolvers.
+     *
+     * @return the last update times, in member order
+     */
+    @Nonnull private Instant[] currentMemberLastUpdates() {
+        final Instant[] updates = new Instant[resolvers.size()];
+        for (int i = 0; i < updates.length; i++) {
+            final MetadataResolver resolver = resolvers.get(i);
+            if (resolver instanceof RefreshableMetadataResolver) {
+                updates[i] = ((RefreshableMetadataResolver) resolver).getLastUpdate();
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * Normalised cache key.
+     */
+    public static final class CacheKey {
+
+        /** The entityID. */
+        @Nonnull private final String entityID;
+
+        /** The entity role, may be null. */
+        @Nullable private final QName role;
+
+        /** The protocol, may be null. */
+        @Nullable private final String protocol;
+
+        /**
+         * Constructor.
+         *
+         * @param id the entityID
+         * @param entityRole the entity role
+         * @param protocolURI the protocol
+         */
+        private CacheKey(@Nonnull final String id, @Nullable final QName entityRole,
+                @Nullable final String protocolURI) {
+            entityID = id;
+            role = entityRole;
+            protocol = protocolURI;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return Objects.hash(entityID, role, protocol);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof CacheKey) {
+                final CacheKey other = (CacheKey) obj;
+                return entityID.equals(other.entityID) && Objects.equals(role, other.role)
+                        && Objects.equals(protocol, other.protocol);
+            }
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return "CacheKey [entityID=" + entityID + ", role=" + role + ", protocol=" + protocol + "]";
+        }
+    }
+
+}
@@ -0,0 +1,504 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.core.metrics.MetricsSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+import com.google.common.collect.ImmutableList;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+
+/**
+ * Helper used by metadata resolvers which delegate to an ordered list of member resolvers, and which return
+ * the result of the first (highest-priority) member resolver which produces a usable answer.
+ *
+ * <p>
+ * If no {@link ExecutorService} is supplied, members are invoked sequentially in list order, exactly as
+ * a simple loop would. If an executor is supplied, members are queried concurrently, each subject to the
+ * configured per-member timeout, but the result is still taken from the highest-priority member which
+ * answered. Any leading {@link BatchMetadataResolver} members are evaluated inline before any concurrent
+ * work is started, since they answer from memory and a hit there makes the fan-out unnecessary.
+ * </p>
+ *
+ * <p>
+ * By default, a member which throws a {@link ResolverException}, which does not answer within the timeout,
+ * or which the executor rejects, is treated as having produced no result. If constructed to propagate failures,
+ * the failure of a member is instead raised to the caller at the point at which a sequential loop would have
+ * consulted that member. Work for a member which timed out is interrupted, so that a hung member does not hold
+ * an executor thread indefinitely.
+ * </p>
+ *
+ * <p>
+ * If a base name for Metrics instrumentation is supplied, a per-member {@link Timer} and a per-member timeout
+ * {@link Counter} are maintained, named using the member resolver's ID.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+public class MemberResolverInvoker {
+
+    /** Metric name for the per-member resolve timer. */
+    public static final String METRIC_TIMER_MEMBER_RESOLVE = "timer.memberResolve";
+
+    /** Metric name for the per-member timeout counter. */
+    public static final String METRIC_COUNTER_MEMBER_TIMEOUT = "counter.memberTimeout";
+
+    /** Default maximum number of threads in an executor created by {@link #newExecutorService(String, int)}. */
+    public static final int DEFAULT_MAX_THREADS = 16;
+
+    /** Time for which idle threads are kept by an executor created by {@link #newExecutorService(String, int)}. */
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(MemberResolverInvoker.class);
+
+    /** The ordered member resolvers. */
+    @Nonnull @NonnullElements private final List<MetadataResolver> resolvers;
+
+    /** Executor used for concurrent member resolution, may be null. */
+    @Nullable private final ExecutorService executor;
+
+    /** The per-member resolution timeout, applicable only to concurrent resolution. */
+    @Nonnull private final Duration timeout;
+
+    /** Whether member failures are raised to the caller rather than treated as no result. */
+    private final boolean propagateFailures;
+
+    /** Per-member resolution timers. */
+    @Nonnull private final Map<MetadataResolver, Timer> timers;
+
+    /** Per-member timeout counters. */
+    @Nonnull private final Map<MetadataResolver, Counter> timeoutCounters;
+
+    /**
+     * Constructor.
+     *
+     * @param members the ordered member resolvers
+     * @param executorService the executor used for concurrent resolution, or null for sequential resolution
+     * @param memberTimeout the per-member resolution timeout, applicable only to concurrent resolution
+     * @param metricsBaseName the base name for Metrics instrumentation, or null to disable instrumentation
+     */
+    public MemberResolverInvoker(@Nonnull @NonnullElements final List<MetadataResolver> members,
+            @Nullable final ExecutorService executorService, @Nonnull final Duration memberTimeout,
+            @Nullable final String metricsBaseName) {
+        this(members, executorService, memberTimeout, metricsBaseName, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param members the ordered member resolvers
+     * @param executorService the executor used for concurrent resolution, or null for sequential resolution
+     * @param memberTimeout the per-member resolution timeout, applicable only to concurrent resolution
+     * @param metricsBaseName the base name for Metrics instrumentation, or null to disable instrumentation
+     * @param propagate whether member failures are raised to the caller rather than treated as no result
+     */
+    public MemberResolverInvoker(@Nonnull @NonnullElements final List<MetadataResolver> members,
+            @Nullable final ExecutorService executorService, @Nonnull final Duration memberTimeout,
+            @Nullable final String metricsBaseName, final boolean propagate) {
+        propagateFailures = propagate;
+        resolvers = ImmutableList.copyOf(Constraint.isNotNull(members, "Member resolver list cannot be null"));
+        executor = executorService;
+        timeout = Constraint.isNotNull(memberTimeout, "Member timeout cannot be null");
+        Constraint.isFalse(timeout.isNegative() || timeout.isZero(), "Member timeout must be positive");
+
+        final MetricRegistry metricRegistry = metricsBaseName != null ? MetricsSupport.getMetricRegistry() : null;
+        if (metricRegistry != null) {
+            timers = new IdentityHashMap<>();
+            timeoutCounters = new IdentityHashMap<>();
+            for (final MetadataResolver resolver : resolvers) {
+                final String memberName = resolver.getId() != null ? resolver.getId()
+                        : resolver.getClass().getSimpleName();
+                timers.put(resolver,
+                        metricRegistry.timer(MetricRegistry.name(metricsBaseName, METRIC_TIMER_MEMBER_RESOLVE,
+                                memberName)));
+                timeoutCounters.put(resolver,
+                        metricRegistry.counter(MetricRegistry.name(metricsBaseName, METRIC_COUNTER_MEMBER_TIMEOUT,
+                                memberName)));
+            }
+        } else {
+            timers = Collections.emptyMap();
+            timeoutCounters = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Create a bounded executor suitable for concurrent member resolution.
+     *
+     * <p>
+     * The executor does not queue work: once the maximum number of threads are busy, submissions are
+     * rejected, and the members concerned are treated as having failed, rather than queued behind members
+     * which may be hung.
+     * </p>
+     *
+     * @param threadName the name of the executor's daemon threads
+     * @param maxThreads the maximum number of threads
+     *
+     * @return the new executor
+     */
+    @Nonnull public static ExecutorService newExecutorService(@Nonnull final String threadName,
+            @Positive final int maxThreads) {
+        Constraint.isGreaterThan(0, maxThreads, "Thread count must be positive");
+        return new ThreadPoolExecutor(0, maxThreads, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), r -> {
+                    final Thread thread = new Thread(r, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Get whether member resolvers are queried concurrently.
+     *
+     * @return true if concurrent, false if sequential
+     */
+    public boolean isConcurrent() {
+        return executor != null;
+    }
+
+    /**
+     * Invoke the member resolvers and return the first result, in member order, which is considered a hit.
+     *
+     * @param <T> the type of result produced by the member resolution operation
+     * @param criteria the criteria to resolve
+     * @param operation the resolution operation to perform on each member
+     * @param isHit predicate indicating whether a result should be returned to the caller
+     *
+     * @return the result of the highest-priority member which produced a hit, or null if none did
+     *
+     * @throws ResolverException if failures are propagated and a member consulted failed
+     */
+    @Nullable public <T> T invoke(@Nullable final CriteriaSet criteria, @Nonnull final MemberOperation<T> operation,
+            @Nonnull final Predicate<T> isHit) throws ResolverException {
+        return invoke(criteria, operation, isHit, null);
+    }
+
+    /**
+     * Invoke the member resolvers and return the first result, in member order, which is considered a hit.
+     *
+     * <p>
+     * If supplied, the failure indicator is set to true if any member consulted threw an exception
+     * or did not answer within the timeout, i.e. a null return cannot be taken as an authoritative miss.
+     * </p>
+     *
+     * @param <T> the type of result produced by the member resolution operation
+     * @param criteria the criteria to resolve
+     * @param operation the resolution operation to perform on each member
+     * @param isHit predicate indicating whether a result should be returned to the caller
+     * @param failureIndicator indicator set if any member consulted failed, may be null
+     *
+     * @return the result of the highest-priority member which produced a hit, or null if none did
+     *
+     * @throws ResolverException if failures are propagated and a member consulted failed
+     */
+    @Nullable public <T> T invoke(@Nullable final CriteriaSet criteria, @Nonnull final MemberOperation<T> operation,
+            @Nonnull final Predicate<T> isHit, @Nullable final AtomicBoolean failureIndicator)
+                    throws ResolverException {
+
+        final AtomicBoolean failed = failureIndicator != null ? failureIndicator : new AtomicBoolean();
+        int index = 0;
+
+        // Leading batch resolvers answer from memory, so there is never any point in fanning out ahead of them.
+        // In sequential mode this loop simply consumes all members.
+        while (index < resolvers.size()
+                && (executor == null || resolvers.get(index) instanceof BatchMetadataResolver)) {
+            final T result = invokeMember(resolvers.get(index), criteria, operation, failed, propagateFailures);
+            if (isHit.test(result)) {
+                return result;
+            }
+            index++;
+        }
+
+        if (index >= resolvers.size()) {
+            return null;
+        }
+
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        final List<Future<T>> futures = submitMembers(index, criteria, operation, failed);
+        try {
+            for (int i = index; i < resolvers.size(); i++) {
+                final T result = awaitMember(resolvers.get(i), futures.get(i - index), criteria, operation,
+                        deadline, failed, propagateFailures);
+                if (isHit.test(result)) {
+                    return result;
+                }
+            }
+            return null;
+        } finally {
+            cancelMembers(futures);
+        }
+    }
+
+    /**
+     * Invoke all the member resolvers and return their results in member order.
+     *
+     * <p>
+     * Members which produce a null result are omitted. As with a lazy sequential traversal, the first member
+     * which fails or does not answer within the timeout ends the traversal: its result and those of all
+     * subsequent members are omitted, and the failure indicator, if supplied, is set. The failure is logged
+     * rather than raised, regardless of whether this invoker propagates failures.
+     * </p>
+     *
+     * @param <T> the type of result produced by the member resolution operation
+     * @param criteria the criteria to resolve
+     * @param operation the resolution operation to perform on each member
+     * @param failureIndicator indicator set if a member failed, may be null
+     *
+     * @return the results of the members, in member order
+     */
+    @Nonnull @NonnullElements public <T> List<T> invokeAll(@Nullable final CriteriaSet criteria,
+            @Nonnull final MemberOperation<T> operation, @Nullable final AtomicBoolean failureIndicator) {
+
+        final AtomicBoolean failed = failureIndicator != null ? failureIndicator : new AtomicBoolean();
+        final List<T> results = new ArrayList<>(resolvers.size());
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        final List<Future<T>> futures = submitMembers(0, criteria, operation, failed);
+        try {
+            for (int i = 0; i < resolvers.size(); i++) {
+                final MetadataResolver resolver = resolvers.get(i);
+                try {
+                    final T result = awaitMember(resolver, futures.get(i), criteria, operation, deadline, failed,
+                            true);
+                    if (result != null) {
+                        results.add(result);
+                    }
+                } catch (final ResolverException e) {
+                    log.debug("Error encountered attempting to fetch results from resolver '{}'",
+                            resolver.getId(), e);
+                    break;
+                }
+            }
+            return results;
+        } finally {
+            cancelMembers(futures);
+        }
+    }
+
+    /**
+     * Submit the member resolvers from the specified index onwards for concurrent invocation.
+     *
+     * <p>
+     * The returned list holds a null entry for each member which is to be invoked inline instead, i.e. for
+     * {@link BatchMetadataResolver} members, which are cheap, and for every member if there is no executor.
+     * Concurrently invoked members always raise their failures, so that the caller may decide how to treat them.
+     * A member which the executor rejects is represented by a future which has already failed.
+     * </p>
+     *
+     * @param <T> the type of result produced by the member resolution operation
+     * @param startIndex the index of the first member to submit
+     * @param criteria the criteria to resolve
+     * @param operation the resolution operation to perform on each member
+     * @param failed indicator set if any member failed
+     *
+     * @return the futures for the submitted members, indexed from the start index
+     */
+    @Nonnull private <T> List<Future<T>> submitMembers(final int startIndex, @Nullable final CriteriaSet criteria,
+            @Nonnull final MemberOperation<T> operation, @Nonnull final AtomicBoolean failed) {
+        final List<Future<T>> futures = new ArrayList<>(resolvers.size() - startIndex);
+        for (int i = startIndex; i < resolvers.size(); i++) {
+            final MetadataResolver resolver = resolvers.get(i);
+            if (executor == null || resolver instanceof BatchMetadataResolver) {
+                futures.add(null);
+            } else {
+                try {
+                    futures.add(executor.submit(new Callable<T>() {
+                        public T call() throws ResolverException {
+                            return invokeMember(resolver, criteria, operation, failed, true);
+                        }
+                    }));
+                } catch (final RejectedExecutionException e) {
+                    final CompletableFuture<T> rejected = new CompletableFuture<>();
+                    rejected.completeExceptionally(new ResolverException("Executor rejected member resolver '"
+                            + resolver.getId() + "'", e));
+                    futures.add(rejected);
+                }
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Cancel any submitted member work which has not yet started.
+     *
+     * <p>
+     * In-flight resolution which has not timed out is not interrupted.
+     * </p>
+     *
+     * @param <T> the type of result produced by the member resolution operation
+     * @param futures the futures to cancel
+     */
+    private <T> void cancelMembers(@Nonnull final List<Future<T>> futures) {
+        for (final Future<T> future : futures) {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Obtain the result of a member, either by waiting for its concurrent invocation, or by invoking it inline
+     * if it was not submitted.
+     *
+     * @param <T> the type of result produced by the member resolution operation
+     * @param resolver the member resolver
+     * @param future the future representing the member's result, or null to invoke the member inline
+     * @param criteria the criteria to resolve
+     * @param operation the resolution operation to perform
+     * @param deadline the {@link System#nanoTime()} value at which the member's timeout expires
+     * @param failed indicator set if the member failed
+     * @param propagate whether to raise a failure rather than return null
+     *
+     * @return the member's result, or null if it failed or did not answer in time and failures are not raised
+     *
+     * @throws ResolverException if the member failed or did not answer in time and failures are raised
+     */
+    @Nullable private <T> T awaitMember(@Nonnull final MetadataResolver resolver, @Nullable final Future<T> future,
+            @Nullable final CriteriaSet criteria, @Nonnull final MemberOperation<T> operation, final long deadline,
+            @Nonnull final AtomicBoolean failed, final boolean propagate) throws ResolverException {
+        if (future == null) {
+            return invokeMember(resolver, criteria, operation, failed, propagate);
+        }
+
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            failed.set(true);
+            future.cancel(true);
+            final Counter counter = timeoutCounters.get(resolver);
+            if (counter != null) {
+                counter.inc();
+            }
+            if (propagate) {
+                throw new ResolverException("Member resolver '" + resolver.getId() + "' did not answer within "
+                        + timeout);
+            }
+            log.warn("Member resolver '{}' did not answer within {}, proceeding to next resolver",
+                    resolver.getId(), timeout);
+            return null;
+        } catch (final ExecutionException e) {
+            failed.set(true);
+            if (propagate) {
+                if (e.getCause() instanceof ResolverException) {
+                    throw (ResolverException) e.getCause();
+                } else if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new ResolverException("Error retrieving metadata from resolver '" + resolver.getId() + "'",
+                        e.getCause());
+            }
+            log.warn("Error retrieving metadata from resolver '{}', proceeding to next resolver",
+                    resolver.getId(), e.getCause());
+            return null;
+        } catch (final InterruptedException e) {
+            failed.set(true);
+            Thread.currentThread().interrupt();
+            if (propagate) {
+                throw new ResolverException("Interrupted waiting on member resolver '" + resolver.getId() + "'", e);
+            }
+            log.warn("Interrupted waiting on member resolver '{}'", resolver.getId());
+            return null;
+        }
+    }
+
+    /**
+     * Invoke the operation on a single member resolver, recording its latency.
+     *
+     * @param <T> the type of result produced by the member resolution operation
+     * @param resolver the member resolver
+     * @param criteria the criteria to resolve
+     * @param operation the resolution operation to perform
+     * @param failed indicator set if the member failed
+     * @param propagate whether to raise a failure rather than return null
+     *
+     * @return the member's result, or null if the member threw a {@link ResolverException} which is not raised
+     *
+     * @throws ResolverException if the member threw and failures are raised
+     */
+    @Nullable private <T> T invokeMember(@Nonnull final MetadataResolver resolver,
+            @Nullable final CriteriaSet criteria, @Nonnull final MemberOperation<T> operation,
+            @Nonnull final AtomicBoolean failed, final boolean propagate) throws ResolverException {
+        final Context context = MetricsSupport.startTimer(timers.get(resolver));
+        try {
+            return operation.apply(resolver, criteria);
+        } catch (final ResolverException e) {
+            failed.set(true);
+            if (propagate) {
+                throw e;
+            }
+            log.warn("Error retrieving metadata from resolver of type {}, proceeding to next resolver",
+                    resolver.getClass().getName(), e);
+            return null;
+        } finally {
+            MetricsSupport.stopTimer(context);
+        }
+    }
+
+    /**
+     * A resolution operation to perform against a member resolver.
+     *
+     * @param <T> the type of result produced
+     */
+    public interface MemberOperation<T> {
+
+        /**
+         * Perform the operation.
+         *
+         * @param resolver the member resolver
+         * @param criteria the criteria to resolve
+         *
+         * @return the result
+         *
+         * @throws ResolverException if the member resolver throws
+         */
+        @Nullable T apply(@Nonnull MetadataResolver resolver, @Nullable CriteriaSet criteria)
+                throws ResolverException;
+    }
+
+}
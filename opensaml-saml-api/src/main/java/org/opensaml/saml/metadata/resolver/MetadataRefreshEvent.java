@@ -0,0 +1,108 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver;
+
+import javax.annotation.Nullable;
+
+import org.opensaml.core.metrics.AbstractProcessingEvent;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for the refresh of metadata from its source by a
+ * {@link RefreshableMetadataResolver}.
+ *
+ * @since 4.0.0
+ */
+@Name("org.opensaml.MetadataRefresh")
+@Label("Metadata Refresh")
+@Description("Refresh of metadata from its source")
+public class MetadataRefreshEvent extends AbstractProcessingEvent {
+
+    /** The resolver ID. */
+    @Label("Resolver ID")
+    @Description("The ID of the metadata resolver")
+    private String resolverID;
+
+    /** The metadata source. */
+    @Label("Source")
+    @Description("The metadata source")
+    private String source;
+
+    /** Whether new metadata was fetched. */
+    @Label("Changed")
+    @Description("Whether new metadata was fetched")
+    private boolean changed;
+
+    /**
+     * Get the resolver ID.
+     *
+     * @return the resolver ID
+     */
+    @Nullable public String getResolverID() {
+        return resolverID;
+    }
+
+    /**
+     * Set the resolver ID.
+     *
+     * @param id the resolver ID
+     */
+    public void setResolverID(@Nullable final String id) {
+        resolverID = id;
+    }
+
+    /**
+     * Get the metadata source.
+     *
+     * @return the metadata source
+     */
+    @Nullable public String getSource() {
+        return source;
+    }
+
+    /**
+     * Set the metadata source.
+     *
+     * @param identifier the metadata source
+     */
+    public void setSource(@Nullable final String identifier) {
+        source = identifier;
+    }
+
+    /**
+     * Get whether new metadata was fetched.
+     *
+     * @return whether new metadata was fetched
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Set whether new metadata was fetched.
+     *
+     * @param flag whether new metadata was fetched
+     */
+    public void setChanged(final boolean flag) {
+        changed = flag;
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver;
+
+import javax.annotation.Nullable;
+
+import org.opensaml.core.metrics.AbstractProcessingEvent;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for the resolution of entity metadata by a {@link MetadataResolver}.
+ *
+ * @since 4.0.0
+ */
+@Name("org.opensaml.MetadataResolve")
+@Label("Metadata Resolve")
+@Description("Resolution of entity metadata")
+public class MetadataResolveEvent extends AbstractProcessingEvent {
+
+    /** The resolver ID. */
+    @Label("Resolver ID")
+    @Description("The ID of the metadata resolver")
+    private String resolverID;
+
+    /** The number of results. */
+    @Label("Result Count")
+    @Description("The number of entity descriptors resolved, or -1 if not known")
+    private int resultCount;
+
+    /**
+     * Get the resolver ID.
+     *
+     * @return the resolver ID
+     */
+    @Nullable public String getResolverID() {
+        return resolverID;
+    }
+
+    /**
+     * Set the resolver ID.
+     *
+     * @param id the resolver ID
+     */
+    public void setResolverID(@Nullable final String id) {
+        resolverID = id;
+    }
+
+    /**
+     * Get the number of entity descriptors resolved.
+     *
+     * @return the number of entity descriptors resolved, or -1 if not known
+     */
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    /**
+     * Set the number of entity descriptors resolved.
+     *
+     * @param count the number of entity descriptors resolved
+     */
+    public void setResultCount(final int count) {
+        resultCount = count;
+    }
+
+}
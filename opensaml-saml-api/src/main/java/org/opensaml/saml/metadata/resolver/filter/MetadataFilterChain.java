@@ -28,10 +28,13 @@ import net.shibboleth.utilities.java.support.annotation.constraint.Live;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.core.xml.XMLObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer.Context;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Collections2;
 
@@ -57,6 +60,30 @@ public class MetadataFilterChain implements MetadataFilter {
     /** {@inheritDoc} */
     @Override
     @Nullable public final XMLObject filter(@Nullable final XMLObject xmlObject) throws FilterException {
+        return filter(xmlObject, null);
+    }
+
+    /**
+     * Filter the given metadata, optionally recording the time spent in each member filter.
+     * 
+     * <p>
+     * Each member is timed by a timer named <code>&lt;base&gt;.&lt;position&gt;.&lt;class&gt;</code>, where the
+     * position is the zero-based index of the member within the chain and the class is the member's simple class
+     * name, so that members of the same class are measured separately. The timers are obtained via
+     * {@link MetricsSupport} on each use.
+     * </p>
+     * 
+     * @param xmlObject the metadata to filter
+     * @param timerBaseName the base name of the per-member timers, or null to record nothing
+     * 
+     * @return the filtered metadata
+     * 
+     * @throws FilterException thrown if an error occurs during the filtering process
+     * 
+     * @since 4.0.0
+     */
+    @Nullable public final XMLObject filter(@Nullable final XMLObject xmlObject, @Nullable final String timerBaseName)
+            throws FilterException {
         if (xmlObject == null) {
             return null;
         }
@@ -68,12 +95,21 @@ public class MetadataFilterChain implements MetadataFilter {
             }
             
             XMLObject current = xmlObject;
+            int position = 0;
             for (final MetadataFilter filter : filters) {
                 if (current == null) {
                     return null;
                 }
                 log.debug("Applying filter {}", filter.getClass().getName());
-                current = filter.filter(current);
+                final Context context = timerBaseName != null ? MetricsSupport.startTimer(MetricsSupport.getTimer(
+                        MetricRegistry.name(timerBaseName, Integer.toString(position),
+                                filter.getClass().getSimpleName()))) : null;
+                try {
+                    current = filter.filter(current);
+                } finally {
+                    MetricsSupport.stopTimer(context);
+                }
+                position++;
             }
             
             return current;
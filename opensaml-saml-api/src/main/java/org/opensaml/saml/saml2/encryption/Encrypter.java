@@ -27,6 +27,7 @@ import net.shibboleth.utilities.java.support.security.IdentifierGenerationStrate
 import net.shibboleth.utilities.java.support.security.RandomIdentifierGenerationStrategy;
 import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 
+import org.opensaml.core.metrics.AbstractProcessingEvent;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
@@ -51,6 +52,7 @@ import org.opensaml.xmlsec.encryption.EncryptedKey;
 import org.opensaml.xmlsec.encryption.ReferenceList;
 import org.opensaml.xmlsec.encryption.XMLEncryptionBuilder;
 import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
+import org.opensaml.xmlsec.encryption.support.EncryptionEvent;
 import org.opensaml.xmlsec.encryption.support.EncryptionException;
 import org.opensaml.xmlsec.encryption.support.DataEncryptionParameters;
 import org.opensaml.xmlsec.encryption.support.KeyEncryptionParameters;
@@ -111,6 +113,13 @@ public class Encrypter extends org.opensaml.xmlsec.encryption.support.Encrypter
         INLINE
     }
 
+    /**
+     * Default generator for XML ID attribute values, shared by all instances so that each does not need to seed
+     * its own source of randomness.
+     */
+    private static final IdentifierGenerationStrategy DEFAULT_ID_GENERATOR =
+            new RandomIdentifierGenerationStrategy();
+
     /** Factory for building XMLObject instances. */
     private XMLObjectBuilderFactory builderFactory;
 
@@ -212,7 +221,7 @@ public class Encrypter extends org.opensaml.xmlsec.encryption.support.Encrypter
         carriedKeyNameBuilder =
                 (XMLEncryptionBuilder<CarriedKeyName>) builderFactory.getBuilder(CarriedKeyName.DEFAULT_ELEMENT_NAME);
 
-        idGenerator = new RandomIdentifierGenerationStrategy();
+        idGenerator = DEFAULT_ID_GENERATOR;
 
         keyPlacement = KeyPlacement.PEER;
     }
@@ -345,6 +354,34 @@ public class Encrypter extends org.opensaml.xmlsec.encryption.support.Encrypter
     private EncryptedElementType encrypt(final XMLObject xmlObject, final QName encElementName)
             throws EncryptionException {
 
+        final EncryptionEvent event = new EncryptionEvent();
+        event.begin();
+        EncryptedElementType encElement = null;
+        try {
+            encElement = encryptElementType(xmlObject, encElementName);
+            return encElement;
+        } finally {
+            if (event.shouldCommit()) {
+                event.setOutcome(encElement != null ? AbstractProcessingEvent.OUTCOME_SUCCESS
+                        : AbstractProcessingEvent.OUTCOME_ERROR);
+                event.setEncryptedData(encElement != null ? encElement.getEncryptedData() : null);
+                event.setEntityID(getRecipient(kekParamsList));
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Encrypt the specified XMLObject into a new instance of the specified specialization of EncryptedElementType.
+     * 
+     * @param xmlObject the XMLObject to encrypt
+     * @param encElementName the QName of the specialization of EncryptedElementType to return
+     * @return a specialization of {@link org.opensaml.saml.saml2.core.EncryptedElementType}
+     * @throws EncryptionException thrown when encryption generates an error
+     */
+    private EncryptedElementType encryptElementType(final XMLObject xmlObject, final QName encElementName)
+            throws EncryptionException {
+
         checkParams(encParams, kekParamsList);
 
         final EncryptedElementType encElement =
@@ -33,13 +33,18 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 
 import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.common.binding.artifact.SAMLArtifactMap;
+import org.opensaml.storage.InstrumentedStorageService;
 import org.opensaml.storage.StorageRecord;
 import org.opensaml.storage.StorageSerializer;
 import org.opensaml.storage.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Artifact map implementation backed by {@link StorageService}. */
+/**
+ * Artifact map implementation backed by {@link StorageService}.
+ * 
+ * <p>Calls to the artifact store are measured by an {@link InstrumentedStorageService}.</p>
+ */
 public class StorageServiceSAMLArtifactMap extends AbstractInitializableComponent implements SAMLArtifactMap {
 
     /** Storage context label. */
@@ -51,6 +56,9 @@ public class StorageServiceSAMLArtifactMap extends AbstractInitializableComponen
     /** Artifact mapping storage. */
     @NonnullAfterInit private StorageService artifactStore;
 
+    /** Instrumented view of the artifact store. */
+    @NonnullAfterInit private StorageService instrumentedArtifactStore;
+
     /** Maximum size of artifacts we can handle. */
     private int artifactStoreKeySize;
 
@@ -73,6 +81,8 @@ public class StorageServiceSAMLArtifactMap extends AbstractInitializableComponen
         if (artifactStore == null) {
             throw new ComponentInitializationException("StorageService cannot be null");
         }
+        instrumentedArtifactStore = artifactStore instanceof InstrumentedStorageService
+                ? artifactStore : new InstrumentedStorageService(artifactStore);
 
         // We can't shorten the artifacts as lookup keys at the moment because
         // the key is used to recreate the original artifact value.
@@ -154,7 +164,7 @@ public class StorageServiceSAMLArtifactMap extends AbstractInitializableComponen
         if (artifact.length() > artifactStoreKeySize) {
             throw new IOException("Length of artifact (" + artifact.length() + ") exceeds storage capabilities");
         }
-        return getStorageService().read(STORAGE_CONTEXT, artifact) != null;
+        return instrumentedArtifactStore.read(STORAGE_CONTEXT, artifact) != null;
     }
 
     /** {@inheritDoc} */
@@ -165,7 +175,7 @@ public class StorageServiceSAMLArtifactMap extends AbstractInitializableComponen
             throw new IOException("Length of artifact (" + artifact.length() + ") exceeds storage capabilities");
         }
 
-        final StorageRecord record = getStorageService().read(STORAGE_CONTEXT, artifact);
+        final StorageRecord record = instrumentedArtifactStore.read(STORAGE_CONTEXT, artifact);
 
         if (record == null) {
             log.debug("No unexpired entry found for artifact: {}", artifact);
@@ -193,7 +203,7 @@ public class StorageServiceSAMLArtifactMap extends AbstractInitializableComponen
         }
 
         final boolean success =
-                getStorageService().create(STORAGE_CONTEXT, artifact, artifactEntry,
+                instrumentedArtifactStore.create(STORAGE_CONTEXT, artifact, artifactEntry,
                         (StorageSerializer) getEntryFactory(),
                         Instant.now().plus(getArtifactLifetime()).toEpochMilli());
         if (!success) {
@@ -209,7 +219,7 @@ public class StorageServiceSAMLArtifactMap extends AbstractInitializableComponen
             throw new IOException("Length of artifact (" + artifact.length() + ") exceeds storage capabilities");
         }
 
-        getStorageService().delete(STORAGE_CONTEXT, artifact);
+        instrumentedArtifactStore.delete(STORAGE_CONTEXT, artifact);
     }
 
 }
\ No newline at end of file
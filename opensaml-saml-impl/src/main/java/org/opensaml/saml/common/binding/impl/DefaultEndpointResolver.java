@@ -17,15 +17,19 @@
 
 package org.opensaml.saml.common.binding.impl;
 
+import java.util.List;
 import java.util.Objects;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 
 import org.opensaml.saml.common.binding.AbstractEndpointResolver;
 import org.opensaml.saml.criterion.BindingCriterion;
 import org.opensaml.saml.criterion.EndpointCriterion;
+import org.opensaml.saml.metadata.EndpointIndex;
 import org.opensaml.saml.saml2.metadata.Endpoint;
 import org.opensaml.saml.saml2.metadata.IndexedEndpoint;
 import org.slf4j.Logger;
@@ -70,6 +74,51 @@ public class DefaultEndpointResolver<EndpointType extends Endpoint> extends Abst
         return true;
     }
     
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Selects the smallest of the endpoints matching the index, the location and the binding of the
+     * {@link EndpointCriterion} template, as those which fail to match are rejected by
+     * {@link #doCheckEndpoint(CriteriaSet, Endpoint)}.</p>
+     */
+    @Override
+    @Nullable @NonnullElements protected List<Endpoint> selectIndexedCandidates(@Nonnull final CriteriaSet criteria,
+            @Nonnull final EndpointIndex.TypeIndex endpoints) {
+        
+        final EndpointCriterion<EndpointType> epCriterion = criteria.get(EndpointCriterion.class);
+        if (epCriterion == null) {
+            return null;
+        }
+        
+        final EndpointType comparisonEndpoint = epCriterion.getEndpoint();
+        List<Endpoint> selected = null;
+        if (comparisonEndpoint instanceof IndexedEndpoint
+                && ((IndexedEndpoint) comparisonEndpoint).getIndex() != null) {
+            selected = endpoints.getByIndex(((IndexedEndpoint) comparisonEndpoint).getIndex());
+        }
+        if (comparisonEndpoint.getLocation() != null) {
+            selected = smaller(selected, endpoints.getByLocation(comparisonEndpoint.getLocation()));
+        }
+        if (comparisonEndpoint.getBinding() != null) {
+            selected = smaller(selected, endpoints.getByBinding(comparisonEndpoint.getBinding()));
+        }
+        
+        return selected;
+    }
+    
+    /**
+     * Return the shorter of two candidate lists.
+     * 
+     * @param first first list, may be null
+     * @param second second list
+     * 
+     * @return the shorter list
+     */
+    @Nonnull private List<Endpoint> smaller(@Nullable final List<Endpoint> first,
+            @Nonnull final List<Endpoint> second) {
+        return first != null && first.size() <= second.size() ? first : second;
+    }
+    
     /**
      * Verify the candidate's Binding attribute, if set, is among the set in the supplied criterion.
      * 
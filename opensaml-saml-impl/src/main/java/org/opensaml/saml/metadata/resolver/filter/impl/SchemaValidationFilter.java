@@ -22,9 +22,11 @@ import java.io.InputStream;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.validation.Validator;
 
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.util.SchemaValidationSupport;
+import org.opensaml.core.xml.util.SchemaValidatorPool;
 import org.opensaml.saml.common.xml.SAMLSchemaBuilder;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
@@ -32,8 +34,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer.Context;
+
 import net.shibboleth.utilities.java.support.annotation.ParameterName;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport;
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport.ObjectType;
@@ -43,9 +49,19 @@ import net.shibboleth.utilities.java.support.xml.SchemaBuilder;
 
 /**
  * A metadata filter that schema validates an incoming metadata file.
+ * 
+ * <p>If the resolver's parser pool was itself configured with the schema produced by the supplied
+ * {@link SAMLSchemaBuilder}, the metadata was validated while it was parsed and is not validated again.</p>
  */
 public class SchemaValidationFilter implements MetadataFilter {
 
+    /**
+     * Suffix of the name of the per-class validation timer.
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_VALIDATE = "timer.validate";
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(SchemaValidationFilter.class);
 
@@ -112,22 +128,31 @@ public class SchemaValidationFilter implements MetadataFilter {
             return null;
         }
         
-        final Validator schemaValidator;
+        final SchemaValidatorPool validatorPool;
         try {
-            schemaValidator = samlSchemaBuilder.getSAMLSchema().newValidator();
+            validatorPool = samlSchemaBuilder.getSAMLValidatorPool();
         } catch (final SAXException e) {
             log.error("Unable to build metadata validation schema", e);
             throw new FilterException("Unable to build metadata validation schema", e);
         }
+        
+        if (SchemaValidationSupport.isValidatedOnParse(metadata.getDOM(), validatorPool.getSchema())) {
+            log.debug("Incoming metadata was schema validated when parsed");
+            return metadata;
+        }
 
+        final Context context = MetricsSupport.startTimer(
+                MetricsSupport.getTimer(MetricRegistry.name(getClass(), METRIC_TIMER_VALIDATE)));
         try {
-            schemaValidator.validate(new DOMSource(metadata.getDOM()));
+            validatorPool.validate(new DOMSource(metadata.getDOM()));
         } catch (final Exception e) {
             log.error("Incoming metadata was not schema valid", e);
             throw new FilterException("Incoming metadata was not schema valid", e);
+        } finally {
+            MetricsSupport.stopTimer(context);
         }
         
         return metadata;
     }
     
-}
\ No newline at end of file
+}
@@ -18,19 +18,28 @@
 package org.opensaml.saml.metadata.resolver.impl;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.metadata.IterableMetadataSource;
 import org.opensaml.saml.metadata.resolver.ExtendedBatchMetadataResolver;
+import org.opensaml.saml.metadata.resolver.MetadataResolveEvent;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterChain;
 import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
 import org.opensaml.saml.metadata.resolver.index.impl.MetadataIndexManager;
 import org.opensaml.saml.saml2.common.TimeBoundSAMLObject;
@@ -39,30 +48,78 @@ import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
 /**
  * Abstract subclass for metadata resolvers that process and resolve metadata at a given point 
  * in time from a single metadata source document.
+ * 
+ * <p>
+ * If a metric registry is installed, the time spent filtering and indexing each new metadata document is
+ * recorded, along with the number of entities and an approximate retained heap size of the current data.
+ * When the metadata filter is a {@link MetadataFilterChain}, each top-level member filter is also timed
+ * individually, under {@link #METRIC_TIMER_FILTER} suffixed by the member's position in the chain and its simple
+ * class name.
+ * </p>
  */
 public abstract class AbstractBatchMetadataResolver extends AbstractMetadataResolver 
         implements ExtendedBatchMetadataResolver, IterableMetadataSource {
     
+    /** Metric name for the timer for {@link #filterMetadata(XMLObject)}. */
+    public static final String METRIC_TIMER_FILTER = "timer.filter";
+    
+    /** Metric name for the timer for storing and indexing the entities of a new metadata document. */
+    public static final String METRIC_TIMER_INDEX = "timer.index";
+    
+    /** Metric name for the gauge of the number of entities. */
+    public static final String METRIC_GAUGE_NUM_ENTITIES = "gauge.numEntities";
+    
+    /** Metric name for the gauge of the approximate retained heap size in bytes of the current metadata. */
+    public static final String METRIC_GAUGE_RETAINED_SIZE_ESTIMATE = "gauge.retainedSizeEstimate";
+    
+    /**
+     * Approximate heap size in bytes of an unmarshalled metadata {@link XMLObject} once its DOM is released,
+     * including its typical attribute and content strings and the collections holding its children.
+     */
+    private static final long ESTIMATED_BYTES_PER_OBJECT = 320;
+    
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(AbstractBatchMetadataResolver.class);
     
+    /** Base name for Metrics instrumentation names. */
+    @NonnullAfterInit private String metricsBaseName;
+    
+    /** Metrics Timer for {@link #filterMetadata(XMLObject)}. */
+    @Nullable private Timer timerFilter;
+    
+    /** Metrics Timer for storing and indexing entities. */
+    @Nullable private Timer timerIndex;
+    
+    /** Metrics Gauge for the number of entities. */
+    @Nullable private Gauge<Integer> gaugeNumEntities;
+    
+    /** Metrics Gauge for the approximate retained heap size of the current metadata. */
+    @Nullable private Gauge<Long> gaugeRetainedSizeEstimate;
+    
     /** Flag indicating whether to cache the original source metadata document. */
     private boolean cacheSourceMetadata;
     
@@ -82,6 +139,32 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
         setCacheSourceMetadata(true);
     }
     
+    /**
+     * Get the base name for Metrics instrumentation.
+     * 
+     * @return the Metrics base name
+     * 
+     * @since 4.0.0
+     */
+    @NonnullAfterInit public String getMetricsBaseName() {
+        return metricsBaseName;
+    }
+    
+    /**
+     * Set the base name for Metrics instrumentation.
+     * 
+     * <p>Defaults to the resolver class name followed by the resolver ID.</p>
+     * 
+     * @param baseName the Metrics base name
+     * 
+     * @since 4.0.0
+     */
+    public void setMetricsBaseName(@Nullable final String baseName) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        metricsBaseName = StringSupport.trimOrNull(baseName);
+    }
+    
     /** {@inheritDoc} */
     @Override public Iterator<EntityDescriptor> iterator() {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
@@ -177,6 +260,28 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
     @Override @Nonnull public Iterable<EntityDescriptor> resolve(final CriteriaSet criteria) throws ResolverException {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
         
+        final MetadataResolveEvent event = new MetadataResolveEvent();
+        event.begin();
+        Iterable<EntityDescriptor> result = null;
+        try {
+            result = resolveCandidates(criteria);
+            return result;
+        } finally {
+            commitResolveEvent(event, criteria, result);
+        }
+    }
+    
+    /**
+     * Resolve the descriptors matching the criteria, via the entityID, the secondary indexes or predicates.
+     * 
+     * @param criteria the criteria set to process
+     * 
+     * @return the resolved descriptors
+     * 
+     * @throws ResolverException if there is a fatal error attempting to resolve
+     */
+    @Nonnull private Iterable<EntityDescriptor> resolveCandidates(final CriteriaSet criteria) 
+            throws ResolverException {
         final EntityIdCriterion entityIdCriterion = criteria.get(EntityIdCriterion.class);
         if (entityIdCriterion != null) {
             final Iterable<EntityDescriptor> entityIdcandidates = lookupEntityID(entityIdCriterion.getEntityId());
@@ -252,6 +357,90 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
         // even if initialization in the subclass fails for whatever reason.
         // Most subclasses will replace this with a new populated instance.
         setBackingStore(createNewBackingStore());
+        
+        initializeMetricsInstrumentation();
+    }
+    
+    /**
+     * Initialize the Metrics-based instrumentation.
+     */
+    private void initializeMetricsInstrumentation() {
+        if (getMetricsBaseName() == null) {
+            setMetricsBaseName(MetricRegistry.name(this.getClass(), getId()));
+        }
+        
+        final MetricRegistry metricRegistry = MetricsSupport.getMetricRegistry();
+        if (metricRegistry != null) {
+            timerFilter = metricRegistry.timer(MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_FILTER));
+            timerIndex = metricRegistry.timer(MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_INDEX));
+            
+            // Note that these gauges must use the support method to register in a synchronized fashion,
+            // and also must store off the instances for later use in destroy.
+            gaugeNumEntities = MetricsSupport.register(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_NUM_ENTITIES),
+                    new Gauge<Integer>() {
+                        public Integer getValue() {
+                            return getBackingStore().getOrderedDescriptors().size();
+                        }},
+                    true);
+            
+            gaugeRetainedSizeEstimate = MetricsSupport.register(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_RETAINED_SIZE_ESTIMATE),
+                    new Gauge<Long>() {
+                        public Long getValue() {
+                            return getBackingStore().getRetainedSizeEstimate();
+                        }},
+                    true);
+        }
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (gaugeNumEntities != null) {
+            MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_NUM_ENTITIES), 
+                    gaugeNumEntities);
+        }
+        if (gaugeRetainedSizeEstimate != null) {
+            MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_RETAINED_SIZE_ESTIMATE), 
+                    gaugeRetainedSizeEstimate);
+        }
+        gaugeNumEntities = null;
+        gaugeRetainedSizeEstimate = null;
+        timerFilter = null;
+        timerIndex = null;
+        
+        super.doDestroy();
+    }
+    
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * The filter is timed as a whole, and if it is a {@link MetadataFilterChain}, the chain also times each of
+     * its member filters, see {@link MetadataFilterChain#filter(XMLObject, String)}.
+     * </p>
+     */
+    @Override
+    @Nullable protected XMLObject filterMetadata(@Nullable final XMLObject metadata) throws FilterException {
+        final MetadataFilter filter = getMetadataFilter();
+        final MetricRegistry metricRegistry = MetricsSupport.getMetricRegistry();
+        if (filter == null || metadata == null || metricRegistry == null) {
+            return super.filterMetadata(metadata);
+        }
+        
+        final Context contextFilter = MetricsSupport.startTimer(timerFilter);
+        try {
+            if (!(filter instanceof MetadataFilterChain)) {
+                return super.filterMetadata(metadata);
+            }
+            
+            log.debug("{} Applying metadata filter chain", getLogPrefix());
+            return ((MetadataFilterChain) filter).filter(metadata,
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_FILTER));
+        } finally {
+            MetricsSupport.stopTimer(contextFilter);
+        }
     }
 
     /**
@@ -310,17 +499,173 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
             return newBackingStore;
         }
         
-        if (filteredMetadata instanceof EntityDescriptor) {
-            preProcessEntityDescriptor((EntityDescriptor)filteredMetadata, newBackingStore);
-        } else if (filteredMetadata instanceof EntitiesDescriptor) {
-            preProcessEntitiesDescriptor((EntitiesDescriptor)filteredMetadata, newBackingStore);
-        } else {
-            log.warn("{} Document root was neither an EntityDescriptor nor an EntitiesDescriptor: {}", 
-                    getLogPrefix(), root.getClass().getName());
+        populateBackingStore(filteredMetadata, newBackingStore);
+        
+        return newBackingStore;
+    }
+    
+    /**
+     * Process the specified new metadata document, including metadata filtering, and return its data 
+     * in a new entity backing store instance whose secondary indexes are derived incrementally from the
+     * previous one.
+     * 
+     * <p>
+     * Entities whose entityID is in the supplied set of unchanged entityIDs, and which occurred exactly once
+     * in both the previous and the new data, keep their secondary index entries from the previous backing store,
+     * remapped to the new {@link EntityDescriptor} instance, so that secondary index keys are only generated
+     * for entities which were added or changed. Index entries for removed or changed entities are dropped.
+     * Metadata filters are applied to the whole document as usual.
+     * </p>
+     * 
+     * @param root the root of the new metadata document being processed
+     * @param previousBackingStore the backing store holding the previous data
+     * @param unchangedEntityIDs the entityIDs of the entities whose source metadata is known to be unchanged
+     * 
+     * @return the new backing store instance
+     * 
+     * @throws FilterException if there is a problem filtering the metadata
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull protected BatchEntityBackingStore preProcessNewMetadata(@Nonnull final XMLObject root,
+            @Nonnull final BatchEntityBackingStore previousBackingStore, 
+            @Nonnull @NonnullElements final Set<String> unchangedEntityIDs) throws FilterException {
+        
+        final XMLObject filteredMetadata = filterMetadata(root);
+        
+        if (filteredMetadata == null) {
+            log.info("{} Metadata filtering process produced a null document, resulting in an empty data set", 
+                    getLogPrefix());
+            final BatchEntityBackingStore newBackingStore = createNewBackingStore();
+            if (isCacheSourceMetadata()) {
+                newBackingStore.setCachedOriginalMetadata(root);
+            }
+            return newBackingStore;
+        }
+        
+        final Context contextIndex = MetricsSupport.startTimer(timerIndex);
+        try {
+            final List<EntityDescriptor> descriptors = new ArrayList<>();
+            if (filteredMetadata instanceof EntityDescriptor) {
+                descriptors.add((EntityDescriptor) filteredMetadata);
+            } else if (filteredMetadata instanceof EntitiesDescriptor) {
+                collectEntityDescriptors((EntitiesDescriptor) filteredMetadata, descriptors);
+            }
+        
+            final Map<String, Integer> occurrences = new HashMap<>(descriptors.size());
+            for (final EntityDescriptor descriptor : descriptors) {
+                final String entityID = StringSupport.trimOrNull(descriptor.getEntityID());
+                if (entityID != null) {
+                    occurrences.merge(entityID, 1, Integer::sum);
+                }
+            }
+        
+            // Map each unchanged previous instance to its replacement.
+            final Map<EntityDescriptor, EntityDescriptor> remapped = new IdentityHashMap<>();
+            final Set<EntityDescriptor> reused = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (final EntityDescriptor descriptor : descriptors) {
+                final String entityID = StringSupport.trimOrNull(descriptor.getEntityID());
+                if (entityID != null && unchangedEntityIDs.contains(entityID) && occurrences.get(entityID) == 1) {
+                    final List<EntityDescriptor> previous = previousBackingStore.getIndexedDescriptors().get(entityID);
+                    if (previous != null && previous.size() == 1) {
+                        remapped.put(previous.get(0), descriptor);
+                        reused.add(descriptor);
+                    }
+                }
+            }
+        
+            final BatchEntityBackingStore newBackingStore = new BatchEntityBackingStore(
+                    previousBackingStore.getSecondaryIndexManager().copy(remapped::get));
+        
+            if (isCacheSourceMetadata()) {
+                newBackingStore.setCachedOriginalMetadata(root);
+                newBackingStore.setCachedFilteredMetadata(filteredMetadata);
+            } 
+        
+            for (final EntityDescriptor descriptor : descriptors) {
+                if (reused.contains(descriptor)) {
+                    newBackingStore.getOrderedDescriptors().add(descriptor);
+                    super.indexEntityDescriptor(descriptor, newBackingStore);
+                } else {
+                    preProcessEntityDescriptor(descriptor, newBackingStore);
+                }
+            }
+        
+            log.debug("{} Incrementally indexed metadata: {} entities unchanged, {} added or changed, "
+                    + "{} previous entities dropped",
+                    getLogPrefix(), reused.size(), descriptors.size() - reused.size(), 
+                    previousBackingStore.getOrderedDescriptors().size() - reused.size());
+        
+            return newBackingStore;
+        } finally {
+            MetricsSupport.stopTimer(contextIndex);
         }
+    }
+    
+    /**
+     * Collect in document order all the entity descriptors contained within the specified entities descriptor.
+     * 
+     * @param entitiesDescriptor the entities descriptor
+     * @param descriptors the list to which to add the entity descriptors
+     */
+    private void collectEntityDescriptors(@Nonnull final EntitiesDescriptor entitiesDescriptor, 
+            @Nonnull final List<EntityDescriptor> descriptors) {
+        for (final XMLObject child : entitiesDescriptor.getOrderedChildren()) {
+            if (child instanceof EntityDescriptor) {
+                descriptors.add((EntityDescriptor) child);
+            } else if (child instanceof EntitiesDescriptor) {
+                collectEntityDescriptors((EntitiesDescriptor) child, descriptors);
+            }
+        }
+    }
+    
+    /**
+     * Process the specified metadata document which has already been filtered, for example
+     * one restored from a snapshot, and return its data in a new entity backing store instance.
+     * 
+     * <p>
+     * Metadata filters are not applied. The document is cached as both the original and filtered metadata.
+     * </p>
+     * 
+     * @param filteredMetadata the root of the already-filtered metadata document
+     * 
+     * @return the new backing store instance
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull protected BatchEntityBackingStore preProcessFilteredMetadata(@Nonnull final XMLObject filteredMetadata) {
+        final BatchEntityBackingStore newBackingStore = createNewBackingStore();
+        
+        newBackingStore.setCachedOriginalMetadata(filteredMetadata);
+        newBackingStore.setCachedFilteredMetadata(filteredMetadata);
+        
+        populateBackingStore(filteredMetadata, newBackingStore);
         
         return newBackingStore;
     }
+    
+    /**
+     * Store and index the entities from the specified filtered metadata document in the backing store.
+     * 
+     * @param filteredMetadata the root of the filtered metadata document
+     * @param newBackingStore the backing store to populate
+     */
+    private void populateBackingStore(@Nonnull final XMLObject filteredMetadata, 
+            @Nonnull final BatchEntityBackingStore newBackingStore) {
+        final Context contextIndex = MetricsSupport.startTimer(timerIndex);
+        try {
+            if (filteredMetadata instanceof EntityDescriptor) {
+                preProcessEntityDescriptor((EntityDescriptor)filteredMetadata, newBackingStore);
+            } else if (filteredMetadata instanceof EntitiesDescriptor) {
+                preProcessEntitiesDescriptor((EntitiesDescriptor)filteredMetadata, newBackingStore);
+            } else {
+                log.warn("{} Document root was neither an EntityDescriptor nor an EntitiesDescriptor: {}", 
+                        getLogPrefix(), filteredMetadata.getClass().getName());
+            }
+        } finally {
+            MetricsSupport.stopTimer(contextIndex);
+        }
+    }
 
     /**
      * Specialized entity backing store implementation for batch metadata resolvers.
@@ -344,6 +689,9 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
         /** Manager for secondary indexes. */
         private MetadataIndexManager<EntityDescriptor> secondaryIndexManager;
         
+        /** Approximate retained heap size in bytes, computed on first use, or -1. */
+        private volatile long retainedSizeEstimate;
+        
         /**
          * Constructor.
          *
@@ -351,9 +699,20 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
          */
         protected BatchEntityBackingStore(
                 @Nullable @NonnullElements @Unmodifiable @NotLive final Set<MetadataIndex> initIndexes) {
+            this(new MetadataIndexManager<>(initIndexes, new MetadataIndexManager.IdentityExtractionFunction()));
+        }
+        
+        /**
+         * Constructor.
+         *
+         * @param indexManager the manager for secondary indexes, possibly already populated
+         * 
+         * @since 4.0.0
+         */
+        protected BatchEntityBackingStore(@Nonnull final MetadataIndexManager<EntityDescriptor> indexManager) {
             super();
-            secondaryIndexManager = new MetadataIndexManager(initIndexes, 
-                    new MetadataIndexManager.IdentityExtractionFunction());
+            secondaryIndexManager = Constraint.isNotNull(indexManager, "MetadataIndexManager cannot be null");
+            retainedSizeEstimate = -1;
         }
 
         /**
@@ -401,6 +760,60 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
             return secondaryIndexManager;
         }
         
+        /**
+         * Get an approximate retained heap size in bytes of the metadata held by this store.
+         * 
+         * <p>
+         * The estimate is based on the number of {@link XMLObject}s in the cached metadata documents, or in the
+         * stored entities if the source metadata is not cached, and is computed once per store instance.
+         * It is intended for comparing resolvers and observing growth, not as an exact measurement.
+         * </p>
+         * 
+         * @return the approximate retained size in bytes
+         * 
+         * @since 4.0.0
+         */
+        public long getRetainedSizeEstimate() {
+            long estimate = retainedSizeEstimate;
+            if (estimate < 0) {
+                long count = 0;
+                if (cachedOriginalMetadata != null || cachedFilteredMetadata != null) {
+                    count += countObjects(cachedOriginalMetadata);
+                    if (cachedFilteredMetadata != cachedOriginalMetadata) {
+                        count += countObjects(cachedFilteredMetadata);
+                    }
+                } else {
+                    for (final EntityDescriptor descriptor : getOrderedDescriptors()) {
+                        count += countObjects(descriptor);
+                    }
+                }
+                estimate = count * ESTIMATED_BYTES_PER_OBJECT;
+                retainedSizeEstimate = estimate;
+            }
+            return estimate;
+        }
+        
+        /**
+         * Count the objects in an XMLObject tree.
+         * 
+         * @param root the root of the tree, may be null
+         * 
+         * @return the number of objects
+         */
+        private long countObjects(@Nullable final XMLObject root) {
+            if (root == null) {
+                return 0;
+            }
+            long count = 1;
+            final List<XMLObject> children = root.getOrderedChildren();
+            if (children != null) {
+                for (final XMLObject child : children) {
+                    count += countObjects(child);
+                }
+            }
+            return count;
+        }
+        
     }
 
 }
@@ -20,18 +20,28 @@ package org.opensaml.saml.metadata.resolver.impl;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.net.ssl.SSLPeerUnverifiedException;
 
 import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
@@ -43,9 +53,11 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.util.XMLObjectSource;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.security.httpclient.HttpClientSecurityConstants;
 import org.opensaml.security.httpclient.HttpClientSecurityParameters;
 import org.opensaml.security.httpclient.HttpClientSecuritySupport;
@@ -61,7 +73,9 @@ import com.google.common.io.ByteStreams;
 import com.google.common.net.MediaType;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.collection.LazySet;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
@@ -76,6 +90,28 @@ import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
 /**
  * Abstract subclass for dynamic metadata resolvers that implement metadata resolution based on HTTP requests.
+ * 
+ * <p>
+ * Concurrent lookups share the connections of the supplied {@link HttpClient}. When many different entities
+ * are resolved against the same server, such as with the Metadata Query Protocol, the client should be built
+ * with a pooled connection manager whose per-route limit is sized for the expected concurrency.
+ * </p>
+ * 
+ * <p>
+ * In addition:
+ * <ul>
+ * <li>Identical requests which are in flight at the same time are coalesced, so that only one of them is
+ * sent and the others unmarshall their own copy of its response. In practice this applies to lookups by
+ * criteria other than entityID, since concurrent lookups of the same entityID are already serialized by
+ * the entity's lock, and conditional requests are never shared.</li>
+ * <li>When refreshing an entity whose current metadata was the result of a previous request to the same URL,
+ * a conditional GET is made using the ETag and Last-Modified values of that response. These are held in the
+ * entity's management data, so are discarded along with it. If the server answers with 304 Not Modified,
+ * the existing metadata is retained and its expiration is recomputed. Only on-demand refreshes, which hold
+ * the entity's write lock while fetching, are conditional.</li>
+ * <li>A configured list of entityIDs may be prefetched in the background on initialization.</li>
+ * </ul>
+ * </p>
  */
 public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynamicMetadataResolver {
     
@@ -120,6 +156,24 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
     /** Optional HttpClient security parameters.*/
     @Nullable private HttpClientSecurityParameters httpClientSecurityParameters;
     
+    /** Whether identical in-flight requests are coalesced. */
+    private boolean coalesceRequests;
+    
+    /** Requests currently in flight, mapped to the eventual response, or null if nothing was fetched. */
+    @Nonnull private final ConcurrentMap<String,CompletableFuture<SharedResponse>> inFlightRequests;
+    
+    /** Whether conditional GET is used when refreshing entities. */
+    private boolean conditionalGETEnabled;
+    
+    /** EntityIDs to prefetch on initialization. */
+    @Nonnull @NonnullElements private List<String> prefetchEntityIDs;
+    
+    /** Number of threads used to prefetch entityIDs. */
+    @Positive private int prefetchThreads;
+    
+    /** Executor running the prefetch tasks. */
+    @Nullable private ExecutorService prefetchExecutor;
+    
     /**
      * Constructor.
      *
@@ -143,6 +197,12 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
         
         // The default handler
         responseHandler = new BasicMetadataResponseHandler();
+        
+        coalesceRequests = true;
+        inFlightRequests = new ConcurrentHashMap<>();
+        conditionalGETEnabled = true;
+        prefetchEntityIDs = Collections.emptyList();
+        prefetchThreads = 1;
     }
     
     /**
@@ -327,6 +387,134 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
         }
     }
     
+    /**
+     * Get whether identical requests which are in flight at the same time are coalesced.
+     * 
+     * <p>Defaults to: true.</p>
+     * 
+     * @return true if requests are coalesced, false otherwise
+     * 
+     * @since 4.0.0
+     */
+    public boolean isCoalesceRequests() {
+        return coalesceRequests;
+    }
+    
+    /**
+     * Set whether identical requests which are in flight at the same time are coalesced.
+     * 
+     * <p>
+     * Only lookups by criteria other than entityID benefit, since concurrent lookups of the same entityID
+     * are serialized by the entity's lock.
+     * </p>
+     * 
+     * <p>Defaults to: true.</p>
+     * 
+     * @param flag true if requests should be coalesced, false otherwise
+     * 
+     * @since 4.0.0
+     */
+    public void setCoalesceRequests(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        coalesceRequests = flag;
+    }
+    
+    /**
+     * Get whether a conditional GET is made when refreshing an entity, based on the ETag and Last-Modified
+     * values of the response which produced its current metadata.
+     * 
+     * <p>Defaults to: true.</p>
+     * 
+     * @return true if conditional GET is enabled, false otherwise
+     * 
+     * @since 4.0.0
+     */
+    public boolean isConditionalGETEnabled() {
+        return conditionalGETEnabled;
+    }
+    
+    /**
+     * Set whether a conditional GET is made when refreshing an entity, based on the ETag and Last-Modified
+     * values of the response which produced its current metadata.
+     * 
+     * <p>Defaults to: true.</p>
+     * 
+     * @param flag true if conditional GET should be enabled, false otherwise
+     * 
+     * @since 4.0.0
+     */
+    public void setConditionalGETEnabled(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        conditionalGETEnabled = flag;
+    }
+    
+    /**
+     * Get the entityIDs which are prefetched in the background on initialization.
+     * 
+     * @return the entityIDs to prefetch
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull @NonnullElements @NotLive @Unmodifiable public List<String> getPrefetchEntityIDs() {
+        return Collections.unmodifiableList(prefetchEntityIDs);
+    }
+    
+    /**
+     * Set the entityIDs which are prefetched in the background on initialization.
+     * 
+     * <p>
+     * Each entityID is resolved exactly as if it had been requested with an {@link EntityIdCriterion}, so an
+     * entity already loaded from the persistent cache and not yet due for refresh is not fetched again.
+     * </p>
+     * 
+     * @param entityIDs the entityIDs to prefetch
+     * 
+     * @since 4.0.0
+     */
+    public void setPrefetchEntityIDs(@Nullable final Collection<String> entityIDs) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        if (entityIDs == null) {
+            prefetchEntityIDs = Collections.emptyList();
+        } else {
+            prefetchEntityIDs = new ArrayList<>(StringSupport.normalizeStringCollection(entityIDs));
+        }
+    }
+    
+    /**
+     * Get the number of threads used to prefetch entityIDs.
+     * 
+     * <p>Defaults to: 1.</p>
+     * 
+     * @return the number of threads
+     * 
+     * @since 4.0.0
+     */
+    @Positive public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+    
+    /**
+     * Set the number of threads used to prefetch entityIDs.
+     * 
+     * <p>Defaults to: 1.</p>
+     * 
+     * @param threads the number of threads
+     * 
+     * @since 4.0.0
+     */
+    public void setPrefetchThreads(@Positive final int threads) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        prefetchThreads = (int) Constraint.isGreaterThan(0, threads, "Thread count must be greater than zero");
+    }
+    
     /** {@inheritDoc} */
     @Override
     protected void initMetadataResolver() throws ComponentInitializationException {
@@ -347,11 +535,54 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
         }
         
         log.debug("{} Supported content types are: {}", getLogPrefix(), getSupportedContentTypes());
+        
+        if (!getPrefetchEntityIDs().isEmpty()) {
+            startPrefetch();
+        }
+    }
+    
+    /**
+     * Resolve the configured prefetch entityIDs in the background.
+     */
+    private void startPrefetch() {
+        final String threadName = "DynamicMetadataPrefetch-" + getId();
+        prefetchExecutor = Executors.newFixedThreadPool(Math.min(getPrefetchThreads(), prefetchEntityIDs.size()),
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        
+        log.debug("{} Prefetching {} entityIDs using {} threads", getLogPrefix(), prefetchEntityIDs.size(), 
+                getPrefetchThreads());
+        for (final String entityID : prefetchEntityIDs) {
+            prefetchExecutor.submit(new Runnable() {
+                public void run() {
+                    if (isDestroyed()) {
+                        return;
+                    }
+                    try {
+                        resolveFromOriginSource(new CriteriaSet(new EntityIdCriterion(entityID)), entityID);
+                    } catch (final ResolverException | RuntimeException e) {
+                        log.warn("{} Error prefetching metadata for entityID: {}", getLogPrefix(), entityID, e);
+                    }
+                }
+            });
+        }
+        // Threads terminate once the submitted tasks are complete.
+        prefetchExecutor.shutdown();
     }
     
    /** {@inheritDoc} */
     @Override
     protected void doDestroy() {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+            prefetchExecutor = null;
+        }
+        
         httpClient = null;
         credentialsProvider = null;
         tlsTrustEngine = null;
@@ -375,18 +606,210 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
             return null;
         }
         
+        final String requestURI = request.getURI().toString();
+        final EntityDescriptor currentDescriptor = addConditionalGETHeaders(request, requestURI, criteria);
+        
+        // Conditional requests depend on the caller's current state, so are never shared.
+        if (currentDescriptor != null || !isCoalesceRequests()) {
+            return executeRequest(request, requestURI, currentDescriptor);
+        }
+        
+        final CompletableFuture<SharedResponse> pending = new CompletableFuture<>();
+        final CompletableFuture<SharedResponse> inFlight = inFlightRequests.putIfAbsent(requestURI, pending);
+        if (inFlight != null) {
+            log.debug("{} Request to '{}' is already in flight, waiting for its response", getLogPrefix(), requestURI);
+            return awaitInFlightRequest(inFlight, requestURI);
+        }
+        
+        try {
+            final XMLObject result = executeRequest(request, requestURI, null);
+            final byte[] source = result != null ? getSourceBytes(result) : null;
+            pending.complete(source != null ? new SharedResponse(source, getCacheValidators(result)) : null);
+            return result;
+        } catch (final IOException | RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightRequests.remove(requestURI, pending);
+        }
+    }
+    
+    /**
+     * Execute the request and process the response.
+     * 
+     * @param request the HTTP request
+     * @param requestURI the request URI
+     * @param currentDescriptor the current metadata of the entity if the request is conditional, otherwise null
+     * 
+     * @return the fetched metadata, the current metadata if the server reported it as not modified, or null
+     * 
+     * @throws IOException if there is a fatal error executing the request
+     */
+    @Nullable private XMLObject executeRequest(@Nonnull final HttpUriRequest request, 
+            @Nonnull final String requestURI, @Nullable final EntityDescriptor currentDescriptor) throws IOException {
+        
         final HttpClientContext context = buildHttpClientContext(request);
+        final ConditionalRetrievalResponseHandler handler = new ConditionalRetrievalResponseHandler();
         
         try {
-            MDC.put(MDC_ATTRIB_CURRENT_REQUEST_URI, request.getURI().toString());
-            final XMLObject result = httpClient.execute(request, responseHandler, context);
+            MDC.put(MDC_ATTRIB_CURRENT_REQUEST_URI, requestURI);
+            final XMLObject result = httpClient.execute(request, handler, context);
             HttpClientSecuritySupport.checkTLSCredentialEvaluated(context, request.getURI().getScheme());
+            
+            if (handler.notModified && currentDescriptor != null) {
+                log.debug("{} Metadata for entityID '{}' was not modified", 
+                        getLogPrefix(), currentDescriptor.getEntityID());
+                return currentDescriptor;
+            } else if (result != null && handler.hasValidators) {
+                result.getObjectMetadata().put(new CacheValidators(requestURI, handler.eTag, handler.lastModified));
+            }
+            
             return result;
         } finally {
             MDC.remove(MDC_ATTRIB_CURRENT_REQUEST_URI);
         }
     }
     
+    /**
+     * Wait for the response to an identical request made by another thread, and unmarshall a private copy.
+     * 
+     * @param inFlight the future for the in-flight request's response
+     * @param requestURI the request URI
+     * 
+     * @return the fetched metadata, or null
+     * 
+     * @throws IOException if the in-flight request failed, or if the wait was interrupted
+     */
+    @Nullable private XMLObject awaitInFlightRequest(@Nonnull final CompletableFuture<SharedResponse> inFlight,
+            @Nonnull final String requestURI) throws IOException {
+        
+        final SharedResponse response;
+        try {
+            response = inFlight.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for in-flight request to " + requestURI);
+        } catch (final ExecutionException e) {
+            throw new IOException("In-flight request to " + requestURI + " failed", e.getCause());
+        }
+        
+        if (response == null) {
+            return null;
+        }
+        
+        try (ByteArrayInputStream bais = new ByteArrayInputStream(response.source)) {
+            final XMLObject xmlObject = unmarshallMetadata(bais);
+            xmlObject.getObjectMetadata().put(new XMLObjectSource(response.source));
+            if (response.validators != null) {
+                xmlObject.getObjectMetadata().put(response.validators);
+            }
+            return xmlObject;
+        } catch (final UnmarshallingException e) {
+            log.error("{} Error unmarshalling shared HTTP response from '{}'", getLogPrefix(), requestURI, e);
+            return null;
+        }
+    }
+    
+    /**
+     * Get the raw bytes from which the fetched metadata was unmarshalled.
+     * 
+     * @param xmlObject the fetched metadata
+     * 
+     * @return the source bytes, or null if not available
+     */
+    @Nullable private byte[] getSourceBytes(@Nonnull final XMLObject xmlObject) {
+        final List<XMLObjectSource> sources = xmlObject.getObjectMetadata().get(XMLObjectSource.class);
+        return sources.isEmpty() ? null : sources.get(0).getObjectSource();
+    }
+    
+    /**
+     * Get the cache validators recorded for the metadata document containing an object.
+     * 
+     * @param xmlObject an object within the fetched metadata
+     * 
+     * @return the cache validators, or null
+     */
+    @Nullable private CacheValidators getCacheValidators(@Nonnull final XMLObject xmlObject) {
+        XMLObject root = xmlObject;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        final List<CacheValidators> validators = root.getObjectMetadata().get(CacheValidators.class);
+        return validators.isEmpty() ? null : validators.get(0);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    @Nullable protected Object getOriginSourceState(@Nonnull final XMLObject root) {
+        return getCacheValidators(root);
+    }
+    
+    /**
+     * Add the conditional GET request headers, if the criteria identify an entity whose current metadata
+     * was produced by a response to the same request URI which carried cache validators.
+     * 
+     * <p>
+     * Only applies when an {@link EntityIdCriterion} is present and the calling thread holds the entity's write
+     * lock, which guarantees that the entity's metadata cannot change before the response is processed and that
+     * the caller will retain its existing metadata if nothing is fetched.
+     * </p>
+     * 
+     * @param request the HTTP request
+     * @param requestURI the request URI
+     * @param criteria the input criteria set
+     * 
+     * @return the entity's current metadata if the headers were added, otherwise null
+     */
+    @Nullable private EntityDescriptor addConditionalGETHeaders(@Nonnull final HttpUriRequest request,
+            @Nonnull final String requestURI, @Nonnull final CriteriaSet criteria) {
+        
+        if (!isConditionalGETEnabled()) {
+            return null;
+        }
+        
+        final EntityIdCriterion entityIdCriterion = criteria.get(EntityIdCriterion.class);
+        if (entityIdCriterion == null) {
+            return null;
+        }
+        
+        final String entityID = entityIdCriterion.getEntityId();
+        final EntityManagementData mgmtData = getBackingStore().getManagementData(entityID);
+        if (!mgmtData.isWriteLockedByCurrentThread()) {
+            log.trace("{} Write lock for entityID '{}' is not held, request will not be conditional", 
+                    getLogPrefix(), entityID);
+            return null;
+        }
+        
+        final Object state = mgmtData.getOriginSourceState();
+        if (!(state instanceof CacheValidators) || !requestURI.equals(((CacheValidators) state).requestURI)) {
+            log.trace("{} Current metadata for entityID '{}' has no cache validators for '{}'", 
+                    getLogPrefix(), entityID, requestURI);
+            return null;
+        }
+        final CacheValidators validators = (CacheValidators) state;
+        
+        final List<EntityDescriptor> descriptors;
+        try {
+            descriptors = lookupEntityID(entityID);
+        } catch (final ResolverException e) {
+            log.debug("{} Unable to look up current metadata for entityID '{}'", getLogPrefix(), entityID, e);
+            return null;
+        }
+        if (descriptors.isEmpty()) {
+            return null;
+        }
+        
+        if (validators.eTag != null) {
+            request.setHeader(HttpHeaders.IF_NONE_MATCH, validators.eTag);
+        }
+        if (validators.lastModified != null) {
+            request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, validators.lastModified);
+        }
+        log.debug("{} Making conditional request for entityID '{}'", getLogPrefix(), entityID);
+        
+        return descriptors.get(0);
+    }
+    
     /**
      * Check that trust engine evaluation of the server TLS credential was actually performed.
      * 
@@ -492,8 +915,7 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
             
             final String currentRequestURI = MDC.get(MDC_ATTRIB_CURRENT_REQUEST_URI);
             
-            // TODO should we be seeing/doing this? Probably not if we don't do conditional GET.
-            // But we will if we do pre-emptive refreshing of metadata in background thread.
+            // Seen in response to a conditional GET, the caller retains the existing metadata.
             if (httpStatusCode == HttpStatus.SC_NOT_MODIFIED) {
                 log.debug("{} Metadata document from '{}' has not changed since last retrieval", 
                         getLogPrefix(), currentRequestURI);
@@ -551,5 +973,96 @@ public abstract class AbstractDynamicHTTPMetadataResolver extends AbstractDynami
         }
             
     }
+    
+    /**
+     * Response handler which records the information needed for conditional GET, and otherwise delegates
+     * to the configured response handler.
+     */
+    private class ConditionalRetrievalResponseHandler implements ResponseHandler<XMLObject> {
+        
+        /** Whether the response was 304 Not Modified. */
+        private boolean notModified;
+        
+        /** Whether a successful response carried an ETag or Last-Modified header. */
+        private boolean hasValidators;
+        
+        /** The ETag value of a successful response, if any. */
+        @Nullable private String eTag;
+        
+        /** The Last-Modified value of a successful response, if any. */
+        @Nullable private String lastModified;
+        
+        /** {@inheritDoc} */
+        @Override
+        public XMLObject handleResponse(@Nonnull final HttpResponse response) throws IOException {
+            final int httpStatusCode = response.getStatusLine().getStatusCode();
+            notModified = httpStatusCode == HttpStatus.SC_NOT_MODIFIED;
+            
+            if (httpStatusCode == HttpStatus.SC_OK && isConditionalGETEnabled()) {
+                final Header eTagHeader = response.getFirstHeader(HttpHeaders.ETAG);
+                final Header lastModifiedHeader = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+                hasValidators = eTagHeader != null || lastModifiedHeader != null;
+                eTag = eTagHeader != null ? eTagHeader.getValue() : null;
+                lastModified = lastModifiedHeader != null ? lastModifiedHeader.getValue() : null;
+            }
+            
+            return responseHandler.handleResponse(response);
+        }
+        
+    }
+    
+    /**
+     * The ETag and Last-Modified values of a response, and the URI of the request which produced it.
+     */
+    private static final class CacheValidators {
+        
+        /** The request URI. */
+        @Nonnull private final String requestURI;
+        
+        /** The ETag value. */
+        @Nullable private final String eTag;
+        
+        /** The Last-Modified value. */
+        @Nullable private final String lastModified;
+        
+        /**
+         * Constructor.
+         *
+         * @param uri the request URI
+         * @param etag the ETag value
+         * @param modified the Last-Modified value
+         */
+        private CacheValidators(@Nonnull final String uri, @Nullable final String etag,
+                @Nullable final String modified) {
+            requestURI = uri;
+            eTag = etag;
+            lastModified = modified;
+        }
+        
+    }
+    
+    /**
+     * The body and cache validators of a response shared between coalesced requests.
+     */
+    private static final class SharedResponse {
+        
+        /** The response body. */
+        @Nonnull private final byte[] source;
+        
+        /** The cache validators of the response, if any. */
+        @Nullable private final CacheValidators validators;
+        
+        /**
+         * Constructor.
+         *
+         * @param bytes the response body
+         * @param cacheValidators the cache validators of the response, if any
+         */
+        private SharedResponse(@Nonnull final byte[] bytes, @Nullable final CacheValidators cacheValidators) {
+            source = bytes;
+            validators = cacheValidators;
+        }
+        
+    }
 
-}
\ No newline at end of file
+}
@@ -23,7 +23,10 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -31,6 +34,14 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -46,10 +57,12 @@ import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.persist.XMLObjectLoadSaveManager;
+import org.opensaml.core.xml.util.XMLObjectSource;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.core.xml.util.XMLObjectSupport.CloneOutputOption;
 import org.opensaml.saml.metadata.resolver.ClearableMetadataResolver;
 import org.opensaml.saml.metadata.resolver.DynamicMetadataResolver;
+import org.opensaml.saml.metadata.resolver.MetadataResolveEvent;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
 import org.opensaml.saml.metadata.resolver.index.impl.LockableMetadataIndexManager;
@@ -60,6 +73,7 @@ import org.opensaml.security.crypto.JCAConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.RatioGauge;
@@ -71,6 +85,7 @@ import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableSet;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
@@ -109,6 +124,33 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Metric name for the gauge of the persistent cache initialization metrics. */
     public static final String METRIC_GAUGE_PERSISTENT_CACHE_INIT = "gauge.persistentCacheInitialization";
     
+    /** Metric name for the gauge of the entityIDs currently considered hot. */
+    public static final String METRIC_GAUGE_HOT_ENTITYIDS = "gauge.hotEntityIDs";
+    
+    /** Metric name for the counter of predictive background refreshes. */
+    public static final String METRIC_COUNTER_PREDICTIVE_REFRESHES = "counter.predictiveRefreshes";
+    
+    /** Metric name for the counter of admitted entities evicted to enforce the capacity limits. */
+    public static final String METRIC_COUNTER_EVICTIONS = "counter.evictions";
+    
+    /** Metric name for the counter of newly stored entities evicted by the admission policy. */
+    public static final String METRIC_COUNTER_ADMISSION_REJECTIONS = "counter.admissionRejections";
+    
+    /** Metric name for the gauge of the estimated size in bytes of the entities held. */
+    public static final String METRIC_GAUGE_ESTIMATED_ENTITY_BYTES = "gauge.estimatedEntityBytes";
+    
+    /** Estimated size in bytes of an entity whose source document is not available. */
+    public static final long DEFAULT_ESTIMATED_ENTITY_COST = 8192;
+    
+    /** Expected number of entities used to size the access frequency sketch when no maximum is set. */
+    private static final int DEFAULT_EXPECTED_ENTITIES = 4096;
+    
+    /** Percentage of the maximum number of entities reserved for the admission window. */
+    private static final int ADMISSION_WINDOW_PERCENT = 1;
+    
+    /** Number of entities in the main region sampled when selecting an eviction victim. */
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+    
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(AbstractDynamicMetadataResolver.class);
     
@@ -130,6 +172,21 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Metrics Gauge for the persistent cache initialization.*/
     @Nullable private Gauge<PersistentCacheInitializationMetrics> gaugePersistentCacheInit;
     
+    /** Metrics Gauge for the entityIDs currently considered hot.*/
+    @Nullable private Gauge<Set<String>> gaugeHotEntityIDs;
+    
+    /** Metrics Counter of predictive background refreshes.*/
+    @Nullable private Counter counterPredictiveRefreshes;
+    
+    /** Metrics Counter of admitted entities evicted to enforce the capacity limits.*/
+    @Nullable private Counter counterEvictions;
+    
+    /** Metrics Counter of newly stored entities evicted by the admission policy.*/
+    @Nullable private Counter counterAdmissionRejections;
+    
+    /** Metrics Gauge for the estimated size in bytes of the entities held.*/
+    @Nullable private Gauge<Long> gaugeEstimatedEntityBytes;
+    
     /** Timer used to schedule background metadata update tasks. */
     @Nullable private Timer taskTimer;
     
@@ -165,6 +222,48 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** The backing store cleanup sweeper background task. */
     private BackingStoreCleanupSweeper cleanupTask;
     
+    /** Estimates of recent access frequency, by entityID. */
+    @NonnullAfterInit private AccessFrequencySketch accessFrequencySketch;
+    
+    /** Flag indicating whether hot entities are refreshed in the background ahead of their refresh time. */
+    private boolean predictiveRefresh;
+    
+    /** The minimum estimated access frequency at which an entity is considered hot. */
+    @Positive private int predictiveRefreshMinFrequency;
+    
+    /** The interval at which the predictive refresh task should run. */
+    @Nonnull private Duration predictiveRefreshInterval;
+    
+    /** Number of worker threads used to perform predictive refreshes. */
+    @Positive private int predictiveRefreshThreads;
+    
+    /** The predictive refresh background task. */
+    private PredictiveRefreshTask predictiveRefreshTask;
+    
+    /** Executor performing predictive refreshes. */
+    @Nullable private ExecutorService predictiveRefreshExecutor;
+    
+    /** EntityIDs for which a predictive refresh is pending or in progress. */
+    @Nonnull private final Set<String> predictiveRefreshesInProgress;
+    
+    /** EntityIDs considered hot as of the last run of the predictive refresh task. */
+    @Nonnull private volatile Set<String> hotEntityIDs;
+    
+    /** Maximum number of entities for which data is held, or 0 for no maximum. */
+    @NonNegative private int maxEntities;
+    
+    /** Maximum estimated size in bytes of the entities held, or 0 for no maximum. */
+    @NonNegative private long maxEntityBytes;
+    
+    /** Estimated size in bytes of the entities held. */
+    @Nonnull private final AtomicLong estimatedEntityBytes;
+    
+    /** Recently stored entityIDs not yet admitted to the main region, oldest first. Also the admission lock. */
+    @Nonnull private final Set<String> admissionWindow;
+    
+    /** EntityIDs admitted to the main region, least recently admitted first. Guarded by the admission lock. */
+    @Nonnull private final Set<String> mainRegion;
+    
     /** The manager for the persistent cache store for resolved metadata. */
     private XMLObjectLoadSaveManager<EntityDescriptor> persistentCacheManager;
     
@@ -184,6 +283,9 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Object tracking metrics related to the persistent cache initialization. */
     @NonnullAfterInit private PersistentCacheInitializationMetrics persistentCacheInitMetrics;
     
+    /** Number of worker threads used to load and process entries from the persistent cache. */
+    @Positive private int persistentCacheInitializationThreads;
+    
     /** The set of indexes configured. */
     private Set<MetadataIndex> indexes;
     
@@ -228,6 +330,23 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         initializeFromPersistentCacheInBackground = true;
         
         backgroundInitializationFromCacheDelay = Duration.ofSeconds(2);
+        
+        persistentCacheInitializationThreads = 1;
+        
+        predictiveRefreshMinFrequency = 4;
+        
+        predictiveRefreshInterval = Duration.ofMinutes(1);
+        
+        predictiveRefreshThreads = 1;
+        
+        predictiveRefreshesInProgress = ConcurrentHashMap.newKeySet();
+        
+        hotEntityIDs = Collections.emptySet();
+        
+        estimatedEntityBytes = new AtomicLong();
+        
+        admissionWindow = new LinkedHashSet<>();
+        mainRegion = new LinkedHashSet<>();
     }
     
     /**
@@ -287,6 +406,41 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         
     }
 
+    /**
+     * Get the number of worker threads used to load and process entries from the persistent cache.
+     * 
+     * <p>
+     * If greater than 1, cache entries are loaded, parsed and filtered concurrently, each being made live
+     * under its own entity write lock as soon as it is processed.
+     * </p>
+     * 
+     * <p>Defaults to: 1.</p>
+     * 
+     * @return the number of threads
+     * 
+     * @since 4.0.0
+     */
+    @Positive public int getPersistentCacheInitializationThreads() {
+        return persistentCacheInitializationThreads;
+    }
+
+    /**
+     * Set the number of worker threads used to load and process entries from the persistent cache.
+     * 
+     * <p>Defaults to: 1.</p>
+     * 
+     * @param threads the number of threads
+     * 
+     * @since 4.0.0
+     */
+    public void setPersistentCacheInitializationThreads(@Positive final int threads) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        persistentCacheInitializationThreads = (int) Constraint.isGreaterThan(0, threads, 
+                "Thread count must be greater than zero");
+    }
+
     /**
      * Get the manager for the persistent cache store for resolved metadata.
      * 
@@ -576,6 +730,251 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         cleanupTaskInterval = interval;
     }
 
+    /**
+     * Get the flag indicating whether hot entities are refreshed in the background ahead of their
+     * refresh trigger time.
+     * 
+     * <p>
+     * An entity is hot if its estimated recent access frequency is at least
+     * {@link #getPredictiveRefreshMinFrequency()}. Hot entities whose refresh trigger time will pass before
+     * the next run of the predictive refresh task are fetched on a background thread, and the new metadata
+     * swapped in under the entity's write lock, so that resolution requests continue to be answered from the
+     * existing metadata rather than waiting on the origin source.
+     * </p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if predictive refresh is enabled, false otherwise
+     * 
+     * @since 4.0.0
+     */
+    public boolean isPredictiveRefresh() {
+        return predictiveRefresh;
+    }
+    
+    /**
+     * Set the flag indicating whether hot entities are refreshed in the background ahead of their
+     * refresh trigger time.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if predictive refresh should be enabled, false otherwise
+     * 
+     * @since 4.0.0
+     */
+    public void setPredictiveRefresh(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        predictiveRefresh = flag;
+    }
+    
+    /**
+     * Get the minimum estimated access frequency at which an entity is considered hot.
+     * 
+     * <p>
+     * Frequencies are estimated over a sliding window of recent resolution requests, and range from 0 to
+     * {@link AccessFrequencySketch#MAX_FREQUENCY}.
+     * </p>
+     * 
+     * <p>Defaults to: 4.</p>
+     * 
+     * @return the minimum frequency
+     * 
+     * @since 4.0.0
+     */
+    @Positive public int getPredictiveRefreshMinFrequency() {
+        return predictiveRefreshMinFrequency;
+    }
+    
+    /**
+     * Set the minimum estimated access frequency at which an entity is considered hot.
+     * 
+     * <p>Defaults to: 4.</p>
+     * 
+     * @param frequency the minimum frequency
+     * 
+     * @since 4.0.0
+     */
+    public void setPredictiveRefreshMinFrequency(@Positive final int frequency) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        Constraint.isGreaterThan(0, frequency, "Minimum frequency must be greater than zero");
+        Constraint.isFalse(frequency > AccessFrequencySketch.MAX_FREQUENCY, 
+                "Minimum frequency cannot exceed " + AccessFrequencySketch.MAX_FREQUENCY);
+        
+        predictiveRefreshMinFrequency = frequency;
+    }
+    
+    /**
+     * Get the interval at which the predictive refresh task should run.
+     * 
+     * <p>Defaults to: 1 minute.</p>
+     * 
+     * @return the interval
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull public Duration getPredictiveRefreshInterval() {
+        return predictiveRefreshInterval;
+    }
+    
+    /**
+     * Set the interval at which the predictive refresh task should run.
+     * 
+     * <p>Defaults to: 1 minute.</p>
+     * 
+     * @param interval the interval to set
+     * 
+     * @since 4.0.0
+     */
+    public void setPredictiveRefreshInterval(@Nonnull final Duration interval) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        Constraint.isNotNull(interval, "Predictive refresh interval may not be null");
+        Constraint.isFalse(interval.isNegative() || interval.isZero(), 
+                "Predictive refresh interval must be positive");
+        
+        predictiveRefreshInterval = interval;
+    }
+    
+    /**
+     * Get the number of worker threads used to perform predictive refreshes.
+     * 
+     * <p>Defaults to: 1.</p>
+     * 
+     * @return the number of threads
+     * 
+     * @since 4.0.0
+     */
+    @Positive public int getPredictiveRefreshThreads() {
+        return predictiveRefreshThreads;
+    }
+    
+    /**
+     * Set the number of worker threads used to perform predictive refreshes.
+     * 
+     * <p>Defaults to: 1.</p>
+     * 
+     * @param threads the number of threads
+     * 
+     * @since 4.0.0
+     */
+    public void setPredictiveRefreshThreads(@Positive final int threads) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        predictiveRefreshThreads = (int) Constraint.isGreaterThan(0, threads, 
+                "Thread count must be greater than zero");
+    }
+    
+    /**
+     * Get the maximum number of entities for which data is held.
+     * 
+     * <p>
+     * See {@link #getMaxEntityBytes()} for how the limits are enforced.
+     * </p>
+     * 
+     * <p>Defaults to: 0, meaning no maximum.</p>
+     * 
+     * @return the maximum number of entities
+     * 
+     * @since 4.0.0
+     */
+    @NonNegative public int getMaxEntities() {
+        return maxEntities;
+    }
+    
+    /**
+     * Set the maximum number of entities for which data is held.
+     * 
+     * <p>Defaults to: 0, meaning no maximum.</p>
+     * 
+     * @param max the maximum number of entities
+     * 
+     * @since 4.0.0
+     */
+    public void setMaxEntities(@NonNegative final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        maxEntities = (int) Constraint.isGreaterThanOrEqual(0, max, "Maximum entities cannot be negative");
+    }
+    
+    /**
+     * Get the maximum estimated size in bytes of the entities held.
+     * 
+     * <p>
+     * The size of an entity is estimated when it is stored, from the length of the document from which it was
+     * unmarshalled, or as {@link #DEFAULT_ESTIMATED_ENTITY_COST} if that is not available. The in-memory
+     * representation is larger, so this bounds memory use only approximately.
+     * </p>
+     * 
+     * <p>
+     * When either this or {@link #getMaxEntities()} is set, newly stored entities enter a small admission
+     * window. When the window overflows while a limit is exceeded, its oldest entity is kept only if its
+     * estimated recent access frequency is higher than that of the coldest entity outside the window, which
+     * is evicted instead; otherwise it is itself evicted. This protects popular entities from being flushed by
+     * a scan of many entityIDs which are each requested once. If a limit is still exceeded, further entities
+     * are evicted coldest first. The cleanup task also enforces the limits, in case entities were locked at
+     * the time they would have been evicted.
+     * </p>
+     * 
+     * <p>
+     * Evicted entities are removed exactly as if they had expired, including from the secondary indexes and the
+     * persistent cache.
+     * </p>
+     * 
+     * <p>Defaults to: 0, meaning no maximum.</p>
+     * 
+     * @return the maximum size in bytes
+     * 
+     * @since 4.0.0
+     */
+    @NonNegative public long getMaxEntityBytes() {
+        return maxEntityBytes;
+    }
+    
+    /**
+     * Set the maximum estimated size in bytes of the entities held.
+     * 
+     * <p>Defaults to: 0, meaning no maximum.</p>
+     * 
+     * @param max the maximum size in bytes
+     * 
+     * @since 4.0.0
+     */
+    public void setMaxEntityBytes(@NonNegative final long max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        maxEntityBytes = Constraint.isGreaterThanOrEqual(0, max, "Maximum entity bytes cannot be negative");
+    }
+    
+    /**
+     * Get the estimated size in bytes of the entities currently held.
+     * 
+     * @return the estimated size in bytes
+     * 
+     * @since 4.0.0
+     */
+    @NonNegative public long getEstimatedEntityBytes() {
+        return estimatedEntityBytes.get();
+    }
+    
+    /**
+     * Get the entityIDs considered hot as of the last run of the predictive refresh task.
+     * 
+     * @return the hot entityIDs
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull @NonnullElements @Unmodifiable @NotLive public Set<String> getHotEntityIDs() {
+        return hotEntityIDs;
+    }
+    
     /**
      * Get the base name for Metrics instrumentation.
      * 
@@ -671,6 +1070,28 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
         ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
         
+        final MetadataResolveEvent event = new MetadataResolveEvent();
+        event.begin();
+        Iterable<EntityDescriptor> result = null;
+        try {
+            result = resolveCandidates(criteria);
+            return result;
+        } finally {
+            commitResolveEvent(event, criteria, result);
+        }
+    }
+    
+    /**
+     * Resolve the descriptors matching the criteria, from the backing store or dynamically.
+     * 
+     * @param criteria the criteria set to process
+     * 
+     * @return the resolved descriptors
+     * 
+     * @throws ResolverException if there is a fatal error attempting to resolve
+     */
+    @Nonnull private Iterable<EntityDescriptor> resolveCandidates(@Nonnull final CriteriaSet criteria)
+            throws ResolverException {
         final Context contextResolve = MetricsSupport.startTimer(timerResolve);
         try {
             Iterable<EntityDescriptor> candidates = null;
@@ -678,6 +1099,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             final String entityID = resolveEntityID(criteria);
             if (entityID != null) {
                 log.debug("{} Resolved criteria to entityID: {}", getLogPrefix(), entityID);
+                accessFrequencySketch.increment(entityID);
 
                 final EntityManagementData mgmtData = getBackingStore().getManagementData(entityID);
                 final Lock readLock = mgmtData.getReadWriteLock().readLock();
@@ -770,14 +1192,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             return Collections.emptySet();
         }
 
-        Optional<Set<String>> indexedResult = null;
-        final Lock readLock = getBackingStore().getSecondaryIndexManager().getReadWriteLock().readLock();
-        try {
-            readLock.lock();
-            indexedResult = getBackingStore().getSecondaryIndexManager().lookupIndexedItems(criteria);
-        } finally {
-            readLock.unlock();
-        }
+        // The index manager publishes immutable versions of its indexes, so the lookup never waits for
+        // (de)indexing and sees each entity either fully indexed or not at all.
+        final Optional<Set<String>> indexedResult =
+                getBackingStore().getSecondaryIndexManager().lookupIndexedItems(criteria);
 
         if (indexedResult.isPresent()) {
             final Set<String> entityIDs = indexedResult.get();
@@ -881,7 +1299,15 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 MetricsSupport.stopTimer(contextFetchFromOriginSource);
             }
             
-            if (root == null) {
+            if (isCurrentMetadata(root, descriptors)) {
+                mgmtData.clearNegativeLookupCache();
+                final Instant now = Instant.now();
+                mgmtData.setExpirationTime(computeExpirationTime((EntityDescriptor) root, now));
+                mgmtData.setRefreshTriggerTime(computeRefreshTriggerTime(mgmtData.getExpirationTime(), now));
+                log.debug("{} Origin source reports metadata for entityID '{}' as unchanged, " 
+                        + "recalculated expiration time as: {}", 
+                        getLogPrefix(), entityID, mgmtData.getExpirationTime());
+            } else if (root == null) {
                 mgmtData.initNegativeLookupCache();
                 log.debug("{} No metadata was fetched from the origin source", getLogPrefix());
 
@@ -911,6 +1337,28 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         
     }
     
+    /**
+     * Get whether the fetched metadata is one of the entity's currently stored descriptors, which indicates
+     * that the origin source reported it as unchanged.
+     * 
+     * @param root the fetched metadata, may be null
+     * @param descriptors the entity's currently stored descriptors
+     * 
+     * @return true if the fetched metadata is currently stored, false otherwise
+     */
+    private boolean isCurrentMetadata(@Nullable final XMLObject root, 
+            @Nonnull @NonnullElements final List<EntityDescriptor> descriptors) {
+        if (root == null) {
+            return false;
+        }
+        for (final EntityDescriptor descriptor : descriptors) {
+            if (descriptor == root) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Fetch metadata from an origin source based on the input criteria when the entityID is not known,
      * store it in the backing store and then return it.
@@ -1028,6 +1476,14 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /**
      * Fetch the metadata from the origin source.
      * 
+     * <p>
+     * If the criteria contain an {@link EntityIdCriterion} and the calling thread holds that entity's write lock,
+     * an implementation may return the entity's currently stored {@link EntityDescriptor} instance to indicate
+     * that the origin source reports it as unchanged. The caller then retains the existing metadata and only
+     * recomputes its expiration, under the same lock. Implementations must not otherwise modify the entity's
+     * backing store or management data.
+     * </p>
+     * 
      * @param criteria the input criteria set
      * @return the resolved metadata root XMLObject, or null if metadata could not be fetched
      * @throws IOException if there is a fatal error fetching metadata from the origin source
@@ -1112,8 +1568,15 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 }
             }
             
+            final boolean wasLive = getBackingStore().getIndexedDescriptors().containsKey(expectedEntityID);
+            
             preProcessEntityDescriptor(entityDescriptor, getBackingStore());
             
+            final EntityManagementData mgmtData = getBackingStore().getManagementData(expectedEntityID);
+            mgmtData.setEstimatedCost(estimateCost(root));
+            mgmtData.setOriginSourceState(getOriginSourceState(root));
+            estimatedEntityBytes.addAndGet(mgmtData.getEstimatedCost());
+            
             log.info("{} Successfully loaded new EntityDescriptor with entityID '{}' from {}",
                     getLogPrefix(), entityDescriptor.getEntityID(), 
                     fromPersistentCache ? "persistent cache" : "origin source");
@@ -1137,6 +1600,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 }
             }
             
+            if (isCapacityLimited()) {
+                admitEntity(expectedEntityID, !wasLive);
+            }
+            
         } else {
             log.warn("{} Document root was not an EntityDescriptor: {}", getLogPrefix(), root.getClass().getName());
         }
@@ -1228,43 +1695,239 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     }
 
     /**
-     * Compute the effective expiration time for the specified metadata.
+     * Estimate the size in bytes of an entity's metadata.
      * 
-     * @param entityDescriptor the EntityDescriptor instance to evaluate
-     * @param now the current date time instant
-     * @return the effective expiration time for the metadata
+     * @param root the root of the metadata document from which the entity was processed
+     * 
+     * @return the estimated size in bytes
      */
-    @Nonnull protected Instant computeExpirationTime(@Nonnull final EntityDescriptor entityDescriptor,
-            @Nonnull final Instant now) {
-        
-        final Instant lowerBound = now.plus(getMinCacheDuration());
-        
-        Instant expiration = SAML2Support.getEarliestExpiration(entityDescriptor, now.plus(getMaxCacheDuration()), now);
-        if (expiration.isBefore(lowerBound)) {
-            expiration = lowerBound;
+    @NonNegative protected long estimateCost(@Nonnull final XMLObject root) {
+        final List<XMLObjectSource> sources = root.getObjectMetadata().get(XMLObjectSource.class);
+        if (!sources.isEmpty()) {
+            return sources.get(0).getObjectSource().length;
         }
-        
-        return expiration;
+        return DEFAULT_ESTIMATED_ENTITY_COST;
     }
     
     /**
-     * Compute the refresh trigger time.
+     * Get the state which the origin source associated with a newly fetched metadata document, to be held
+     * in the management data of the entity processed from it until the entity's metadata is next replaced.
      * 
-     * @param expirationTime the time at which the metadata effectively expires
-     * @param nowDateTime the current date time instant
+     * <p>The default implementation returns null.</p>
      * 
-     * @return the time after which refresh attempt(s) should be made
+     * @param root the root of the metadata document from which the entity was processed
+     * 
+     * @return the origin source state, or null
+     * 
+     * @since 4.0.0
      */
-    @Nonnull protected Instant computeRefreshTriggerTime(@Nullable final Instant expirationTime,
-            @Nonnull final Instant nowDateTime) {
-        
-        final long now = nowDateTime.toEpochMilli();
-
-        long expireInstant = 0;
-        if (expirationTime != null) {
-            expireInstant = expirationTime.toEpochMilli();
-        }
-        long refreshDelay = (long) ((expireInstant - now) * getRefreshDelayFactor());
+    @Nullable protected Object getOriginSourceState(@Nonnull final XMLObject root) {
+        return null;
+    }
+    
+    /**
+     * Get whether either capacity limit is configured.
+     * 
+     * @return true if the number or estimated size of entities held is limited
+     */
+    private boolean isCapacityLimited() {
+        return getMaxEntities() > 0 || getMaxEntityBytes() > 0;
+    }
+    
+    /**
+     * Get whether either capacity limit is exceeded.
+     * 
+     * @return true if the number or estimated size of entities held exceeds its limit
+     */
+    private boolean isOverCapacity() {
+        return (getMaxEntities() > 0 && getBackingStore().getIndexedDescriptors().size() > getMaxEntities())
+                || (getMaxEntityBytes() > 0 && estimatedEntityBytes.get() > getMaxEntityBytes());
+    }
+    
+    /**
+     * Apply the admission policy to a just-stored entity, evicting entities as necessary to enforce the
+     * capacity limits.
+     * 
+     * <p>
+     * The caller must hold the entity's write lock. The entity itself is never evicted by this call, so it
+     * remains available to the caller. Other entities are evicted only if their write lock is immediately
+     * available, to avoid lock ordering problems.
+     * </p>
+     * 
+     * <p>
+     * Victims are selected from a fixed size sample of the main region, so the cost of an admission does not
+     * depend on the number of entities held.
+     * </p>
+     * 
+     * @param entityID the entityID just stored
+     * @param isNew whether the entity was not live before it was stored
+     */
+    // Checkstyle: CyclomaticComplexity OFF
+    private void admitEntity(@Nonnull final String entityID, final boolean isNew) {
+        final int windowSize = Math.max(1, getMaxEntities() * ADMISSION_WINDOW_PERCENT / 100);
+        final Set<String> skipped = new HashSet<>();
+        skipped.add(entityID);
+        
+        synchronized (admissionWindow) {
+            if (isNew) {
+                admissionWindow.add(entityID);
+            }
+            
+            while (admissionWindow.size() > windowSize) {
+                final String candidate = admissionWindow.iterator().next();
+                admissionWindow.remove(candidate);
+                if (!isOverCapacity()) {
+                    mainRegion.add(candidate);
+                    continue;
+                }
+                
+                final String victim = selectColdestEntity(skipped);
+                if (victim != null && accessFrequencySketch.frequency(candidate) 
+                        > accessFrequencySketch.frequency(victim)) {
+                    log.debug("{} Admitting entity '{}' in place of colder entity '{}'", 
+                            getLogPrefix(), candidate, victim);
+                    if (!evictEntity(victim, counterEvictions)) {
+                        skipped.add(victim);
+                    }
+                    mainRegion.add(candidate);
+                } else {
+                    log.debug("{} Entity '{}' was not admitted", getLogPrefix(), candidate);
+                    if (!evictEntity(candidate, counterAdmissionRejections)) {
+                        // Still held, so admit it and leave the limits to be enforced later.
+                        skipped.add(candidate);
+                        mainRegion.add(candidate);
+                    }
+                }
+            }
+            
+            while (isOverCapacity()) {
+                final String victim = selectColdestEntity(skipped);
+                if (victim == null) {
+                    log.debug("{} Capacity exceeded but no entity can currently be evicted", getLogPrefix());
+                    break;
+                }
+                if (!evictEntity(victim, counterEvictions)) {
+                    skipped.add(victim);
+                }
+            }
+        }
+    }
+    // Checkstyle: CyclomaticComplexity ON
+    
+    /**
+     * Select an eviction victim from a sample of the least recently admitted entities in the main region: the one
+     * with the lowest estimated access frequency, and among those the least recently accessed.
+     * 
+     * <p>
+     * The sampled entities which are not selected are moved to the end of the main region, so that successive
+     * selections sample different entities. The caller must hold the admission lock.
+     * </p>
+     * 
+     * @param excluded entityIDs which may not be selected
+     * 
+     * @return the selected entityID, or null if there is none
+     */
+    @Nullable private String selectColdestEntity(@Nonnull final Set<String> excluded) {
+        final DynamicEntityBackingStore backingStore = getBackingStore();
+        final List<String> sample = new ArrayList<>(EVICTION_SAMPLE_SIZE);
+        String coldest = null;
+        int coldestFrequency = Integer.MAX_VALUE;
+        Instant coldestAccessed = null;
+        final Iterator<String> entityIDs = mainRegion.iterator();
+        while (entityIDs.hasNext() && sample.size() < EVICTION_SAMPLE_SIZE) {
+            final String entityID = entityIDs.next();
+            if (excluded.contains(entityID)) {
+                continue;
+            }
+            sample.add(entityID);
+            final int frequency = accessFrequencySketch.frequency(entityID);
+            final Instant accessed = backingStore.getManagementData(entityID).getLastAccessedTime();
+            if (frequency < coldestFrequency 
+                    || (frequency == coldestFrequency && accessed.isBefore(coldestAccessed))) {
+                coldest = entityID;
+                coldestFrequency = frequency;
+                coldestAccessed = accessed;
+            }
+        }
+        
+        for (final String entityID : sample) {
+            if (!entityID.equals(coldest)) {
+                mainRegion.remove(entityID);
+                mainRegion.add(entityID);
+            }
+        }
+        return coldest;
+    }
+    
+    /**
+     * Evict an entity, if its write lock is immediately available.
+     * 
+     * @param entityID the entityID to evict
+     * @param counter the counter to increment if the entity is evicted, may be null
+     * 
+     * @return true if the entity was evicted or was no longer live, false if it was locked
+     */
+    private boolean evictEntity(@Nonnull final String entityID, @Nullable final Counter counter) {
+        final DynamicEntityBackingStore backingStore = getBackingStore();
+        final EntityManagementData mgmtData = backingStore.getManagementData(entityID);
+        final Lock writeLock = mgmtData.getReadWriteLock().writeLock();
+        if (!writeLock.tryLock()) {
+            log.trace("{} Entity '{}' is locked, will not be evicted now", getLogPrefix(), entityID);
+            return false;
+        }
+        try {
+            if (backingStore.getIndexedDescriptors().containsKey(entityID)) {
+                log.debug("{} Evicting entity metadata: {}", getLogPrefix(), entityID);
+                removeByEntityID(entityID, backingStore);
+                backingStore.removeManagementData(entityID);
+                if (counter != null) {
+                    counter.inc();
+                }
+            }
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Compute the effective expiration time for the specified metadata.
+     * 
+     * @param entityDescriptor the EntityDescriptor instance to evaluate
+     * @param now the current date time instant
+     * @return the effective expiration time for the metadata
+     */
+    @Nonnull protected Instant computeExpirationTime(@Nonnull final EntityDescriptor entityDescriptor,
+            @Nonnull final Instant now) {
+        
+        final Instant lowerBound = now.plus(getMinCacheDuration());
+        
+        Instant expiration = SAML2Support.getEarliestExpiration(entityDescriptor, now.plus(getMaxCacheDuration()), now);
+        if (expiration.isBefore(lowerBound)) {
+            expiration = lowerBound;
+        }
+        
+        return expiration;
+    }
+    
+    /**
+     * Compute the refresh trigger time.
+     * 
+     * @param expirationTime the time at which the metadata effectively expires
+     * @param nowDateTime the current date time instant
+     * 
+     * @return the time after which refresh attempt(s) should be made
+     */
+    @Nonnull protected Instant computeRefreshTriggerTime(@Nullable final Instant expirationTime,
+            @Nonnull final Instant nowDateTime) {
+        
+        final long now = nowDateTime.toEpochMilli();
+
+        long expireInstant = 0;
+        if (expirationTime != null) {
+            expireInstant = expirationTime.toEpochMilli();
+        }
+        long refreshDelay = (long) ((expireInstant - now) * getRefreshDelayFactor());
 
         // if the expiration time was null or the calculated refresh delay was less than the floor
         // use the floor
@@ -1310,6 +1973,9 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             
             setBackingStore(createNewBackingStore());
             
+            accessFrequencySketch = new AccessFrequencySketch(
+                    getMaxEntities() > 0 ? getMaxEntities() : DEFAULT_EXPECTED_ENTITIES);
+            
             if (getPersistentCacheKeyGenerator() == null) {
                 setPersistentCacheKeyGenerator(new DefaultCacheKeyGenerator());
             }
@@ -1321,6 +1987,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             persistentCacheInitMetrics = new PersistentCacheInitializationMetrics();
             if (isPersistentCachingEnabled()) {
                 persistentCacheInitMetrics.enabled = true;
+                persistentCacheInitMetrics.threads = getPersistentCacheInitializationThreads();
                 if (isInitializeFromPersistentCacheInBackground()) {
                     log.debug("{} Initializing from the persistent cache in the background in {} ms", 
                             getLogPrefix(), getBackgroundInitializationFromCacheDelay());
@@ -1339,6 +2006,21 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             cleanupTask = new BackingStoreCleanupSweeper();
             // Start with a delay of 1 minute, run at the user-specified interval
             taskTimer.schedule(cleanupTask, 1*60*1000, getCleanupTaskInterval().toMillis());
+            
+            if (isPredictiveRefresh()) {
+                final String threadName = "PredictiveRefresh-" + getId();
+                predictiveRefreshExecutor = Executors.newFixedThreadPool(getPredictiveRefreshThreads(),
+                        new ThreadFactory() {
+                            public Thread newThread(final Runnable r) {
+                                final Thread thread = new Thread(r, threadName);
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                predictiveRefreshTask = new PredictiveRefreshTask();
+                taskTimer.schedule(predictiveRefreshTask, getPredictiveRefreshInterval().toMillis(), 
+                        getPredictiveRefreshInterval().toMillis());
+            }
 
         } finally {
             initializing = false;
@@ -1386,6 +2068,29 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                             return persistentCacheInitMetrics;
                         }},
                     true);
+            
+            gaugeHotEntityIDs = MetricsSupport.register(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_HOT_ENTITYIDS),
+                    new Gauge<Set<String>>() {
+                        public Set<String> getValue() {
+                            return getHotEntityIDs();
+                        }},
+                    true);
+            
+            counterPredictiveRefreshes = metricRegistry.counter(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_COUNTER_PREDICTIVE_REFRESHES));
+            counterEvictions = metricRegistry.counter(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_COUNTER_EVICTIONS));
+            counterAdmissionRejections = metricRegistry.counter(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_COUNTER_ADMISSION_REJECTIONS));
+            
+            gaugeEstimatedEntityBytes = MetricsSupport.register(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_ESTIMATED_ENTITY_BYTES),
+                    new Gauge<Long>() {
+                        public Long getValue() {
+                            return getEstimatedEntityBytes();
+                        }},
+                    true);
         }
     }
     
@@ -1400,44 +2105,149 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             log.trace("{} Attempting to load and process entities from the persistent cache", getLogPrefix());
         }
         
+        if (getPersistentCacheInitializationThreads() > 1) {
+            initializeFromPersistentCacheInParallel();
+            return;
+        }
+        
         final long start = System.nanoTime();
         try {
             for (final Pair<String, EntityDescriptor> cacheEntry: getPersistentCacheManager().listAll()) {
-                persistentCacheInitMetrics.entriesTotal++;
-                final EntityDescriptor descriptor = cacheEntry.getSecond();
-                final String currentKey = cacheEntry.getFirst();
-                log.trace("{} Loaded EntityDescriptor from cache store with entityID '{}' and storage key '{}'", 
-                        getLogPrefix(), descriptor.getEntityID(), currentKey);
-                
-                final String entityID = StringSupport.trimOrNull(descriptor.getEntityID());
-                final EntityManagementData mgmtData = getBackingStore().getManagementData(entityID);
-                final Lock writeLock = mgmtData.getReadWriteLock().writeLock(); 
-                
-                try {
-                    writeLock.lock();
-                    
-                    // This can happen if we init from the persistent cache in a background thread,
-                    // and metadata for this entityID was resolved before we hit this cache entry.
-                    if (!lookupIndexedEntityID(entityID).isEmpty()) {
-                        log.trace("{} Metadata for entityID '{}' found in persistent cache was already live, " 
-                                + "ignoring cached entry", getLogPrefix(), entityID);
-                        persistentCacheInitMetrics.entriesSkippedAlreadyLive++;
-                        continue;
+                persistentCacheInitMetrics.entriesTotal.incrementAndGet();
+                loadPersistentCacheEntry(cacheEntry.getFirst(), cacheEntry.getSecond());
+            }
+        } catch (final IOException e) {
+            log.warn("{} Error loading EntityDescriptors from cache", getLogPrefix(), e);
+        } finally {
+            persistentCacheInitMetrics.processingTime = System.nanoTime() - start; 
+            persistentCacheInitMetrics.completed = true;
+            log.debug("{} Persistent cache initialization metrics: {}", getLogPrefix(), persistentCacheInitMetrics);
+        }
+    }
+    
+    /**
+     * Initialize the resolver with data from the persistent cache manager, loading and processing
+     * entries concurrently using {@link #getPersistentCacheInitializationThreads()} worker threads.
+     * 
+     * <p>
+     * Each worker loads (and therefore parses) an entry via {@link XMLObjectLoadSaveManager#load(String)}, and
+     * then filters and stores it under the entity's write lock, so entries become live as they are processed
+     * and concurrent resolution of other entities is not blocked. Progress is visible via
+     * {@link PersistentCacheInitializationMetrics}.
+     * </p>
+     */
+    protected void initializeFromPersistentCacheInParallel() {
+        final long start = System.nanoTime();
+        final String threadName = "PersistentCacheInitialization-" + getId();
+        final ExecutorService executor = Executors.newFixedThreadPool(getPersistentCacheInitializationThreads(),
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        return thread;
                     }
-                
-                    processPersistentCacheEntry(currentKey, descriptor);
-                    
-                } finally {
-                    writeLock.unlock();
+                });
+        try {
+            final Set<String> keys = getPersistentCacheManager().listKeys();
+            persistentCacheInitMetrics.entriesTotal.set(keys.size());
+            log.debug("{} Loading {} entries from the persistent cache using {} threads", 
+                    getLogPrefix(), keys.size(), getPersistentCacheInitializationThreads());
+            
+            final List<Future<?>> futures = new ArrayList<>(keys.size());
+            for (final String key : keys) {
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        loadPersistentCacheEntry(key);
+                    }
+                }));
+            }
+            
+            for (final Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (final ExecutionException e) {
+                    log.warn("{} Error processing entry from the persistent cache", getLogPrefix(), e.getCause());
                 }
             }
         } catch (final IOException e) {
-            log.warn("{} Error loading EntityDescriptors from cache", getLogPrefix(), e);
+            log.warn("{} Error listing EntityDescriptors in cache", getLogPrefix(), e);
+        } catch (final InterruptedException e) {
+            log.warn("{} Interrupted while loading EntityDescriptors from cache", getLogPrefix());
+            Thread.currentThread().interrupt();
         } finally {
+            executor.shutdownNow();
             persistentCacheInitMetrics.processingTime = System.nanoTime() - start; 
+            persistentCacheInitMetrics.completed = true;
             log.debug("{} Persistent cache initialization metrics: {}", getLogPrefix(), persistentCacheInitMetrics);
         }
     }
+    
+    /**
+     * Load and process a single entry from the persistent cache.
+     * 
+     * @param currentKey the current persistent cache key
+     */
+    private void loadPersistentCacheEntry(@Nonnull final String currentKey) {
+        if (isDestroyed()) {
+            return;
+        }
+        
+        final EntityDescriptor descriptor;
+        try {
+            descriptor = getPersistentCacheManager().load(currentKey);
+        } catch (final IOException e) {
+            log.warn("{} Error loading EntityDescriptor from cache store with storage key '{}'", 
+                    getLogPrefix(), currentKey, e);
+            persistentCacheInitMetrics.entriesSkippedProcessingException.incrementAndGet();
+            persistentCacheInitMetrics.entriesProcessed.incrementAndGet();
+            return;
+        }
+        
+        if (descriptor == null) {
+            log.trace("{} Cache entry with storage key '{}' was removed since enumeration, skipping", 
+                    getLogPrefix(), currentKey);
+            persistentCacheInitMetrics.entriesProcessed.incrementAndGet();
+            return;
+        }
+        
+        loadPersistentCacheEntry(currentKey, descriptor);
+    }
+    
+    /**
+     * Process a single entry loaded from the persistent cache under the entity's write lock, unless
+     * metadata for the entity is already live.
+     * 
+     * @param currentKey the current persistent cache key
+     * @param descriptor the entity descriptor loaded from the cache
+     */
+    private void loadPersistentCacheEntry(@Nonnull final String currentKey, 
+            @Nonnull final EntityDescriptor descriptor) {
+        log.trace("{} Loaded EntityDescriptor from cache store with entityID '{}' and storage key '{}'", 
+                getLogPrefix(), descriptor.getEntityID(), currentKey);
+        
+        final String entityID = StringSupport.trimOrNull(descriptor.getEntityID());
+        final EntityManagementData mgmtData = getBackingStore().getManagementData(entityID);
+        final Lock writeLock = mgmtData.getReadWriteLock().writeLock(); 
+        
+        try {
+            writeLock.lock();
+            
+            // This can happen if we init from the persistent cache in a background thread,
+            // and metadata for this entityID was resolved before we hit this cache entry.
+            if (!lookupIndexedEntityID(entityID).isEmpty()) {
+                log.trace("{} Metadata for entityID '{}' found in persistent cache was already live, " 
+                        + "ignoring cached entry", getLogPrefix(), entityID);
+                persistentCacheInitMetrics.entriesSkippedAlreadyLive.incrementAndGet();
+                return;
+            }
+        
+            processPersistentCacheEntry(currentKey, descriptor);
+            
+        } finally {
+            writeLock.unlock();
+            persistentCacheInitMetrics.entriesProcessed.incrementAndGet();
+        }
+    }
 
     /**
      * Process an entry loaded from the persistent cache.
@@ -1454,17 +2264,17 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                     processNewMetadata(descriptor, descriptor.getEntityID(), true);
                     log.trace("{} Successfully processed EntityDescriptor with entityID '{}' from cache", 
                             getLogPrefix(), descriptor.getEntityID());
-                    persistentCacheInitMetrics.entriesLoaded++;
+                    persistentCacheInitMetrics.entriesLoaded.incrementAndGet();
                 } catch (final FilterException | ResolverException e) {
                     log.warn("{} Error processing EntityDescriptor '{}' from cache with storage key '{}'", 
                             getLogPrefix(), descriptor.getEntityID(), currentKey, e);
-                    persistentCacheInitMetrics.entriesSkippedProcessingException++;
+                    persistentCacheInitMetrics.entriesSkippedProcessingException.incrementAndGet();
                 }
             } else {
                 log.trace("{} Cache initialization predicate indicated to not process EntityDescriptor " 
                         + "with entityID '{}' and cache storage key '{}'",
                         getLogPrefix(), descriptor.getEntityID(), currentKey);
-                persistentCacheInitMetrics.entriesSkippedFailedPredicate++;
+                persistentCacheInitMetrics.entriesSkippedFailedPredicate.incrementAndGet();
             }
             
             // Update storage key if necessary, e.g. if cache key generator impl has changed.
@@ -1485,7 +2295,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         } else {
             log.trace("{} EntityDescriptor with entityID '{}' and storaage key '{}' in cache was " 
                     + "not valid, skipping and removing", getLogPrefix(), descriptor.getEntityID(), currentKey);
-            persistentCacheInitMetrics.entriesSkippedInvalid++;
+            persistentCacheInitMetrics.entriesSkippedInvalid.incrementAndGet();
             try {
                 getPersistentCacheManager().remove(currentKey);
             } catch (final IOException e) {
@@ -1505,13 +2315,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 if (indexesEnabled()) {
                     final DynamicEntityBackingStore dynamicStore = (DynamicEntityBackingStore) backingStore;
 
-                    final Lock writeLock = dynamicStore.getSecondaryIndexManager().getReadWriteLock().writeLock();
-                    try {
-                        writeLock.lock();
-                        dynamicStore.getSecondaryIndexManager().deindexEntityDescriptor(descriptor);
-                    } finally {
-                        writeLock.unlock();
-                    }
+                    dynamicStore.getSecondaryIndexManager().deindexEntityDescriptor(descriptor);
                 }
                 
                 if (isPersistentCachingEnabled()) {
@@ -1525,6 +2329,18 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 }
                     
             }
+            
+            final EntityManagementData mgmtData = 
+                    ((DynamicEntityBackingStore) backingStore).getManagementData(entityID);
+            estimatedEntityBytes.addAndGet(-mgmtData.getEstimatedCost());
+            mgmtData.setEstimatedCost(0);
+        }
+        
+        if (isCapacityLimited()) {
+            synchronized (admissionWindow) {
+                admissionWindow.remove(entityID);
+                mainRegion.remove(entityID);
+            }
         }
         
         super.removeByEntityID(entityID, backingStore);
@@ -1536,10 +2352,18 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         if (cleanupTask != null) {
             cleanupTask.cancel();
         }
+        if (predictiveRefreshTask != null) {
+            predictiveRefreshTask.cancel();
+        }
         if (createdOwnTaskTimer) {
             taskTimer.cancel();
         }
+        if (predictiveRefreshExecutor != null) {
+            predictiveRefreshExecutor.shutdownNow();
+        }
         cleanupTask = null;
+        predictiveRefreshTask = null;
+        predictiveRefreshExecutor = null;
         taskTimer = null;
         
         if (ratioGaugeFetchToResolve != null) {
@@ -1554,9 +2378,23 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_PERSISTENT_CACHE_INIT), 
                     gaugePersistentCacheInit);
         }
+        if (gaugeHotEntityIDs != null) {
+            MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_HOT_ENTITYIDS), 
+                    gaugeHotEntityIDs);
+        }
+        if (gaugeEstimatedEntityBytes != null) {
+            MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_ESTIMATED_ENTITY_BYTES), 
+                    gaugeEstimatedEntityBytes);
+        }
         ratioGaugeFetchToResolve = null;
         gaugeNumLiveEntityIDs = null;
         gaugePersistentCacheInit = null;
+        gaugeHotEntityIDs = null;
+        counterPredictiveRefreshes = null;
+        counterEvictions = null;
+        counterAdmissionRejections = null;
+        gaugeEstimatedEntityBytes = null;
+        hotEntityIDs = Collections.emptySet();
         timerFetchFromOriginSource = null;
         timerResolve = null;
         
@@ -1571,13 +2409,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         if (indexesEnabled()) {
             final DynamicEntityBackingStore dynamicStore = (DynamicEntityBackingStore) backingStore;
 
-            final Lock writeLock = dynamicStore.getSecondaryIndexManager().getReadWriteLock().writeLock();
-            try {
-                writeLock.lock();
-                dynamicStore.getSecondaryIndexManager().indexEntityDescriptor(entityDescriptor);
-            } finally {
-                writeLock.unlock();
-            }
+            dynamicStore.getSecondaryIndexManager().indexEntityDescriptor(entityDescriptor);
         }
     }
 
@@ -1599,7 +2431,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          */
         protected DynamicEntityBackingStore(
                 @Nullable @NonnullElements @Unmodifiable @NotLive final Set<MetadataIndex> initIndexes) {
-            super();
+            super(Collections.synchronizedList(new ArrayList<EntityDescriptor>()));
             mgmtDataMap = new ConcurrentHashMap<>();
             secondaryIndexManager = new LockableMetadataIndexManager(initIndexes, 
                     new LockableMetadataIndexManager.EntityIDExtractionFunction()); 
@@ -1681,7 +2513,13 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         private Instant negativeLookupCacheExpiration;
         
         /** Read-write lock instance which governs access to the entity's backing store data. */
-        private ReadWriteLock readWriteLock;
+        private ReentrantReadWriteLock readWriteLock;
+        
+        /** Estimated size in bytes of the entity's backing store data. */
+        private long estimatedCost;
+        
+        /** State associated by the origin source with the entity's current metadata. */
+        @Nullable private Object originSourceState;
         
         /** Constructor. 
          * 
@@ -1801,6 +2639,51 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             negativeLookupCacheExpiration = null;
         }
 
+        /**
+         * Get the estimated size in bytes of the entity's backing store data.
+         * 
+         * @return the estimated size in bytes, or 0 if no metadata is loaded for the entity
+         * 
+         * @since 4.0.0
+         */
+        @NonNegative public long getEstimatedCost() {
+            return estimatedCost;
+        }
+        
+        /**
+         * Set the estimated size in bytes of the entity's backing store data.
+         * 
+         * @param cost the estimated size in bytes
+         * 
+         * @since 4.0.0
+         */
+        public void setEstimatedCost(@NonNegative final long cost) {
+            estimatedCost = cost;
+        }
+        
+        /**
+         * Get the state associated by the origin source with the entity's current metadata, such as
+         * the validators used for conditional retrieval.
+         * 
+         * @return the origin source state, or null
+         * 
+         * @since 4.0.0
+         */
+        @Nullable public Object getOriginSourceState() {
+            return originSourceState;
+        }
+        
+        /**
+         * Set the state associated by the origin source with the entity's current metadata.
+         * 
+         * @param state the origin source state, or null
+         * 
+         * @since 4.0.0
+         */
+        public void setOriginSourceState(@Nullable final Object state) {
+            originSourceState = state;
+        }
+        
         /**
          * Get the read-write lock instance which governs access to the entity's backing store data. 
          * 
@@ -1810,6 +2693,18 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             return readWriteLock;
         }
         
+        /**
+         * Get whether the calling thread holds the write lock which governs access to the entity's
+         * backing store data.
+         * 
+         * @return true if the calling thread holds the write lock, false otherwise
+         * 
+         * @since 4.0.0
+         */
+        public boolean isWriteLockedByCurrentThread() {
+            return readWriteLock.isWriteLockedByCurrentThread();
+        }
+        
     }
     
     /**
@@ -1833,6 +2728,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             }
             
             removeExpiredAndIdleMetadata();
+            
+            if (isCapacityLimited()) {
+                evictColdMetadata();
+            }
         }
 
         /**
@@ -1864,6 +2763,54 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             
         }
         
+        /**
+         * Evict the entities with the lowest estimated access frequency, and among those the least recently
+         * accessed, until the capacity limits are no longer exceeded.
+         */
+        private void evictColdMetadata() {
+            if (!isOverCapacity()) {
+                return;
+            }
+            
+            final DynamicEntityBackingStore backingStore = getBackingStore();
+            final Set<String> entityIDs = backingStore.getIndexedDescriptors().keySet();
+            
+            // Snapshot the ordering keys, since they may change concurrently while sorting.
+            final List<EvictionCandidate> candidates = new ArrayList<>(entityIDs.size());
+            for (final String entityID : entityIDs) {
+                candidates.add(new EvictionCandidate(entityID, accessFrequencySketch.frequency(entityID), 
+                        backingStore.getManagementData(entityID).getLastAccessedTime()));
+            }
+            candidates.sort(Comparator.comparingInt((EvictionCandidate c) -> c.frequency)
+                    .thenComparing(c -> c.lastAccessed));
+            
+            log.debug("{} Capacity limits exceeded with {} entities and an estimated {} bytes, evicting", 
+                    getLogPrefix(), candidates.size(), getEstimatedEntityBytes());
+            for (final EvictionCandidate candidate : candidates) {
+                if (!isOverCapacity()) {
+                    break;
+                }
+                final EntityManagementData mgmtData = backingStore.getManagementData(candidate.entityID);
+                final Lock writeLock = mgmtData.getReadWriteLock().writeLock();
+                try {
+                    writeLock.lock();
+                    
+                    if (backingStore.getIndexedDescriptors().containsKey(candidate.entityID)) {
+                        log.debug("{} Evicting entity metadata with estimated access frequency {}: {}", 
+                                getLogPrefix(), candidate.frequency, candidate.entityID);
+                        removeByEntityID(candidate.entityID, backingStore);
+                        backingStore.removeManagementData(candidate.entityID);
+                        if (counterEvictions != null) {
+                            counterEvictions.inc();
+                        }
+                    }
+                    
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        }
+        
         /**
          * Determine whether metadata should be removed based on expiration and idle time data.
          * 
@@ -1889,6 +2836,139 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         
     }
     
+    /**
+     * Background task which refreshes hot entities ahead of their refresh trigger time.
+     */
+    protected class PredictiveRefreshTask extends TimerTask {
+        
+        /** Logger. */
+        @Nonnull private final Logger log = LoggerFactory.getLogger(PredictiveRefreshTask.class);
+        
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            if (isDestroyed() || !isInitialized()) {
+                log.debug("{} PredictiveRefreshTask will not run because: inited: {}, destroyed: {}",
+                        getLogPrefix(), isInitialized(), isDestroyed());
+                return;
+            }
+            
+            // Refresh anything whose trigger time will pass before the next run.
+            final Instant horizon = Instant.now().plus(getPredictiveRefreshInterval());
+            final DynamicEntityBackingStore backingStore = getBackingStore();
+            final Set<String> hot = new HashSet<>();
+            
+            for (final String entityID : backingStore.getIndexedDescriptors().keySet()) {
+                if (accessFrequencySketch.frequency(entityID) < getPredictiveRefreshMinFrequency()) {
+                    continue;
+                }
+                hot.add(entityID);
+                
+                if (horizon.isAfter(backingStore.getManagementData(entityID).getRefreshTriggerTime())
+                        && predictiveRefreshesInProgress.add(entityID)) {
+                    try {
+                        predictiveRefreshExecutor.submit(new Runnable() {
+                            public void run() {
+                                try {
+                                    refresh(entityID);
+                                } finally {
+                                    predictiveRefreshesInProgress.remove(entityID);
+                                }
+                            }
+                        });
+                    } catch (final RejectedExecutionException e) {
+                        predictiveRefreshesInProgress.remove(entityID);
+                        return;
+                    }
+                }
+            }
+            
+            hotEntityIDs = Collections.unmodifiableSet(hot);
+            log.trace("{} Hot entityIDs: {}", getLogPrefix(), hot);
+        }
+        
+        /**
+         * Fetch new metadata for the entity without holding its lock, then process it under the write lock.
+         * 
+         * <p>
+         * Since the lock is not held while fetching, the fetch is never a conditional one.
+         * </p>
+         * 
+         * @param entityID the entityID to refresh
+         */
+        private void refresh(@Nonnull final String entityID) {
+            if (isDestroyed()) {
+                return;
+            }
+            
+            log.debug("{} Predictively refreshing metadata for entityID: {}", getLogPrefix(), entityID);
+            if (counterPredictiveRefreshes != null) {
+                counterPredictiveRefreshes.inc();
+            }
+            
+            XMLObject root = null;
+            final Context contextFetchFromOriginSource = MetricsSupport.startTimer(timerFetchFromOriginSource);
+            try {
+                root = fetchFromOriginSource(new CriteriaSet(new EntityIdCriterion(entityID)));
+            } catch (final IOException | RuntimeException e) {
+                log.warn("{} Error predictively refreshing metadata for entityID: {}", getLogPrefix(), entityID, e);
+            } finally {
+                MetricsSupport.stopTimer(contextFetchFromOriginSource);
+            }
+            
+            final DynamicEntityBackingStore backingStore = getBackingStore();
+            final EntityManagementData mgmtData = backingStore.getManagementData(entityID);
+            final Lock writeLock = mgmtData.getReadWriteLock().writeLock();
+            try {
+                writeLock.lock();
+                
+                if (root != null) {
+                    mgmtData.clearNegativeLookupCache();
+                    processNewMetadata(root, entityID);
+                } else if (backingStore.getIndexedDescriptors().containsKey(entityID)) {
+                    // Leave the existing data in place, to be retried on a later run or on demand.
+                    mgmtData.setRefreshTriggerTime(computeRefreshTriggerTime(mgmtData.getExpirationTime(), 
+                            Instant.now()));
+                }
+                
+            } catch (final FilterException e) {
+                log.error("{} Metadata filtering problem processing new metadata", getLogPrefix(), e);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        
+    }
+    
+    /**
+     * Ordering keys of an entity considered for eviction.
+     */
+    private static final class EvictionCandidate {
+        
+        /** The entityID. */
+        @Nonnull private final String entityID;
+        
+        /** The estimated access frequency. */
+        private final int frequency;
+        
+        /** The last access time. */
+        @Nonnull private final Instant lastAccessed;
+        
+        /**
+         * Constructor.
+         *
+         * @param id the entityID
+         * @param freq the estimated access frequency
+         * @param accessed the last access time
+         */
+        private EvictionCandidate(@Nonnull final String id, final int freq, @Nonnull final Instant accessed) {
+            entityID = id;
+            frequency = freq;
+            lastAccessed = accessed;
+        }
+        
+    }
+    
     /**
      * Default function for generating a cache key for loading and saving an {@link EntityDescriptor}
      * using a {@link XMLObjectLoadSaveManager}.
@@ -1930,29 +3010,38 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     public static class PersistentCacheInitializationMetrics {
         
         /** Whether or not persistent caching was enabled. */
-        private boolean enabled;
+        private volatile boolean enabled;
+        
+        /** Number of worker threads used for the initialization. */
+        private volatile int threads;
+        
+        /** Whether or not the initialization has completed. */
+        private volatile boolean completed;
         
         /** Total processing time for the persistent cache, in nanoseconds. */
-        private long processingTime;
+        private volatile long processingTime;
         
         /** Total entries seen in the persistent cache. */
-        private int entriesTotal;
+        @Nonnull private final AtomicInteger entriesTotal = new AtomicInteger();
+        
+        /** Entries which have been processed so far, whatever the outcome. */
+        @Nonnull private final AtomicInteger entriesProcessed = new AtomicInteger();
         
         /** Entries which were successfully loaded and made live. */
-        private int entriesLoaded;
+        @Nonnull private final AtomicInteger entriesLoaded = new AtomicInteger();
         
         /** Entries which were skipped because they were already live by the time they were processed, 
          * generally only seen when initializing from the persistent cache in a background thread. */
-        private int entriesSkippedAlreadyLive;
+        @Nonnull private final AtomicInteger entriesSkippedAlreadyLive = new AtomicInteger();
         
         /** Entries which were skipped because they were determined to be invalid. */
-        private int entriesSkippedInvalid;
+        @Nonnull private final AtomicInteger entriesSkippedInvalid = new AtomicInteger();
         
         /** Entries which were skipped because they failed the persistent cache predicate evaluation. */
-        private int entriesSkippedFailedPredicate;
+        @Nonnull private final AtomicInteger entriesSkippedFailedPredicate = new AtomicInteger();
         
         /** Entries which were skipped due to a processing exception. */
-        private int entriesSkippedProcessingException;
+        @Nonnull private final AtomicInteger entriesSkippedProcessingException = new AtomicInteger();
         
         /**
          * Get whether or not persistent caching was enabled. 
@@ -1975,7 +3064,37 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesTotal.
          */
         public int getEntriesTotal() {
-            return entriesTotal;
+            return entriesTotal.get();
+        }
+
+        /**
+         * Get number of worker threads used for the initialization.
+         * @return Returns the threads.
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Get whether or not the initialization has completed.
+         * @return Returns the completed.
+         */
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * Get entries which have been processed so far, whatever the outcome.
+         * 
+         * <p>
+         * Together with {@link #getEntriesTotal()} this indicates the progress of an initialization
+         * which is still running.
+         * </p>
+         * 
+         * @return Returns the entriesProcessed.
+         */
+        public int getEntriesProcessed() {
+            return entriesProcessed.get();
         }
 
         /**
@@ -1983,7 +3102,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesLoaded.
          */
         public int getEntriesLoaded() {
-            return entriesLoaded;
+            return entriesLoaded.get();
         }
 
         /**
@@ -1992,7 +3111,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesSkippedAlreadyLive.
          */
         public int getEntriesSkippedAlreadyLive() {
-            return entriesSkippedAlreadyLive;
+            return entriesSkippedAlreadyLive.get();
         }
 
         /**
@@ -2000,7 +3119,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesSkippedInvalid.
          */
         public int getEntriesSkippedInvalid() {
-            return entriesSkippedInvalid;
+            return entriesSkippedInvalid.get();
         }
 
         /**
@@ -2008,7 +3127,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesSkippedFailedPredicate.
          */
         public int getEntriesSkippedFailedPredicate() {
-            return entriesSkippedFailedPredicate;
+            return entriesSkippedFailedPredicate.get();
         }
 
         /**
@@ -2016,15 +3135,18 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return Returns the entriesSkippedProcessingException.
          */
         public int getEntriesSkippedProcessingException() {
-            return entriesSkippedProcessingException;
+            return entriesSkippedProcessingException.get();
         }
 
         /** {@inheritDoc} */
         public String toString() {
             return MoreObjects.toStringHelper(this)
                     .add("enabled", enabled)
+                    .add("threads", threads)
+                    .add("completed", completed)
                     .add("processingTime", processingTime)
                     .add("entriesTotal", entriesTotal)
+                    .add("entriesProcessed", entriesProcessed)
                     .add("entriesLoaded", entriesLoaded)
                     .add("entriesSkippedAlreadyLive", entriesSkippedAlreadyLive)
                     .add("entriesSkippedInvalid", entriesSkippedInvalid)
@@ -20,6 +20,7 @@ package org.opensaml.saml.metadata.resolver.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -46,14 +47,18 @@ import net.shibboleth.utilities.java.support.resolver.ResolverSupport;
 import net.shibboleth.utilities.java.support.xml.ParserPool;
 import net.shibboleth.utilities.java.support.xml.QNameSupport;
 
+import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.criterion.SatisfyAnyCriterion;
+import org.opensaml.core.metrics.AbstractProcessingEvent;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.Unmarshaller;
 import org.opensaml.core.xml.io.UnmarshallerFactory;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.SchemaValidationSupport;
 import org.opensaml.saml.metadata.criteria.entity.EvaluableEntityDescriptorCriterion;
 import org.opensaml.saml.metadata.criteria.entity.impl.EntityDescriptorCriterionPredicateRegistry;
+import org.opensaml.saml.metadata.resolver.MetadataResolveEvent;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
@@ -270,6 +275,50 @@ public abstract class AbstractMetadataResolver extends AbstractIdentifiableIniti
         return null;
     }
     
+    /**
+     * Populate and commit a {@link MetadataResolveEvent} for a resolve operation, if the event is being recorded.
+     * 
+     * <p>
+     * The number of results is only recorded if the result is a {@link Collection}, so that lazily-filtered
+     * results are not evaluated in full.
+     * </p>
+     * 
+     * @param event the event, begun before the operation
+     * @param criteria the criteria which were resolved
+     * @param result the result of the operation, or null if it failed
+     * 
+     * @since 4.0.0
+     */
+    protected void commitResolveEvent(@Nonnull final MetadataResolveEvent event, @Nullable final CriteriaSet criteria,
+            @Nullable final Iterable<EntityDescriptor> result) {
+        if (!event.shouldCommit()) {
+            return;
+        }
+        
+        event.setResolverID(getId());
+        if (criteria != null) {
+            final EntityIdCriterion entityIdCriterion = criteria.get(EntityIdCriterion.class);
+            if (entityIdCriterion != null) {
+                event.setEntityID(entityIdCriterion.getEntityId());
+            }
+        }
+        
+        event.setResultCount(-1);
+        if (result == null) {
+            event.setOutcome(AbstractProcessingEvent.OUTCOME_ERROR);
+        } else {
+            final boolean empty;
+            if (result instanceof Collection) {
+                event.setResultCount(((Collection<?>) result).size());
+                empty = event.getResultCount() == 0;
+            } else {
+                empty = Iterables.isEmpty(result);
+            }
+            event.setOutcome(empty ? AbstractProcessingEvent.OUTCOME_FAILURE : AbstractProcessingEvent.OUTCOME_SUCCESS);
+        }
+        event.commit();
+    }
+    
     /**
      * Get the XMLObject unmarshaller factory to use.
      * 
@@ -339,6 +388,7 @@ public abstract class AbstractMetadataResolver extends AbstractIdentifiableIniti
             }
             log.trace("{} Parsing retrieved metadata into a DOM object", getLogPrefix());
             final Document mdDocument = parser.parse(metadataInput);
+            SchemaValidationSupport.markIfValidatedOnParse(parser, mdDocument);
 
             log.trace("{} Unmarshalling and caching metadata DOM", getLogPrefix());
             final Unmarshaller unmarshaller = getUnmarshallerFactory().getUnmarshaller(mdDocument.getDocumentElement());
@@ -640,8 +690,17 @@ public abstract class AbstractMetadataResolver extends AbstractIdentifiableIniti
 
         /** Constructor. */
         protected EntityBackingStore() {
+            this(new ArrayList<EntityDescriptor>());
+        }
+
+        /**
+         * Constructor.
+         * 
+         * @param descriptors the list instance used to hold the ordered entity descriptors
+         */
+        protected EntityBackingStore(@Nonnull final List<EntityDescriptor> descriptors) {
             indexedDescriptors = new ConcurrentHashMap<>();
-            orderedDescriptors = new ArrayList<>();
+            orderedDescriptors = Constraint.isNotNull(descriptors, "Ordered descriptor list cannot be null");
         }
 
         /**
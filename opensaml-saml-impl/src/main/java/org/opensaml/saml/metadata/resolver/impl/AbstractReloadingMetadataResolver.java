@@ -21,29 +21,56 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.opensaml.core.metrics.AbstractProcessingEvent;
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.metadata.resolver.ExtendedRefreshableMetadataResolver;
+import org.opensaml.saml.metadata.resolver.MetadataRefreshEvent;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.saml2.common.SAML2Support;
 import org.opensaml.saml.saml2.common.TimeBoundSAMLObject;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.xmlsec.signature.Signature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer.Context;
 
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.primitive.TimerSupport;
+import net.shibboleth.utilities.java.support.xml.ElementSupport;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
 /**
@@ -59,10 +86,30 @@ import net.shibboleth.utilities.java.support.resolver.ResolverException;
  * cache actually expires, allowing a some room for error and recovery. Assuming the factor is not exceedingly close to
  * 1.0 and a min refresh delay that is not overly large, this refresh will likely occur a few times before the cache
  * expires.
+ * 
+ * <p>
+ * If a metric registry is installed, each refresh records the time taken to fetch and to unmarshall the metadata,
+ * the size of each fetched document, and the ratio of fetches which found the metadata unchanged.
+ * </p>
  */
 public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMetadataResolver 
         implements ExtendedRefreshableMetadataResolver {
 
+    /** Metric name for the timer for {@link #fetchMetadata()}. */
+    public static final String METRIC_TIMER_FETCH = "timer.fetch";
+    
+    /** Metric name for the timer for {@link #unmarshallMetadata(byte[])}. */
+    public static final String METRIC_TIMER_UNMARSHALL = "timer.unmarshall";
+    
+    /** Metric name for the histogram of the size in bytes of fetched metadata. */
+    public static final String METRIC_HISTOGRAM_FETCHED_BYTES = "histogram.fetchedBytes";
+    
+    /** Metric name for the counter of fetches which found the metadata unchanged. */
+    public static final String METRIC_COUNTER_NOT_MODIFIED = "counter.notModified";
+    
+    /** Metric name for the ratio gauge of unchanged fetches to all fetches. */
+    public static final String METRIC_RATIOGAUGE_NOT_MODIFIED_TO_FETCH = "ratioGauge.notModifiedToFetch";
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractReloadingMetadataResolver.class);
 
@@ -111,6 +158,30 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
     /** Internal flag for tracking success during the refresh operation. */
     private boolean trackRefreshSuccess;
     
+    /** Optional manager for a snapshot of the filtered metadata, used to serve metadata immediately at startup. */
+    @Nullable private MetadataSnapshotManager snapshotManager;
+    
+    /** Flag indicating whether the secondary indexes of unchanged entities are carried over on refresh. */
+    private boolean incrementalIndexing;
+    
+    /** Digests of the source metadata for each entity in the currently live data, if tracked. */
+    @Nullable private Map<String, byte[]> entityDigests;
+    
+    /** Metrics Timer for {@link #fetchMetadata()}. */
+    @Nullable private com.codahale.metrics.Timer timerFetch;
+    
+    /** Metrics Timer for {@link #unmarshallMetadata(byte[])}. */
+    @Nullable private com.codahale.metrics.Timer timerUnmarshall;
+    
+    /** Metrics Histogram of the size of fetched metadata. */
+    @Nullable private Histogram histogramFetchedBytes;
+    
+    /** Metrics Counter of fetches which found the metadata unchanged. */
+    @Nullable private Counter counterNotModified;
+    
+    /** Metrics RatioGauge of unchanged fetches to all fetches. */
+    @Nullable private RatioGauge ratioGaugeNotModifiedToFetch;
+    
 
 
     /** Constructor. */
@@ -192,6 +263,74 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         return nextRefresh;
     }
 
+    /**
+     * Gets whether the secondary indexes of unchanged entities are carried over when new metadata is loaded.
+     * 
+     * @return true if indexing is incremental, false otherwise
+     * 
+     * @since 4.0.0
+     */
+    public boolean isIncrementalIndexing() {
+        return incrementalIndexing;
+    }
+
+    /**
+     * Sets whether the secondary indexes of unchanged entities are carried over when new metadata is loaded.
+     * 
+     * <p>
+     * If true, a digest of the source metadata of each entity is kept, and when new metadata is loaded
+     * only the entities which were added, changed or removed since the previous load have their
+     * secondary index entries generated or removed; the rest are carried over from the previous data.
+     * Only indexing is incremental: the whole document is still parsed, unmarshalled and filtered, since
+     * filters such as signature validation apply to the document as a whole. This assumes the filters
+     * produce the same result for the same input.
+     * </p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if indexing should be incremental, false otherwise
+     * 
+     * @since 4.0.0
+     */
+    public void setIncrementalIndexing(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        incrementalIndexing = flag;
+    }
+
+    /**
+     * Gets the manager for the snapshot of the filtered metadata.
+     * 
+     * @return the snapshot manager, or null
+     * 
+     * @since 4.0.0
+     */
+    @Nullable public MetadataSnapshotManager getSnapshotManager() {
+        return snapshotManager;
+    }
+
+    /**
+     * Sets the manager for the snapshot of the filtered metadata.
+     * 
+     * <p>
+     * If set, a snapshot of the filtered metadata is written after each successful load of new metadata.
+     * At initialization, a valid snapshot is made live immediately, without fetching, filtering or
+     * signature verification, and a full refresh is then performed in the background. If no valid snapshot
+     * is available, initialization proceeds with a normal refresh.
+     * </p>
+     * 
+     * @param manager the snapshot manager, may be null
+     * 
+     * @since 4.0.0
+     */
+    public void setSnapshotManager(@Nullable final MetadataSnapshotManager manager) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        snapshotManager = manager;
+    }
+
     /**
      * Gets the impending expiration warning threshold used at refresh time.
      * 
@@ -302,6 +441,17 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         lastRefresh = null;
         lastUpdate = null;
         nextRefresh = null;
+        entityDigests = null;
+        
+        if (ratioGaugeNotModifiedToFetch != null) {
+            MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_RATIOGAUGE_NOT_MODIFIED_TO_FETCH),
+                    ratioGaugeNotModifiedToFetch);
+        }
+        ratioGaugeNotModifiedToFetch = null;
+        timerFetch = null;
+        timerUnmarshall = null;
+        histogramFetchedBytes = null;
+        counterNotModified = null;
         
         super.doDestroy();
     }
@@ -311,10 +461,19 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
     protected void initMetadataResolver() throws ComponentInitializationException {
         super.initMetadataResolver();
         
-        try {
-            refresh();
-        } catch (final ResolverException e) {
-            throw new ComponentInitializationException("Error refreshing metadata during init", e);
+        initializeRefreshMetricsInstrumentation();
+        
+        if (snapshotManager != null && initializeFromSnapshot()) {
+            // Revalidate against the metadata source in the background, the snapshot is live meanwhile.
+            nextRefresh = Instant.now();
+            refreshMetadataTask = new RefreshMetadataTask();
+            taskTimer.schedule(refreshMetadataTask, 0);
+        } else {
+            try {
+                refresh();
+            } catch (final ResolverException e) {
+                throw new ComponentInitializationException("Error refreshing metadata during init", e);
+            }
         }
         
         if (minRefreshDelay.compareTo(maxRefreshDelay) > 0) {
@@ -323,6 +482,69 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         }
     }
 
+    /**
+     * Initialize the Metrics-based instrumentation of the refresh process.
+     */
+    private void initializeRefreshMetricsInstrumentation() {
+        final MetricRegistry metricRegistry = MetricsSupport.getMetricRegistry();
+        if (metricRegistry != null) {
+            timerFetch = metricRegistry.timer(MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_FETCH));
+            timerUnmarshall = metricRegistry.timer(MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_UNMARSHALL));
+            histogramFetchedBytes = metricRegistry.histogram(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_HISTOGRAM_FETCHED_BYTES));
+            counterNotModified = metricRegistry.counter(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_COUNTER_NOT_MODIFIED));
+            
+            // Note that this gauge must use the support method to register in a synchronized fashion,
+            // and also must store off the instance for later use in destroy.
+            ratioGaugeNotModifiedToFetch = MetricsSupport.register(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_RATIOGAUGE_NOT_MODIFIED_TO_FETCH),
+                    new RatioGauge() {
+                        protected Ratio getRatio() {
+                            return Ratio.of(counterNotModified.getCount(), timerFetch.getCount());
+                        }},
+                    true);
+        }
+    }
+
+    /**
+     * Make the filtered metadata from the snapshot live, if a valid snapshot exists.
+     * 
+     * @return true if the snapshot metadata was made live, false otherwise
+     */
+    protected boolean initializeFromSnapshot() {
+        final String mdId = getMetadataIdentifier();
+        final Instant now = Instant.now();
+        
+        final MetadataSnapshotManager.Snapshot snapshot = snapshotManager.load(mdId, now);
+        if (snapshot == null) {
+            return false;
+        }
+        
+        log.debug("{} Processing metadata snapshot for '{}'", getLogPrefix(), mdId);
+        try {
+            final XMLObject metadata = unmarshallMetadata(snapshot.getMetadataInputStream());
+            if (!isValid(metadata)) {
+                log.info("{} Metadata snapshot for '{}' is no longer valid, ignoring it", getLogPrefix(), mdId);
+                return false;
+            }
+            
+            final BatchEntityBackingStore newBackingStore = preProcessFilteredMetadata(metadata);
+            releaseMetadataDOM(metadata);
+            setBackingStore(newBackingStore);
+            
+            lastUpdate = snapshot.getLastUpdate();
+            expirationTime = snapshot.getExpirationTime();
+            
+            log.info("{} Metadata snapshot for '{}' last updated at '{}' loaded, refreshing in the background", 
+                    getLogPrefix(), mdId, lastUpdate);
+            return true;
+        } catch (final UnmarshallingException e) {
+            log.warn("{} Unable to unmarshall metadata snapshot for '{}', ignoring it", getLogPrefix(), mdId, e);
+            return false;
+        }
+    }
+
     /**
      * Refreshes the metadata from its source.
      * 
@@ -333,6 +555,9 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         Instant now = null;
         String mdId = null;
         trackRefreshSuccess = false;
+        final MetadataRefreshEvent event = new MetadataRefreshEvent();
+        event.begin();
+        byte[] mdBytes = null;
 
         try {
             // In case a destroy() thread beat this thread into the monitor.
@@ -351,11 +576,23 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
 
             log.debug("{} Beginning refresh of metadata from '{}'", getLogPrefix(), mdId);
         
-            final byte[] mdBytes = fetchMetadata();
+            final Context contextFetch = MetricsSupport.startTimer(timerFetch);
+            try {
+                mdBytes = fetchMetadata();
+            } finally {
+                MetricsSupport.stopTimer(contextFetch);
+            }
+            
             if (mdBytes == null) {
                 log.info("{} Metadata from '{}' has not changed since last refresh", getLogPrefix(), mdId);
+                if (counterNotModified != null) {
+                    counterNotModified.inc();
+                }
                 processCachedMetadata(mdId, now);
             } else {
+                if (histogramFetchedBytes != null) {
+                    histogramFetchedBytes.update(mdBytes.length);
+                }
                 log.debug("{} Processing new metadata from '{}'", getLogPrefix(), mdId);
                 processNewMetadata(mdId, now, mdBytes);
             }
@@ -371,6 +608,16 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
                         t.getClass().getName(), t.getMessage()));
             }
         } finally {
+            if (event.shouldCommit()) {
+                event.setResolverID(getId());
+                event.setSource(mdId);
+                event.setChanged(mdBytes != null);
+                event.setBytes(mdBytes != null ? mdBytes.length : 0);
+                event.setOutcome(trackRefreshSuccess ? AbstractProcessingEvent.OUTCOME_SUCCESS 
+                        : AbstractProcessingEvent.OUTCOME_FAILURE);
+                event.commit();
+            }
+            
             logCachedMetadataExpiration(now);
             
             if (trackRefreshSuccess) {
@@ -444,12 +691,15 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
      * @throws ResolverException thrown if the metadata can not be unmarshalled
      */
     protected XMLObject unmarshallMetadata(final byte[] metadataBytes) throws ResolverException {
+        final Context contextUnmarshall = MetricsSupport.startTimer(timerUnmarshall);
         try {
             return unmarshallMetadata(new ByteArrayInputStream(metadataBytes));
         } catch (final UnmarshallingException e) {
             final String errorMsg = "Unable to unmarshall metadata";
             log.error("{} " + errorMsg, getLogPrefix());
             throw new ResolverException(errorMsg, e);
+        } finally {
+            MetricsSupport.stopTimer(contextUnmarshall);
         }
     }
 
@@ -529,16 +779,42 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
             final byte[] metadataBytes, final XMLObject metadata) throws ResolverException {
         final Document metadataDom = metadata.getDOM().getOwnerDocument();
 
+        Map<String, byte[]> newEntityDigests = null;
+        Set<String> unchangedEntityIDs = null;
+        if (isIncrementalIndexing()) {
+            newEntityDigests = computeEntityDigests(metadata.getDOM());
+            if (entityDigests != null) {
+                unchangedEntityIDs = new HashSet<>();
+                for (final Map.Entry<String, byte[]> entry : newEntityDigests.entrySet()) {
+                    final byte[] previous = entityDigests.get(entry.getKey());
+                    if (previous != null && entry.getValue() != null 
+                            && MessageDigest.isEqual(previous, entry.getValue())) {
+                        unchangedEntityIDs.add(entry.getKey());
+                    }
+                }
+                log.debug("{} {} of {} entities in metadata from '{}' are unchanged since the previous load", 
+                        getLogPrefix(), unchangedEntityIDs.size(), newEntityDigests.size(), metadataIdentifier);
+            }
+        }
+
         log.debug("{} Preprocessing metadata from '{}'", getLogPrefix(), metadataIdentifier);
         BatchEntityBackingStore newBackingStore = null;
         try {
-            newBackingStore = preProcessNewMetadata(metadata);
+            if (unchangedEntityIDs != null) {
+                newBackingStore = preProcessNewMetadata(metadata, getBackingStore(), unchangedEntityIDs);
+            } else {
+                newBackingStore = preProcessNewMetadata(metadata);
+            }
         } catch (final FilterException e) {
             final String errMsg = "Error filtering metadata from " + metadataIdentifier;
             log.error("{} " + errMsg, getLogPrefix(), e);
             throw new ResolverException(errMsg, e);
         }
 
+        // Serialize while the DOM is still available, it's only written once the new data is effective.
+        final byte[] snapshotBytes = snapshotManager != null 
+                ? serializeForSnapshot(newBackingStore.getCachedFilteredMetadata()) : null;
+
         log.debug("{} Releasing cached DOM for metadata from '{}'", getLogPrefix(), metadataIdentifier);
         releaseMetadataDOM(newBackingStore.getCachedOriginalMetadata());
         releaseMetadataDOM(newBackingStore.getCachedFilteredMetadata());
@@ -559,6 +835,7 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         // This is where the new processed data becomes effective. Exceptions thrown prior to this point
         // therefore result in the old data being kept effective.
         setBackingStore(newBackingStore);
+        entityDigests = newEntityDigests;
         
         lastUpdate = refreshStart;
         trackRefreshSuccess = true;
@@ -576,6 +853,204 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         nextRefresh = now.plus(nextRefreshDelay);
 
         log.info("{} New metadata successfully loaded for '{}'", getLogPrefix(), getMetadataIdentifier());
+        
+        if (snapshotManager != null) {
+            saveSnapshot(metadataIdentifier, snapshotBytes);
+        }
+    }
+    
+    /**
+     * Compute a digest of the source metadata of each entity in the specified metadata document.
+     * 
+     * <p>
+     * Each entity's digest also covers the content of its ancestor {@link EntitiesDescriptor} elements other
+     * than their child entities and signatures, e.g. group-level extensions such as entity attributes, and
+     * validUntil and cacheDuration, since secondary index entries may depend on it. A change to such content
+     * therefore marks every entity beneath it as changed.
+     * </p>
+     * 
+     * <p>
+     * Entities occurring more than once are mapped to null so that they are never treated as unchanged.
+     * </p>
+     * 
+     * @param root the root element of the metadata document
+     * 
+     * @return map of entityID to digest
+     */
+    @Nonnull private Map<String, byte[]> computeEntityDigests(@Nonnull final Element root) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            // Required to be supported by all JREs.
+            throw new IllegalStateException(e);
+        }
+        
+        final Map<String, byte[]> digests = new HashMap<>();
+        computeEntityDigests(root, digest, digests, new byte[0]);
+        return digests;
+    }
+    
+    /**
+     * Compute a digest of the source metadata of each entity in the specified metadata element.
+     * 
+     * @param element the metadata element
+     * @param digest the digest engine
+     * @param digests map of entityID to digest
+     * @param ancestorDigest digest of the group-level content of the element's ancestors
+     */
+    private void computeEntityDigests(@Nonnull final Element element, @Nonnull final MessageDigest digest, 
+            @Nonnull final Map<String, byte[]> digests, @Nonnull final byte[] ancestorDigest) {
+        if (ElementSupport.isElementNamed(element, EntityDescriptor.DEFAULT_ELEMENT_NAME)) {
+            final String entityID = StringSupport.trimOrNull(element.getAttributeNS(null, 
+                    EntityDescriptor.ENTITY_ID_ATTRIB_NAME));
+            if (entityID != null) {
+                digest.update(ancestorDigest);
+                digestNode(element, digest);
+                if (digests.containsKey(entityID)) {
+                    digests.put(entityID, null);
+                } else {
+                    digests.put(entityID, digest.digest());
+                }
+            }
+        } else if (ElementSupport.isElementNamed(element, EntitiesDescriptor.DEFAULT_ELEMENT_NAME)) {
+            digest.update(ancestorDigest);
+            digestGroupContent(element, digest);
+            final byte[] groupDigest = digest.digest();
+            for (final Element child : ElementSupport.getChildElements(element)) {
+                computeEntityDigests(child, digest, digests, groupDigest);
+            }
+        }
+    }
+    
+    /**
+     * Add the names, attributes and content of the specified {@link EntitiesDescriptor} element to the digest,
+     * excluding its child entities and groups, which are digested separately, and its signature.
+     * 
+     * @param element the group element
+     * @param digest the digest engine
+     */
+    private void digestGroupContent(@Nonnull final Element element, @Nonnull final MessageDigest digest) {
+        digest.update((byte) 1);
+        digestString(element.getNamespaceURI(), digest);
+        digestString(element.getLocalName(), digest);
+        digestAttributes(element, digest);
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE 
+                    && (ElementSupport.isElementNamed((Element) child, EntityDescriptor.DEFAULT_ELEMENT_NAME)
+                    || ElementSupport.isElementNamed((Element) child, EntitiesDescriptor.DEFAULT_ELEMENT_NAME)
+                    || ElementSupport.isElementNamed((Element) child, Signature.DEFAULT_ELEMENT_NAME))) {
+                continue;
+            }
+            digestNode(child, digest);
+        }
+        digest.update((byte) 0);
+    }
+    
+    /**
+     * Add the names, attributes and character content of the specified node and its descendants to the digest.
+     * 
+     * @param node the node to digest
+     * @param digest the digest engine
+     */
+    private void digestNode(@Nonnull final Node node, @Nonnull final MessageDigest digest) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                digest.update((byte) 1);
+                digestString(node.getNamespaceURI(), digest);
+                digestString(node.getLocalName(), digest);
+                digestAttributes(node, digest);
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    digestNode(child, digest);
+                }
+                digest.update((byte) 0);
+                break;
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                digest.update((byte) 3);
+                digestString(node.getNodeValue(), digest);
+                break;
+            default:
+                // Comments and processing instructions don't affect the metadata.
+                break;
+        }
+    }
+    
+    /**
+     * Add the attributes of the specified element node to the digest.
+     * 
+     * @param node the element node
+     * @param digest the digest engine
+     */
+    private void digestAttributes(@Nonnull final Node node, @Nonnull final MessageDigest digest) {
+        final NamedNodeMap attributes = node.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attribute = (Attr) attributes.item(i);
+            digest.update((byte) 2);
+            digestString(attribute.getNamespaceURI(), digest);
+            digestString(attribute.getName(), digest);
+            digestString(attribute.getValue(), digest);
+        }
+    }
+    
+    /**
+     * Add the specified string, which may be null, to the digest.
+     * 
+     * @param value the string
+     * @param digest the digest engine
+     */
+    private void digestString(@Nullable final String value, @Nonnull final MessageDigest digest) {
+        if (value == null) {
+            digest.update((byte) 0xFF);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            digest.update((byte) (bytes.length >>> 24));
+            digest.update((byte) (bytes.length >>> 16));
+            digest.update((byte) (bytes.length >>> 8));
+            digest.update((byte) bytes.length);
+            digest.update(bytes);
+        }
+    }
+
+    /**
+     * Serialize the filtered metadata for storage in the snapshot.
+     * 
+     * @param filteredMetadata the filtered metadata
+     * 
+     * @return the serialized metadata, or null if there is none or it could not be serialized
+     */
+    @Nullable private byte[] serializeForSnapshot(@Nullable final XMLObject filteredMetadata) {
+        if (filteredMetadata == null) {
+            return null;
+        }
+        
+        try {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            XMLObjectSupport.marshallToOutputStream(filteredMetadata, output);
+            return output.toByteArray();
+        } catch (final MarshallingException e) {
+            log.warn("{} Unable to serialize filtered metadata for snapshot", getLogPrefix(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Save the serialized filtered metadata to the snapshot, or remove the existing snapshot if there is
+     * nothing to save so that stale metadata is not restored.
+     * 
+     * @param metadataIdentifier identifier of the metadata source
+     * @param snapshotBytes the serialized filtered metadata, may be null
+     */
+    private void saveSnapshot(@Nonnull final String metadataIdentifier, @Nullable final byte[] snapshotBytes) {
+        try {
+            if (snapshotBytes != null) {
+                snapshotManager.save(metadataIdentifier, lastUpdate, expirationTime, snapshotBytes);
+            } else {
+                snapshotManager.remove();
+            }
+        } catch (final IOException e) {
+            log.warn("{} Unable to update metadata snapshot for '{}'", getLogPrefix(), metadataIdentifier, e);
+        }
     }
 
     /**
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Approximate, aging counter of how often each key is accessed, implemented as a count-min sketch.
+ * 
+ * <p>
+ * Each key maps to one counter in each of {@link #DEPTH} rows, and its estimated frequency is the minimum of
+ * those counters, which may overestimate but never underestimates the true count. Counters saturate at
+ * {@link #MAX_FREQUENCY}, and once the number of recorded accesses reaches ten times the width of the sketch
+ * all counters are halved, so that the estimates reflect recent rather than all-time popularity.
+ * </p>
+ * 
+ * <p>
+ * Memory use is fixed by the width, independent of the number of distinct keys.
+ * </p>
+ * 
+ * @since 4.0.0
+ */
+@ThreadSafe
+public class AccessFrequencySketch {
+    
+    /** Number of rows in the sketch. */
+    public static final int DEPTH = 4;
+    
+    /** Maximum value of a counter. */
+    public static final int MAX_FREQUENCY = 15;
+    
+    /** Per-row hash seeds. */
+    private static final int[] SEEDS = {0x97cb3127, 0xb8a9f5d1, 0x2c1b3c6d, 0x85ebca6b};
+    
+    /** Counters, row by row. */
+    @Nonnull private final AtomicIntegerArray counters;
+    
+    /** Bit mask selecting a column. */
+    private final int mask;
+    
+    /** Number of accesses after which counters are halved. */
+    private final long sampleSize;
+    
+    /** Number of accesses recorded since counters were last halved. */
+    @Nonnull private final AtomicLong additions;
+    
+    /**
+     * Constructor.
+     *
+     * @param expectedKeys the expected number of distinct keys, used to size the sketch
+     */
+    public AccessFrequencySketch(@Positive final int expectedKeys) {
+        Constraint.isGreaterThan(0, expectedKeys, "Expected number of keys must be greater than zero");
+        final int width = Integer.highestOneBit(Math.max(16, Math.min(expectedKeys, 1 << 24)) - 1) << 1;
+        counters = new AtomicIntegerArray(width * DEPTH);
+        mask = width - 1;
+        sampleSize = 10L * width;
+        additions = new AtomicLong();
+    }
+    
+    /**
+     * Get the number of counters in each row.
+     * 
+     * @return the width of the sketch
+     */
+    public int getWidth() {
+        return mask + 1;
+    }
+    
+    /**
+     * Record an access of the key.
+     * 
+     * @param key the key accessed
+     */
+    public void increment(@Nonnull final String key) {
+        final int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            final int index = indexOf(hash, row);
+            int current = counters.get(index);
+            while (current < MAX_FREQUENCY) {
+                if (counters.compareAndSet(index, current, current + 1)) {
+                    added = true;
+                    break;
+                }
+                current = counters.get(index);
+            }
+        }
+        
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+    
+    /**
+     * Get the estimated recent access frequency of the key.
+     * 
+     * @param key the key
+     * 
+     * @return the estimated frequency, between 0 and {@link #MAX_FREQUENCY}
+     */
+    public int frequency(@Nonnull final String key) {
+        final int hash = spread(key.hashCode());
+        int frequency = MAX_FREQUENCY;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters.get(indexOf(hash, row)));
+        }
+        return frequency;
+    }
+    
+    /**
+     * Halve all counters.
+     */
+    private synchronized void reset() {
+        if (additions.get() < sampleSize) {
+            // Another thread got here first.
+            return;
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            int current = counters.get(i);
+            while (!counters.compareAndSet(i, current, current >>> 1)) {
+                current = counters.get(i);
+            }
+        }
+        additions.set(0);
+    }
+    
+    /**
+     * Get the index of the counter for a hash in a row.
+     * 
+     * @param hash the spread hash of the key
+     * @param row the row
+     * 
+     * @return the counter index
+     */
+    private int indexOf(final int hash, final int row) {
+        int h = (hash + SEEDS[row]) * SEEDS[row];
+        h ^= h >>> 16;
+        return row * (mask + 1) + (h & mask);
+    }
+    
+    /**
+     * Apply a supplemental hash function to defend against poor quality hash codes.
+     * 
+     * @param hashCode the key's hash code
+     * 
+     * @return the spread hash
+     */
+    private static int spread(final int hashCode) {
+        int h = hashCode * 0x9e3779b9;
+        h ^= h >>> 16;
+        return h;
+    }
+    
+}
@@ -17,25 +17,32 @@
 
 package org.opensaml.saml.metadata.resolver.impl;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.component.AbstractIdentifiedInitializableComponent;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
 import org.opensaml.saml.metadata.resolver.ClearableMetadataResolver;
+import org.opensaml.saml.metadata.resolver.MemberResolverInvoker;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
@@ -51,6 +58,15 @@ import com.google.common.collect.Iterables;
 /**
  * A {@link MetadataResolver} implementation that answers requests by composing the answers of child
  * {@link MetadataResolver}s.
+ * 
+ * <p>
+ * If {@link #isParallelResolution()} is enabled, the child resolvers are queried concurrently, each subject to
+ * {@link #getMemberResolutionTimeout()}. {@link #resolveSingle(CriteriaSet)} returns the answer of the first child
+ * in list order which produced one, and raises the failure of a child which it would have consulted in turn,
+ * treating a timeout as such a failure. {@link #resolve(CriteriaSet)} queries every child eagerly rather than
+ * lazily, and composes the answers of the children in list order up to the first child which failed.
+ * See {@link MemberResolverInvoker} for details.
+ * </p>
  */
 public class CompositeMetadataResolver extends AbstractIdentifiedInitializableComponent implements MetadataResolver,
         RefreshableMetadataResolver, ClearableMetadataResolver {
@@ -61,9 +77,32 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
     /** Resolvers composed by this resolver. */
     @Nonnull @NonnullElements private List<MetadataResolver> resolvers;
 
+    /** Whether the composed resolvers are queried concurrently. */
+    private boolean parallelResolution;
+
+    /** Executor used for concurrent resolution. */
+    @Nullable private ExecutorService executorService;
+
+    /** Whether we created our own executor during initialization. */
+    private boolean createdOwnExecutorService;
+
+    /** Maximum number of threads in the private executor created for concurrent resolution. */
+    @Positive private int maxResolutionThreads;
+
+    /** Per-resolver timeout for concurrent resolution. */
+    @Nonnull private Duration memberResolutionTimeout;
+
+    /** Base name for Metrics instrumentation names, if instrumentation is enabled. */
+    @Nullable private String metricsBaseName;
+
+    /** Invoker for the composed resolvers, used for concurrent resolution. */
+    @Nullable private MemberResolverInvoker invoker;
+
     /** Constructor. */
     public CompositeMetadataResolver() {
         resolvers = Collections.emptyList();
+        memberResolutionTimeout = Duration.ofSeconds(5);
+        maxResolutionThreads = MemberResolverInvoker.DEFAULT_MAX_THREADS;
     }
 
     /**
@@ -95,6 +134,139 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
         resolvers = new ArrayList<>(Collections2.filter(newResolvers, Predicates.notNull()));
     }
 
+    /**
+     * Get whether the composed resolvers are queried concurrently.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if resolvers are queried concurrently, false if in turn
+     */
+    public boolean isParallelResolution() {
+        return parallelResolution;
+    }
+
+    /**
+     * Set whether the composed resolvers are queried concurrently.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if resolvers should be queried concurrently, false if in turn
+     */
+    public void setParallelResolution(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        parallelResolution = flag;
+    }
+
+    /**
+     * Get the executor used for concurrent resolution.
+     * 
+     * @return the executor, or null
+     */
+    @Nullable public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Set the executor used for concurrent resolution.
+     * 
+     * <p>
+     * If not supplied and {@link #isParallelResolution()} is enabled, a private executor will be created
+     * at initialization time and shut down when this resolver is destroyed.
+     * </p>
+     * 
+     * @param executor the executor, may be null
+     */
+    public void setExecutorService(@Nullable final ExecutorService executor) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        executorService = executor;
+    }
+
+    /**
+     * Get the maximum number of threads in the private executor created for concurrent resolution.
+     * 
+     * <p>
+     * Once this many member resolutions are in flight, further members are treated as having failed
+     * rather than queued. Not applicable if an executor is supplied.
+     * </p>
+     * 
+     * <p>Defaults to: {@link MemberResolverInvoker#DEFAULT_MAX_THREADS}.</p>
+     * 
+     * @return the maximum number of threads
+     */
+    @Positive public int getMaxResolutionThreads() {
+        return maxResolutionThreads;
+    }
+
+    /**
+     * Set the maximum number of threads in the private executor created for concurrent resolution.
+     * 
+     * <p>Defaults to: {@link MemberResolverInvoker#DEFAULT_MAX_THREADS}.</p>
+     * 
+     * @param threads the maximum number of threads
+     */
+    public void setMaxResolutionThreads(@Positive final int threads) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        maxResolutionThreads = (int) Constraint.isGreaterThan(0, threads, "Thread count must be positive");
+    }
+
+    /**
+     * Get the per-resolver timeout for concurrent resolution.
+     * 
+     * <p>Defaults to: 5 seconds.</p>
+     * 
+     * @return the timeout
+     */
+    @Nonnull public Duration getMemberResolutionTimeout() {
+        return memberResolutionTimeout;
+    }
+
+    /**
+     * Set the per-resolver timeout for concurrent resolution.
+     * 
+     * <p>Defaults to: 5 seconds.</p>
+     * 
+     * @param timeout the timeout
+     */
+    public void setMemberResolutionTimeout(@Nonnull final Duration timeout) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        Constraint.isNotNull(timeout, "Timeout cannot be null");
+        Constraint.isFalse(timeout.isNegative() || timeout.isZero(), "Timeout must be positive");
+
+        memberResolutionTimeout = timeout;
+    }
+
+    /**
+     * Get the base name for Metrics instrumentation.
+     * 
+     * <p>Defaults to: null, i.e. no instrumentation.</p>
+     * 
+     * @return the Metrics base name, or null
+     */
+    @Nullable public String getMetricsBaseName() {
+        return metricsBaseName;
+    }
+
+    /**
+     * Set the base name for Metrics instrumentation.
+     * 
+     * <p>
+     * Instrumentation of the member resolvers is only performed if a base name is set.
+     * </p>
+     * 
+     * @param baseName the Metrics base name, or null for no instrumentation
+     */
+    public void setMetricsBaseName(@Nullable final String baseName) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        metricsBaseName = StringSupport.trimOrNull(baseName);
+    }
+
     /** {@inheritDoc} */
     @Override public boolean isRequireValidMetadata() {
         log.warn("Attempt to access unsupported requireValidMetadata property on ChainingMetadataResolver");
@@ -120,12 +292,32 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
     /** {@inheritDoc} */
     @Override public Iterable<EntityDescriptor> resolve(@Nullable final CriteriaSet criteria) throws ResolverException {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        if (invoker != null) {
+            final List<Iterable<EntityDescriptor>> results = invoker.invokeAll(criteria,
+                    new MemberResolverInvoker.MemberOperation<Iterable<EntityDescriptor>>() {
+                        public Iterable<EntityDescriptor> apply(final MetadataResolver resolver,
+                                final CriteriaSet memberCriteria) throws ResolverException {
+                            return resolver.resolve(memberCriteria);
+                        }
+                    }, null);
+            return Iterables.concat(results);
+        }
+
         return new CompositeMetadataResolverIterable(resolvers, criteria);
     }
 
     /** {@inheritDoc} */
     @Override public EntityDescriptor resolveSingle(@Nullable final CriteriaSet criteria) throws ResolverException {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        if (invoker != null) {
+            return invoker.invoke(criteria, new MemberResolverInvoker.MemberOperation<EntityDescriptor>() {
+                public EntityDescriptor apply(final MetadataResolver resolver, final CriteriaSet memberCriteria)
+                        throws ResolverException {
+                    return resolver.resolveSingle(memberCriteria);
+                }
+            }, Objects::nonNull);
+        }
+
         EntityDescriptor metadata = null;
         for (final MetadataResolver resolver : resolvers) {
             metadata = resolver.resolveSingle(criteria);
@@ -144,6 +336,18 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
             log.warn("CompositeMetadataResolver was not configured with any member MetadataResolvers");
             resolvers = Collections.emptyList();
         }
+
+        if (isParallelResolution()) {
+            if (executorService == null) {
+                log.debug("CompositeMetadataResolver '{}' creating private executor for parallel resolution",
+                        getId());
+                executorService = MemberResolverInvoker.newExecutorService(
+                        "CompositeMetadataResolver-" + getId(), getMaxResolutionThreads());
+                createdOwnExecutorService = true;
+            }
+            invoker = new MemberResolverInvoker(resolvers, executorService, getMemberResolutionTimeout(),
+                    getMetricsBaseName(), true);
+        }
     }
 
     /** {@inheritDoc} */
@@ -151,6 +355,11 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
         super.doDestroy();
 
         resolvers = Collections.emptyList();
+        if (createdOwnExecutorService) {
+            executorService.shutdownNow();
+        }
+        executorService = null;
+        invoker = null;
     }
     
     /** {@inheritDoc} */
@@ -0,0 +1,347 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+/**
+ * Manager for an integrity-protected snapshot of post-filter batch metadata, used to make
+ * the metadata available immediately on restart without re-fetching, re-verifying and re-filtering it.
+ *
+ * <p>
+ * The snapshot file contains a small header (the metadata identifier, the last update time and the
+ * computed expiration time), the serialized filtered metadata document and a trailing MAC computed
+ * over everything preceding it with the configured {@link SecretKey}. On load the file is read into memory
+ * once and the MAC verified over that copy before anything else is trusted, so later changes to the file can't
+ * affect the verified data; a file with a bad MAC, a different metadata identifier or an expiration time in
+ * the past is rejected.
+ * </p>
+ *
+ * <p>
+ * The snapshot is written to a temporary file which is then atomically moved into place.
+ * </p>
+ */
+@ThreadSafe
+public class MetadataSnapshotManager {
+
+    /** Default MAC algorithm. */
+    @Nonnull @NotEmpty public static final String DEFAULT_MAC_ALGORITHM = "HmacSHA256";
+
+    /** Magic number identifying a snapshot file. */
+    private static final int MAGIC = 0x4F534D53;
+
+    /** Current file format version. */
+    private static final int VERSION = 1;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(MetadataSnapshotManager.class);
+
+    /** The snapshot file. */
+    @Nonnull private final Path snapshotPath;
+
+    /** The key used to compute and verify the MAC. */
+    @Nonnull private final SecretKey macKey;
+
+    /** The MAC algorithm. */
+    @Nonnull private final String macAlgorithm;
+
+    /**
+     * Constructor.
+     *
+     * @param file the snapshot file
+     * @param key the secret key used to compute and verify the snapshot MAC
+     */
+    public MetadataSnapshotManager(@Nonnull final File file, @Nonnull final SecretKey key) {
+        this(file, key, DEFAULT_MAC_ALGORITHM);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file the snapshot file
+     * @param key the secret key used to compute and verify the snapshot MAC
+     * @param algorithm the JCA MAC algorithm name
+     */
+    public MetadataSnapshotManager(@Nonnull final File file, @Nonnull final SecretKey key,
+            @Nonnull @NotEmpty final String algorithm) {
+        snapshotPath = Constraint.isNotNull(file, "Snapshot file cannot be null").toPath();
+        macKey = Constraint.isNotNull(key, "Snapshot MAC key cannot be null");
+        macAlgorithm = Constraint.isNotNull(StringSupport.trimOrNull(algorithm),
+                "Snapshot MAC algorithm cannot be null or empty");
+
+        // Fail early on an unusable key or algorithm.
+        try {
+            createMac();
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalArgumentException("Snapshot MAC algorithm or key is not usable", e);
+        }
+    }
+
+    /**
+     * Get the snapshot file.
+     *
+     * @return the snapshot file
+     */
+    @Nonnull public File getFile() {
+        return snapshotPath.toFile();
+    }
+
+    /**
+     * Write a new snapshot, replacing any existing one.
+     *
+     * @param metadataIdentifier the identifier of the metadata source
+     * @param lastUpdate the time the metadata was last updated
+     * @param expirationTime the computed expiration time of the metadata
+     * @param metadata the serialized filtered metadata document
+     *
+     * @throws IOException if the snapshot can not be written
+     */
+    public void save(@Nonnull final String metadataIdentifier, @Nonnull final Instant lastUpdate,
+            @Nonnull final Instant expirationTime, @Nonnull final byte[] metadata) throws IOException {
+
+        final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try (final DataOutputStream header = new DataOutputStream(headerBytes)) {
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeUTF(metadataIdentifier);
+            header.writeLong(lastUpdate.toEpochMilli());
+            header.writeLong(expirationTime.toEpochMilli());
+            header.writeInt(metadata.length);
+        }
+
+        final byte[] mac;
+        try {
+            final Mac engine = createMac();
+            engine.update(headerBytes.toByteArray());
+            engine.update(metadata);
+            mac = engine.doFinal();
+        } catch (final GeneralSecurityException e) {
+            throw new IOException("Unable to compute snapshot MAC", e);
+        }
+
+        final Path parent = snapshotPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        final Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (final OutputStream out = Files.newOutputStream(tempPath)) {
+            headerBytes.writeTo(out);
+            out.write(metadata);
+            out.write(mac);
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        log.debug("Wrote metadata snapshot for '{}' to '{}' ({} bytes of metadata)",
+                metadataIdentifier, snapshotPath, metadata.length);
+    }
+
+    /**
+     * Load and verify the snapshot.
+     *
+     * @param metadataIdentifier the identifier of the metadata source the snapshot must have been written for
+     * @param now the current time, against which the snapshot expiration is checked
+     *
+     * @return the verified snapshot, or null if no usable snapshot exists
+     */
+    @Nullable public Snapshot load(@Nonnull final String metadataIdentifier, @Nonnull final Instant now) {
+        if (!Files.isRegularFile(snapshotPath)) {
+            log.debug("No metadata snapshot present at '{}'", snapshotPath);
+            return null;
+        }
+
+        try {
+            // Everything below, including the returned snapshot, uses only this one copy of the file.
+            final byte[] bytes = Files.readAllBytes(snapshotPath);
+
+            final Mac engine = createMac();
+            final int macLength = engine.getMacLength();
+            if (bytes.length <= macLength + 8) {
+                log.warn("Metadata snapshot '{}' is truncated, ignoring it", snapshotPath);
+                return null;
+            }
+
+            // Verify integrity before interpreting any of the content.
+            final int contentLength = bytes.length - macLength;
+            engine.update(bytes, 0, contentLength);
+            final byte[] expectedMac = engine.doFinal();
+            final byte[] actualMac = Arrays.copyOfRange(bytes, contentLength, bytes.length);
+            if (!MessageDigest.isEqual(expectedMac, actualMac)) {
+                log.warn("Metadata snapshot '{}' failed integrity check, ignoring it", snapshotPath);
+                return null;
+            }
+
+            final ByteBuffer input = ByteBuffer.wrap(bytes, 0, contentLength);
+            if (input.getInt() != MAGIC || input.getInt() != VERSION) {
+                log.warn("Metadata snapshot '{}' has an unsupported format, ignoring it", snapshotPath);
+                return null;
+            }
+            final byte[] idBytes = new byte[input.getShort() & 0xFFFF];
+            input.get(idBytes);
+            // Identifiers are written via DataOutput.writeUTF, which only differs from UTF-8 for NUL and
+            // supplementary characters, neither of which occur in practice in metadata identifiers.
+            final String snapshotIdentifier = new String(idBytes, StandardCharsets.UTF_8);
+            final Instant lastUpdate = Instant.ofEpochMilli(input.getLong());
+            final Instant expirationTime = Instant.ofEpochMilli(input.getLong());
+            final int metadataLength = input.getInt();
+
+            if (!metadataIdentifier.equals(snapshotIdentifier)) {
+                log.warn("Metadata snapshot '{}' was written for '{}' rather than '{}', ignoring it",
+                        snapshotPath, snapshotIdentifier, metadataIdentifier);
+                return null;
+            }
+            if (metadataLength != input.remaining()) {
+                log.warn("Metadata snapshot '{}' has an inconsistent length, ignoring it", snapshotPath);
+                return null;
+            }
+            if (!expirationTime.isAfter(now)) {
+                log.info("Metadata snapshot '{}' expired at '{}', ignoring it", snapshotPath, expirationTime);
+                return null;
+            }
+
+            return new Snapshot(lastUpdate, expirationTime, bytes, input.position(), metadataLength);
+
+        } catch (final IOException | RuntimeException | GeneralSecurityException e) {
+            log.warn("Error reading metadata snapshot '{}', ignoring it", snapshotPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Remove the snapshot, if present.
+     *
+     * @throws IOException if the snapshot can not be removed
+     */
+    public void remove() throws IOException {
+        Files.deleteIfExists(snapshotPath);
+    }
+
+    /**
+     * Create a new initialized MAC engine.
+     *
+     * @return the MAC engine
+     *
+     * @throws GeneralSecurityException if the algorithm or key is not usable
+     */
+    @Nonnull private Mac createMac() throws GeneralSecurityException {
+        final Mac engine = Mac.getInstance(macAlgorithm);
+        engine.init(macKey);
+        return engine;
+    }
+
+    /** A verified metadata snapshot. */
+    public static final class Snapshot {
+
+        /** The time the metadata was last updated. */
+        @Nonnull private final Instant lastUpdate;
+
+        /** The computed expiration time of the metadata. */
+        @Nonnull private final Instant expirationTime;
+
+        /** The verified snapshot file content, containing the serialized metadata document. */
+        @Nonnull private final byte[] content;
+
+        /** Offset of the serialized metadata document in the content. */
+        private final int metadataOffset;
+
+        /** Length of the serialized metadata document. */
+        private final int metadataLength;
+
+        /**
+         * Constructor.
+         *
+         * @param update the time the metadata was last updated
+         * @param expiration the computed expiration time of the metadata
+         * @param data the verified snapshot file content
+         * @param offset the offset of the serialized metadata document in the content
+         * @param length the length of the serialized metadata document
+         */
+        private Snapshot(@Nonnull final Instant update, @Nonnull final Instant expiration,
+                @Nonnull final byte[] data, final int offset, final int length) {
+            lastUpdate = update;
+            expirationTime = expiration;
+            content = data;
+            metadataOffset = offset;
+            metadataLength = length;
+        }
+
+        /**
+         * Get the time the metadata was last updated.
+         *
+         * @return the last update time
+         */
+        @Nonnull public Instant getLastUpdate() {
+            return lastUpdate;
+        }
+
+        /**
+         * Get the computed expiration time of the metadata.
+         *
+         * @return the expiration time
+         */
+        @Nonnull public Instant getExpirationTime() {
+            return expirationTime;
+        }
+
+        /**
+         * Get the size of the serialized metadata document.
+         *
+         * @return the size in bytes
+         */
+        public int getMetadataLength() {
+            return metadataLength;
+        }
+
+        /**
+         * Get a new stream over the serialized metadata document, read from the verified copy of the file.
+         *
+         * @return the metadata input stream
+         */
+        @Nonnull public InputStream getMetadataInputStream() {
+            return new ByteArrayInputStream(content, metadataOffset, metadataLength);
+        }
+    }
+
+}
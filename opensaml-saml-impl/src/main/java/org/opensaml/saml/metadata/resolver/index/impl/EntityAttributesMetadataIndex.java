@@ -0,0 +1,230 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.index.impl;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+
+import org.opensaml.saml.common.profile.logic.EntityAttributesPredicate;
+import org.opensaml.saml.common.profile.logic.EntityAttributesPredicate.Candidate;
+import org.opensaml.saml.criterion.EntityAttributesCriterion;
+import org.opensaml.saml.metadata.EntityAttributesTags;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndexKey;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * An implementation of {@link MetadataIndex} which indexes entities by the
+ * {@link org.opensaml.saml.ext.saml2mdattr.EntityAttributes} tags which apply to them, including those
+ * inherited from ancestor groups, supporting lookup via an {@link EntityAttributesCriterion}.
+ *
+ * <p>
+ * Entities are indexed by (Name, NameFormat, value), by (Name, NameFormat) and by the presence of any tag,
+ * with NameFormat also indexed as unspecified. Lookup produces a superset of the matching entities, which the
+ * metadata resolver then narrows by evaluating the criterion's predicate. The tags are also attached to each
+ * indexed entity as an {@link EntityAttributesTags} object metadata instance, so that predicate evaluation
+ * avoids walking the metadata tree.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+public class EntityAttributesMetadataIndex implements MetadataIndex {
+
+    /** {@inheritDoc} */
+    @Nullable @NonnullElements @Unmodifiable @NotLive
+    public Set<MetadataIndexKey> generateKeys(@Nonnull final CriteriaSet criteriaSet) {
+        Constraint.isNotNull(criteriaSet, "CriteriaSet was null");
+        final EntityAttributesCriterion criterion = criteriaSet.get(EntityAttributesCriterion.class);
+        if (criterion == null) {
+            return null;
+        }
+
+        final EntityAttributesPredicate predicate = criterion.getPredicate();
+        final Collection<Candidate> candidates = predicate.getCandidates();
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        final HashSet<MetadataIndexKey> result = new HashSet<>();
+        if (predicate.getMatchAll()) {
+            // Every candidate must be satisfied, so the entities matching any one of them are a superset.
+            result.add(candidateKey(candidates.iterator().next()));
+        } else {
+            for (final Candidate candidate : candidates) {
+                result.add(candidateKey(candidate));
+            }
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Nullable @NonnullElements @Unmodifiable @NotLive
+    public Set<MetadataIndexKey> generateKeys(@Nonnull final EntityDescriptor descriptor) {
+        Constraint.isNotNull(descriptor, "EntityDescriptor was null");
+
+        final EntityAttributesTags tags;
+        final List<EntityAttributesTags> attached = descriptor.getObjectMetadata().get(EntityAttributesTags.class);
+        if (!attached.isEmpty()) {
+            tags = attached.get(0);
+        } else {
+            tags = EntityAttributesTags.fromEntityDescriptor(descriptor);
+            descriptor.getObjectMetadata().put(tags);
+        }
+
+        final HashSet<MetadataIndexKey> result = new HashSet<>();
+        if (tags.isEmpty()) {
+            return result;
+        }
+
+        result.add(new EntityAttributesMetadataIndexKey(null, null, null));
+        for (final EntityAttributesTags.Tag tag : tags.getTags()) {
+            result.add(new EntityAttributesMetadataIndexKey(tag.getName(), null, null));
+            result.add(new EntityAttributesMetadataIndexKey(tag.getName(), tag.getNameFormat(), null));
+            for (final String value : tag.getValues()) {
+                final String trimmed = value.trim();
+                result.add(new EntityAttributesMetadataIndexKey(tag.getName(), null, trimmed));
+                result.add(new EntityAttributesMetadataIndexKey(tag.getName(), tag.getNameFormat(), trimmed));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the most selective key whose indexed entities are a superset of those satisfying the candidate.
+     *
+     * @param candidate the candidate
+     *
+     * @return the key
+     */
+    @Nonnull private MetadataIndexKey candidateKey(@Nonnull final Candidate candidate) {
+        final List<String> values = candidate.getValues();
+        if (!values.isEmpty()) {
+            return new EntityAttributesMetadataIndexKey(candidate.getName(), candidate.getNameFormat(),
+                    values.get(0).trim());
+        } else if (!candidate.getRegexps().isEmpty()) {
+            return new EntityAttributesMetadataIndexKey(candidate.getName(), candidate.getNameFormat(), null);
+        } else {
+            // A candidate with neither values nor regular expressions is satisfied by any tagged entity.
+            return new EntityAttributesMetadataIndexKey(null, null, null);
+        }
+    }
+
+    /**
+     * An implementation of {@link MetadataIndexKey} representing an entity attributes tag, or with
+     * null components, a class of tags.
+     */
+    protected static class EntityAttributesMetadataIndexKey implements MetadataIndexKey {
+
+        /** The Attribute Name. */
+        @Nullable private final String name;
+
+        /** The Attribute NameFormat. */
+        @Nullable private final String nameFormat;
+
+        /** The trimmed value. */
+        @Nullable private final String value;
+
+        /**
+         * Constructor.
+         *
+         * @param attributeName the Attribute Name, or null for any tag
+         * @param attributeNameFormat the Attribute NameFormat, or null for any NameFormat
+         * @param attributeValue the trimmed value, or null for any value
+         */
+        public EntityAttributesMetadataIndexKey(@Nullable final String attributeName,
+                @Nullable final String attributeNameFormat, @Nullable final String attributeValue) {
+            name = attributeName;
+            nameFormat = attributeNameFormat;
+            value = attributeValue;
+        }
+
+        /**
+         * Gets the Attribute Name.
+         *
+         * @return the Attribute Name
+         */
+        @Nullable public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the Attribute NameFormat.
+         *
+         * @return the Attribute NameFormat
+         */
+        @Nullable public String getNameFormat() {
+            return nameFormat;
+        }
+
+        /**
+         * Gets the trimmed value.
+         *
+         * @return the trimmed value
+         */
+        @Nullable public String getValue() {
+            return value;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("name", name)
+                    .add("nameFormat", nameFormat)
+                    .add("value", value)
+                    .toString();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, nameFormat, value);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj instanceof EntityAttributesMetadataIndexKey) {
+                final EntityAttributesMetadataIndexKey other = (EntityAttributesMetadataIndexKey) obj;
+                return Objects.equals(name, other.name) && Objects.equals(nameFormat, other.nameFormat)
+                        && Objects.equals(value, other.value);
+            }
+
+            return false;
+        }
+    }
+
+}
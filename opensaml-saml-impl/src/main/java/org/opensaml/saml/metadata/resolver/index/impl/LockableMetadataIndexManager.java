@@ -14,10 +14,15 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.opensaml.saml.metadata.resolver.index.impl;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
@@ -26,21 +31,49 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndexKey;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 
 /**
  * A specialization of {@link MetadataIndexManager} capable of read/write locking.
  * 
+ * <p>
+ * The indexed data is held as an immutable version of all the indexes, which each index operation replaces
+ * as a whole. Lookups read the current version without locking, so they never wait for index operations and
+ * never see an {@link EntityDescriptor} indexed under some indexes but not yet others. Index operations are
+ * serialized by the write lock, and each copies the key maps and data item sets it changes, so their cost grows
+ * with the amount of data held under the indexes they touch. This suits indexing one entity at a time, as
+ * dynamic metadata resolution does; bulk loads should instead build a {@link MetadataIndexManager} before
+ * publishing it.
+ * </p>
+ * 
+ * <p>
+ * The lock is also available to callers which need a sequence of index operations to appear atomic
+ * to one another.
+ * </p>
+ * 
  * @param <T> the type of data being indexed
  */
 public class LockableMetadataIndexManager<T> extends MetadataIndexManager<T> {
     
     /** The manager's read write lock. */
     @Nonnull private final ReadWriteLock readWriteLock;
+    
+    /** Function to extract the data item to be indexed from an EntityDescriptor. */
+    @Nonnull private final Function<EntityDescriptor, T> entityDescriptorFunction;
+    
+    /** The current immutable version of the indexed data, keyed by index and then by index key. */
+    @Nonnull private final AtomicReference<Map<MetadataIndex, Map<MetadataIndexKey, Set<T>>>> current;
 
     /**
      * Constructor.
@@ -54,6 +87,14 @@ public class LockableMetadataIndexManager<T> extends MetadataIndexManager<T> {
             ) {
         super(initIndexes, extractionFunction);
         readWriteLock = new ReentrantReadWriteLock(true);
+        entityDescriptorFunction = Constraint.isNotNull(extractionFunction, 
+                "EntityDescriptor extraction function was null");
+        
+        final ImmutableMap.Builder<MetadataIndex, Map<MetadataIndexKey, Set<T>>> builder = ImmutableMap.builder();
+        for (final MetadataIndex index : getIndexes()) {
+            builder.put(index, ImmutableMap.<MetadataIndexKey, Set<T>>of());
+        }
+        current = new AtomicReference<>(builder.build());
     }
     
     /**
@@ -61,7 +102,8 @@ public class LockableMetadataIndexManager<T> extends MetadataIndexManager<T> {
      * 
      * <p>
      * Callers of the manager are responsible for explicitly locking (and unlocking)
-     * for reading and/or writing, based on application use cases.
+     * for reading and/or writing, based on application use cases. Locking is not needed
+     * merely to make a single lookup or index operation safe, and lookups never take the lock.
      * </p>
      * 
      * @return Returns the rwlock.
@@ -69,6 +111,109 @@ public class LockableMetadataIndexManager<T> extends MetadataIndexManager<T> {
     @Nonnull public ReadWriteLock getReadWriteLock() {
         return readWriteLock;
     }
+    
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public MetadataIndexManager<T> copy(@Nonnull final Function<T, T> remapFunction) {
+        Constraint.isNotNull(remapFunction, "Remap function was null");
+        final MetadataIndexManager<T> copy = new MetadataIndexManager<>(getIndexes(), entityDescriptorFunction);
+        for (final Map.Entry<MetadataIndex, Map<MetadataIndexKey, Set<T>>> index : current.get().entrySet()) {
+            final MetadataIndexStore<T> store = copy.getStore(index.getKey());
+            for (final Map.Entry<MetadataIndexKey, Set<T>> entry : index.getValue().entrySet()) {
+                for (final T item : entry.getValue()) {
+                    final T remapped = remapFunction.apply(item);
+                    if (remapped != null) {
+                        store.add(entry.getKey(), remapped);
+                    }
+                }
+            }
+        }
+        return copy;
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull @NonnullElements
+    public Optional<Set<T>> lookupIndexedItems(@Nonnull final CriteriaSet criteria) {
+        final Map<MetadataIndex, Map<MetadataIndexKey, Set<T>>> version = current.get();
+        return lookupIndexedItems(criteria, (index, key) -> {
+            final Set<T> items = version.get(index).get(key);
+            return items != null ? items : Collections.<T>emptySet();
+        });
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void indexEntityDescriptor(@Nonnull final EntityDescriptor descriptor) {
+        update(descriptor, true);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void deindexEntityDescriptor(@Nonnull final EntityDescriptor descriptor) {
+        update(descriptor, false);
+    }
+    
+    /**
+     * Publish a new version of the indexed data with the data item of the supplied {@link EntityDescriptor}
+     * added to or removed from all the indexes.
+     * 
+     * @param descriptor the entity descriptor to index or de-index
+     * @param add true to index the descriptor, false to de-index it
+     */
+    private void update(@Nonnull final EntityDescriptor descriptor, final boolean add) {
+        final T item = entityDescriptorFunction.apply(descriptor);
+        if (item == null) {
+            return;
+        }
+        
+        final Lock writeLock = readWriteLock.writeLock();
+        try {
+            writeLock.lock();
+            
+            final Map<MetadataIndex, Map<MetadataIndexKey, Set<T>>> version = current.get();
+            final Map<MetadataIndex, Map<MetadataIndexKey, Set<T>>> updated = new HashMap<>(version);
+            for (final Map.Entry<MetadataIndex, Map<MetadataIndexKey, Set<T>>> index : version.entrySet()) {
+                final Set<MetadataIndexKey> keys = index.getKey().generateKeys(descriptor);
+                if (keys != null && !keys.isEmpty()) {
+                    updated.put(index.getKey(), update(index.getValue(), keys, item, add));
+                }
+            }
+            current.set(ImmutableMap.copyOf(updated));
+            
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Build a new version of the data of one index, with the data item added to or removed from the
+     * supplied keys. Keys with no remaining data items are dropped.
+     * 
+     * @param entries the current data of the index
+     * @param keys the index keys to update
+     * @param item the data item
+     * @param add true to add the data item, false to remove it
+     * 
+     * @return the new data of the index
+     */
+    @Nonnull private Map<MetadataIndexKey, Set<T>> update(@Nonnull final Map<MetadataIndexKey, Set<T>> entries,
+            @Nonnull final Set<MetadataIndexKey> keys, @Nonnull final T item, final boolean add) {
+        final Map<MetadataIndexKey, Set<T>> updated = new HashMap<>(entries);
+        for (final MetadataIndexKey key : keys) {
+            final Set<T> items = entries.containsKey(key) ? new HashSet<>(entries.get(key)) : new HashSet<>();
+            if (add) {
+                items.add(item);
+            } else {
+                items.remove(item);
+            }
+            if (items.isEmpty()) {
+                updated.remove(key);
+            } else {
+                updated.put(key, ImmutableSet.copyOf(items));
+            }
+        }
+        return ImmutableMap.copyOf(updated);
+    }
 
-
-}
\ No newline at end of file
+}
@@ -22,6 +22,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -85,6 +86,29 @@ public class MetadataIndexManager<T> {
         }
     }
     
+    /**
+     * Create a new manager with the same indexes, containing the data items of this manager
+     * transformed by the supplied function. Items for which the function returns null are not included.
+     * 
+     * <p>
+     * This allows a new manager to be derived from an existing one without regenerating the index keys
+     * of items which are unchanged, for example when applying an incremental metadata update.
+     * </p>
+     * 
+     * @param remapFunction the function applied to each data item
+     * 
+     * @return the new manager
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull public MetadataIndexManager<T> copy(@Nonnull final Function<T, T> remapFunction) {
+        final MetadataIndexManager<T> copy = new MetadataIndexManager<>(null, entityDescriptorFunction);
+        for (final Map.Entry<MetadataIndex, MetadataIndexStore<T>> entry : indexes.entrySet()) {
+            copy.indexes.put(entry.getKey(), entry.getValue().copy(remapFunction));
+        }
+        return copy;
+    }
+    
     /**
      * Get the set of all {@link MetadataIndex} instances currently initialized.
      * 
@@ -120,14 +144,31 @@ public class MetadataIndexManager<T> {
      */
     @Nonnull @NonnullElements
     public Optional<Set<T>> lookupIndexedItems(@Nonnull final CriteriaSet criteria) {
+        return lookupIndexedItems(criteria, (index, key) -> getStore(index).lookup(key));
+    }
+    
+    /**
+     * Resolve the set of indexed data items based on the indexes currently held, using the supplied function
+     * to look up the data items indexed under each key.
+     * 
+     * @param criteria the criteria set to process
+     * @param lookupFunction function returning the data items indexed under a key of an index
+     * 
+     * @return an {@link Optional} instance containing the indexed data items, as for
+     *          {@link #lookupIndexedItems(CriteriaSet)}
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull @NonnullElements
+    protected Optional<Set<T>> lookupIndexedItems(@Nonnull final CriteriaSet criteria,
+            @Nonnull final BiFunction<MetadataIndex, MetadataIndexKey, Set<T>> lookupFunction) {
         final Set<T> items = new HashSet<>();
         for (final MetadataIndex index : indexes.keySet()) {
             final Set<MetadataIndexKey> keys = index.generateKeys(criteria);
             if (keys != null && !keys.isEmpty()) {
                 final LazySet<T> indexResult = new LazySet<>();
-                final MetadataIndexStore<T> indexStore = getStore(index);
                 for (final MetadataIndexKey key : keys) {
-                    indexResult.addAll(indexStore.lookup(key));
+                    indexResult.addAll(lookupFunction.apply(index, key));
                 }
                 log.trace("MetadataIndex '{}' produced results: {}", index, indexResult);
                 if (items.isEmpty()) {
@@ -18,12 +18,13 @@
 package org.opensaml.saml.metadata.resolver.index.impl;
 
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
 
 import org.opensaml.saml.metadata.resolver.index.MetadataIndexKey;
 
@@ -39,8 +40,17 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
  * for example {@link org.opensaml.saml.saml2.metadata.EntityDescriptor},
  * under one or more instances of {@link MetadataIndexKey}.
  * 
+ * <p>
+ * The data items indexed under each key are held in a concurrent set, so adding or removing an item costs the
+ * same however many items share its key, and lookups never block. Each lookup returns a copy of the set for
+ * the key. Updates under different keys are not atomic with respect to one another, so an item being added
+ * under several keys may be visible under some of them and not yet under others.
+ * {@link LockableMetadataIndexManager} instead publishes immutable versions of all its indexes.
+ * </p>
+ * 
  * @param <T> the type of data being indexed
  */
+@ThreadSafe
 public class MetadataIndexStore<T> {
     
     /** The indexed storage of data. */
@@ -89,28 +99,30 @@ public class MetadataIndexStore<T> {
     public void add(final MetadataIndexKey key, final T item) {
         Constraint.isNotNull(key, "IndexKey was null");
         Constraint.isNotNull(item, "The indexed data element was null");
-        Set<T> items = index.get(key);
-        if (items == null) {
-            items = new HashSet<>();
-            index.put(key, items);
-        }
-        items.add(item);
+        index.compute(key, (k, items) -> {
+            final Set<T> updated = items != null ? items : ConcurrentHashMap.newKeySet();
+            updated.add(item);
+            return updated;
+        });
     }
     
     /**
      * Remove the supplied data item from the index under the supplied {@link MetadataIndexKey}.
      * 
+     * <p>
+     * The key itself is removed once no data items remain indexed under it.
+     * </p>
+     * 
      * @param key the index key
      * @param item the data item to index
      */
     public void remove(final MetadataIndexKey key, final T item) {
         Constraint.isNotNull(key, "IndexKey was null");
         Constraint.isNotNull(item, "The indexed data element was null");
-        final Set<T> items = index.get(key);
-        if (items == null) {
-            return;
-        }
-        items.remove(item);
+        index.computeIfPresent(key, (k, items) -> {
+            items.remove(item);
+            return items.isEmpty() ? null : items;
+        });
     }
     
     /**
@@ -129,5 +141,33 @@ public class MetadataIndexStore<T> {
     public void clear() {
         index.clear();
     }
+    
+    /**
+     * Create a new store containing the data items of this store, each transformed by the supplied function
+     * and indexed under the same keys. Items for which the function returns null are not included.
+     * 
+     * @param remapFunction the function applied to each data item
+     * 
+     * @return the new store
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull public MetadataIndexStore<T> copy(@Nonnull final Function<T, T> remapFunction) {
+        Constraint.isNotNull(remapFunction, "Remap function was null");
+        final MetadataIndexStore<T> copy = new MetadataIndexStore<>();
+        for (final Map.Entry<MetadataIndexKey, Set<T>> entry : index.entrySet()) {
+            final Set<T> items = ConcurrentHashMap.newKeySet();
+            for (final T item : entry.getValue()) {
+                final T remapped = remapFunction.apply(item);
+                if (remapped != null) {
+                    items.add(remapped);
+                }
+            }
+            if (!items.isEmpty()) {
+                copy.index.put(entry.getKey(), items);
+            }
+        }
+        return copy;
+    }
 
 }
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.binding.decoding.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.decoder.MessageDecodeEvent;
+import org.opensaml.saml.common.SAMLObject;
+import org.opensaml.saml.saml2.core.Issuer;
+import org.opensaml.saml.saml2.core.RequestAbstractType;
+import org.opensaml.saml.saml2.core.StatusResponseType;
+
+/**
+ * Helper for populating the {@link MessageDecodeEvent}s recorded by the SAML 2 decoders.
+ */
+final class DecodeEventSupport {
+
+    /** Constructor. */
+    private DecodeEventSupport() {
+
+    }
+
+    /**
+     * Record the binding, and the issuer of the decoded message if there is one.
+     *
+     * @param event the event to populate
+     * @param bindingURI the binding URI of the decoder
+     * @param messageContext the decoded message context, if decoding succeeded
+     */
+    static void populate(@Nonnull final MessageDecodeEvent event, @Nonnull final String bindingURI,
+            @Nullable final MessageContext<SAMLObject> messageContext) {
+        event.setBinding(bindingURI);
+        if (messageContext == null) {
+            return;
+        }
+
+        final SAMLObject message = messageContext.getMessage();
+        Issuer issuer = null;
+        if (message instanceof RequestAbstractType) {
+            issuer = ((RequestAbstractType) message).getIssuer();
+        } else if (message instanceof StatusResponseType) {
+            issuer = ((StatusResponseType) message).getIssuer();
+        }
+        if (issuer != null) {
+            event.setEntityID(issuer.getValue());
+        }
+    }
+
+}
@@ -17,6 +17,7 @@
 
 package org.opensaml.saml.saml2.binding.decoding.impl;
 
+import java.time.Duration;
 import java.time.Instant;
 
 import javax.annotation.Nonnull;
@@ -57,6 +58,7 @@ import org.opensaml.saml.saml2.core.StatusCode;
 import org.opensaml.saml.saml2.metadata.ArtifactResolutionService;
 import org.opensaml.saml.saml2.metadata.RoleDescriptor;
 import org.opensaml.security.SecurityException;
+import org.opensaml.soap.client.AsyncSOAPClient;
 import org.opensaml.soap.client.SOAPClient;
 import org.opensaml.soap.client.http.PipelineFactoryHttpSOAPClient;
 import org.opensaml.soap.common.SOAPException;
@@ -68,6 +70,7 @@ import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.codec.Base64Support;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.Resolver;
@@ -111,6 +114,9 @@ public class HTTPArtifactDecoder extends BaseHttpServletRequestXMLMessageDecoder
     /** SOAP client security configuration profile ID. */
     private String soapClientSecurityConfigurationProfileId;
     
+    /** Maximum time to wait for an {@link AsyncSOAPClient} to complete artifact resolution. */
+    @Nonnull private Duration soapResponseTimeout = Duration.ofSeconds(30);
+    
     /** Identifier generation strategy. */
     private IdentifierGenerationStrategy idStrategy;
 
@@ -351,6 +357,42 @@ public class HTTPArtifactDecoder extends BaseHttpServletRequestXMLMessageDecoder
     @Nonnull public void setSOAPClientSecurityConfigurationProfileId(@Nullable final String profileId) {
         soapClientSecurityConfigurationProfileId = StringSupport.trimOrNull(profileId);
     }
+    
+    /**
+     * Get the maximum time to wait for artifact resolution when the SOAP client is an {@link AsyncSOAPClient}.
+     * 
+     * <p>Defaults to: 30 seconds.</p>
+     * 
+     * @return the timeout
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull public Duration getSOAPResponseTimeout() {
+        return soapResponseTimeout;
+    }
+
+    /**
+     * Set the maximum time to wait for artifact resolution when the SOAP client is an {@link AsyncSOAPClient}.
+     * 
+     * <p>
+     * This bounds the time for which the request thread is held by a slow peer, independently of any
+     * timeouts applied by the SOAP client's HTTP client. The exchange runs on the request thread and is
+     * aborted once the timeout passes. It has no effect on other SOAP clients.
+     * </p>
+     * 
+     * <p>Defaults to: 30 seconds.</p>
+     * 
+     * @param timeout the timeout
+     * 
+     * @since 4.0.0
+     */
+    public void setSOAPResponseTimeout(@Nonnull final Duration timeout) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        Constraint.isNotNull(timeout, "Timeout cannot be null");
+        Constraint.isFalse(timeout.isNegative() || timeout.isZero(), "Timeout must be positive");
+        soapResponseTimeout = timeout;
+    }
 
     /** {@inheritDoc} */
     @Nonnull @NotEmpty public String getBindingURI() {
@@ -459,7 +501,11 @@ public class HTTPArtifactDecoder extends BaseHttpServletRequestXMLMessageDecoder
                     .build();
         
             log.trace("Executing ArtifactResolve over SOAP 1.1 binding to endpoint: {}", ars.getLocation());
-            soapClient.send(ars.getLocation(), opContext);
+            if (soapClient instanceof AsyncSOAPClient) {
+                ((AsyncSOAPClient) soapClient).send(ars.getLocation(), opContext, soapResponseTimeout);
+            } else {
+                soapClient.send(ars.getLocation(), opContext);
+            }
             final SAMLObject response = opContext.getInboundMessageContext().getMessage();
             if (response instanceof ArtifactResponse) {
                 return validateAndExtractResponseMessage((ArtifactResponse) response);
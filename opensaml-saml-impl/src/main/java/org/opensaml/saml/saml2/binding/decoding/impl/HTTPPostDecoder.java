@@ -28,6 +28,7 @@ import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.codec.Base64Support;
 
 import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.decoder.MessageDecodeEvent;
 import org.opensaml.messaging.decoder.MessageDecodingException;
 import org.opensaml.messaging.decoder.servlet.BaseHttpServletRequestXMLMessageDecoder;
 import org.opensaml.saml.common.SAMLObject;
@@ -142,4 +143,11 @@ public class HTTPPostDecoder extends BaseHttpServletRequestXMLMessageDecoder<SAM
         bindingContext.setIntendedDestinationEndpointURIRequired(SAMLBindingSupport.isMessageSigned(messageContext));
     }
     
-}
\ No newline at end of file
+    /** {@inheritDoc} */
+    @Override
+    protected void populateDecodeEvent(@Nonnull final MessageDecodeEvent event) {
+        super.populateDecodeEvent(event);
+        DecodeEventSupport.populate(event, getBindingURI(), getMessageContext());
+    }
+
+}
@@ -31,6 +31,7 @@ import net.shibboleth.utilities.java.support.codec.Base64Support;
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 
 import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.decoder.MessageDecodeEvent;
 import org.opensaml.messaging.decoder.MessageDecodingException;
 import org.opensaml.messaging.decoder.servlet.BaseHttpServletRequestXMLMessageDecoder;
 import org.opensaml.saml.common.SAMLObject;
@@ -160,4 +161,11 @@ public class HTTPRedirectDeflateDecoder extends BaseHttpServletRequestXMLMessage
         bindingContext.setIntendedDestinationEndpointURIRequired(SAMLBindingSupport.isMessageSigned(messageContext));
     }
     
-}
\ No newline at end of file
+    /** {@inheritDoc} */
+    @Override
+    protected void populateDecodeEvent(@Nonnull final MessageDecodeEvent event) {
+        super.populateDecodeEvent(event);
+        DecodeEventSupport.populate(event, getBindingURI(), getMessageContext());
+    }
+
+}
@@ -21,6 +21,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.decoder.MessageDecodeEvent;
 import org.opensaml.messaging.decoder.MessageDecodingException;
 import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.common.binding.BindingDescriptor;
@@ -97,5 +98,12 @@ public class HTTPSOAP11Decoder extends org.opensaml.soap.soap11.decoder.http.imp
         bindingContext.setHasBindingSignature(false);
         bindingContext.setIntendedDestinationEndpointURIRequired(false);
     }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected void populateDecodeEvent(@Nonnull final MessageDecodeEvent event) {
+        super.populateDecodeEvent(event);
+        DecodeEventSupport.populate(event, getBindingURI(), getMessageContext());
+    }
 
-}
\ No newline at end of file
+}
@@ -39,6 +39,8 @@ import org.opensaml.saml.saml2.core.EncryptedElementType;
 import org.opensaml.saml.saml2.encryption.Decrypter;
 import org.opensaml.xmlsec.DecryptionParameters;
 import org.opensaml.xmlsec.context.SecurityParametersContext;
+import org.opensaml.xmlsec.encryption.support.EncryptedKeyResolver;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,6 +77,9 @@ public abstract class AbstractDecryptAction extends AbstractProfileAction {
     /** The decryption object. */
     @Nullable private Decrypter decrypter;
     
+    /** The most recently built decryption object, reused while the resolvers it was built from are unchanged. */
+    @Nullable private volatile CachedDecrypter cachedDecrypter;
+    
     /** Message to operate on. */
     @Nullable private SAMLObject message;
     
@@ -192,12 +197,74 @@ public abstract class AbstractDecryptAction extends AbstractProfileAction {
         if (paramsCtx == null || paramsCtx.getDecryptionParameters() == null) {
             log.debug("{} No security parameter context or decryption parameters", getLogPrefix());
         } else {
-            final DecryptionParameters params = paramsCtx.getDecryptionParameters();
-            decrypter = new Decrypter(params.getDataKeyInfoCredentialResolver(),
-                    params.getKEKKeyInfoCredentialResolver(), params.getEncryptedKeyResolver());
+            decrypter = obtainDecrypter(paramsCtx.getDecryptionParameters());
         }
         
         return super.doPreExecute(profileRequestContext);
     }
     
+    /**
+     * Get a decrypter for the supplied parameters, reusing the previous one if it was built from the same
+     * resolvers.
+     * 
+     * <p>A {@link Decrypter} holds no per-message state, so one instance may be shared between requests.</p>
+     * 
+     * @param params decryption parameters
+     * 
+     * @return  the decrypter
+     */
+    @Nonnull private Decrypter obtainDecrypter(@Nonnull final DecryptionParameters params) {
+        final CachedDecrypter cached = cachedDecrypter;
+        if (cached != null && cached.matches(params)) {
+            return cached.decrypter;
+        }
+        
+        final Decrypter newDecrypter = new Decrypter(params.getDataKeyInfoCredentialResolver(),
+                params.getKEKKeyInfoCredentialResolver(), params.getEncryptedKeyResolver());
+        cachedDecrypter = new CachedDecrypter(params, newDecrypter);
+        return newDecrypter;
+    }
+    
+    /** A decrypter together with the resolvers it was built from. */
+    private static final class CachedDecrypter {
+        
+        /** Data key resolver. */
+        @Nullable private final KeyInfoCredentialResolver dataKeyResolver;
+
+        /** KEK resolver. */
+        @Nullable private final KeyInfoCredentialResolver kekResolver;
+
+        /** EncryptedKey resolver. */
+        @Nullable private final EncryptedKeyResolver encKeyResolver;
+        
+        /** The decrypter. */
+        @Nonnull private final Decrypter decrypter;
+        
+        /**
+         * Constructor.
+         *
+         * @param params the parameters the decrypter was built from
+         * @param theDecrypter the decrypter
+         */
+        CachedDecrypter(@Nonnull final DecryptionParameters params, @Nonnull final Decrypter theDecrypter) {
+            dataKeyResolver = params.getDataKeyInfoCredentialResolver();
+            kekResolver = params.getKEKKeyInfoCredentialResolver();
+            encKeyResolver = params.getEncryptedKeyResolver();
+            decrypter = theDecrypter;
+        }
+        
+        /**
+         * Get whether the decrypter was built from the same resolvers as are in the supplied parameters.
+         *
+         * @param params decryption parameters
+         * 
+         * @return true iff the resolvers are the same instances
+         */
+        boolean matches(@Nonnull final DecryptionParameters params) {
+            return dataKeyResolver == params.getDataKeyInfoCredentialResolver()
+                    && kekResolver == params.getKEKKeyInfoCredentialResolver()
+                    && encKeyResolver == params.getEncryptedKeyResolver();
+        }
+    }
+    
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.security.impl;
+
+import java.time.Duration;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.criterion.ProtocolCriterion;
+import org.opensaml.saml.criterion.RoleDescriptorCriterion;
+import org.opensaml.security.httpclient.impl.TLSTrustEvaluationCache;
+
+import com.google.common.collect.ImmutableSet;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.resolver.Criterion;
+
+/**
+ * A {@link TLSTrustEvaluationCache} which also treats the SAML criteria supplied to TLS trust evaluation by
+ * {@link org.opensaml.saml.common.messaging.soap.SAMLSOAPClientContextBuilder.DefaultTLSCriteriaSetStrategy}
+ * as cacheable, so that evaluations made on behalf of SAML SOAP clients can be cached.
+ *
+ * <p>
+ * {@link ProtocolCriterion} and {@link EntityRoleCriterion} compare by value. {@link RoleDescriptorCriterion}
+ * compares the metadata object it wraps by identity, so entries stop matching once the peer's metadata is
+ * reloaded, which is the desired outcome.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+public class SAMLTLSTrustEvaluationCache extends TLSTrustEvaluationCache {
+
+    /** The cacheable criterion types. */
+    @Nonnull @NonnullElements public static final Set<Class<? extends Criterion>> SAML_CACHEABLE_CRITERIA =
+            ImmutableSet.<Class<? extends Criterion>>builder()
+                .addAll(DEFAULT_CACHEABLE_CRITERIA)
+                .add(ProtocolCriterion.class)
+                .add(EntityRoleCriterion.class)
+                .add(RoleDescriptorCriterion.class)
+                .build();
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the maximum number of entries to hold
+     * @param ttl the time-to-live of entries
+     * @param baseName the base name for Metrics instrumentation, or null to disable instrumentation
+     */
+    public SAMLTLSTrustEvaluationCache(final long maxSize, @Nonnull final Duration ttl,
+            @Nullable final String baseName) {
+        super(maxSize, ttl, SAML_CACHEABLE_CRITERIA, baseName);
+    }
+
+}
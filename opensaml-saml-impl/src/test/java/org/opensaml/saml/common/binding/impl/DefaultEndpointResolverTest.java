@@ -42,6 +42,7 @@ import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.criterion.BindingCriterion;
 import org.opensaml.saml.criterion.EndpointCriterion;
 import org.opensaml.saml.criterion.RoleDescriptorCriterion;
+import org.opensaml.saml.metadata.EndpointIndex;
 import org.opensaml.saml.saml2.metadata.AssertionConsumerService;
 import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
 import org.testng.Assert;
@@ -235,6 +236,29 @@ public class DefaultEndpointResolverTest extends XMLObjectBaseTestCase {
         Assert.assertEquals(eps.size(), 2);
     }
     
+    /** Repeated resolution against the same role reuses its endpoint index. */
+    @Test
+    public void testIndexed() throws UnmarshallingException, ResolverException {
+        endpointCrit.getEndpoint().setLocation(null);
+        endpointCrit.getEndpoint().setBinding(null);
+        endpointCrit.getEndpoint().setIndex(2);
+        final SPSSODescriptor role = loadMetadata("/org/opensaml/saml/common/binding/SPWithEndpoints.xml");
+        final CriteriaSet crits = new CriteriaSet(endpointCrit, new RoleDescriptorCriterion(role));
+        
+        AssertionConsumerService ep = resolver.resolveSingle(crits);
+        Assert.assertNotNull(ep);
+        Assert.assertEquals(ep.getLocation(), LOCATION_POST);
+        Assert.assertEquals(role.getObjectMetadata().get(EndpointIndex.class).size(), 1);
+        final EndpointIndex index = role.getObjectMetadata().get(EndpointIndex.class).get(0);
+        
+        endpointCrit.getEndpoint().setIndex(null);
+        endpointCrit.getEndpoint().setBinding(SAMLConstants.SAML2_ARTIFACT_BINDING_URI);
+        ep = resolver.resolveSingle(crits);
+        Assert.assertNotNull(ep);
+        Assert.assertEquals(ep.getLocation(), LOCATION_ART);
+        Assert.assertSame(role.getObjectMetadata().get(EndpointIndex.class).get(0), index);
+    }
+    
     @Nonnull private SPSSODescriptor loadMetadata(@Nonnull @NotEmpty final String path) throws UnmarshallingException {
         
         try {
@@ -18,9 +18,16 @@
 package org.opensaml.saml.common.binding.security.impl;
 
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.messaging.context.MessageContext;
@@ -32,6 +39,7 @@ import org.opensaml.saml.common.messaging.context.SAMLProtocolContext;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.saml2.core.AuthnRequest;
 import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.security.SecurityException;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.impl.CollectionCredentialResolver;
 import org.opensaml.security.x509.BasicX509Credential;
@@ -39,8 +47,10 @@ import org.opensaml.security.x509.X509Support;
 import org.opensaml.xmlsec.SignatureValidationParameters;
 import org.opensaml.xmlsec.context.SecurityParametersContext;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.signature.Signature;
 import org.opensaml.xmlsec.signature.support.SignatureConstants;
 import org.opensaml.xmlsec.signature.support.SignatureTrustEngine;
+import org.opensaml.xmlsec.signature.support.impl.CachingSignatureTrustEngine;
 import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -172,6 +182,60 @@ public class SAMLProtocolMessageXMLSignatureSecurityHandlerTest extends XMLObjec
                 "Unexpected value for context authentication state");
     }
     
+    /**
+     * Test that a caching trust engine recognizes a repeated signature across messages, each of which is
+     * validated with its own signature validation parameters instance.
+     * 
+     * @throws MessageHandlerException 
+     */
+    @Test
+    public void testCachingTrustEngine() throws MessageHandlerException {
+        trustedCredentials.add(signingX509Cred);
+        
+        final AtomicInteger evaluations = new AtomicInteger();
+        final SignatureTrustEngine countingEngine = new SignatureTrustEngine() {
+            @Nullable public KeyInfoCredentialResolver getKeyInfoResolver() {
+                return signatureTrustEngine.getKeyInfoResolver();
+            }
+            public boolean validate(@Nonnull final Signature token, @Nullable final CriteriaSet trustBasisCriteria)
+                    throws SecurityException {
+                evaluations.incrementAndGet();
+                return signatureTrustEngine.validate(token, trustBasisCriteria);
+            }
+            public boolean validate(@Nonnull final byte[] signature, @Nonnull final byte[] content,
+                    @Nonnull final String algorithmURI, @Nullable final CriteriaSet trustBasisCriteria,
+                    @Nullable final Credential candidateCredential) throws SecurityException {
+                evaluations.incrementAndGet();
+                return signatureTrustEngine.validate(signature, content, algorithmURI, trustBasisCriteria,
+                        candidateCredential);
+            }
+        };
+        final CachingSignatureTrustEngine cachingEngine =
+                new CachingSignatureTrustEngine(countingEngine, 10, Duration.ofMinutes(5));
+        
+        for (int i = 0; i < 2; i++) {
+            final SignatureValidationParameters params = new SignatureValidationParameters();
+            params.setSignatureTrustEngine(cachingEngine);
+            params.setBlacklistedAlgorithms(
+                    Collections.singleton(SignatureConstants.ALGO_ID_DIGEST_NOT_RECOMMENDED_MD5));
+            
+            final MessageContext<SAMLObject> context = new MessageContext<>();
+            context.setMessage(buildInboundSAMLMessage());
+            context.getSubcontext(SAMLPeerEntityContext.class, true).setEntityId(issuer);
+            context.getSubcontext(SAMLPeerEntityContext.class, true).setRole(SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+            context.getSubcontext(SAMLProtocolContext.class, true).setProtocol(SAMLConstants.SAML20P_NS);
+            context.getSubcontext(SecurityParametersContext.class, true).setSignatureValidationParameters(params);
+            
+            handler.invoke(context);
+            
+            Assert.assertTrue(context.getSubcontext(SAMLPeerEntityContext.class, true).isAuthenticated());
+        }
+        
+        // The second message was a cache hit.
+        Assert.assertEquals(evaluations.get(), 1);
+        Assert.assertEquals(cachingEngine.getCacheSize(), 1);
+    }
+    
     /**
      * 
      * Test blacklisted signature algorithm.
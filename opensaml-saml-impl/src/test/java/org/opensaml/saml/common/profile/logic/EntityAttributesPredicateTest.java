@@ -18,6 +18,8 @@
 package org.opensaml.saml.common.profile.logic;
 
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import net.shibboleth.ext.spring.resource.ResourceHelper;
@@ -26,6 +28,10 @@ import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.saml.common.profile.logic.EntityAttributesPredicate.Candidate;
+import org.opensaml.saml.criterion.EntityAttributesCriterion;
+import org.opensaml.saml.metadata.EntityAttributesTags;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
+import org.opensaml.saml.metadata.resolver.index.impl.EntityAttributesMetadataIndex;
 import org.opensaml.saml.metadata.resolver.impl.ResourceBackedMetadataResolver;
 import org.opensaml.saml.saml2.core.Attribute;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
@@ -132,4 +138,40 @@ public class EntityAttributesPredicateTest extends XMLObjectBaseTestCase {
         Assert.assertNotNull(entity2);
         Assert.assertTrue(condition.test(entity2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIndexedCriterion() throws Exception {
+        final Resource resource =
+                new ClassPathResource("/org/opensaml/saml/metadata/resolver/filter/impl/EntitiesDescriptor-Name-metadata.xml");
+        final ResourceBackedMetadataResolver indexedProvider =
+                new ResourceBackedMetadataResolver(null, ResourceHelper.of(resource));
+        indexedProvider.setId("indexed");
+        indexedProvider.setParserPool(parserPool);
+        indexedProvider.setIndexes(Collections.<MetadataIndex>singleton(new EntityAttributesMetadataIndex()));
+        indexedProvider.initialize();
+
+        final Candidate candidate = new Candidate("urn:foo", Attribute.URI_REFERENCE);
+        candidate.setValues(Collections.singletonList("baz"));
+        final EntityAttributesPredicate condition =
+                new EntityAttributesPredicate(Collections.singletonList(candidate), false);
+
+        final Set<String> entityIDs = new HashSet<>();
+        for (final EntityDescriptor entity : indexedProvider.resolve(
+                new CriteriaSet(new EntityAttributesCriterion(condition)))) {
+            Assert.assertFalse(entity.getObjectMetadata().get(EntityAttributesTags.class).isEmpty());
+            entityIDs.add(entity.getEntityID());
+        }
+        Assert.assertEquals(entityIDs, Collections.singleton("https://idp-sub1.example.org"));
+
+        // Inherited from the top-level group.
+        candidate.setValues(Collections.singletonList("bar"));
+        Assert.assertTrue(indexedProvider.resolve(new CriteriaSet(new EntityAttributesCriterion(condition)))
+                .iterator().hasNext());
+        Assert.assertTrue(condition.test(indexedProvider.resolveSingle(
+                new CriteriaSet(new EntityIdCriterion("https://idp-sub2a.example.org")))));
+
+        candidate.setValues(Collections.singletonList("nope"));
+        Assert.assertFalse(indexedProvider.resolve(new CriteriaSet(new EntityAttributesCriterion(condition)))
+                .iterator().hasNext());
+    }
+}
@@ -18,15 +18,32 @@
 package org.opensaml.saml.metadata.resolver.impl;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpStatus;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
 import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
@@ -134,10 +151,230 @@ public class AbstractDynamicHTTPMetadataResolverTest extends XMLObjectBaseTestCa
         Assert.assertNull(result);
     }
     
+    @Test
+    public void testConditionalGET() throws Exception {
+        String entityID = "https://foo1.example.org/idp/shibboleth";
+        String requestURL = "http://mdq.example.org/entities/foo1";
+        
+        StubHttpClient stubClient = new StubHttpClient();
+        MockDynamicHTTPMetadataResolver stubResolver = new MockDynamicHTTPMetadataResolver(stubClient);
+        stubResolver.setId("myStubResolver");
+        stubResolver.setParserPool(parserPool);
+        stubResolver.initialize();
+        
+        try {
+            CriteriaSet criteriaSet = new CriteriaSet(new EntityIdCriterion(entityID), 
+                    new RequestURLCriterion(requestURL));
+            
+            stubClient.statusCode = HttpStatus.SC_OK;
+            EntityDescriptor ed = stubResolver.resolveSingle(criteriaSet);
+            Assert.assertNotNull(ed);
+            Assert.assertEquals(stubClient.requests.size(), 1);
+            Assert.assertNull(stubClient.requests.get(0).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+            
+            // Force a refresh, to which the server answers Not Modified
+            stubClient.statusCode = HttpStatus.SC_NOT_MODIFIED;
+            stubResolver.getBackingStore().getManagementData(entityID).setRefreshTriggerTime(
+                    Instant.now().minusSeconds(1));
+            Assert.assertSame(stubResolver.resolveSingle(criteriaSet), ed);
+            Assert.assertEquals(stubClient.requests.size(), 2);
+            Assert.assertEquals(stubClient.requests.get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue(), 
+                    "\"abc\"");
+            Assert.assertTrue(stubResolver.getBackingStore().getManagementData(entityID).getRefreshTriggerTime()
+                    .isAfter(Instant.now()));
+            
+            // Without an entityID the request is never conditional
+            stubClient.statusCode = HttpStatus.SC_OK;
+            Assert.assertNotNull(stubResolver.resolveSingle(new CriteriaSet(new RequestURLCriterion(requestURL))));
+            Assert.assertEquals(stubClient.requests.size(), 3);
+            Assert.assertNull(stubClient.requests.get(2).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+            
+            // The validators of the unconditional response are now held for the entity
+            stubResolver.getBackingStore().getManagementData(entityID).setRefreshTriggerTime(
+                    Instant.now().minusSeconds(1));
+            Assert.assertNotNull(stubResolver.resolveSingle(criteriaSet));
+            Assert.assertEquals(stubClient.requests.size(), 4);
+            Assert.assertNotNull(stubClient.requests.get(3).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+            
+            // and are discarded with the entity's management data
+            stubResolver.clear(entityID);
+            Assert.assertNotNull(stubResolver.resolveSingle(criteriaSet));
+            Assert.assertEquals(stubClient.requests.size(), 5);
+            Assert.assertNull(stubClient.requests.get(4).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+            
+            // Fetches made without holding the entity's write lock, as by predictive refresh, are unconditional
+            Assert.assertNotNull(stubResolver.fetchFromOriginSource(criteriaSet));
+            Assert.assertEquals(stubClient.requests.size(), 6);
+            Assert.assertNull(stubClient.requests.get(5).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+        } finally {
+            stubResolver.destroy();
+        }
+    }
+    
+    @Test
+    public void testConditionalGETDisabled() throws Exception {
+        String entityID = "https://foo1.example.org/idp/shibboleth";
+        
+        StubHttpClient stubClient = new StubHttpClient();
+        MockDynamicHTTPMetadataResolver stubResolver = new MockDynamicHTTPMetadataResolver(stubClient);
+        stubResolver.setId("myStubResolver");
+        stubResolver.setParserPool(parserPool);
+        stubResolver.setConditionalGETEnabled(false);
+        stubResolver.initialize();
+        
+        try {
+            CriteriaSet criteriaSet = new CriteriaSet(new EntityIdCriterion(entityID), 
+                    new RequestURLCriterion("http://mdq.example.org/entities/foo1"));
+            
+            stubClient.statusCode = HttpStatus.SC_OK;
+            Assert.assertNotNull(stubResolver.resolveSingle(criteriaSet));
+            stubResolver.getBackingStore().getManagementData(entityID).setRefreshTriggerTime(
+                    Instant.now().minusSeconds(1));
+            Assert.assertNotNull(stubResolver.resolveSingle(criteriaSet));
+            Assert.assertEquals(stubClient.requests.size(), 2);
+            Assert.assertNull(stubClient.requests.get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+        } finally {
+            stubResolver.destroy();
+        }
+    }
     
+    @Test
+    public void testCoalescing() throws Exception {
+        StubHttpClient stubClient = new StubHttpClient();
+        stubClient.release = new CountDownLatch(1);
+        MockDynamicHTTPMetadataResolver stubResolver = new MockDynamicHTTPMetadataResolver(stubClient);
+        stubResolver.setId("myStubResolver");
+        stubResolver.setParserPool(parserPool);
+        stubResolver.initialize();
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Lookups by entityID are serialized by the entity's lock, so only these can coalesce
+            final CriteriaSet criteriaSet = new CriteriaSet(new RequestURLCriterion("http://mdq.example.org/foo1"));
+            
+            final Future<EntityDescriptor> leader = executor.submit(() -> stubResolver.resolveSingle(criteriaSet));
+            while (stubClient.requests.isEmpty()) {
+                Thread.sleep(10);
+            }
+            
+            final Thread[] followerThread = new Thread[1];
+            final Future<EntityDescriptor> follower = executor.submit(() -> {
+                followerThread[0] = Thread.currentThread();
+                return stubResolver.resolveSingle(criteriaSet);
+            });
+            // Wait until the follower is parked on the leader's response
+            while (followerThread[0] == null || followerThread[0].getState() != Thread.State.WAITING) {
+                Thread.sleep(10);
+            }
+            stubClient.release.countDown();
+            
+            Assert.assertEquals(leader.get(5, TimeUnit.SECONDS).getEntityID(), entityDescriptor.getEntityID());
+            Assert.assertEquals(follower.get(5, TimeUnit.SECONDS).getEntityID(), entityDescriptor.getEntityID());
+            Assert.assertEquals(stubClient.requests.size(), 1);
+        } finally {
+            stubClient.release.countDown();
+            executor.shutdownNow();
+            stubResolver.destroy();
+        }
+    }
+    
+    @Test
+    public void testPrefetch() throws Exception {
+        String entityID = "https://foo1.example.org/idp/shibboleth";
+        
+        StubHttpClient stubClient = new StubHttpClient();
+        MockDynamicHTTPMetadataResolver stubResolver = new MockDynamicHTTPMetadataResolver(stubClient);
+        stubResolver.setId("myStubResolver");
+        stubResolver.setParserPool(parserPool);
+        stubResolver.setPrefetchEntityIDs(Collections.singletonList(entityID));
+        stubResolver.initialize();
+        
+        try {
+            stubResolver.getPrefetchEntityIDs().add("https://foo2.example.org/idp/shibboleth");
+            Assert.fail("Should fail with an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        
+        try {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (!stubResolver.getBackingStore().getIndexedDescriptors().containsKey(entityID)) {
+                Assert.assertTrue(System.currentTimeMillis() < deadline, "Entity was not prefetched");
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(stubClient.requests.size(), 1);
+            
+            // Served from the backing store
+            Assert.assertNotNull(stubResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID))));
+            Assert.assertEquals(stubClient.requests.size(), 1);
+        } finally {
+            stubResolver.destroy();
+        }
+    }
     
     // Helpers
     
+    /**
+     * HttpClient which answers every request with the entity descriptor, or with a fixed status,
+     * optionally once released.
+     */
+    public class StubHttpClient extends CloseableHttpClient {
+        
+        public int statusCode = HttpStatus.SC_OK;
+        
+        public List<HttpRequest> requests = Collections.synchronizedList(new ArrayList<>());
+        
+        public CountDownLatch release;
+
+        /** {@inheritDoc} */
+        protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+                throws IOException {
+            requests.add(request);
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            StubHttpResponse httpResponse = new StubHttpResponse(statusCode);
+            if (statusCode == HttpStatus.SC_OK) {
+                ByteArrayEntity entity = new ByteArrayEntity(entityDescriptorBytes);
+                entity.setContentType(new BasicHeader(HttpHeaders.CONTENT_TYPE, "text/xml"));
+                httpResponse.setEntity(entity);
+                httpResponse.setHeader(HttpHeaders.ETAG, "\"abc\"");
+            }
+            return httpResponse;
+        }
+
+        /** {@inheritDoc} */
+        public void close() {
+        }
+
+        /** {@inheritDoc} */
+        @Deprecated
+        public HttpParams getParams() {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        @Deprecated
+        public ClientConnectionManager getConnectionManager() {
+            return null;
+        }
+    }
+    
+    public static class StubHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+        
+        public StubHttpResponse(int statusCode) {
+            super(new ProtocolVersion("HTTP", 1, 1), statusCode, null);
+        }
+
+        /** {@inheritDoc} */
+        public void close() {
+        }
+    }
+    
     public static class MockDynamicHTTPMetadataResolver extends AbstractDynamicHTTPMetadataResolver {
         
         /**
@@ -151,7 +388,11 @@ public class AbstractDynamicHTTPMetadataResolverTest extends XMLObjectBaseTestCa
 
         /** {@inheritDoc} */
         protected String buildRequestURL(CriteriaSet criteria) {
-            return criteria.get(RequestURLCriterion.class).requestURL;
+            final RequestURLCriterion requestURLCriterion = criteria.get(RequestURLCriterion.class);
+            if (requestURLCriterion != null) {
+                return requestURLCriterion.requestURL;
+            }
+            return new MetadataQueryProtocolRequestURLBuilder("http://mdq.example.org").apply(criteria);
         }
         
     }
@@ -22,14 +22,17 @@ import java.io.IOException;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.locks.Lock;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
+import org.opensaml.core.config.ConfigurationService;
 import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
@@ -70,6 +73,7 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.collect.Iterables;
@@ -421,6 +425,38 @@ public class AbstractDynamicMetadataResolverTest extends XMLObjectBaseTestCase {
         }
     }
     
+    @Test
+    public void testInitFromPersistentCacheInParallel() throws ComponentInitializationException, ResolverException, IOException {
+        persistentCacheKeyGenerator = new AbstractDynamicMetadataResolver.DefaultCacheKeyGenerator();
+        persistentCacheManager.save(persistentCacheKeyGenerator.apply(ed1), ed1);
+        persistentCacheManager.save(persistentCacheKeyGenerator.apply(ed2), ed2);
+        persistentCacheManager.save(persistentCacheKeyGenerator.apply(ed3), ed3);
+        
+        resolver.setPersistentCacheManager(persistentCacheManager);
+        resolver.setPersistentCacheKeyGenerator(persistentCacheKeyGenerator);
+        resolver.setInitializeFromPersistentCacheInBackground(false);
+        resolver.setPersistentCacheInitializationThreads(3);
+        
+        resolver.initialize();
+        
+        DynamicEntityBackingStore backingStore = resolver.getBackingStore();
+        
+        // These will be there before any resolve() calls, loaded from the persistent cache
+        for (String entityID : Lists.newArrayList(id1, id2, id3)) {
+            Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(entityID));
+            Assert.assertEquals(backingStore.getIndexedDescriptors().get(entityID).size(), 1);
+        }
+        Assert.assertEquals(backingStore.getOrderedDescriptors().size(), 3);
+        
+        Assert.assertTrue(sourceMap.isEmpty());
+        
+        for (String entityID : Lists.newArrayList(id1, id2, id3)) {
+            EntityDescriptor ed = resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+            Assert.assertNotNull(ed);
+            Assert.assertEquals(ed.getEntityID(), entityID);
+        }
+    }
+    
     @Test
     public void testInitFromPersistentCacheWithPredicate() throws ComponentInitializationException, ResolverException, IOException {
         persistentCacheKeyGenerator = new AbstractDynamicMetadataResolver.DefaultCacheKeyGenerator();
@@ -600,6 +636,166 @@ public class AbstractDynamicMetadataResolverTest extends XMLObjectBaseTestCase {
         Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
     }
     
+    @Test
+    public void testAdmissionPolicyMaxEntities() throws ComponentInitializationException, ResolverException {
+        sourceMap.put(id1, ed1);
+        sourceMap.put(id2, ed2);
+        sourceMap.put(id3, ed3);
+        
+        resolver.setMaxEntities(2);
+        resolver.setRemoveIdleEntityData(false);
+        resolver.initialize();
+        
+        testAdmissionPolicy();
+    }
+    
+    @Test
+    public void testAdmissionPolicyMaxEntityBytes() throws ComponentInitializationException, ResolverException {
+        sourceMap.put(id1, ed1);
+        sourceMap.put(id2, ed2);
+        sourceMap.put(id3, ed3);
+        
+        resolver.setMaxEntityBytes(2 * AbstractDynamicMetadataResolver.DEFAULT_ESTIMATED_ENTITY_COST);
+        resolver.setRemoveIdleEntityData(false);
+        resolver.initialize();
+        
+        testAdmissionPolicy();
+    }
+    
+    @Test
+    public void testAdmissionPolicyMetrics() throws ComponentInitializationException, ResolverException {
+        final MetricRegistry previousRegistry = ConfigurationService.get(MetricRegistry.class);
+        final MetricRegistry registry = new MetricRegistry();
+        ConfigurationService.register(MetricRegistry.class, registry);
+        try {
+            sourceMap.put(id1, ed1);
+            sourceMap.put(id2, ed2);
+            sourceMap.put(id3, ed3);
+            
+            resolver.setMaxEntities(2);
+            resolver.setRemoveIdleEntityData(false);
+            resolver.setMetricsBaseName("test.dynamic");
+            resolver.initialize();
+            
+            testAdmissionPolicy();
+            
+            // Each eviction is counted once, as either a rejected admission or an eviction of an admitted entity
+            Assert.assertEquals(registry.getCounters().get("test.dynamic.counter.admissionRejections").getCount(), 1);
+            Assert.assertEquals(registry.getCounters().get("test.dynamic.counter.evictions").getCount(), 0);
+        } finally {
+            if (previousRegistry != null) {
+                ConfigurationService.register(MetricRegistry.class, previousRegistry);
+            } else {
+                ConfigurationService.deregister(MetricRegistry.class);
+            }
+        }
+    }
+    
+    private void testAdmissionPolicy() throws ResolverException {
+        DynamicEntityBackingStore backingStore = resolver.getBackingStore();
+        
+        for (int i = 0; i < 3; i++) {
+            Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        }
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))), ed2);
+        Assert.assertEquals(backingStore.getIndexedDescriptors().size(), 2);
+        
+        // Entity 3 pushes entity 2 out of the admission window, which is colder than entity 1 so is evicted
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id3))), ed3);
+        Assert.assertEquals(backingStore.getIndexedDescriptors().size(), 2);
+        Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id1));
+        Assert.assertFalse(backingStore.getIndexedDescriptors().containsKey(id2));
+        Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id3));
+        Assert.assertEquals(resolver.getEstimatedEntityBytes(), 
+                2 * AbstractDynamicMetadataResolver.DEFAULT_ESTIMATED_ENTITY_COST);
+        
+        // Already within limits
+        resolver.new BackingStoreCleanupSweeper().run();
+        Assert.assertEquals(backingStore.getIndexedDescriptors().size(), 2);
+        
+        resolver.clear();
+        Assert.assertEquals(resolver.getEstimatedEntityBytes(), 0);
+    }
+    
+    @Test
+    public void testEvictColdEntities() throws ComponentInitializationException, ResolverException {
+        sourceMap.put(id1, ed1);
+        sourceMap.put(id2, ed2);
+        sourceMap.put(id3, ed3);
+        
+        resolver.setMaxEntities(2);
+        resolver.setRemoveIdleEntityData(false);
+        resolver.initialize();
+        
+        DynamicEntityBackingStore backingStore = resolver.getBackingStore();
+        
+        for (int i = 0; i < 3; i++) {
+            Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        }
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))), ed2);
+        
+        // While the other entities are in use, admission can't evict them, so the limit is exceeded
+        final Lock lock1 = backingStore.getManagementData(id1).getReadWriteLock().readLock();
+        final Lock lock2 = backingStore.getManagementData(id2).getReadWriteLock().readLock();
+        lock1.lock();
+        lock2.lock();
+        try {
+            for (int i = 0; i < 2; i++) {
+                Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id3))), ed3);
+            }
+            Assert.assertEquals(backingStore.getIndexedDescriptors().size(), 3);
+        } finally {
+            lock2.unlock();
+            lock1.unlock();
+        }
+        
+        // The sweeper then evicts the coldest entity
+        resolver.new BackingStoreCleanupSweeper().run();
+        Assert.assertEquals(backingStore.getIndexedDescriptors().size(), 2);
+        Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id1));
+        Assert.assertFalse(backingStore.getIndexedDescriptors().containsKey(id2));
+        Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id3));
+        Assert.assertEquals(resolver.getEstimatedEntityBytes(), 
+                2 * AbstractDynamicMetadataResolver.DEFAULT_ESTIMATED_ENTITY_COST);
+    }
+    
+    @Test
+    public void testPredictiveRefresh() throws Exception {
+        sourceMap.put(id1, ed1);
+        sourceMap.put(id2, ed2);
+        
+        resolver.setPredictiveRefresh(true);
+        resolver.setPredictiveRefreshMinFrequency(3);
+        resolver.initialize();
+        
+        for (int i = 0; i < 3; i++) {
+            Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        }
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))), ed2);
+        
+        EntityDescriptor ed1Updated = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        ed1Updated.setEntityID(id1);
+        sourceMap.put(id1, ed1Updated);
+        
+        // Due before the next run of the task, but not yet due for refresh on demand
+        DynamicEntityBackingStore backingStore = resolver.getBackingStore();
+        backingStore.getManagementData(id1).setRefreshTriggerTime(Instant.now().plusSeconds(30));
+        backingStore.getManagementData(id2).setRefreshTriggerTime(Instant.now().plusSeconds(30));
+        
+        resolver.new PredictiveRefreshTask().run();
+        Assert.assertEquals(resolver.getHotEntityIDs(), Sets.newHashSet(id1));
+        
+        long deadline = System.currentTimeMillis() + 5000;
+        while (backingStore.getIndexedDescriptors().get(id1).get(0) != ed1Updated 
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertSame(backingStore.getIndexedDescriptors().get(id1).get(0), ed1Updated);
+        Assert.assertTrue(backingStore.getManagementData(id1).getRefreshTriggerTime()
+                .isAfter(Instant.now().plusSeconds(60)));
+        Assert.assertSame(backingStore.getIndexedDescriptors().get(id2).get(0), ed2);
+    }
+    
     // Helper classes
     
     private static class MockDynamicResolver extends AbstractDynamicMetadataResolver {
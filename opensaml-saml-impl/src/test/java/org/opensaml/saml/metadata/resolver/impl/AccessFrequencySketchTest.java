@@ -0,0 +1,76 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test of {@link AccessFrequencySketch}.
+ */
+public class AccessFrequencySketchTest {
+
+    @Test
+    public void testWidth() {
+        Assert.assertEquals(new AccessFrequencySketch(1).getWidth(), 16);
+        Assert.assertEquals(new AccessFrequencySketch(100).getWidth(), 128);
+        Assert.assertEquals(new AccessFrequencySketch(128).getWidth(), 128);
+    }
+
+    @Test
+    public void testFrequency() {
+        final AccessFrequencySketch sketch = new AccessFrequencySketch(1024);
+        Assert.assertEquals(sketch.frequency("urn:test:entity:1"), 0);
+
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("urn:test:entity:1");
+        }
+        sketch.increment("urn:test:entity:2");
+
+        Assert.assertTrue(sketch.frequency("urn:test:entity:1") >= 5);
+        Assert.assertTrue(sketch.frequency("urn:test:entity:2") >= 1);
+        Assert.assertTrue(sketch.frequency("urn:test:entity:1") > sketch.frequency("urn:test:entity:2"));
+    }
+
+    @Test
+    public void testSaturation() {
+        final AccessFrequencySketch sketch = new AccessFrequencySketch(1024);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("urn:test:entity:1");
+        }
+        Assert.assertEquals(sketch.frequency("urn:test:entity:1"), AccessFrequencySketch.MAX_FREQUENCY);
+    }
+
+    @Test
+    public void testAging() {
+        final AccessFrequencySketch sketch = new AccessFrequencySketch(16);
+        for (int i = 0; i < AccessFrequencySketch.MAX_FREQUENCY; i++) {
+            sketch.increment("urn:test:entity:hot");
+        }
+        Assert.assertEquals(sketch.frequency("urn:test:entity:hot"), AccessFrequencySketch.MAX_FREQUENCY);
+
+        // Counters only ever decrease when halved, which must happen within this many accesses
+        boolean aged = false;
+        for (int i = 0; i < 20 * sketch.getWidth() && !aged; i++) {
+            sketch.increment("urn:test:entity:" + i);
+            aged = sketch.frequency("urn:test:entity:hot") < AccessFrequencySketch.MAX_FREQUENCY;
+        }
+        Assert.assertTrue(aged);
+    }
+
+}
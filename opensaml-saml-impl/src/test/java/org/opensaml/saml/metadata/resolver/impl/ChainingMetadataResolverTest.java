@@ -18,17 +18,25 @@
 package org.opensaml.saml.metadata.resolver.impl;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
 import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.saml.common.xml.SAMLSchemaBuilder;
 import org.opensaml.saml.common.xml.SAMLSchemaBuilder.SAML1Version;
 import org.opensaml.saml.metadata.resolver.ChainingMetadataResolver;
+import org.opensaml.saml.metadata.resolver.MemberResolutionCache;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.metadata.resolver.filter.impl.SchemaValidationFilter;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
@@ -44,6 +52,8 @@ public class ChainingMetadataResolverTest extends XMLObjectBaseTestCase {
 
     private String entityID2;
 
+    private ArrayList<MetadataResolver> resolvers;
+
     @BeforeMethod
     protected void setUp() throws Exception {
         entityID = "urn:mace:incommon:washington.edu";
@@ -51,7 +61,7 @@ public class ChainingMetadataResolverTest extends XMLObjectBaseTestCase {
 
         metadataProvider = new ChainingMetadataResolver();
         metadataProvider.setId("test MP provider");
-        ArrayList<MetadataResolver> resolvers = new ArrayList<>();
+        resolvers = new ArrayList<>();
 
         URL mdURL = ChainingMetadataResolverTest.class
                 .getResource("/org/opensaml/saml/saml2/metadata/InCommon-metadata.xml");
@@ -101,4 +111,216 @@ public class ChainingMetadataResolverTest extends XMLObjectBaseTestCase {
         }
     }
 
-}
\ No newline at end of file
+    @Test()
+    public void testParallelResolution() throws Exception {
+        final AbstractDynamicMetadataResolver slowResolver = new AbstractDynamicMetadataResolver(null) {
+            protected XMLObject fetchFromOriginSource(final CriteriaSet criteria) throws IOException {
+                try {
+                    Thread.sleep(5000);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        };
+        slowResolver.setId("slow");
+        slowResolver.setParserPool(parserPool);
+        slowResolver.initialize();
+
+        final ArrayList<MetadataResolver> parallelResolvers = new ArrayList<>();
+        parallelResolvers.add(slowResolver);
+        parallelResolvers.addAll(resolvers);
+
+        final ChainingMetadataResolver parallelProvider = new ChainingMetadataResolver();
+        parallelProvider.setId("parallel");
+        parallelProvider.setResolvers(parallelResolvers);
+        parallelProvider.setParallelResolution(true);
+        parallelProvider.setMemberResolutionTimeout(Duration.ofMillis(250));
+        parallelProvider.initialize();
+
+        try {
+            final long start = System.currentTimeMillis();
+            EntityDescriptor descriptor = parallelProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+            Assert.assertNotNull(descriptor, "Retrieved entity descriptor was null");
+            Assert.assertEquals(descriptor.getEntityID(), entityID, "Entity's ID does not match requested ID");
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000, "Slow resolver was not timed out");
+
+            Assert.assertNull(parallelProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion("urn:test:bogus"))));
+        } finally {
+            parallelProvider.destroy();
+            slowResolver.destroy();
+        }
+    }
+
+    @Test()
+    public void testParallelResolutionBounded() throws Exception {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final AbstractDynamicMetadataResolver slowResolver = buildSlowResolver("slow", fetches, interrupted);
+        final AbstractDynamicMetadataResolver rejectedResolver = buildSlowResolver("rejected", fetches, interrupted);
+
+        final ArrayList<MetadataResolver> parallelResolvers = new ArrayList<>();
+        parallelResolvers.add(slowResolver);
+        parallelResolvers.add(rejectedResolver);
+        parallelResolvers.addAll(resolvers);
+
+        final ChainingMetadataResolver parallelProvider = new ChainingMetadataResolver();
+        parallelProvider.setId("bounded");
+        parallelProvider.setResolvers(parallelResolvers);
+        parallelProvider.setParallelResolution(true);
+        parallelProvider.setMaxResolutionThreads(1);
+        parallelProvider.setMemberResolutionTimeout(Duration.ofMillis(250));
+        parallelProvider.initialize();
+
+        try {
+            // The second dynamic member finds no free thread and is treated as having failed.
+            EntityDescriptor descriptor = parallelProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+            Assert.assertNotNull(descriptor, "Retrieved entity descriptor was null");
+            Assert.assertEquals(descriptor.getEntityID(), entityID, "Entity's ID does not match requested ID");
+            Assert.assertEquals(fetches.get(), 1);
+
+            // The member which timed out is interrupted rather than left holding the only thread.
+            Assert.assertTrue(interrupted.await(2, TimeUnit.SECONDS), "Slow resolver was not interrupted");
+        } finally {
+            parallelProvider.destroy();
+            slowResolver.destroy();
+            rejectedResolver.destroy();
+        }
+    }
+
+    @Test()
+    public void testParallelResolutionBatchShortCircuit() throws Exception {
+        final ChainingMetadataResolver parallelProvider = new ChainingMetadataResolver();
+        parallelProvider.setId("parallel");
+        parallelProvider.setResolvers(resolvers);
+        parallelProvider.setParallelResolution(true);
+        parallelProvider.initialize();
+
+        try {
+            EntityDescriptor descriptor2 = parallelProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID2)));
+            Assert.assertNotNull(descriptor2, "Retrieved entity descriptor was null");
+            Assert.assertEquals(descriptor2.getEntityID(), entityID2, "Entity's ID does not match requested ID");
+        } finally {
+            parallelProvider.destroy();
+        }
+    }
+
+    @Test()
+    public void testFrontCache() throws Exception {
+        final AtomicInteger invocations1 = new AtomicInteger();
+        final AtomicInteger invocations2 = new AtomicInteger();
+        final ArrayList<MetadataResolver> countingResolvers = new ArrayList<>();
+        countingResolvers.add(buildCountingResolver("/org/opensaml/saml/saml2/metadata/InCommon-metadata.xml",
+                "counting1", invocations1));
+        countingResolvers.add(buildCountingResolver("/org/opensaml/saml/saml2/metadata/metadata.switchaai_signed.xml",
+                "counting2", invocations2));
+
+        final ChainingMetadataResolver cachingProvider = new ChainingMetadataResolver();
+        cachingProvider.setId("caching");
+        cachingProvider.setResolvers(countingResolvers);
+        cachingProvider.setFrontCacheEnabled(true);
+        cachingProvider.initialize();
+
+        try {
+            for (int i = 0; i < 2; i++) {
+                invocations1.set(0);
+                invocations2.set(0);
+
+                EntityDescriptor descriptor = cachingProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+                Assert.assertNotNull(descriptor, "Retrieved entity descriptor was null");
+                Assert.assertEquals(descriptor.getEntityID(), entityID, "Entity's ID does not match requested ID");
+
+                EntityDescriptor descriptor2 = cachingProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID2)));
+                Assert.assertNotNull(descriptor2, "Retrieved entity descriptor was null");
+                Assert.assertEquals(descriptor2.getEntityID(), entityID2, "Entity's ID does not match requested ID");
+
+                Assert.assertNull(cachingProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion("urn:test:bogus"))));
+
+                if (i == 0) {
+                    // Full chain walk: the second entity and the unknown entity consult both members.
+                    Assert.assertEquals(invocations1.get(), 3);
+                    Assert.assertEquals(invocations2.get(), 2);
+                } else {
+                    // Cached: only the owning member is consulted, and the unknown entity consults no member.
+                    Assert.assertEquals(invocations1.get(), 1);
+                    Assert.assertEquals(invocations2.get(), 1);
+                }
+            }
+
+            // Invalidation on refresh must not affect results
+            cachingProvider.refresh();
+            invocations1.set(0);
+            invocations2.set(0);
+            EntityDescriptor descriptor = cachingProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+            Assert.assertNotNull(descriptor, "Retrieved entity descriptor was null");
+            Assert.assertNull(cachingProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion("urn:test:bogus"))));
+            Assert.assertEquals(invocations1.get(), 2);
+            Assert.assertEquals(invocations2.get(), 1);
+        } finally {
+            cachingProvider.destroy();
+            for (final MetadataResolver resolver : countingResolvers) {
+                ((FilesystemMetadataResolver) resolver).destroy();
+            }
+        }
+    }
+
+    @Test()
+    public void testFrontCacheDropsOutcomeFromPreviousGeneration() {
+        final MemberResolutionCache cache =
+                new MemberResolutionCache(Collections.<MetadataResolver>emptyList(), 10, Duration.ofMinutes(1), null);
+        final MemberResolutionCache.CacheKey key = cache.buildKey(new CriteriaSet(new EntityIdCriterion(entityID)));
+        Assert.assertNotNull(key);
+
+        // Outcome computed before a member update was detected must not be recorded after it.
+        long generation = cache.getGeneration();
+        cache.invalidateAll();
+        cache.recordNegative(key, generation);
+        Assert.assertFalse(cache.isNegative(key));
+        cache.recordPositive(key, resolvers.get(0), generation);
+        Assert.assertNull(cache.getOwner(key));
+
+        generation = cache.getGeneration();
+        cache.recordNegative(key, generation);
+        Assert.assertTrue(cache.isNegative(key));
+        cache.recordPositive(key, resolvers.get(0), generation);
+        Assert.assertSame(cache.getOwner(key), resolvers.get(0));
+    }
+
+    private AbstractDynamicMetadataResolver buildSlowResolver(final String id, final AtomicInteger fetches,
+            final CountDownLatch interrupted) throws Exception {
+        final AbstractDynamicMetadataResolver resolver = new AbstractDynamicMetadataResolver(null) {
+            protected XMLObject fetchFromOriginSource(final CriteriaSet criteria) throws IOException {
+                fetches.incrementAndGet();
+                try {
+                    Thread.sleep(5000);
+                } catch (final InterruptedException e) {
+                    interrupted.countDown();
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        };
+        resolver.setId(id);
+        resolver.setParserPool(parserPool);
+        resolver.initialize();
+        return resolver;
+    }
+
+    private FilesystemMetadataResolver buildCountingResolver(final String resource, final String id,
+            final AtomicInteger invocations) throws Exception {
+        final FilesystemMetadataResolver resolver = new FilesystemMetadataResolver(
+                new File(ChainingMetadataResolverTest.class.getResource(resource).toURI())) {
+            public Iterable<EntityDescriptor> resolve(final CriteriaSet criteria) throws ResolverException {
+                invocations.incrementAndGet();
+                return super.resolve(criteria);
+            }
+        };
+        resolver.setParserPool(parserPool);
+        // metadata.switchaai_signed.xml has an expired validUntil
+        resolver.setRequireValidMetadata(false);
+        resolver.setId(id);
+        resolver.initialize();
+        return resolver;
+    }
+
+}
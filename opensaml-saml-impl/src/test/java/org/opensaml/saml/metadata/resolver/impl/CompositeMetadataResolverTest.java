@@ -0,0 +1,218 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.io.File;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CompositeMetadataResolverTest extends XMLObjectBaseTestCase {
+
+    private String entityID;
+
+    private String entityID2;
+
+    private FilesystemMetadataResolver fileProvider;
+
+    private FilesystemMetadataResolver fileProvider2;
+
+    private AbstractDynamicMetadataResolver failingResolver;
+
+    private AbstractDynamicMetadataResolver slowResolver;
+
+    private CompositeMetadataResolver compositeResolver;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        entityID = "urn:mace:incommon:washington.edu";
+        entityID2 = "urn:mace:switch.ch:SWITCHaai:ethz.ch";
+
+        URL mdURL = CompositeMetadataResolverTest.class
+                .getResource("/org/opensaml/saml/saml2/metadata/InCommon-metadata.xml");
+        fileProvider = new FilesystemMetadataResolver(new File(mdURL.toURI()));
+        fileProvider.setParserPool(parserPool);
+        fileProvider.setId("fp1");
+        fileProvider.initialize();
+
+        URL mdURL2 = CompositeMetadataResolverTest.class
+                .getResource("/org/opensaml/saml/saml2/metadata/metadata.switchaai_signed.xml");
+        fileProvider2 = new FilesystemMetadataResolver(new File(mdURL2.toURI()));
+        fileProvider2.setParserPool(parserPool);
+        // For this test, need to set this because metadata.switchaai_signed.xml has an expired validUntil
+        fileProvider2.setRequireValidMetadata(false);
+        fileProvider2.setId("fp2");
+        fileProvider2.initialize();
+
+        failingResolver = new AbstractDynamicMetadataResolver(null) {
+            protected XMLObject fetchFromOriginSource(final CriteriaSet criteria) {
+                return null;
+            }
+            public Iterable<EntityDescriptor> resolve(final CriteriaSet criteria) throws ResolverException {
+                throw new ResolverException("Failing resolver");
+            }
+        };
+        failingResolver.setId("failing");
+        failingResolver.setParserPool(parserPool);
+        failingResolver.initialize();
+
+        slowResolver = new AbstractDynamicMetadataResolver(null) {
+            protected XMLObject fetchFromOriginSource(final CriteriaSet criteria) {
+                try {
+                    Thread.sleep(5000);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        };
+        slowResolver.setId("slow");
+        slowResolver.setParserPool(parserPool);
+        slowResolver.initialize();
+
+        compositeResolver = null;
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        if (compositeResolver != null) {
+            compositeResolver.destroy();
+        }
+        slowResolver.destroy();
+        failingResolver.destroy();
+        fileProvider2.destroy();
+        fileProvider.destroy();
+    }
+
+    @Test
+    public void testResolveSingle() throws Exception {
+        for (final boolean parallel : new boolean[] {false, true}) {
+            compositeResolver = buildResolver(parallel, fileProvider, fileProvider2);
+
+            EntityDescriptor descriptor = compositeResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+            Assert.assertNotNull(descriptor, "Retrieved entity descriptor was null");
+            Assert.assertEquals(descriptor.getEntityID(), entityID, "Entity's ID does not match requested ID");
+
+            descriptor = compositeResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID2)));
+            Assert.assertNotNull(descriptor, "Retrieved entity descriptor was null");
+            Assert.assertEquals(descriptor.getEntityID(), entityID2, "Entity's ID does not match requested ID");
+
+            Assert.assertNull(compositeResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion("urn:test:bogus"))));
+
+            compositeResolver.destroy();
+        }
+        compositeResolver = null;
+    }
+
+    @Test
+    public void testResolveSingleFailure() throws Exception {
+        for (final boolean parallel : new boolean[] {false, true}) {
+            compositeResolver = buildResolver(parallel, failingResolver, fileProvider);
+            try {
+                compositeResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+                Assert.fail("Member resolver failure should have been raised, parallel: " + parallel);
+            } catch (final ResolverException e) {
+                Assert.assertEquals(e.getMessage(), "Failing resolver");
+            }
+
+            // A higher-priority answer means the failing member is never consulted.
+            compositeResolver.destroy();
+            compositeResolver = buildResolver(parallel, fileProvider, failingResolver);
+            Assert.assertNotNull(compositeResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID))));
+            compositeResolver.destroy();
+        }
+        compositeResolver = null;
+    }
+
+    @Test
+    public void testResolveSingleTimeout() throws Exception {
+        compositeResolver = buildResolver(true, slowResolver, fileProvider);
+
+        final long start = System.currentTimeMillis();
+        try {
+            compositeResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+            Assert.fail("Member resolver timeout should have been raised");
+        } catch (final ResolverException e) {
+            // expected
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000, "Slow resolver was not timed out");
+    }
+
+    @Test
+    public void testParallelResolve() throws Exception {
+        compositeResolver = buildResolver(true, fileProvider, fileProvider2);
+
+        Assert.assertEquals(collectEntityIDs(compositeResolver.resolve(
+                new CriteriaSet(new EntityIdCriterion(entityID)))).get(0), entityID);
+        Assert.assertEquals(collectEntityIDs(compositeResolver.resolve(
+                new CriteriaSet(new EntityIdCriterion(entityID2)))).get(0), entityID2);
+        Assert.assertTrue(collectEntityIDs(compositeResolver.resolve(
+                new CriteriaSet(new EntityIdCriterion("urn:test:bogus")))).isEmpty());
+    }
+
+    @Test
+    public void testParallelResolveStopsAtFailure() throws Exception {
+        compositeResolver = buildResolver(true, fileProvider, failingResolver, fileProvider2);
+
+        // Answers of members ahead of the failing one are composed, those of members after it are not.
+        Assert.assertEquals(collectEntityIDs(compositeResolver.resolve(
+                new CriteriaSet(new EntityIdCriterion(entityID)))).size(), 1);
+        Assert.assertTrue(collectEntityIDs(compositeResolver.resolve(
+                new CriteriaSet(new EntityIdCriterion(entityID2)))).isEmpty());
+    }
+
+    private CompositeMetadataResolver buildResolver(final boolean parallel, final MetadataResolver... members)
+            throws Exception {
+        final List<MetadataResolver> memberList = new ArrayList<>();
+        for (final MetadataResolver member : members) {
+            memberList.add(member);
+        }
+        final CompositeMetadataResolver resolver = new CompositeMetadataResolver();
+        resolver.setId("composite");
+        resolver.setResolvers(memberList);
+        resolver.setParallelResolution(parallel);
+        resolver.setMemberResolutionTimeout(Duration.ofMillis(250));
+        resolver.initialize();
+        return resolver;
+    }
+
+    private List<String> collectEntityIDs(final Iterable<EntityDescriptor> descriptors) {
+        final List<String> entityIDs = new ArrayList<>();
+        final Iterator<EntityDescriptor> iterator = descriptors.iterator();
+        while (iterator.hasNext()) {
+            entityIDs.add(iterator.next().getEntityID());
+        }
+        return entityIDs;
+    }
+
+}
@@ -19,20 +19,44 @@ package org.opensaml.saml.metadata.resolver.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import javax.crypto.spec.SecretKeySpec;
 
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
+import org.opensaml.core.config.ConfigurationService;
 import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.saml.common.profile.logic.EntityAttributesPredicate;
+import org.opensaml.saml.common.profile.logic.EntityAttributesPredicate.Candidate;
+import org.opensaml.saml.criterion.EntityAttributesCriterion;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterChain;
+import org.opensaml.saml.metadata.resolver.index.impl.EntityAttributesMetadataIndex;
+import org.opensaml.saml.metadata.resolver.index.impl.RoleMetadataIndex;
+import org.opensaml.saml.saml2.core.Attribute;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 
 public class FilesystemMetadataResolverTest extends XMLObjectBaseTestCase {
@@ -61,6 +85,189 @@ public class FilesystemMetadataResolverTest extends XMLObjectBaseTestCase {
         criteriaSet = new CriteriaSet(new EntityIdCriterion(entityID));
     }
 
+    @Test
+    public void testIncrementalIndexing() throws IOException, ResolverException, ComponentInitializationException {
+        File targetFile = File.createTempFile("filesystem-md-provider-test", ".xml");
+        try {
+            Files.copy(mdFile, targetFile);
+            
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setIndexes(Collections.singleton(new RoleMetadataIndex()));
+            metadataProvider.setIncrementalIndexing(true);
+            metadataProvider.initialize();
+            
+            Assert.assertNotNull(metadataProvider.resolveSingle(criteriaSet));
+            
+            // Change one entity, leaving all the others untouched
+            String metadata = new String(java.nio.file.Files.readAllBytes(mdFile.toPath()), StandardCharsets.UTF_8);
+            metadata = metadata.replace("entityID=\"" + entityID + "\"", "entityID=\"urn:example:renamed\"");
+            java.nio.file.Files.write(targetFile.toPath(), metadata.getBytes(StandardCharsets.UTF_8));
+            Assert.assertTrue(targetFile.setLastModified(System.currentTimeMillis() + 60000));
+            
+            metadataProvider.refresh();
+            
+            Assert.assertNull(metadataProvider.resolveSingle(criteriaSet));
+            Assert.assertNotNull(metadataProvider.resolveSingle(
+                    new CriteriaSet(new EntityIdCriterion("urn:example:renamed"))));
+            Assert.assertNotNull(metadataProvider.resolveSingle(
+                    new CriteriaSet(new EntityIdCriterion("urn:mace:incommon:internet2.edu"))));
+            
+            // Secondary index must only contain the currently live instances
+            Set<EntityDescriptor> live = Collections.newSetFromMap(new IdentityHashMap<>());
+            int idpCount = 0;
+            for (EntityDescriptor descriptor : metadataProvider) {
+                live.add(descriptor);
+                if (!descriptor.getRoleDescriptors(IDPSSODescriptor.DEFAULT_ELEMENT_NAME).isEmpty()) {
+                    idpCount++;
+                }
+            }
+            
+            int indexedCount = 0;
+            boolean sawRenamed = false;
+            for (EntityDescriptor descriptor : metadataProvider.resolve(
+                    new CriteriaSet(new EntityRoleCriterion(IDPSSODescriptor.DEFAULT_ELEMENT_NAME)))) {
+                Assert.assertTrue(live.contains(descriptor));
+                Assert.assertNotEquals(descriptor.getEntityID(), entityID);
+                sawRenamed |= "urn:example:renamed".equals(descriptor.getEntityID());
+                indexedCount++;
+            }
+            Assert.assertTrue(sawRenamed);
+            Assert.assertEquals(indexedCount, idpCount);
+        } finally {
+            targetFile.delete();
+        }
+    }
+    
+    @Test
+    public void testIncrementalIndexingGroupContentChange() throws Exception {
+        final File groupFile = new File(FilesystemMetadataResolverTest.class.getResource(
+                "/org/opensaml/saml/metadata/resolver/filter/impl/EntitiesDescriptor-Name-metadata.xml").toURI());
+        File targetFile = File.createTempFile("filesystem-md-provider-test", ".xml");
+        try {
+            Files.copy(groupFile, targetFile);
+            
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setIndexes(Collections.singleton(new EntityAttributesMetadataIndex()));
+            metadataProvider.setIncrementalIndexing(true);
+            metadataProvider.initialize();
+            
+            final Candidate candidate = new Candidate("urn:foo", Attribute.URI_REFERENCE);
+            candidate.setValues(Collections.singletonList("bar"));
+            final CriteriaSet criteria = new CriteriaSet(new EntityAttributesCriterion(
+                    new EntityAttributesPredicate(Collections.singletonList(candidate), false)));
+            Assert.assertTrue(metadataProvider.resolve(criteria).iterator().hasNext());
+            
+            // Change only the tag inherited from the top-level group, leaving every EntityDescriptor untouched
+            String metadata =
+                    new String(java.nio.file.Files.readAllBytes(groupFile.toPath()), StandardCharsets.UTF_8);
+            metadata = metadata.replace("<saml2:AttributeValue>bar</saml2:AttributeValue>",
+                    "<saml2:AttributeValue>qux</saml2:AttributeValue>");
+            java.nio.file.Files.write(targetFile.toPath(), metadata.getBytes(StandardCharsets.UTF_8));
+            Assert.assertTrue(targetFile.setLastModified(System.currentTimeMillis() + 60000));
+            
+            metadataProvider.refresh();
+            
+            Assert.assertFalse(metadataProvider.resolve(criteria).iterator().hasNext());
+            candidate.setValues(Collections.singletonList("qux"));
+            final Set<String> entityIDs = new HashSet<>();
+            for (final EntityDescriptor descriptor : metadataProvider.resolve(criteria)) {
+                entityIDs.add(descriptor.getEntityID());
+            }
+            Assert.assertTrue(entityIDs.contains("https://idp-sub2a.example.org"));
+        } finally {
+            targetFile.delete();
+        }
+    }
+    
+    @Test
+    public void testSnapshotChangedAfterLoad() throws IOException {
+        File snapshotFile = File.createTempFile("filesystem-md-provider-test", ".snapshot");
+        MetadataSnapshotManager snapshotManager = new MetadataSnapshotManager(snapshotFile, 
+                new SecretKeySpec("0123456789abcdef0123456789abcdef".getBytes(), "HmacSHA256"));
+        try {
+            final byte[] metadata = Files.toByteArray(mdFile);
+            snapshotManager.save("test", Instant.now(), Instant.now().plusSeconds(3600), metadata);
+            
+            final MetadataSnapshotManager.Snapshot snapshot = snapshotManager.load("test", Instant.now());
+            Assert.assertNotNull(snapshot);
+            
+            // Modify and then truncate the file after it was verified
+            try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw")) {
+                raf.seek(raf.length() / 2);
+                raf.write(0);
+                raf.setLength(raf.length() / 4);
+            }
+            
+            // The snapshot still yields exactly the verified bytes
+            Assert.assertEquals(snapshot.getMetadataLength(), metadata.length);
+            Assert.assertEquals(ByteStreams.toByteArray(snapshot.getMetadataInputStream()), metadata);
+            Assert.assertNull(snapshotManager.load("test", Instant.now()));
+        } finally {
+            snapshotFile.delete();
+        }
+    }
+    
+    @Test
+    public void testSnapshot() throws IOException, ResolverException, ComponentInitializationException {
+        File targetFile = File.createTempFile("filesystem-md-provider-test", ".xml");
+        File snapshotFile = File.createTempFile("filesystem-md-provider-test", ".snapshot");
+        Assert.assertTrue(snapshotFile.delete());
+        MetadataSnapshotManager snapshotManager = new MetadataSnapshotManager(snapshotFile, 
+                new SecretKeySpec("0123456789abcdef0123456789abcdef".getBytes(), "HmacSHA256"));
+        try {
+            Files.copy(mdFile, targetFile);
+            
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setSnapshotManager(snapshotManager);
+            metadataProvider.initialize();
+            metadataProvider.destroy();
+            Assert.assertTrue(snapshotFile.exists());
+            
+            // Metadata source is gone, so initialization can only succeed via the snapshot
+            Assert.assertTrue(targetFile.delete());
+            
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setSnapshotManager(snapshotManager);
+            metadataProvider.initialize();
+            
+            EntityDescriptor descriptor = metadataProvider.resolveSingle(criteriaSet);
+            Assert.assertNotNull(descriptor, "Retrieved entity descriptor was null");
+            Assert.assertEquals(descriptor.getEntityID(), entityID, "Entity's ID does not match requested ID");
+            metadataProvider.destroy();
+            
+            // Tampered snapshot must be rejected
+            try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw")) {
+                raf.seek(raf.length() / 2);
+                final int b = raf.read();
+                raf.seek(raf.length() / 2);
+                raf.write(b ^ 0x01);
+            }
+            Assert.assertNull(snapshotManager.load(targetFile.getAbsolutePath(), Instant.now()));
+            
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setSnapshotManager(snapshotManager);
+            try {
+                metadataProvider.initialize();
+                Assert.fail("Initialization should have failed with a tampered snapshot and no metadata source");
+            } catch (final ComponentInitializationException e) {
+                // expected
+            }
+        } finally {
+            targetFile.delete();
+            snapshotFile.delete();
+        }
+    }
+    
     /**
      * Tests the {@link HTTPMetadataResolver#lookupEntityID(String)} method.
      * @throws ResolverException 
@@ -234,4 +441,66 @@ public class FilesystemMetadataResolverTest extends XMLObjectBaseTestCase {
         EntityDescriptor entity = metadataProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion("https://idp.example.org")));
         Assert.assertNull(entity);
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testMetrics() throws ComponentInitializationException, ResolverException {
+        final MetricRegistry previousRegistry = ConfigurationService.get(MetricRegistry.class);
+        final MetricRegistry registry = new MetricRegistry();
+        ConfigurationService.register(MetricRegistry.class, registry);
+        try {
+            final MetadataFilterChain chain = new MetadataFilterChain();
+            chain.setFilters(Arrays.<MetadataFilter>asList(new PassThroughFilter(), new PassThroughFilter()));
+            
+            metadataProvider = new FilesystemMetadataResolver(mdFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setMetricsBaseName("test.batch");
+            metadataProvider.setMetadataFilter(chain);
+            metadataProvider.initialize();
+            
+            // The file is unchanged, so this is not re-read.
+            metadataProvider.refresh();
+            
+            Assert.assertEquals(registry.getTimers().get("test.batch.timer.fetch").getCount(), 2);
+            Assert.assertEquals(registry.getTimers().get("test.batch.timer.unmarshall").getCount(), 1);
+            Assert.assertEquals(registry.getTimers().get("test.batch.timer.filter").getCount(), 1);
+            // Members of the same class are timed separately, by position.
+            Assert.assertEquals(
+                    registry.getTimers().get("test.batch.timer.filter.0.PassThroughFilter").getCount(), 1);
+            Assert.assertEquals(
+                    registry.getTimers().get("test.batch.timer.filter.1.PassThroughFilter").getCount(), 1);
+            Assert.assertEquals(registry.getTimers().get("test.batch.timer.index").getCount(), 1);
+            Assert.assertEquals(registry.getHistograms().get("test.batch.histogram.fetchedBytes").getSnapshot()
+                    .getMax(), mdFile.length());
+            Assert.assertEquals(registry.getCounters().get("test.batch.counter.notModified").getCount(), 1);
+            Assert.assertEquals(registry.getGauges().get("test.batch.ratioGauge.notModifiedToFetch").getValue(), 0.5);
+            
+            int count = 0;
+            for (final EntityDescriptor descriptor : metadataProvider) {
+                Assert.assertNotNull(descriptor);
+                count++;
+            }
+            Assert.assertEquals(registry.getGauges().get("test.batch.gauge.numEntities").getValue(), count);
+            Assert.assertTrue((Long) registry.getGauges().get("test.batch.gauge.retainedSizeEstimate").getValue() > 0);
+            
+            metadataProvider.destroy();
+            Assert.assertNull(registry.getGauges().get("test.batch.gauge.numEntities"));
+            Assert.assertNull(registry.getGauges().get("test.batch.ratioGauge.notModifiedToFetch"));
+        } finally {
+            if (previousRegistry != null) {
+                ConfigurationService.register(MetricRegistry.class, previousRegistry);
+            } else {
+                ConfigurationService.deregister(MetricRegistry.class);
+            }
+        }
+    }
+    
+    /** Filter which returns its input unchanged. */
+    private static class PassThroughFilter implements MetadataFilter {
+        
+        /** {@inheritDoc} */
+        public XMLObject filter(final XMLObject metadata) {
+            return metadata;
+        }
+    }
+}
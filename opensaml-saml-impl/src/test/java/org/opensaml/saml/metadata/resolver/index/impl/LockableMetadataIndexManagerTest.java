@@ -0,0 +1,146 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensaml.saml.metadata.resolver.index.impl;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndexKey;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Sets;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+
+/**
+ *
+ */
+public class LockableMetadataIndexManagerTest extends XMLObjectBaseTestCase {
+    
+    @Test
+    public void testLookupWhileIndexing() throws Exception {
+        final EntityDescriptor a = 
+                (EntityDescriptor) XMLObjectSupport.buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        a.setEntityID("urn:test:a");
+        a.getRoleDescriptors().add(
+                (RoleDescriptor) XMLObjectSupport.buildXMLObject(SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        
+        // The indexing of the second index waits until released, leaving the entity half-indexed
+        final AtomicInteger indexed = new AtomicInteger();
+        final CountDownLatch paused = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final LockableMetadataIndexManager<EntityDescriptor> manager = new LockableMetadataIndexManager<>(
+                Sets.newHashSet(
+                        new PausingIndex(new FunctionDrivenMetadataIndex(new UppercaseEntityIdDescriptorFunction(),
+                                new SimpleStringCriteriaFunction()), indexed, paused, release),
+                        new PausingIndex(new RoleMetadataIndex(), indexed, paused, release)),
+                new MetadataIndexManager.IdentityExtractionFunction());
+        
+        final CriteriaSet criteriaSet = new CriteriaSet(new SimpleStringCriterion(a.getEntityID().toUpperCase()),
+                new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> writer = executor.submit(() -> manager.indexEntityDescriptor(a));
+            Assert.assertTrue(paused.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(((ReentrantReadWriteLock) manager.getReadWriteLock()).isWriteLocked());
+            
+            // While the writer holds the lock, the lookup completes against the previous version,
+            // rather than waiting or seeing the half-indexed entity
+            Optional<Set<EntityDescriptor>> result = manager.lookupIndexedItems(criteriaSet);
+            Assert.assertTrue(result.isPresent());
+            Assert.assertTrue(result.get().isEmpty());
+            
+            release.countDown();
+            writer.get(5, TimeUnit.SECONDS);
+            
+            result = manager.lookupIndexedItems(criteriaSet);
+            Assert.assertTrue(result.isPresent());
+            Assert.assertEquals(result.get(), Sets.newHashSet(a));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        
+        final MetadataIndexManager<EntityDescriptor> copy = manager.copy(Function.identity());
+        Assert.assertEquals(copy.lookupIndexedItems(criteriaSet).get(), Sets.newHashSet(a));
+        
+        manager.deindexEntityDescriptor(a);
+        Assert.assertTrue(manager.lookupIndexedItems(criteriaSet).get().isEmpty());
+        Assert.assertEquals(copy.lookupIndexedItems(criteriaSet).get(), Sets.newHashSet(a));
+    }
+    
+    /**
+     * Index which pauses in the second call to index an entity until released.
+     */
+    private static class PausingIndex implements MetadataIndex {
+        
+        private final MetadataIndex delegate;
+        
+        private final AtomicInteger indexed;
+        
+        private final CountDownLatch paused;
+        
+        private final CountDownLatch release;
+        
+        PausingIndex(final MetadataIndex index, final AtomicInteger counter, final CountDownLatch pausedLatch,
+                final CountDownLatch releaseLatch) {
+            delegate = index;
+            indexed = counter;
+            paused = pausedLatch;
+            release = releaseLatch;
+        }
+        
+        /** {@inheritDoc} */
+        public Set<MetadataIndexKey> generateKeys(@Nonnull final EntityDescriptor descriptor) {
+            if (indexed.incrementAndGet() == 2) {
+                paused.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return delegate.generateKeys(descriptor);
+        }
+        
+        /** {@inheritDoc} */
+        public Set<MetadataIndexKey> generateKeys(@Nonnull final CriteriaSet criteriaSet) {
+            return delegate.generateKeys(criteriaSet);
+        }
+        
+    }
+
+}
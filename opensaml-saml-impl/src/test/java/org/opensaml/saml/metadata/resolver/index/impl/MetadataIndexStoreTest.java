@@ -18,6 +18,12 @@
 package org.opensaml.saml.metadata.resolver.index.impl;
 
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opensaml.core.OpenSAMLInitBaseTestCase;
 import org.opensaml.core.xml.util.XMLObjectSupport;
@@ -107,6 +113,86 @@ public class MetadataIndexStoreTest extends OpenSAMLInitBaseTestCase {
         Assert.assertTrue(store.lookup(key2).isEmpty());
     }
     
+    @Test
+    public void testLookupIsSnapshot() {
+        store.add(key1, a);
+        result = store.lookup(key1);
+        
+        store.add(key1, b);
+        store.remove(key1, a);
+        
+        Assert.assertEquals(result.size(), 1);
+        Assert.assertTrue(result.contains(a));
+        
+        result = store.lookup(key1);
+        Assert.assertEquals(result.size(), 1);
+        Assert.assertTrue(result.contains(b));
+    }
+    
+    @Test
+    public void testRemoveLastItemRemovesKey() {
+        store.add(key1, a);
+        store.add(key2, b);
+        
+        store.remove(key1, a);
+        Assert.assertEquals(store.getKeys().size(), 1);
+        Assert.assertTrue(store.getKeys().contains(key2));
+    }
+    
+    @Test
+    public void testConcurrentLookupDuringIndexing() throws Exception {
+        final MetadataIndexStore<String> strings = new MetadataIndexStore<>();
+        strings.add(key1, "stable");
+        
+        final int writers = 4;
+        final int itemsPerWriter = 2000;
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        try {
+            final Future<Long> reader = executor.submit(() -> {
+                start.await();
+                long lookups = 0;
+                while (!done.get()) {
+                    // Each writer's items come and go, but the stable item is never absent from a version.
+                    Assert.assertTrue(strings.lookup(key1).contains("stable"));
+                    lookups++;
+                }
+                return lookups;
+            });
+            
+            final Future<?>[] ingest = new Future<?>[writers];
+            for (int w = 0; w < writers; w++) {
+                final String prefix = "writer" + w + "-";
+                ingest[w] = executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < itemsPerWriter; i++) {
+                        strings.add(key1, prefix + i);
+                        strings.add(key2, prefix + i);
+                        if (i % 2 == 0) {
+                            strings.remove(key1, prefix + i);
+                        }
+                    }
+                    return null;
+                });
+            }
+            
+            start.countDown();
+            for (final Future<?> future : ingest) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            done.set(true);
+            Assert.assertTrue(reader.get(30, TimeUnit.SECONDS) > 0);
+        } finally {
+            done.set(true);
+            executor.shutdownNow();
+        }
+        
+        // No update lost to a concurrent writer on the same key.
+        Assert.assertEquals(strings.lookup(key1).size(), 1 + writers * itemsPerWriter / 2);
+        Assert.assertEquals(strings.lookup(key2).size(), writers * itemsPerWriter);
+    }
+    
     @Test
     public void testGetKeys() {
         Set<MetadataIndexKey> keys = null;
@@ -161,5 +247,32 @@ public class MetadataIndexStoreTest extends OpenSAMLInitBaseTestCase {
         Assert.assertTrue(store.lookup(key1).isEmpty());
         Assert.assertTrue(store.lookup(key2).isEmpty());
     }
+    
+    @Test
+    public void testCopy() {
+        store.add(key1, a);
+        store.add(key1, b);
+        store.add(key2, b);
+        store.add(key2, c);
+        
+        // Replace a with c, drop b
+        MetadataIndexStore<EntityDescriptor> copy = store.copy(item -> item == a ? c : (item == b ? null : item));
+        
+        result = copy.lookup(key1);
+        Assert.assertEquals(result.size(), 1);
+        Assert.assertTrue(result.contains(c));
+        result = copy.lookup(key2);
+        Assert.assertEquals(result.size(), 1);
+        Assert.assertTrue(result.contains(c));
+        
+        // Original is untouched
+        Assert.assertEquals(store.lookup(key1).size(), 2);
+        Assert.assertEquals(store.lookup(key2).size(), 2);
+        
+        // Keys with no remaining items are not carried over
+        copy = store.copy(item -> item == c ? item : null);
+        Assert.assertEquals(copy.getKeys().size(), 1);
+        Assert.assertTrue(copy.lookup(key1).isEmpty());
+    }
 
 }
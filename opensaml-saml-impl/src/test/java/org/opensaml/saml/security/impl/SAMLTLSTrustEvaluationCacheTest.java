@@ -0,0 +1,128 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.security.impl;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Collections;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.messaging.context.InOutOperationContext;
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.saml.common.messaging.context.SAMLMetadataContext;
+import org.opensaml.saml.common.messaging.context.SAMLPeerEntityContext;
+import org.opensaml.saml.common.messaging.context.SAMLProtocolContext;
+import org.opensaml.saml.common.messaging.soap.SAMLSOAPClientContextBuilder;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.security.credential.impl.StaticCredentialResolver;
+import org.opensaml.security.httpclient.impl.TLSTrustEvaluationCache;
+import org.opensaml.security.trust.impl.ExplicitKeyTrustEngine;
+import org.opensaml.security.x509.BasicX509Credential;
+import org.opensaml.security.x509.TrustedNamesCriterion;
+import org.opensaml.security.x509.X509Support;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+
+/**
+ * Test of {@link SAMLTLSTrustEvaluationCache}.
+ */
+public class SAMLTLSTrustEvaluationCacheTest extends XMLObjectBaseTestCase {
+
+    private static final String CERT_BASE64 =
+        "MIIDoTCCAomgAwIBAgIBATANBgkqhkiG9w0BAQsFADAWMRQwEgYDVQQDEwtpbnRl" +
+        "cjFBMS1jYTAeFw0xNzAyMDMwMTMyNDVaFw00NzAxMjcwMTMyNDVaMBoxGDAWBgNV" +
+        "BAMTD2Zvby5leGFtcGxlLm9yZzCCASIwDQYJKoZIhvcNAQEBBQADggEPADCCAQoC" +
+        "ggEBAL/cnQxLllYVWcqoCspH/JAl5jNS78h9abf4o1o33ViuZe/02YOGUdMOMqxu" +
+        "r4BLwFhjtN7IVhAMv+YhH7O8/gOxp93oJnrG4Q/geCLgMzAAtw6uHgJcixxICB9a" +
+        "TNfyuZ4KPAJEwl5w4i8J7ide1eBK/WSiBB6/myKmQB19PnRU9KZSvgtAm2ijXds7" +
+        "XYHraDMvEc1EswyWirkUNhtYk6p1c+oGfX24YL+BNbJ3PeT6idXAqUBnHq3vUOVe" +
+        "wK2FMwcfCIos4qu+AMJKnlbkwF8HMBiQR13BtyyYHQw0VYE+VHVxDK0XZ9p6jvQG" +
+        "qv5SAfcdGDzRAAHpQNsVqHQatFkCAwEAAaOB9TCB8jAJBgNVHRMEAjAAMBEGCWCG" +
+        "SAGG+EIBAQQEAwIGwDAOBgNVHQ8BAf8EBAMCBeAwLAYJYIZIAYb4QgENBB8WHU9w" +
+        "ZW5TU0wgR2VuZXJhdGVkIENlcnRpZmljYXRlMB0GA1UdDgQWBBQxojzySd67rLKg" +
+        "U23YGPRtnfcONzA9BgNVHSMENjA0gBSnuJrDbyNck7bu/CYpxLFDXnSAIqEZpBcw" +
+        "FTETMBEGA1UEAxMKaW50ZXIxQS1jYYIBATA2BgNVHREELzAtgg9mb28uZXhhbXBs" +
+        "ZS5vcmeGGmh0dHBzOi8vZm9vLmV4YW1wbGUub3JnL3NwMA0GCSqGSIb3DQEBCwUA" +
+        "A4IBAQBe4cftx6AD1v4xdAbqgJgTQ5vXNHa0OdJVERRVB5U0Px0YkUgj0VpOKvGg" +
+        "1m+IpjGKx/J7MjFxsLqMN8Q2gkIxDUczikTDWQTie5QfVIgip1dqZPoBXN7UQJ6Q" +
+        "LGdCNjgRByvvDdtWpQjvzadtyxWw2a9Cpva43XDdcFScXn8V8qp3DdiiDOEmNxQ4" +
+        "lBsmJ0+lm8bhG8VvYJxo5Qe5BlmeK5eyi+0gimaec7iRRaJk0NUZiTTySB9Yeow3" +
+        "L17DkPa0YM9cmPms2ZPAq7nzLpAO7LK9dMFrLXC6K084d++YmDMSf90Gw82ErvFB" +
+        "xinVEwHmBHMMDCbP07ctdt8gQaAb";
+
+    private BasicX509Credential cred;
+
+    private ExplicitKeyTrustEngine trustEngine;
+
+    private IDPSSODescriptor roleDescriptor;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        final X509Certificate cert = X509Support.decodeCertificate(CERT_BASE64);
+        cred = new BasicX509Credential(cert);
+        cred.setEntityCertificateChain(Collections.singletonList(cert));
+        trustEngine = new ExplicitKeyTrustEngine(new StaticCredentialResolver(cred));
+        roleDescriptor = buildXMLObject(IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+    }
+
+    @Test
+    public void testSOAPClientCriteria() {
+        final CriteriaSet criteria = buildSOAPCriteria();
+        Assert.assertNull(new TLSTrustEvaluationCache(10, Duration.ofMinutes(5), null)
+                .buildKey(cred, trustEngine, criteria));
+
+        final SAMLTLSTrustEvaluationCache cache = new SAMLTLSTrustEvaluationCache(10, Duration.ofMinutes(5), null);
+        final TLSTrustEvaluationCache.CacheKey key = cache.buildKey(cred, trustEngine, criteria);
+        Assert.assertNotNull(key);
+        Assert.assertFalse(cache.isTrusted(key));
+        cache.recordTrusted(key, cred);
+
+        // A later request to the same peer builds its criteria afresh.
+        Assert.assertTrue(cache.isTrusted(cache.buildKey(cred, trustEngine, buildSOAPCriteria())));
+
+        // A reloaded role descriptor no longer matches.
+        roleDescriptor = buildXMLObject(IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        Assert.assertFalse(cache.isTrusted(cache.buildKey(cred, trustEngine, buildSOAPCriteria())));
+    }
+
+    /**
+     * Build the criteria a SAML SOAP client supplies to the TLS socket factory for a request.
+     * 
+     * @return the criteria
+     */
+    private CriteriaSet buildSOAPCriteria() {
+        final MessageContext<Object> messageContext = new MessageContext<>();
+        final InOutOperationContext<Object,Object> opContext = new InOutOperationContext<>(null, messageContext);
+        opContext.getSubcontext(SAMLProtocolContext.class, true).setProtocol(SAMLConstants.SAML20P_NS);
+        final SAMLPeerEntityContext peerContext = opContext.getSubcontext(SAMLPeerEntityContext.class, true);
+        peerContext.setEntityId("https://foo.example.org/idp");
+        peerContext.setRole(IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        peerContext.getSubcontext(SAMLMetadataContext.class, true).setRoleDescriptor(roleDescriptor);
+
+        final CriteriaSet criteria =
+                new SAMLSOAPClientContextBuilder.DefaultTLSCriteriaSetStrategy().apply(messageContext);
+        // Added by the socket factory.
+        criteria.add(new TrustedNamesCriterion(Collections.singleton("foo.example.org")));
+        return criteria;
+    }
+
+}
@@ -20,6 +20,7 @@ package org.opensaml.security.httpclient.impl;
 import java.util.Collections;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509KeyManager;
@@ -122,6 +123,27 @@ public final class SecurityEnhancedHttpClientSupport {
      */
     @Nonnull public static LayeredConnectionSocketFactory buildTLSSocketFactory(final boolean supportTrustEngine, 
             final boolean supportClientTLS) {
+        return buildTLSSocketFactory(supportTrustEngine, supportClientTLS, null);
+    }
+    
+    /**
+     * Build an instance of TLS-capable {@link LayeredConnectionSocketFactory}.
+     * 
+     * <p>
+     * As {@link #buildTLSSocketFactory(boolean, boolean)}, but if <code>supportTrustEngine</code> is true,
+     * positive trust engine decisions are cached in the supplied {@link TLSTrustEvaluationCache}.
+     * </p>
+     * 
+     * @param supportTrustEngine whether to support server TLS via a context trust engine
+     * @param supportClientTLS whether to support client TLS via a context client credential
+     * @param trustEvaluationCache cache of positive trust decisions, or null
+     * 
+     * @return a TLS socket factory
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull public static LayeredConnectionSocketFactory buildTLSSocketFactory(final boolean supportTrustEngine, 
+            final boolean supportClientTLS, @Nullable final TLSTrustEvaluationCache trustEvaluationCache) {
         
         final TLSSocketFactoryBuilder wrappedFactoryBuilder = new TLSSocketFactoryBuilder();
         
@@ -138,8 +160,12 @@ public final class SecurityEnhancedHttpClientSupport {
                         Collections.<KeyManager>singletonList(new ThreadLocalX509CredentialKeyManager()));
             }
             
-            return new SecurityEnhancedTLSSocketFactory(wrappedFactoryBuilder.build(), new StrictHostnameVerifier(), 
-                    supportTrustEngine);
+            final SecurityEnhancedTLSSocketFactory factory = new SecurityEnhancedTLSSocketFactory(
+                    wrappedFactoryBuilder.build(), new StrictHostnameVerifier(), supportTrustEngine);
+            if (supportTrustEngine) {
+                factory.setTrustEvaluationCache(trustEvaluationCache);
+            }
+            return factory;
             
         } else {
             return HttpClientSupport.buildStrictTLSSocketFactory();
@@ -111,6 +111,11 @@ import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
  * </p>
  * 
  * <p>
+ * If a {@link TLSTrustEvaluationCache} is supplied, positive trust engine decisions are cached, so that repeated 
+ * connections to the same peer with the same trust engine and criteria skip the trust engine evaluation.
+ * </p>
+ * 
+ * <p>
  * Client TLS support requires use of a compatible {@link javax.net.ssl.KeyManager} implementation configured in the 
  * {@link javax.net.ssl.SSLContext} of the wrapped {@link LayeredConnectionSocketFactory}, such as
  * {@link org.opensaml.security.x509.tls.impl.ThreadLocalX509CredentialKeyManager}.
@@ -136,6 +141,9 @@ public class SecurityEnhancedTLSSocketFactory implements LayeredConnectionSocket
      * Default: true. */
     private boolean engineRequired = true;
     
+    /** Optional cache of positive trust decisions. */
+    @Nullable private TLSTrustEvaluationCache trustEvaluationCache;
+    
     /**
      * Constructor. 
      * 
@@ -198,6 +206,30 @@ public class SecurityEnhancedTLSSocketFactory implements LayeredConnectionSocket
     public boolean isTrustEngineRequired() {
         return engineRequired;
     }
+    
+    /**
+     * Get the cache of positive trust decisions.
+     * 
+     * @return the cache, or null
+     * 
+     * @since 4.0.0
+     */
+    @Nullable public TLSTrustEvaluationCache getTrustEvaluationCache() {
+        return trustEvaluationCache;
+    }
+    
+    /**
+     * Set the cache of positive trust decisions.
+     * 
+     * <p>Default: null, trust engine evaluation is performed for every new socket.</p>
+     * 
+     * @param cache the cache, or null
+     * 
+     * @since 4.0.0
+     */
+    public void setTrustEvaluationCache(@Nullable final TLSTrustEvaluationCache cache) {
+        trustEvaluationCache = cache;
+    }
 
     /** {@inheritDoc} */
     public Socket createSocket(final HttpContext context) throws IOException {
@@ -319,11 +351,23 @@ public class SecurityEnhancedTLSSocketFactory implements LayeredConnectionSocket
 
         final X509Credential credential = extractCredential(sslSocket);
         
+        final TLSTrustEvaluationCache cache = trustEvaluationCache;
+        final TLSTrustEvaluationCache.CacheKey cacheKey =
+                cache != null ? cache.buildKey(credential, trustEngine, criteriaSet) : null;
+        if (cacheKey != null && cache.isTrusted(cacheKey)) {
+            log.debug("Credential previously evaluated as trusted");
+            context.setAttribute(HttpClientSecurityConstants.CONTEXT_KEY_SERVER_TLS_CREDENTIAL_TRUSTED, Boolean.TRUE);
+            return;
+        }
+        
         try {
             if (trustEngine.validate(credential, criteriaSet)) {
                 log.debug("Credential evaluated as trusted");
                 context.setAttribute(HttpClientSecurityConstants.CONTEXT_KEY_SERVER_TLS_CREDENTIAL_TRUSTED, 
                         Boolean.TRUE);
+                if (cacheKey != null) {
+                    cache.recordTrusted(cacheKey, credential);
+                }
             } else {
                 context.setAttribute(HttpClientSecurityConstants.CONTEXT_KEY_SERVER_TLS_CREDENTIAL_TRUSTED, 
                         Boolean.FALSE);
@@ -0,0 +1,334 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.security.httpclient.impl;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.metrics.MetricsSupport;
+import org.opensaml.security.criteria.PeerEntityIDCriterion;
+import org.opensaml.security.criteria.UsageCriterion;
+import org.opensaml.security.trust.TrustEngine;
+import org.opensaml.security.x509.TrustedNamesCriterion;
+import org.opensaml.security.x509.X509Credential;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.Criterion;
+
+/**
+ * Bounded cache of positive server TLS trust decisions, for use by {@link SecurityEnhancedTLSSocketFactory}
+ * and {@link TrustEngineTLSSocketFactory}.
+ *
+ * <p>
+ * Entries are keyed by a digest of the peer's certificate chain, the identity of the {@link TrustEngine}
+ * which evaluated it, and the criteria it was evaluated against. An entry lives for at most the configured
+ * time-to-live, and never beyond the earliest expiry of a certificate in the chain. Negative decisions are
+ * never cached.
+ * </p>
+ *
+ * <p>
+ * Only criteria sets consisting solely of criteria whose types are in the configured set of cacheable types
+ * are cacheable, by default {@link UsageCriterion}, {@link TrustedNamesCriterion}, {@link EntityIdCriterion}
+ * and {@link PeerEntityIDCriterion}. Anything else may carry state whose effect on the outcome cannot be
+ * captured by the key. Cacheable criterion types must implement value equality. SAML SOAP clients supply
+ * further SAML criteria, and should use org.opensaml.saml.security.impl.SAMLTLSTrustEvaluationCache instead.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+public class TLSTrustEvaluationCache {
+
+    /** Metric name for the counter of cache hits. */
+    public static final String METRIC_COUNTER_HIT = "counter.hit";
+
+    /** Metric name for the counter of cache misses. */
+    public static final String METRIC_COUNTER_MISS = "counter.miss";
+
+    /** Metric name for the gauge of the number of cache entries. */
+    public static final String METRIC_GAUGE_SIZE = "gauge.size";
+
+    /** The default cacheable criterion types. */
+    @Nonnull @NonnullElements public static final Set<Class<? extends Criterion>> DEFAULT_CACHEABLE_CRITERIA =
+            ImmutableSet.of(UsageCriterion.class, TrustedNamesCriterion.class, EntityIdCriterion.class,
+                    PeerEntityIDCriterion.class);
+
+    /** Digest algorithm applied to the certificate chain. */
+    @Nonnull private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(TLSTrustEvaluationCache.class);
+
+    /** Cache of positive outcomes, mapping to the time at which each expires. */
+    @Nonnull private final Cache<CacheKey,Instant> cache;
+
+    /** The time-to-live of entries. */
+    @Nonnull private final Duration timeToLive;
+
+    /** The cacheable criterion types. */
+    @Nonnull @NonnullElements private final Set<Class<? extends Criterion>> cacheableCriteria;
+
+    /** Base name for Metrics instrumentation, may be null. */
+    @Nullable private final String metricsBaseName;
+
+    /** Counter for hits. */
+    @Nullable private final Counter hits;
+
+    /** Counter for misses. */
+    @Nullable private final Counter misses;
+
+    /** Gauge for the number of cache entries. */
+    @Nullable private final Gauge<Long> gaugeSize;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the maximum number of entries to hold
+     * @param ttl the time-to-live of entries
+     * @param baseName the base name for Metrics instrumentation, or null to disable instrumentation
+     */
+    public TLSTrustEvaluationCache(final long maxSize, @Nonnull final Duration ttl,
+            @Nullable final String baseName) {
+        this(maxSize, ttl, DEFAULT_CACHEABLE_CRITERIA, baseName);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the maximum number of entries to hold
+     * @param ttl the time-to-live of entries
+     * @param criteriaTypes the cacheable criterion types
+     * @param baseName the base name for Metrics instrumentation, or null to disable instrumentation
+     */
+    public TLSTrustEvaluationCache(final long maxSize, @Nonnull final Duration ttl,
+            @Nonnull @NonnullElements final Collection<Class<? extends Criterion>> criteriaTypes,
+            @Nullable final String baseName) {
+        Constraint.isGreaterThan(0, maxSize, "Maximum cache size must be greater than 0");
+        Constraint.isNotNull(ttl, "TTL cannot be null");
+        Constraint.isFalse(ttl.isNegative() || ttl.isZero(), "TTL must be positive");
+        cacheableCriteria =
+                ImmutableSet.copyOf(Constraint.isNotNull(criteriaTypes, "Cacheable criteria cannot be null"));
+
+        timeToLive = ttl;
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+
+        metricsBaseName = baseName;
+        final MetricRegistry metricRegistry = baseName != null ? MetricsSupport.getMetricRegistry() : null;
+        if (metricRegistry != null) {
+            hits = metricRegistry.counter(MetricRegistry.name(baseName, METRIC_COUNTER_HIT));
+            misses = metricRegistry.counter(MetricRegistry.name(baseName, METRIC_COUNTER_MISS));
+            gaugeSize = MetricsSupport.register(MetricRegistry.name(baseName, METRIC_GAUGE_SIZE),
+                    new Gauge<Long>() {
+                        public Long getValue() {
+                            return cache.size();
+                        }},
+                    true);
+        } else {
+            hits = null;
+            misses = null;
+            gaugeSize = null;
+        }
+    }
+
+    /**
+     * Build the cache key for a trust evaluation.
+     *
+     * @param credential the peer credential to be evaluated
+     * @param trustEngine the trust engine which will evaluate it
+     * @param criteria the criteria it will be evaluated against
+     *
+     * @return the cache key, or null if the evaluation is not cacheable
+     */
+    @Nullable public CacheKey buildKey(@Nonnull final X509Credential credential,
+            @Nonnull final TrustEngine<?> trustEngine, @Nullable final CriteriaSet criteria) {
+
+        final Set<Criterion> criteriaCopy;
+        if (criteria == null) {
+            criteriaCopy = Collections.emptySet();
+        } else {
+            for (final Criterion criterion : criteria) {
+                if (!cacheableCriteria.contains(criterion.getClass())) {
+                    log.trace("Criterion of type {} is not cacheable", criterion.getClass().getName());
+                    return null;
+                }
+            }
+            criteriaCopy = ImmutableSet.copyOf(criteria);
+        }
+
+        final Collection<X509Certificate> chain = credential.getEntityCertificateChain();
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            if (chain.isEmpty()) {
+                digest.update(credential.getEntityCertificate().getEncoded());
+            } else {
+                for (final X509Certificate cert : chain) {
+                    digest.update(cert.getEncoded());
+                }
+            }
+            return new CacheKey(digest.digest(), trustEngine, criteriaCopy);
+        } catch (final NoSuchAlgorithmException | CertificateEncodingException e) {
+            log.debug("Unable to digest certificate chain, trust evaluation will not be cached", e);
+            return null;
+        }
+    }
+
+    /**
+     * Get whether a live positive outcome is cached for the key.
+     *
+     * @param key the cache key
+     *
+     * @return true if the credential was previously evaluated as trusted
+     */
+    public boolean isTrusted(@Nonnull final CacheKey key) {
+        final Instant expiry = cache.getIfPresent(key);
+        if (expiry != null) {
+            if (Instant.now().isBefore(expiry)) {
+                if (hits != null) {
+                    hits.inc();
+                }
+                return true;
+            }
+            cache.invalidate(key);
+        }
+
+        if (misses != null) {
+            misses.inc();
+        }
+        return false;
+    }
+
+    /**
+     * Record a positive outcome.
+     *
+     * @param key the cache key
+     * @param credential the credential which was evaluated as trusted
+     */
+    public void recordTrusted(@Nonnull final CacheKey key, @Nonnull final X509Credential credential) {
+        Instant expiry = Instant.now().plus(timeToLive);
+        final Collection<X509Certificate> chain = credential.getEntityCertificateChain();
+        for (final X509Certificate cert : chain.isEmpty() ?
+                Collections.singleton(credential.getEntityCertificate()) : chain) {
+            final Instant notAfter = cert.getNotAfter().toInstant();
+            if (notAfter.isBefore(expiry)) {
+                expiry = notAfter;
+            }
+        }
+        cache.put(key, expiry);
+    }
+
+    /**
+     * Discard all entries.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Deregister any Metrics instrumentation which was registered by this instance.
+     */
+    public void deregisterMetrics() {
+        if (gaugeSize != null) {
+            MetricsSupport.remove(MetricRegistry.name(metricsBaseName, METRIC_GAUGE_SIZE), gaugeSize);
+        }
+    }
+
+    /**
+     * Cache key.
+     */
+    public static final class CacheKey {
+
+        /** Digest of the certificate chain. */
+        @Nonnull private final byte[] chainDigest;
+
+        /** The trust engine, compared by identity. */
+        @Nonnull private final TrustEngine<?> engine;
+
+        /** The criteria. */
+        @Nonnull @NonnullElements private final Set<Criterion> criteria;
+
+        /**
+         * Constructor.
+         *
+         * @param digest digest of the certificate chain
+         * @param trustEngine the trust engine
+         * @param criteriaSet the criteria
+         */
+        private CacheKey(@Nonnull final byte[] digest, @Nonnull final TrustEngine<?> trustEngine,
+                @Nonnull @NonnullElements final Set<Criterion> criteriaSet) {
+            chainDigest = digest;
+            engine = trustEngine;
+            criteria = criteriaSet;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            int result = Arrays.hashCode(chainDigest);
+            result = 31 * result + System.identityHashCode(engine);
+            result = 31 * result + criteria.hashCode();
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof CacheKey) {
+                final CacheKey other = (CacheKey) obj;
+                return engine == other.engine && Arrays.equals(chainDigest, other.chainDigest)
+                        && criteria.equals(other.criteria);
+            }
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return "CacheKey [engine=" + engine.getClass().getName() + ", criteria=" + criteria + "]";
+        }
+    }
+
+}
@@ -84,6 +84,11 @@ import org.slf4j.LoggerFactory;
  * {@link X509HostnameVerifier#verify(String, SSLSocket)}.
  * </p>
  * 
+ * <p>
+ * If a {@link TLSTrustEvaluationCache} is supplied, positive trust engine decisions are cached, so that repeated 
+ * connections to the same peer with the same trust engine and criteria skip the trust engine evaluation.
+ * </p>
+ * 
  * @deprecated use instead {@link SecurityEnhancedTLSSocketFactory}.
  */
 @Deprecated
@@ -98,6 +103,9 @@ public class TrustEngineTLSSocketFactory implements LayeredConnectionSocketFacto
     /** The hostname verifier evaluated by this implementation. */
     @Nullable private X509HostnameVerifier hostnameVerifier;
     
+    /** Optional cache of positive trust decisions. */
+    @Nullable private TLSTrustEvaluationCache trustEvaluationCache;
+    
     /**
      * Constructor. 
      * 
@@ -110,6 +118,30 @@ public class TrustEngineTLSSocketFactory implements LayeredConnectionSocketFacto
         wrappedFactory = Constraint.isNotNull(factory, "Socket factory was null");
         hostnameVerifier = verifier;
     }
+    
+    /**
+     * Get the cache of positive trust decisions.
+     * 
+     * @return the cache, or null
+     * 
+     * @since 4.0.0
+     */
+    @Nullable public TLSTrustEvaluationCache getTrustEvaluationCache() {
+        return trustEvaluationCache;
+    }
+    
+    /**
+     * Set the cache of positive trust decisions.
+     * 
+     * <p>Default: null, trust engine evaluation is performed for every new socket.</p>
+     * 
+     * @param cache the cache, or null
+     * 
+     * @since 4.0.0
+     */
+    public void setTrustEvaluationCache(@Nullable final TLSTrustEvaluationCache cache) {
+        trustEvaluationCache = cache;
+    }
 
     /** {@inheritDoc} */
     public Socket createSocket(final HttpContext context) throws IOException {
@@ -187,11 +219,23 @@ public class TrustEngineTLSSocketFactory implements LayeredConnectionSocketFacto
 
         final X509Credential credential = extractCredential(sslSocket);
         
+        final TLSTrustEvaluationCache cache = trustEvaluationCache;
+        final TLSTrustEvaluationCache.CacheKey cacheKey =
+                cache != null ? cache.buildKey(credential, trustEngine, criteriaSet) : null;
+        if (cacheKey != null && cache.isTrusted(cacheKey)) {
+            log.debug("Credential previously evaluated as trusted");
+            context.setAttribute(HttpClientSecurityConstants.CONTEXT_KEY_SERVER_TLS_CREDENTIAL_TRUSTED, Boolean.TRUE);
+            return;
+        }
+        
         try {
             if (trustEngine.validate(credential, criteriaSet)) {
                 log.debug("Credential evaluated as trusted");
                 context.setAttribute(HttpClientSecurityConstants.CONTEXT_KEY_SERVER_TLS_CREDENTIAL_TRUSTED, 
                         Boolean.TRUE);
+                if (cacheKey != null) {
+                    cache.recordTrusted(cacheKey, credential);
+                }
             } else {
                 log.debug("Credential evaluated as untrusted");
                 context.setAttribute(HttpClientSecurityConstants.CONTEXT_KEY_SERVER_TLS_CREDENTIAL_TRUSTED, 
@@ -22,10 +22,12 @@ import java.io.InputStream;
 import java.net.Socket;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
@@ -35,9 +37,11 @@ import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
 import org.apache.http.conn.ssl.StrictHostnameVerifier;
 import org.apache.http.protocol.HttpContext;
+import org.opensaml.security.SecurityException;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.impl.StaticCredentialResolver;
 import org.opensaml.security.httpclient.HttpClientSecurityConstants;
+import org.opensaml.security.trust.TrustEngine;
 import org.opensaml.security.trust.impl.ExplicitKeyTrustEngine;
 import org.opensaml.security.x509.BasicX509Credential;
 import org.opensaml.security.x509.X509Credential;
@@ -46,6 +50,8 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+
 public class SecurityEnhancedTLSSocketFactoryTest {
     
     private static final String DATA_PATH = "/org/opensaml/security/x509/impl/";
@@ -110,6 +116,34 @@ public class SecurityEnhancedTLSSocketFactoryTest {
        Assert.assertEquals(httpContext.getAttribute(HttpClientSecurityConstants.CONTEXT_KEY_SERVER_TLS_CREDENTIAL_TRUSTED), Boolean.TRUE);
     }
     
+    @Test
+    public void testSuccessWithEngineCached() throws IOException {
+       X509Credential cred = getCredential("foo-1A1-good.crt");
+       final ExplicitKeyTrustEngine delegate = new ExplicitKeyTrustEngine(new StaticCredentialResolver(cred));
+       final AtomicInteger evaluations = new AtomicInteger();
+       TrustEngine<Credential> trustEngine = new TrustEngine<Credential>() {
+           public boolean validate(Credential token, CriteriaSet criteria) throws SecurityException {
+               evaluations.incrementAndGet();
+               return delegate.validate(token, criteria);
+           }
+       };
+       
+       securityEnhancedSocketFactory = new SecurityEnhancedTLSSocketFactory(buildInnerSSLFactory(
+               Collections.singletonList((Certificate)cred.getEntityCertificate()), hostname), null);
+       securityEnhancedSocketFactory.setTrustEvaluationCache(
+               new TLSTrustEvaluationCache(10, Duration.ofMinutes(5), null));
+       
+       for (int i = 0; i < 3; i++) {
+           httpContext = new HttpClientContext();
+           httpContext.setAttribute(HttpClientSecurityConstants.CONTEXT_KEY_TRUST_ENGINE, trustEngine);
+           Socket socket = securityEnhancedSocketFactory.createSocket(httpContext);
+           securityEnhancedSocketFactory.connectSocket(0, socket, new HttpHost(hostname, 443, "https"), null, null, httpContext);
+           Assert.assertEquals(httpContext.getAttribute(HttpClientSecurityConstants.CONTEXT_KEY_SERVER_TLS_CREDENTIAL_TRUSTED), Boolean.TRUE);
+       }
+       
+       Assert.assertEquals(evaluations.get(), 1);
+    }
+    
     @Test
     public void testSuccessWithEngineAndVerifier() throws IOException {
        X509Credential cred = getCredential("foo-1A1-good.crt");
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.security.httpclient.impl;
+
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Collections;
+
+import org.opensaml.core.config.ConfigurationService;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.credential.impl.StaticCredentialResolver;
+import org.opensaml.security.criteria.UsageCriterion;
+import org.opensaml.security.trust.impl.ExplicitKeyTrustEngine;
+import org.opensaml.security.x509.BasicX509Credential;
+import org.opensaml.security.x509.TrustedNamesCriterion;
+import org.opensaml.security.x509.X509Credential;
+import org.opensaml.security.x509.X509Support;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.Criterion;
+
+/**
+ * Test of {@link TLSTrustEvaluationCache}.
+ */
+public class TLSTrustEvaluationCacheTest {
+
+    private static final String DATA_PATH = "/org/opensaml/security/x509/impl/";
+
+    private X509Credential cred;
+
+    private ExplicitKeyTrustEngine trustEngine;
+
+    private TLSTrustEvaluationCache cache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        cred = getCredential("foo-1A1-good.crt");
+        trustEngine = new ExplicitKeyTrustEngine(new StaticCredentialResolver(cred));
+        cache = new TLSTrustEvaluationCache(10, Duration.ofMinutes(5), null);
+    }
+
+    @Test
+    public void testPositive() {
+        final TLSTrustEvaluationCache.CacheKey key = cache.buildKey(cred, trustEngine, buildCriteria("foo.example.org"));
+        Assert.assertNotNull(key);
+        Assert.assertFalse(cache.isTrusted(key));
+
+        cache.recordTrusted(key, cred);
+        Assert.assertTrue(cache.isTrusted(cache.buildKey(cred, trustEngine, buildCriteria("foo.example.org"))));
+
+        cache.invalidateAll();
+        Assert.assertFalse(cache.isTrusted(key));
+    }
+
+    @Test
+    public void testKeyedByEngineAndCriteria() {
+        cache.recordTrusted(cache.buildKey(cred, trustEngine, buildCriteria("foo.example.org")), cred);
+
+        Assert.assertFalse(cache.isTrusted(cache.buildKey(cred, trustEngine, buildCriteria("bar.example.org"))));
+        Assert.assertFalse(cache.isTrusted(cache.buildKey(cred,
+                new ExplicitKeyTrustEngine(new StaticCredentialResolver(cred)), buildCriteria("foo.example.org"))));
+        Assert.assertFalse(cache.isTrusted(cache.buildKey(getCredential("foo-1A1-revoked.crt"), trustEngine,
+                buildCriteria("foo.example.org"))));
+    }
+
+    @Test
+    public void testUncacheableCriteria() {
+        final CriteriaSet criteria = buildCriteria("foo.example.org");
+        criteria.add(new Criterion() {});
+        Assert.assertNull(cache.buildKey(cred, trustEngine, criteria));
+    }
+
+    @Test
+    public void testExpiredCertificate() {
+        final X509Credential expired = getCredential("foo-1A1-expired.crt");
+        final TLSTrustEvaluationCache.CacheKey key =
+                cache.buildKey(expired, trustEngine, buildCriteria("foo.example.org"));
+        cache.recordTrusted(key, expired);
+        Assert.assertFalse(cache.isTrusted(key));
+    }
+
+    @Test
+    public void testMetrics() {
+        final MetricRegistry previous = ConfigurationService.get(MetricRegistry.class);
+        final MetricRegistry registry = new MetricRegistry();
+        ConfigurationService.register(MetricRegistry.class, registry);
+        try {
+            final TLSTrustEvaluationCache instrumented =
+                    new TLSTrustEvaluationCache(10, Duration.ofMinutes(5), "test");
+            final TLSTrustEvaluationCache.CacheKey key =
+                    instrumented.buildKey(cred, trustEngine, buildCriteria("foo.example.org"));
+            instrumented.isTrusted(key);
+            instrumented.recordTrusted(key, cred);
+            instrumented.isTrusted(key);
+            instrumented.isTrusted(key);
+
+            Assert.assertEquals(registry.counter("test." + TLSTrustEvaluationCache.METRIC_COUNTER_MISS).getCount(), 1);
+            Assert.assertEquals(registry.counter("test." + TLSTrustEvaluationCache.METRIC_COUNTER_HIT).getCount(), 2);
+            Assert.assertEquals(
+                    registry.getGauges().get("test." + TLSTrustEvaluationCache.METRIC_GAUGE_SIZE).getValue(), 1L);
+
+            instrumented.deregisterMetrics();
+            Assert.assertFalse(registry.getGauges().containsKey("test." + TLSTrustEvaluationCache.METRIC_GAUGE_SIZE));
+        } finally {
+            if (previous != null) {
+                ConfigurationService.register(MetricRegistry.class, previous);
+            } else {
+                ConfigurationService.deregister(MetricRegistry.class);
+            }
+        }
+    }
+
+    private CriteriaSet buildCriteria(final String hostname) {
+        return new CriteriaSet(new UsageCriterion(UsageType.SIGNING),
+                new TrustedNamesCriterion(Collections.singleton(hostname)));
+    }
+
+    private BasicX509Credential getCredential(final String entityCertFileName) {
+        final X509Certificate entityCert = getCertificate(entityCertFileName);
+        final BasicX509Credential credential = new BasicX509Credential(entityCert);
+        credential.setEntityCertificateChain(Collections.singletonList(entityCert));
+        return credential;
+    }
+
+    private X509Certificate getCertificate(final String fileName) {
+        try (final InputStream ins = getClass().getResourceAsStream(DATA_PATH + fileName)) {
+            final byte[] encoded = new byte[ins.available()];
+            ins.read(encoded);
+            return X509Support.decodeCertificates(encoded).iterator().next();
+        } catch (final Exception e) {
+            Assert.fail("Could not create certificate from file: " + fileName + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+}
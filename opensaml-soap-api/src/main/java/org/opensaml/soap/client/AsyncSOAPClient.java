@@ -0,0 +1,86 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.soap.client;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+import org.opensaml.messaging.context.InOutOperationContext;
+import org.opensaml.security.SecurityException;
+import org.opensaml.soap.common.SOAPException;
+
+/**
+ * A {@link SOAPClient} which can also send a message without blocking the calling thread for the exchange, or
+ * with a bound on the time for which the calling thread is blocked.
+ *
+ * @since 4.0.0
+ */
+@ThreadSafe
+public interface AsyncSOAPClient extends SOAPClient {
+
+    /**
+     * Sends a message and returns immediately.
+     *
+     * <p>
+     * The returned future completes with the supplied operation context once the response has been received
+     * and processed, exactly as on return from {@link #send(String, InOutOperationContext)}. It completes
+     * exceptionally with the {@link org.opensaml.soap.common.SOAPException} or
+     * {@link org.opensaml.security.SecurityException} which that method would have thrown, or if the
+     * request could not be scheduled.
+     * </p>
+     *
+     * <p>
+     * Cancelling the future abandons the exchange and releases the resources held by it. The operation context
+     * must then be discarded, as it may have been partially populated.
+     * </p>
+     *
+     * @param endpoint the endpoint to which to send the message
+     * @param context the operation context containing the outbound SOAP message
+     *
+     * @return a future for the completed operation context
+     */
+    @Nonnull CompletableFuture<InOutOperationContext> sendAsync(@Nonnull @NotEmpty final String endpoint,
+            @Nonnull final InOutOperationContext context);
+
+    /**
+     * Sends a message and waits for a response on the calling thread, abandoning the exchange if it has not
+     * completed within the supplied time.
+     *
+     * <p>
+     * An abandoned exchange fails with a {@link SOAPException}, and the operation context must then be
+     * discarded, as it may have been partially populated.
+     * </p>
+     *
+     * @param endpoint the endpoint to which to send the message
+     * @param context the operation context containing the outbound SOAP message
+     * @param timeout the maximum time to wait for the exchange to complete
+     *
+     * @throws SOAPException thrown if there is a problem sending the message or receiving the response, if the
+     *             response is a SOAP fault, or if the exchange did not complete in time
+     * @throws SecurityException thrown if the response does not meet any security policy associated with the message
+     *             context
+     */
+    void send(@Nonnull @NotEmpty final String endpoint, @Nonnull final InOutOperationContext context,
+            @Nonnull final Duration timeout) throws SOAPException, SecurityException;
+
+}
@@ -22,6 +22,21 @@ import static org.opensaml.security.httpclient.HttpClientSecurityConstants.CONTE
 import static org.opensaml.security.httpclient.HttpClientSecurityConstants.CONTEXT_KEY_SERVER_TLS_FAILURE_IS_FATAL;
 
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
@@ -46,6 +61,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.messaging.context.InOutOperationContext;
 import org.opensaml.messaging.context.httpclient.HttpClientRequestContext;
 import org.opensaml.messaging.decoder.MessageDecodingException;
@@ -60,7 +76,7 @@ import org.opensaml.security.criteria.UsageCriterion;
 import org.opensaml.security.httpclient.HttpClientSecurityParameters;
 import org.opensaml.security.httpclient.HttpClientSecuritySupport;
 import org.opensaml.security.messaging.HttpClientSecurityContext;
-import org.opensaml.soap.client.SOAPClient;
+import org.opensaml.soap.client.AsyncSOAPClient;
 import org.opensaml.soap.client.SOAPClientContext;
 import org.opensaml.soap.client.SOAPFaultException;
 import org.opensaml.soap.common.SOAP11FaultDecodingException;
@@ -68,15 +84,56 @@ import org.opensaml.soap.common.SOAPException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 /**
  * SOAP client that is based on {@link HttpClientMessagePipeline}.
  * 
+ * <p>
+ * Asynchronous sends via {@link #sendAsync(String, InOutOperationContext)} run the same pipeline on an
+ * {@link ExecutorService}. Timed sends via {@link #send(String, InOutOperationContext, Duration)} run it on the
+ * calling thread, and abort the HTTP request if it has not completed in time. Both are limited to a maximum
+ * number of concurrent requests to each endpoint (scheme, host and port). Requests beyond the limit fail
+ * immediately rather than queueing behind a slow peer. The duration of each exchange is recorded under
+ * {@link #METRIC_TIMER_SEND}, and requests refused because of the limit are counted under
+ * {@link #METRIC_COUNTER_REJECTED}.
+ * </p>
+ * 
  * @param <OutboundMessageType> the outbound message type
  * @param <InboundMessageType> the inbound message type
  */
 @ThreadSafe
 public abstract class AbstractPipelineHttpSOAPClient<OutboundMessageType, InboundMessageType> 
-        extends AbstractInitializableComponent implements SOAPClient {
+        extends AbstractInitializableComponent implements AsyncSOAPClient {
+
+    /**
+     * Metric name for the timer of SOAP exchanges.
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_SEND = "timer.send";
+
+    /**
+     * Metric name for the counter of asynchronous requests refused by the per-endpoint concurrency limit.
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull @NotEmpty public static final String METRIC_COUNTER_REJECTED = "counter.rejected";
+
+    /**
+     * Default maximum number of concurrent requests to each endpoint.
+     * 
+     * @since 4.0.0
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS_PER_ENDPOINT = 20;
+
+    /**
+     * Number of threads in the executor created when none is supplied.
+     * 
+     * @since 4.0.0
+     */
+    public static final int DEFAULT_EXECUTOR_THREADS = 50;
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractPipelineHttpSOAPClient.class);
@@ -90,9 +147,25 @@ public abstract class AbstractPipelineHttpSOAPClient<OutboundMessageType, Inboun
     /** Strategy for building the criteria set which is input to the TLS trust engine. */
     @Nullable private Function<InOutOperationContext<?, ?>, CriteriaSet> tlsCriteriaSetStrategy;
     
+    /** Executor used for asynchronous sends. */
+    @NonnullAfterInit private ExecutorService executorService;
+    
+    /** Whether we created our own executor during initialization. */
+    private boolean createdOwnExecutorService;
+    
+    /** Scheduler used to abandon timed sends. */
+    @NonnullAfterInit private ScheduledThreadPoolExecutor timeoutScheduler;
+    
+    /** Maximum number of concurrent asynchronous or timed requests to each endpoint, or 0 for no limit. */
+    private int maxConcurrentRequestsPerEndpoint;
+    
+    /** Permits for asynchronous and timed requests, indexed by endpoint. */
+    @Nonnull private final Map<String,Semaphore> endpointPermits = new ConcurrentHashMap<>();
+    
     /** Constructor. */
     public AbstractPipelineHttpSOAPClient() {
         super();
+        maxConcurrentRequestsPerEndpoint = DEFAULT_MAX_CONCURRENT_REQUESTS_PER_ENDPOINT;
     }
 
     /** {@inheritDoc} */
@@ -103,6 +176,25 @@ public abstract class AbstractPipelineHttpSOAPClient<OutboundMessageType, Inboun
         if (httpClient == null) {
             throw new ComponentInitializationException("HttpClient cannot be null");
         } 
+        
+        final ThreadFactory threadFactory = r -> {
+            final Thread thread = new Thread(r, "SOAPClient-" + getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        };
+        
+        if (executorService == null) {
+            log.debug("Creating private executor for asynchronous SOAP requests");
+            // No queue, so requests beyond the thread limit are refused rather than left waiting.
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_EXECUTOR_THREADS,
+                    DEFAULT_EXECUTOR_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory);
+            executor.allowCoreThreadTimeOut(true);
+            executorService = executor;
+            createdOwnExecutorService = true;
+        }
+        
+        timeoutScheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+        timeoutScheduler.setRemoveOnCancelPolicy(true);
     }
     
     /** {@inheritDoc} */
@@ -111,6 +203,15 @@ public abstract class AbstractPipelineHttpSOAPClient<OutboundMessageType, Inboun
         httpClient = null;
         httpClientSecurityParameters = null;
         tlsCriteriaSetStrategy = null;
+        if (createdOwnExecutorService) {
+            executorService.shutdownNow();
+        }
+        executorService = null;
+        if (timeoutScheduler != null) {
+            timeoutScheduler.shutdownNow();
+            timeoutScheduler = null;
+        }
+        endpointPermits.clear();
         
         super.doDestroy();
     }
@@ -184,13 +285,168 @@ public abstract class AbstractPipelineHttpSOAPClient<OutboundMessageType, Inboun
         tlsCriteriaSetStrategy = function;
     }
     
+    /**
+     * Get the executor used for asynchronous sends.
+     * 
+     * @return the executor
+     * 
+     * @since 4.0.0
+     */
+    @NonnullAfterInit public ExecutorService getExecutorService() {
+        return executorService;
+    }
+    
+    /**
+     * Set the executor used for asynchronous sends.
+     * 
+     * <p>
+     * If not supplied, a private executor of {@link #DEFAULT_EXECUTOR_THREADS} threads will be created at
+     * initialization time and shut down when this client is destroyed. It refuses requests when all of its
+     * threads are busy.
+     * </p>
+     * 
+     * @param executor the executor, may be null
+     * 
+     * @since 4.0.0
+     */
+    public void setExecutorService(@Nullable final ExecutorService executor) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        executorService = executor;
+    }
+    
+    /**
+     * Get the maximum number of concurrent asynchronous or timed requests to each endpoint.
+     * 
+     * <p>Defaults to: {@link #DEFAULT_MAX_CONCURRENT_REQUESTS_PER_ENDPOINT}.</p>
+     * 
+     * @return the maximum number of concurrent requests per endpoint
+     * 
+     * @since 4.0.0
+     */
+    public int getMaxConcurrentRequestsPerEndpoint() {
+        return maxConcurrentRequestsPerEndpoint;
+    }
+    
+    /**
+     * Set the maximum number of concurrent asynchronous or timed requests to each endpoint.
+     * 
+     * <p>
+     * Limiting each endpoint to fewer requests than the executor has threads prevents a single slow peer
+     * from occupying all of them.
+     * </p>
+     * 
+     * <p>Defaults to: {@link #DEFAULT_MAX_CONCURRENT_REQUESTS_PER_ENDPOINT}.</p>
+     * 
+     * @param max the maximum number of concurrent requests per endpoint, or 0 for no limit
+     * 
+     * @since 4.0.0
+     */
+    public void setMaxConcurrentRequestsPerEndpoint(final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        maxConcurrentRequestsPerEndpoint =
+                (int) Constraint.isGreaterThanOrEqual(0, max, "Maximum concurrent requests cannot be negative");
+    }
+    
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<InOutOperationContext> sendAsync(@Nonnull @NotEmpty final String endpoint,
+            @Nonnull final InOutOperationContext operationContext) {
+        Constraint.isNotNull(endpoint, "Endpoint cannot be null");
+        Constraint.isNotNull(operationContext, "Operation context cannot be null");
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        final Exchange exchange = new Exchange();
+        
+        final Semaphore permits;
+        try {
+            permits = acquireEndpointPermit(endpoint);
+        } catch (final SOAPException e) {
+            exchange.completeExceptionally(e);
+            return exchange;
+        }
+        
+        try {
+            executorService.execute(() -> {
+                try {
+                    if (exchange.start()) {
+                        doSend(endpoint, operationContext, exchange);
+                        exchange.complete(operationContext);
+                    }
+                } catch (final SOAPException | SecurityException | RuntimeException e) {
+                    exchange.completeExceptionally(e);
+                } finally {
+                    exchange.finish();
+                    releaseEndpointPermit(permits);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            releaseEndpointPermit(permits);
+            exchange.completeExceptionally(new SOAPException("Could not schedule SOAP request to: " + endpoint, e));
+        }
+        
+        return exchange;
+    }
+    
+    /** {@inheritDoc} */
+    public void send(@Nonnull @NotEmpty final String endpoint, @Nonnull final InOutOperationContext operationContext,
+            @Nonnull final Duration timeout) throws SOAPException, SecurityException {
+        Constraint.isNotNull(endpoint, "Endpoint cannot be null");
+        Constraint.isNotNull(operationContext, "Operation context cannot be null");
+        Constraint.isNotNull(timeout, "Timeout cannot be null");
+        Constraint.isFalse(timeout.isNegative() || timeout.isZero(), "Timeout must be positive");
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        
+        final Semaphore permits = acquireEndpointPermit(endpoint);
+        final Exchange exchange = new Exchange();
+        final ScheduledFuture<?> deadline = timeoutScheduler.schedule(
+                () -> exchange.completeExceptionally(new SOAPException("SOAP exchange timed out")),
+                timeout.toMillis(), TimeUnit.MILLISECONDS);
+        try {
+            doSend(endpoint, operationContext, exchange);
+        } catch (final SOAPException | SecurityException e) {
+            if (exchange.isCompletedExceptionally()) {
+                throw new SOAPException("SOAP exchange with " + endpoint + " did not complete within " + timeout, e);
+            }
+            throw e;
+        } finally {
+            deadline.cancel(false);
+            releaseEndpointPermit(permits);
+        }
+    }
+    
     /** {@inheritDoc} */
-    // Checkstyle: CyclomaticComplexity|MethodLength OFF
     public void send(@Nonnull @NotEmpty final String endpoint, @Nonnull final InOutOperationContext operationContext)
             throws SOAPException, SecurityException {
         Constraint.isNotNull(endpoint, "Endpoint cannot be null");
         Constraint.isNotNull(operationContext, "Operation context cannot be null");
         
+        doSend(endpoint, operationContext, null);
+    }
+    
+    /**
+     * Send a message and process the response via the resolved pipeline.
+     * 
+     * @param endpoint the endpoint to which to send the message
+     * @param operationContext the operation context containing the outbound SOAP message
+     * @param exchange the exchange being run, if it may be abandoned
+     * 
+     * @throws SOAPException thrown if there is a problem sending the message or receiving the response or if the
+     *             response is a SOAP fault, or if the exchange was abandoned
+     * @throws SecurityException thrown if the response does not meet any security policy associated with the
+     *             message context
+     */
+    // Checkstyle: CyclomaticComplexity|MethodLength OFF
+    private void doSend(@Nonnull @NotEmpty final String endpoint, 
+            @Nonnull final InOutOperationContext operationContext, @Nullable final Exchange exchange)
+                    throws SOAPException, SecurityException {
+        
+        final Timer.Context timerContext =
+                MetricsSupport.startTimer(MetricsSupport.getTimer(MetricRegistry.name(getClass(), METRIC_TIMER_SEND)));
         HttpClientMessagePipeline<InboundMessageType, OutboundMessageType> pipeline = null;
         try {
             // Store the endpoint URI
@@ -205,6 +461,9 @@ public abstract class AbstractPipelineHttpSOAPClient<OutboundMessageType, Inboun
             }
             
             final HttpUriRequest httpRequest = buildHttpRequest(endpoint, operationContext);
+            if (exchange != null) {
+                exchange.setRequest(httpRequest);
+            }
             // Request encoding + outbound transport handling
             final HttpClientRequestMessageEncoder<OutboundMessageType> encoder = pipeline.getEncoder();
             encoder.setHttpRequest(httpRequest);
@@ -227,7 +486,11 @@ public abstract class AbstractPipelineHttpSOAPClient<OutboundMessageType, Inboun
             decoder.setHttpResponse(httpResponse);
             decoder.initialize();
             decoder.decode();
-            operationContext.setInboundMessageContext(decoder.getMessageContext());
+            if (exchange != null) {
+                exchange.publish(() -> operationContext.setInboundMessageContext(decoder.getMessageContext()));
+            } else {
+                operationContext.setInboundMessageContext(decoder.getMessageContext());
+            }
             
             // Inbound message handling
             if (pipeline.getInboundMessageHandler() != null) {
@@ -257,10 +520,64 @@ public abstract class AbstractPipelineHttpSOAPClient<OutboundMessageType, Inboun
                 pipeline.getEncoder().destroy();
                 pipeline.getDecoder().destroy();
             }
+            MetricsSupport.stopTimer(timerContext);
         }
     }
     // Checkstyle: CyclomaticComplexity|MethodLength ON
     
+    /**
+     * Acquire a permit for an asynchronous or timed request to an endpoint.
+     * 
+     * <p>
+     * Endpoints sharing a scheme, host and port share permits.
+     * </p>
+     * 
+     * @param endpoint the endpoint
+     * 
+     * @return the permits from which one was acquired, or null if requests are not limited
+     * 
+     * @throws SOAPException if the limit for the endpoint has been reached
+     */
+    @Nullable private Semaphore acquireEndpointPermit(@Nonnull final String endpoint) throws SOAPException {
+        if (maxConcurrentRequestsPerEndpoint <= 0) {
+            return null;
+        }
+        
+        String key = endpoint;
+        try {
+            final URI uri = new URI(endpoint);
+            if (uri.getScheme() != null && uri.getRawAuthority() != null) {
+                key = uri.getScheme().toLowerCase() + "://" + uri.getRawAuthority().toLowerCase();
+            }
+        } catch (final URISyntaxException e) {
+            log.debug("Endpoint is not a valid URI, limiting concurrency by full endpoint: {}", endpoint);
+        }
+        
+        final Semaphore permits =
+                endpointPermits.computeIfAbsent(key, k -> new Semaphore(maxConcurrentRequestsPerEndpoint));
+        if (!permits.tryAcquire()) {
+            log.warn("Concurrent request limit of {} reached for endpoint: {}", maxConcurrentRequestsPerEndpoint,
+                    endpoint);
+            final MetricRegistry metricRegistry = MetricsSupport.getMetricRegistry();
+            if (metricRegistry != null) {
+                metricRegistry.counter(MetricRegistry.name(getClass(), METRIC_COUNTER_REJECTED)).inc();
+            }
+            throw new SOAPException("Concurrent request limit reached for endpoint: " + endpoint);
+        }
+        return permits;
+    }
+    
+    /**
+     * Release a permit acquired by {@link #acquireEndpointPermit(String)}.
+     * 
+     * @param permits the permits from which one was acquired, or null if requests are not limited
+     */
+    private void releaseEndpointPermit(@Nullable final Semaphore permits) {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+    
     /**
      * Resolve and return a new instance of the {@link HttpClientMessagePipeline} to be processed.
      * 
@@ -452,5 +769,105 @@ public abstract class AbstractPipelineHttpSOAPClient<OutboundMessageType, Inboun
         }
         return criteriaSet;
     }
+    
+    /**
+     * An exchange which may be abandoned before it completes, either by cancellation of the future returned by
+     * {@link AbstractPipelineHttpSOAPClient#sendAsync(String, InOutOperationContext)} or by a timeout.
+     * 
+     * <p>
+     * Abandoning the exchange aborts its HTTP request and interrupts the thread running it, if that thread
+     * is not the caller's, and prevents the response from being published to the operation context.
+     * </p>
+     */
+    private static final class Exchange extends CompletableFuture<InOutOperationContext> {
+        
+        /** The HTTP request being executed. */
+        @Nullable private HttpUriRequest request;
+        
+        /** The executor thread running the exchange. */
+        @Nullable private Thread worker;
+        
+        /**
+         * Record that the current executor thread is running the exchange.
+         * 
+         * @return false if the exchange has already been abandoned
+         */
+        synchronized boolean start() {
+            if (isDone()) {
+                return false;
+            }
+            worker = Thread.currentThread();
+            return true;
+        }
+        
+        /**
+         * Record that the current executor thread has finished running the exchange, clearing any interrupt
+         * left by abandoning it so that it cannot affect the next task run by the thread.
+         */
+        synchronized void finish() {
+            if (worker != null) {
+                worker = null;
+                Thread.interrupted();
+            }
+        }
+        
+        /**
+         * Record the HTTP request being executed.
+         * 
+         * @param httpRequest the request
+         * 
+         * @throws SOAPException if the exchange has been abandoned
+         */
+        synchronized void setRequest(@Nonnull final HttpUriRequest httpRequest) throws SOAPException {
+            if (isDone()) {
+                throw new SOAPException("SOAP exchange was abandoned");
+            }
+            request = httpRequest;
+        }
+        
+        /**
+         * Publish the response, unless the exchange has been abandoned.
+         * 
+         * @param publisher the operation publishing the response
+         * 
+         * @throws SOAPException if the exchange has been abandoned
+         */
+        synchronized void publish(@Nonnull final Runnable publisher) throws SOAPException {
+            if (isDone()) {
+                throw new SOAPException("SOAP exchange was abandoned");
+            }
+            publisher.run();
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public synchronized boolean cancel(final boolean mayInterruptIfRunning) {
+            if (super.cancel(mayInterruptIfRunning)) {
+                abort();
+                return true;
+            }
+            return false;
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public synchronized boolean completeExceptionally(final Throwable ex) {
+            if (super.completeExceptionally(ex)) {
+                abort();
+                return true;
+            }
+            return false;
+        }
+        
+        /** Abort the HTTP request and interrupt the executor thread, if any. */
+        private void abort() {
+            if (request != null) {
+                request.abort();
+            }
+            if (worker != null && worker != Thread.currentThread()) {
+                worker.interrupt();
+            }
+        }
+    }
 
 }
\ No newline at end of file
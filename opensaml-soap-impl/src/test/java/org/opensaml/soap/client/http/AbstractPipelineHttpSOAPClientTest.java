@@ -0,0 +1,307 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.soap.client.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.messaging.context.InOutOperationContext;
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.handler.AbstractMessageHandler;
+import org.opensaml.messaging.handler.MessageHandlerException;
+import org.opensaml.messaging.pipeline.httpclient.BasicHttpClientMessagePipeline;
+import org.opensaml.messaging.pipeline.httpclient.HttpClientMessagePipeline;
+import org.opensaml.soap.client.soap11.decoder.http.impl.HttpClientResponseSOAP11Decoder;
+import org.opensaml.soap.client.soap11.encoder.http.impl.HttpClientRequestSOAP11Encoder;
+import org.opensaml.soap.common.SOAPException;
+import org.opensaml.soap.messaging.context.SOAP11Context;
+import org.opensaml.soap.soap11.Body;
+import org.opensaml.soap.soap11.Envelope;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+
+/**
+ * Test of the asynchronous and timed sends of {@link AbstractPipelineHttpSOAPClient}.
+ */
+public class AbstractPipelineHttpSOAPClientTest extends XMLObjectBaseTestCase {
+    
+    private static final String ENDPOINT = "https://sp.example.org/soap";
+    
+    private byte[] responseBytes;
+    
+    private StubHttpClient httpClient;
+    
+    private TestSOAPClient client;
+    
+    @BeforeMethod
+    public void setUp() throws Exception {
+        final Envelope envelope = buildXMLObject(Envelope.DEFAULT_ELEMENT_NAME);
+        envelope.setBody((Body) buildXMLObject(Body.DEFAULT_ELEMENT_NAME));
+        envelope.getBody().getUnknownXMLObjects().add(buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SerializeSupport.writeNode(XMLObjectSupport.marshall(envelope), baos);
+        responseBytes = baos.toByteArray();
+        
+        httpClient = new StubHttpClient();
+        client = new TestSOAPClient();
+        client.setHttpClient(httpClient);
+    }
+    
+    @AfterMethod
+    public void tearDown() {
+        httpClient.release.countDown();
+        client.destroy();
+    }
+    
+    @Test
+    public void testSendAsync() throws Exception {
+        client.initialize();
+        httpClient.release.countDown();
+        
+        final InOutOperationContext<XMLObject,XMLObject> opContext = buildOperationContext();
+        Assert.assertSame(client.sendAsync(ENDPOINT, opContext).get(5, TimeUnit.SECONDS), opContext);
+        Assert.assertTrue(opContext.getInboundMessageContext().getMessage() instanceof SimpleXMLObject);
+    }
+    
+    @Test
+    public void testEndpointLimit() throws Exception {
+        client.setMaxConcurrentRequestsPerEndpoint(1);
+        client.initialize();
+        
+        final InOutOperationContext<XMLObject,XMLObject> first = buildOperationContext();
+        final CompletableFuture<InOutOperationContext> firstFuture = client.sendAsync(ENDPOINT, first);
+        Assert.assertTrue(httpClient.started.await(5, TimeUnit.SECONDS));
+        
+        // Same scheme, host and port.
+        final CompletableFuture<InOutOperationContext> rejected =
+                client.sendAsync("https://SP.example.org/other", buildOperationContext());
+        try {
+            rejected.get(5, TimeUnit.SECONDS);
+            Assert.fail("Request beyond the endpoint limit should have been refused");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SOAPException);
+        }
+        try {
+            client.send(ENDPOINT, buildOperationContext(), Duration.ofSeconds(5));
+            Assert.fail("Request beyond the endpoint limit should have been refused");
+        } catch (final SOAPException e) {
+            // expected
+        }
+        
+        // A different endpoint is unaffected.
+        final CompletableFuture<InOutOperationContext> other =
+                client.sendAsync("https://idp.example.org/soap", buildOperationContext());
+        
+        httpClient.release.countDown();
+        Assert.assertSame(firstFuture.get(5, TimeUnit.SECONDS), first);
+        other.get(5, TimeUnit.SECONDS);
+        
+        // The permit was returned.
+        client.sendAsync(ENDPOINT, buildOperationContext()).get(5, TimeUnit.SECONDS);
+    }
+    
+    @Test
+    public void testTimeout() throws Exception {
+        client.setMaxConcurrentRequestsPerEndpoint(1);
+        client.initialize();
+        
+        final InOutOperationContext<XMLObject,XMLObject> opContext = buildOperationContext();
+        try {
+            client.send(ENDPOINT, opContext, Duration.ofMillis(200));
+            Assert.fail("Exchange should have timed out");
+        } catch (final SOAPException e) {
+            // expected
+        }
+        Assert.assertEquals(httpClient.aborted.getCount(), 0);
+        Assert.assertNull(opContext.getInboundMessageContext());
+        
+        // The permit was returned.
+        httpClient.release.countDown();
+        client.send(ENDPOINT, buildOperationContext(), Duration.ofSeconds(5));
+    }
+    
+    @Test
+    public void testCancel() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        client.setExecutorService(executor);
+        client.setMaxConcurrentRequestsPerEndpoint(1);
+        client.initialize();
+        
+        final InOutOperationContext<XMLObject,XMLObject> opContext = buildOperationContext();
+        final CompletableFuture<InOutOperationContext> future = client.sendAsync(ENDPOINT, opContext);
+        Assert.assertTrue(httpClient.started.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(future.cancel(true));
+        
+        // The worker is released without waiting for the peer.
+        Assert.assertTrue(httpClient.aborted.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertNull(opContext.getInboundMessageContext());
+        
+        // The permit was returned.
+        httpClient.release.countDown();
+        client.send(ENDPOINT, buildOperationContext(), Duration.ofSeconds(5));
+    }
+    
+    @Test
+    public void testDefaultExecutorBounded() throws Exception {
+        client.setMaxConcurrentRequestsPerEndpoint(0);
+        client.initialize();
+        
+        final CompletableFuture<?>[] futures =
+                new CompletableFuture<?>[AbstractPipelineHttpSOAPClient.DEFAULT_EXECUTOR_THREADS + 1];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = client.sendAsync(ENDPOINT, buildOperationContext());
+        }
+        try {
+            futures[futures.length - 1].get(5, TimeUnit.SECONDS);
+            Assert.fail("Request beyond the executor's threads should have been refused");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SOAPException);
+        }
+        
+        httpClient.release.countDown();
+        for (int i = 0; i < futures.length - 1; i++) {
+            futures[i].get(5, TimeUnit.SECONDS);
+        }
+    }
+    
+    private InOutOperationContext<XMLObject,XMLObject> buildOperationContext() {
+        final MessageContext<XMLObject> outbound = new MessageContext<>();
+        outbound.setMessage(buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        return new InOutOperationContext<>(null, outbound);
+    }
+    
+    /** Client whose pipeline sends and receives a payload in a SOAP 1.1 envelope. */
+    public class TestSOAPClient extends AbstractPipelineHttpSOAPClient<XMLObject,XMLObject> {
+        
+        /** {@inheritDoc} */
+        protected HttpClientMessagePipeline<XMLObject,XMLObject> newPipeline() throws SOAPException {
+            final HttpClientResponseSOAP11Decoder<XMLObject> decoder = new HttpClientResponseSOAP11Decoder<>();
+            decoder.setParserPool(parserPool);
+            decoder.setBodyHandler(new PayloadBodyHandler());
+            return new BasicHttpClientMessagePipeline<>(new HttpClientRequestSOAP11Encoder<>(), decoder);
+        }
+    }
+    
+    /** Handler which extracts the payload from the SOAP body. */
+    public class PayloadBodyHandler extends AbstractMessageHandler<XMLObject> {
+        
+        /** {@inheritDoc} */
+        protected void doInvoke(MessageContext<XMLObject> msgContext) throws MessageHandlerException {
+            final Envelope env = (Envelope) msgContext.getSubcontext(SOAP11Context.class).getEnvelope();
+            msgContext.setMessage(env.getBody().getUnknownXMLObjects().get(0));
+        }
+    }
+    
+    /** HttpClient which holds every request until released or aborted. */
+    public class StubHttpClient extends CloseableHttpClient {
+        
+        public final CountDownLatch started = new CountDownLatch(1);
+        
+        public final CountDownLatch release = new CountDownLatch(1);
+        
+        public final CountDownLatch aborted = new CountDownLatch(1);
+
+        /** {@inheritDoc} */
+        protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+                throws IOException {
+            final CountDownLatch requestAborted = new CountDownLatch(1);
+            ((HttpExecutionAware) request).setCancellable(() -> {
+                requestAborted.countDown();
+                return true;
+            });
+            if (((HttpUriRequest) request).isAborted()) {
+                requestAborted.countDown();
+            }
+            started.countDown();
+            
+            try {
+                while (!release.await(10, TimeUnit.MILLISECONDS)) {
+                    if (requestAborted.getCount() == 0) {
+                        aborted.countDown();
+                        throw new RequestAbortedException("Request aborted");
+                    }
+                }
+            } catch (final InterruptedException e) {
+                aborted.countDown();
+                throw new RequestAbortedException("Request interrupted", e);
+            }
+            
+            final StubHttpResponse response = new StubHttpResponse();
+            response.setEntity(new ByteArrayEntity(responseBytes));
+            return response;
+        }
+
+        /** {@inheritDoc} */
+        public void close() {
+        }
+
+        /** {@inheritDoc} */
+        @Deprecated
+        public HttpParams getParams() {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        @Deprecated
+        public ClientConnectionManager getConnectionManager() {
+            return null;
+        }
+    }
+    
+    public static class StubHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+        
+        public StubHttpResponse() {
+            super(HttpVersion.HTTP_1_1, 200, null);
+        }
+
+        /** {@inheritDoc} */
+        public void close() {
+        }
+    }
+
+}
@@ -97,7 +97,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             log.trace("Inserted record '{}' in context '{}' with expiration '{}'",
                     new Object[] { key, context, expiration });
             
-            setDirty();
+            setDirty(context);
             return true;
             
         } finally {
@@ -185,7 +185,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
 
             final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
             if (dataMap != null) {    
-                setDirty();
+                setDirty(context);
                 final Long now = System.currentTimeMillis();
                 for (final MutableStorageRecord record : dataMap.values()) {
                     final Long exp = record.getExpiration();
@@ -208,7 +208,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
         
         try {
             writeLock.lock();
-            setDirty();
+            setDirty(context);
             try {
                 getContextMap().remove(context);
             } catch (final Exception e) {
@@ -241,7 +241,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             final Map<String, MutableStorageRecord> dataMap = contextMap.get(context);
             if (dataMap != null) {
                 if (reapWithLock(dataMap, System.currentTimeMillis())) {
-                    setDirty();
+                    setDirty(context);
                     if (dataMap.isEmpty()) {
                         contextMap.remove(context);
                     }
@@ -281,6 +281,20 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
         
     }
     
+    /**
+     * A callback to indicate that the data of a particular context has been modified.
+     * 
+     * <p>This method is guaranteed to be called under cover the lock returned by {{@link #getLock()}.
+     * The default implementation calls {@link #setDirty()}.</p>
+     * 
+     * @param context the storage context label
+     * 
+     * @since 4.0.0
+     */
+    protected void setDirty(@Nonnull @NotEmpty final String context) {
+        setDirty();
+    }
+    
     /**
      * Internal method to implement read functions.
      *
@@ -388,7 +402,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
                 throw new VersionMismatchException();
             }
     
-            setDirty();
+            setDirty(context);
             
             if (value != null) {
                 record.setValue(value);
@@ -446,7 +460,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             } else if (version != null && record.getVersion() != version) {
                 throw new VersionMismatchException();
             } else {
-                setDirty();
+                setDirty(context);
                 dataMap.remove(key);
                 log.trace("Deleted record '{}' in context '{}'", key, context);
                 if (dataMap.isEmpty()) {
@@ -0,0 +1,573 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+import org.opensaml.core.metrics.AbstractProcessingEvent;
+import org.opensaml.core.metrics.MetricsSupport;
+import org.opensaml.storage.annotation.AnnotationSupport;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * A {@link StorageService} decorator which records metrics about the operations performed on a wrapped service,
+ * in the registry obtained via {@link MetricsSupport#getMetricRegistry()}.
+ *
+ * <p>
+ * For each storage context and {@link Operation}, a timer named
+ * <code>&lt;base&gt;.&lt;context&gt;.timer.&lt;operation&gt;</code> and a counter of failures named
+ * <code>&lt;base&gt;.&lt;context&gt;.counter.&lt;operation&gt;.error</code> are maintained. Each context also has
+ * a histogram of the lengths of the values written and read,
+ * <code>&lt;base&gt;.&lt;context&gt;.histogram.valueSize</code>, and a meter of {@link VersionMismatchException}s,
+ * <code>&lt;base&gt;.&lt;context&gt;.meter.versionMismatch</code>.
+ * </p>
+ *
+ * <p>
+ * Since some components use dynamically generated context labels, only the first {@link #setMaxContexts(int)}
+ * contexts seen are tracked individually, and the remainder share the metrics of the context label
+ * {@link #OTHER_CONTEXT}. With a {@link org.opensaml.core.metrics.FilteredMetricRegistry}, metrics rejected by the
+ * registry's filter cost no more than a map lookup per operation. Metrics are resolved from the registry on each
+ * operation, so changes to the filter take effect immediately.
+ * </p>
+ *
+ * <p>
+ * Operations supplied with a {@link StorageSerializer} are serialized by this class and passed to the wrapped
+ * service as strings, and operations on annotated objects are likewise translated, so that all are measured.
+ * </p>
+ *
+ * <p>
+ * Each operation is also recorded as a {@link StorageOperationEvent} when JDK Flight Recorder is enabled for it.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+@ThreadSafe
+public class InstrumentedStorageService implements StorageService {
+
+    /** Context label under which contexts beyond the tracked maximum are recorded. */
+    @Nonnull @NotEmpty public static final String OTHER_CONTEXT = "_other";
+
+    /** Default maximum number of individually tracked contexts. */
+    public static final int DEFAULT_MAX_CONTEXTS = 50;
+
+    /** The operations measured. */
+    public enum Operation {
+        /** Record creation. */
+        CREATE("create"),
+
+        /** Record read. */
+        READ("read"),
+
+        /** Record update. */
+        UPDATE("update"),
+
+        /** Record expiration update. */
+        UPDATE_EXPIRATION("updateExpiration"),
+
+        /** Record deletion. */
+        DELETE("delete"),
+
+        /** Context cleanup. */
+        REAP("reap"),
+
+        /** Context expiration update. */
+        UPDATE_CONTEXT_EXPIRATION("updateContextExpiration"),
+
+        /** Context deletion. */
+        DELETE_CONTEXT("deleteContext");
+
+        /** Name used in metric names. */
+        @Nonnull @NotEmpty private final String metricName;
+
+        /**
+         * Constructor.
+         *
+         * @param name name used in metric names
+         */
+        Operation(@Nonnull @NotEmpty final String name) {
+            metricName = name;
+        }
+
+        /**
+         * Get the name used in metric names.
+         *
+         * @return the name
+         */
+        @Nonnull @NotEmpty public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    /** The wrapped service. */
+    @Nonnull private final StorageService storageService;
+
+    /** Prefix of all metric names. */
+    @Nonnull @NotEmpty private final String metricsBaseName;
+
+    /** Metric names by context label. */
+    @Nonnull private final Map<String,ContextMetrics> contextMetrics;
+
+    /** Maximum number of individually tracked contexts. */
+    @Positive private int maxContexts;
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * Metric names are prefixed with the name of the {@link StorageService} interface and the ID of the wrapped
+     * service.
+     * </p>
+     *
+     * @param service the service to wrap
+     */
+    public InstrumentedStorageService(@Nonnull final StorageService service) {
+        this(service, MetricRegistry.name(StorageService.class,
+                Constraint.isNotNull(service, "StorageService cannot be null").getId()));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param service the service to wrap
+     * @param baseName prefix of all metric names
+     */
+    public InstrumentedStorageService(@Nonnull final StorageService service, @Nonnull @NotEmpty final String baseName) {
+        storageService = Constraint.isNotNull(service, "StorageService cannot be null");
+        metricsBaseName = Constraint.isNotNull(StringSupport.trimOrNull(baseName),
+                "Metrics base name cannot be null or empty");
+        contextMetrics = new ConcurrentHashMap<>();
+        maxContexts = DEFAULT_MAX_CONTEXTS;
+    }
+
+    /**
+     * Get the wrapped service.
+     *
+     * @return the wrapped service
+     */
+    @Nonnull public StorageService getStorageService() {
+        return storageService;
+    }
+
+    /**
+     * Get the maximum number of individually tracked contexts.
+     *
+     * @return the maximum number of individually tracked contexts
+     */
+    @Positive public int getMaxContexts() {
+        return maxContexts;
+    }
+
+    /**
+     * Set the maximum number of individually tracked contexts.
+     *
+     * <p>Defaults to {@link #DEFAULT_MAX_CONTEXTS}.</p>
+     *
+     * @param max the maximum number of individually tracked contexts
+     */
+    public void setMaxContexts(@Positive final int max) {
+        maxContexts = (int) Constraint.isGreaterThan(0, max, "Maximum number of contexts must be positive");
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public String getId() {
+        return storageService.getId();
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public StorageCapabilities getCapabilities() {
+        return storageService.getCapabilities();
+    }
+
+    /** {@inheritDoc} */
+    public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        recordValueSize(context, value);
+        return invoke(Operation.CREATE, context, value.length(),
+                () -> storageService.create(context, key, value, expiration));
+    }
+
+    /** {@inheritDoc} */
+    public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull final Object value, @Nonnull final StorageSerializer serializer,
+            @Nullable @Positive final Long expiration) throws IOException {
+        Constraint.isNotNull(serializer, "Serializer cannot be null");
+        return create(context, key, serializer.serialize(value), expiration);
+    }
+
+    /** {@inheritDoc} */
+    public boolean create(@Nonnull final Object value) throws IOException {
+        return create(AnnotationSupport.getContext(value), AnnotationSupport.getKey(value),
+                AnnotationSupport.getValue(value), AnnotationSupport.getExpiration(value));
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public StorageRecord read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException {
+        final StorageRecord record = invoke(Operation.READ, context, () -> storageService.read(context, key));
+        if (record != null) {
+            recordValueSize(context, record.getValue());
+        }
+        return record;
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public Object read(@Nonnull final Object value) throws IOException {
+        final StorageRecord record = read(AnnotationSupport.getContext(value), AnnotationSupport.getKey(value));
+        if (record != null) {
+            AnnotationSupport.setValue(value, record.getValue());
+            AnnotationSupport.setExpiration(value, record.getExpiration());
+            return value;
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public Pair<Long,StorageRecord> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Positive final long version) throws IOException {
+        final Pair<Long,StorageRecord> result =
+                invoke(Operation.READ, context, () -> storageService.read(context, key, version));
+        if (result.getSecond() != null) {
+            recordValueSize(context, result.getSecond().getValue());
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    public boolean update(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        recordValueSize(context, value);
+        return invoke(Operation.UPDATE, context, value.length(),
+                () -> storageService.update(context, key, value, expiration));
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public Long updateWithVersion(@Positive final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) throws IOException, VersionMismatchException {
+        recordValueSize(context, value);
+        return invoke(Operation.UPDATE, context, value.length(),
+                () -> storageService.updateWithVersion(version, context, key, value, expiration));
+    }
+
+    /** {@inheritDoc} */
+    public boolean update(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull final Object value, @Nonnull final StorageSerializer serializer,
+            @Nullable @Positive final Long expiration) throws IOException {
+        Constraint.isNotNull(serializer, "Serializer cannot be null");
+        return update(context, key, serializer.serialize(value), expiration);
+    }
+
+    /** {@inheritDoc} */
+    // Checkstyle: ParameterNumber OFF
+    @Nullable public Long updateWithVersion(@Positive final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull final Object value,
+            @Nonnull final StorageSerializer serializer, @Nullable @Positive final Long expiration)
+                    throws IOException, VersionMismatchException {
+        Constraint.isNotNull(serializer, "Serializer cannot be null");
+        return updateWithVersion(version, context, key, serializer.serialize(value), expiration);
+    }
+    // Checkstyle: ParameterNumber ON
+
+    /** {@inheritDoc} */
+    public boolean update(@Nonnull final Object value) throws IOException {
+        return update(AnnotationSupport.getContext(value), AnnotationSupport.getKey(value),
+                AnnotationSupport.getValue(value), AnnotationSupport.getExpiration(value));
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public Long updateWithVersion(@Positive final long version, @Nonnull final Object value)
+            throws IOException, VersionMismatchException {
+        return updateWithVersion(version, AnnotationSupport.getContext(value), AnnotationSupport.getKey(value),
+                AnnotationSupport.getValue(value), AnnotationSupport.getExpiration(value));
+    }
+
+    /** {@inheritDoc} */
+    public boolean updateExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nullable @Positive final Long expiration) throws IOException {
+        return invoke(Operation.UPDATE_EXPIRATION, context,
+                () -> storageService.updateExpiration(context, key, expiration));
+    }
+
+    /** {@inheritDoc} */
+    public boolean updateExpiration(@Nonnull final Object value) throws IOException {
+        return updateExpiration(AnnotationSupport.getContext(value), AnnotationSupport.getKey(value),
+                AnnotationSupport.getExpiration(value));
+    }
+
+    /** {@inheritDoc} */
+    public boolean delete(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key)
+            throws IOException {
+        return invoke(Operation.DELETE, context, () -> storageService.delete(context, key));
+    }
+
+    /** {@inheritDoc} */
+    public boolean deleteWithVersion(@Positive final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        return invoke(Operation.DELETE, context, () -> storageService.deleteWithVersion(version, context, key));
+    }
+
+    /** {@inheritDoc} */
+    public boolean delete(@Nonnull final Object value) throws IOException {
+        return delete(AnnotationSupport.getContext(value), AnnotationSupport.getKey(value));
+    }
+
+    /** {@inheritDoc} */
+    public boolean deleteWithVersion(@Positive final long version, @Nonnull final Object value)
+            throws IOException, VersionMismatchException {
+        return deleteWithVersion(version, AnnotationSupport.getContext(value), AnnotationSupport.getKey(value));
+    }
+
+    /** {@inheritDoc} */
+    public void reap(@Nonnull @NotEmpty final String context) throws IOException {
+        invoke(Operation.REAP, context, () -> {
+            storageService.reap(context);
+            return null;
+        });
+    }
+
+    /** {@inheritDoc} */
+    public void updateContextExpiration(@Nonnull @NotEmpty final String context, @Nullable final Long expiration)
+            throws IOException {
+        invoke(Operation.UPDATE_CONTEXT_EXPIRATION, context, () -> {
+            storageService.updateContextExpiration(context, expiration);
+            return null;
+        });
+    }
+
+    /** {@inheritDoc} */
+    public void deleteContext(@Nonnull @NotEmpty final String context) throws IOException {
+        invoke(Operation.DELETE_CONTEXT, context, () -> {
+            storageService.deleteContext(context);
+            return null;
+        });
+    }
+
+    /**
+     * Perform an operation on the wrapped service, recording its duration and outcome.
+     *
+     * @param <T> the result type
+     * @param <E> the type of any checked exception other than {@link IOException}
+     * @param operation the operation
+     * @param context the storage context label
+     * @param call the call to the wrapped service
+     *
+     * @return the result of the call
+     *
+     * @throws IOException if raised by the call
+     * @throws E if raised by the call
+     */
+    private <T, E extends Exception> T invoke(@Nonnull final Operation operation, @Nonnull final String context,
+            @Nonnull final StorageCall<T,E> call) throws IOException, E {
+        return invoke(operation, context, 0, call);
+    }
+
+    /**
+     * Perform an operation on the wrapped service, recording its duration and outcome.
+     *
+     * <p>
+     * Besides the metrics, a {@link StorageOperationEvent} is emitted for the operation if JDK Flight Recorder
+     * is recording it.
+     * </p>
+     *
+     * @param <T> the result type
+     * @param <E> the type of any checked exception other than {@link IOException}
+     * @param operation the operation
+     * @param context the storage context label
+     * @param bytes the length of the value written, or 0
+     * @param call the call to the wrapped service
+     *
+     * @return the result of the call
+     *
+     * @throws IOException if raised by the call
+     * @throws E if raised by the call
+     */
+    private <T, E extends Exception> T invoke(@Nonnull final Operation operation, @Nonnull final String context,
+            final long bytes, @Nonnull final StorageCall<T,E> call) throws IOException, E {
+        final MetricRegistry registry = MetricsSupport.getMetricRegistry();
+        final ContextMetrics metrics = registry != null ? getContextMetrics(registry, context) : null;
+        final Timer timer = metrics != null ? metrics.getTimer(registry, operation) : null;
+        final long start = timer != null ? System.nanoTime() : 0;
+        final StorageOperationEvent event = new StorageOperationEvent();
+        event.begin();
+        String outcome = AbstractProcessingEvent.OUTCOME_SUCCESS;
+        try {
+            return call.call();
+        } catch (final Exception e) {
+            outcome = e instanceof VersionMismatchException ? AbstractProcessingEvent.OUTCOME_FAILURE
+                    : AbstractProcessingEvent.OUTCOME_ERROR;
+            if (metrics != null) {
+                if (e instanceof VersionMismatchException) {
+                    registry.meter(metrics.versionMismatchName).mark();
+                } else {
+                    registry.counter(metrics.errorNames[operation.ordinal()]).inc();
+                }
+            }
+            throw e;
+        } finally {
+            if (timer != null) {
+                timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            if (event.shouldCommit()) {
+                event.setStorageContext(context);
+                event.setOperation(operation.getMetricName());
+                event.setBytes(bytes);
+                event.setOutcome(outcome);
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Record the length of a value written to or read from a context.
+     *
+     * @param context the storage context label
+     * @param value the value
+     */
+    private void recordValueSize(@Nonnull final String context, @Nullable final String value) {
+        final MetricRegistry registry = MetricsSupport.getMetricRegistry();
+        if (registry != null && value != null) {
+            final Histogram histogram = registry.histogram(getContextMetrics(registry, context).valueSizeName);
+            if (MetricsSupport.isEnabled(histogram)) {
+                histogram.update(value.length());
+            }
+        }
+    }
+
+    /**
+     * Get the metric names for a context, creating them if necessary.
+     *
+     * @param registry the registry in which to create the context's counters
+     * @param context the storage context label
+     *
+     * @return the metric names
+     */
+    @Nonnull private ContextMetrics getContextMetrics(@Nonnull final MetricRegistry registry,
+            @Nonnull final String context) {
+        final ContextMetrics existing = contextMetrics.get(context);
+        if (existing != null) {
+            return existing;
+        }
+
+        // Contexts beyond the maximum are not remembered individually, so that the map stays bounded.
+        return contextMetrics.computeIfAbsent(contextMetrics.size() < maxContexts ? context : OTHER_CONTEXT,
+                label -> new ContextMetrics(registry, label));
+    }
+
+    /**
+     * A call to the wrapped service.
+     *
+     * @param <T> the result type
+     * @param <E> the type of any checked exception other than {@link IOException}
+     */
+    @FunctionalInterface
+    private interface StorageCall<T, E extends Exception> {
+
+        /**
+         * Make the call.
+         *
+         * @return the result
+         *
+         * @throws IOException if raised by the call
+         * @throws E if raised by the call
+         */
+        T call() throws IOException, E;
+    }
+
+    /**
+     * The names of the metrics of a single context.
+     *
+     * <p>
+     * Only the names are kept, and the metrics themselves are resolved from the registry on each use, so that a
+     * disabled stand-in obtained from a {@link org.opensaml.core.metrics.FilteredMetricRegistry} is not retained
+     * after the registry's filter changes.
+     * </p>
+     */
+    private final class ContextMetrics {
+
+        /** Timer names by operation ordinal. */
+        @Nonnull private final String[] timerNames;
+
+        /** Error counter names by operation ordinal. */
+        @Nonnull private final String[] errorNames;
+
+        /** Value size histogram name. */
+        @Nonnull private final String valueSizeName;
+
+        /** Version mismatch meter name. */
+        @Nonnull private final String versionMismatchName;
+
+        /**
+         * Constructor.
+         *
+         * <p>
+         * The error counters and version mismatch meter are created immediately, so that they are reported even
+         * before the first failure.
+         * </p>
+         *
+         * @param registry the registry in which to create the counters
+         * @param context the storage context label
+         */
+        private ContextMetrics(@Nonnull final MetricRegistry registry, @Nonnull final String context) {
+            final Operation[] operations = Operation.values();
+            timerNames = new String[operations.length];
+            errorNames = new String[operations.length];
+            for (final Operation operation : operations) {
+                timerNames[operation.ordinal()] =
+                        MetricRegistry.name(metricsBaseName, context, "timer", operation.getMetricName());
+                errorNames[operation.ordinal()] =
+                        MetricRegistry.name(metricsBaseName, context, "counter", operation.getMetricName(), "error");
+            }
+            valueSizeName = MetricRegistry.name(metricsBaseName, context, "histogram", "valueSize");
+            versionMismatchName = MetricRegistry.name(metricsBaseName, context, "meter", "versionMismatch");
+            for (final String name : errorNames) {
+                registry.counter(name);
+            }
+            registry.meter(versionMismatchName);
+        }
+
+        /**
+         * Get the timer of an operation, if enabled.
+         *
+         * @param registry the registry from which to obtain the timer
+         * @param operation the operation
+         *
+         * @return the timer, or null if disabled
+         */
+        @Nullable private Timer getTimer(@Nonnull final MetricRegistry registry, @Nonnull final Operation operation) {
+            final Timer timer = registry.timer(timerNames[operation.ordinal()]);
+            return MetricsSupport.isEnabled(timer) ? timer : null;
+        }
+    }
+
+}
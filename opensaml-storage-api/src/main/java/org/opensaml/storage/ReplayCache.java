@@ -41,6 +41,8 @@ import org.slf4j.LoggerFactory;
  * 
  * <p>This class is thread-safe and uses a synchronized method to prevent race conditions within the underlying
  * store (lacking an atomic "check and insert" operation).</p>
+ * 
+ * <p>Calls to the backing store are measured by an {@link InstrumentedStorageService}.</p>
  */
 @ThreadSafeAfterInit
 public class ReplayCache extends AbstractIdentifiableInitializableComponent {
@@ -51,6 +53,9 @@ public class ReplayCache extends AbstractIdentifiableInitializableComponent {
     /** Backing storage for the replay cache. */
     @NonnullAfterInit private StorageService storage;
 
+    /** Instrumented view of the backing storage. */
+    @NonnullAfterInit private StorageService instrumentedStorage;
+
     /** Digester if key is too long. */
     @NonnullAfterInit private StringDigester digester;
     
@@ -108,6 +113,8 @@ public class ReplayCache extends AbstractIdentifiableInitializableComponent {
         if (storage == null) {
             throw new ComponentInitializationException("StorageService cannot be null");
         }
+        instrumentedStorage = storage instanceof InstrumentedStorageService
+                ? storage : new InstrumentedStorageService(storage);
 
         try {
             digester = new StringDigester("SHA", OutputFormat.HEX_LOWER);
@@ -141,10 +148,10 @@ public class ReplayCache extends AbstractIdentifiableInitializableComponent {
         }
 
         try {
-            final StorageRecord entry = storage.read(context, key);
+            final StorageRecord entry = instrumentedStorage.read(context, key);
             if (entry == null) {
                 log.debug("Value '{}' was not a replay, adding to cache with expiration time {}", s, expires);
-                storage.create(context, key, "x", expires.toEpochMilli());
+                instrumentedStorage.create(context, key, "x", expires.toEpochMilli());
                 return true;
             } else {
                 log.debug("Replay of value '{}' detected in cache, expires at {}", s,
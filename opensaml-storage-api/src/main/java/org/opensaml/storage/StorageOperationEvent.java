@@ -0,0 +1,84 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage;
+
+import javax.annotation.Nullable;
+
+import org.opensaml.core.metrics.AbstractProcessingEvent;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for an operation on a {@link StorageService}.
+ *
+ * @since 4.0.0
+ */
+@Name("org.opensaml.StorageOperation")
+@Label("Storage Operation")
+@Description("An operation on a storage service")
+public class StorageOperationEvent extends AbstractProcessingEvent {
+
+    /** The storage context. */
+    @Label("Context")
+    @Description("The storage context")
+    private String storageContext;
+
+    /** The storage operation. */
+    @Label("Operation")
+    @Description("The storage operation")
+    private String operation;
+
+    /**
+     * Get the storage context.
+     *
+     * @return the storage context
+     */
+    @Nullable public String getStorageContext() {
+        return storageContext;
+    }
+
+    /**
+     * Set the storage context.
+     *
+     * @param context the storage context
+     */
+    public void setStorageContext(@Nullable final String context) {
+        storageContext = context;
+    }
+
+    /**
+     * Get the storage operation.
+     *
+     * @return the storage operation
+     */
+    @Nullable public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Set the storage operation.
+     *
+     * @param op the storage operation
+     */
+    public void setOperation(@Nullable final String op) {
+        operation = op;
+    }
+
+}
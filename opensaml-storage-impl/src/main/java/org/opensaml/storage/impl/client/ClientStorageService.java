@@ -23,9 +23,17 @@ import java.io.StringWriter;
 import java.security.KeyException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -96,6 +104,9 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         HTML_LOCAL_STORAGE,
     }
 
+    /** Name of the default partition, holding any contexts not explicitly partitioned. */
+    @Nonnull static final String DEFAULT_PARTITION = "";
+
     /** Default label for storage tracking. */
     @Nonnull @NotEmpty private static final String DEFAULT_STORAGE_NAME = "shib_idp_client_ss";
     
@@ -120,12 +131,16 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
     /** KeyStrategy enabling us to detect whether data has been sealed with an older key. */
     @Nullable private DataSealerKeyStrategy keyStrategy;
 
+    /** Map of context names to the partitions in which they are stored, if partitioned. */
+    @Nonnull @NonnullElements private Map<String,String> contextPartitions;
+
     /** Constructor. */
     public ClientStorageService() {
         storageName = DEFAULT_STORAGE_NAME;
         capabilityMap = new HashMap<>(2);
         capabilityMap.put(ClientStorageSource.COOKIE, 4096);
         capabilityMap.put(ClientStorageSource.HTML_LOCAL_STORAGE, 1024 * 1024);
+        contextPartitions = Collections.emptyMap();
     }
 
     /** {@inheritDoc} */
@@ -243,6 +258,77 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         keyStrategy = strategy;
     }
 
+    /**
+     * Set a map of context names to the names of partitions in which to store them.
+     * 
+     * <p>When non-empty, data loaded from and saved to cookies is partitioned. Each partition is sealed
+     * into its own cookie, named by {@link #getPartitionStorageKey(String)}, which is only unsealed
+     * when one of its contexts is first accessed, and is only resealed when one of its contexts
+     * has been modified. Contexts not in the map are stored in the cookie named by
+     * {@link #getStorageName()}. Partition names must be legal in cookie names.</p>
+     * 
+     * <p>HTML Local Storage is not partitioned.</p>
+     * 
+     * @param map map of context names to partition names
+     * 
+     * @since 4.0.0
+     */
+    public void setContextPartitions(@Nullable @NonnullElements final Map<String,String> map) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        if (map == null || map.isEmpty()) {
+            contextPartitions = Collections.emptyMap();
+            return;
+        }
+        
+        contextPartitions = new HashMap<>(map.size());
+        for (final Map.Entry<String,String> entry : map.entrySet()) {
+            final String context = StringSupport.trimOrNull(entry.getKey());
+            final String partition = StringSupport.trimOrNull(entry.getValue());
+            if (context != null && partition != null) {
+                contextPartitions.put(context, partition);
+            }
+        }
+    }
+    
+    /**
+     * Get whether cookie-backed data is partitioned.
+     * 
+     * @return true iff a map of contexts to partitions has been set
+     * 
+     * @since 4.0.0
+     */
+    public boolean isPartitioned() {
+        return !contextPartitions.isEmpty();
+    }
+    
+    /**
+     * Get the names of the partitions in use, excluding the default partition.
+     * 
+     * @return partition names
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull @NonnullElements public Collection<String> getPartitionNames() {
+        return new HashSet<>(contextPartitions.values());
+    }
+    
+    /**
+     * Get the storage key, e.g. the cookie name, under which a partition is stored.
+     * 
+     * @param partition partition name, or null for the default partition
+     * 
+     * @return storage key for the partition
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull @NotEmpty public String getPartitionStorageKey(@Nullable final String partition) {
+        if (partition == null || partition.isEmpty()) {
+            return storageName;
+        }
+        return storageName + '_' + partition;
+    }
+    
     /** {@inheritDoc} */
     @Override
     public void init(final FilterConfig filterConfig) throws ServletException {
@@ -339,6 +425,17 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
             ((ClientStorageServiceStore) store).setDirty(true);
         }
     }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void setDirty(@Nonnull @NotEmpty final String context) {
+        final HttpSession session = Constraint.isNotNull(httpServletRequest.getSession(), "HttpSession cannot be null");
+        
+        final Object store = session.getAttribute(STORAGE_ATTRIBUTE + '.' + storageName);
+        if (store != null && store instanceof ClientStorageServiceStore) {
+            ((ClientStorageServiceStore) store).setDirty(context);
+        }
+    }
     
     /**
      * Get the backing source of the loaded data.
@@ -450,9 +547,55 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         }
     }
     
+    /**
+     * Inject partitioned data into the session without decrypting it.
+     * 
+     * <p>Each partition is decrypted when one of its contexts is first accessed. If this service is not
+     * partitioned, or the source is not a cookie, the default partition is loaded immediately, and any
+     * others are ignored.</p>
+     * 
+     * <p>Data supplied for a partition no longer named by {@link #setContextPartitions(Map)} is decrypted
+     * immediately, its contexts are moved to the partitions now holding them, and if it was decrypted
+     * successfully, it is cleared on the next save.</p>
+     * 
+     * <p>This method should <strong>not</strong> be called while holding the session lock
+     * returned by {@link #getLock()}.</p>
+     * 
+     * @param raw map of partition names, with the empty string for the default partition, to the encrypted
+     *  data stored for them
+     * @param source indicates source of the data for later use
+     * 
+     * @since 4.0.0
+     */
+    void loadPartitioned(@Nonnull @NonnullElements final Map<String,String> raw,
+            @Nonnull final ClientStorageSource source) {
+        
+        if (!isPartitioned() || source != ClientStorageSource.COOKIE) {
+            load(raw.get(DEFAULT_PARTITION), source);
+            return;
+        }
+        
+        log.trace("{} Loading partitioned storage state into session", getLogPrefix());
+        final ClientStorageServiceStore storageObject = new ClientStorageServiceStore(raw);
+
+        final Lock lock = getLock().writeLock();
+        try {
+            lock.lock();
+            
+            final HttpSession session = Constraint.isNotNull(httpServletRequest.getSession(),
+                    "HttpSession cannot be null");
+            session.setAttribute(STORAGE_ATTRIBUTE + '.' + storageName, storageObject);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Serialize the stored data if it's in a "modified/dirty" state.
      * 
+     * <p>Partitioned data should be saved by {@link #saveAll()}. This method saves only one modified
+     * partition, and any others remain modified, to be saved by a subsequent call.</p>
+     * 
      * <p>This method should <strong>not</strong> be called while holding the session lock
      * returned by {@link #getLock()}.</p>
      * 
@@ -476,7 +619,9 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
             }
 
             try {
-                return ((ClientStorageServiceStore) object).save();
+                final List<ClientStorageServiceOperation> operations =
+                        ((ClientStorageServiceStore) object).save(false);
+                return operations.isEmpty() ? null : operations.get(0);
             } catch (final IOException e) {
                 log.error("{} Error while serializing storage data", getLogPrefix(), e);
                 return null;
@@ -486,6 +631,44 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         }
     }
 
+    /**
+     * Serialize each portion of the stored data that is in a "modified/dirty" state.
+     * 
+     * <p>This method should <strong>not</strong> be called while holding the session lock
+     * returned by {@link #getLock()}.</p>
+     * 
+     * @return the operations to perform, one for each modified partition
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull @NonnullElements List<ClientStorageServiceOperation> saveAll() {
+        
+        log.trace("{} Preserving storage state from session", getLogPrefix());
+        
+        final Lock lock = getLock().writeLock();
+        try {
+            lock.lock();
+            
+            final HttpSession session = Constraint.isNotNull(httpServletRequest.getSession(),
+                    "HttpSession cannot be null");
+            
+            final Object object = session.getAttribute(STORAGE_ATTRIBUTE + '.' + storageName);
+            if (object == null || !(object instanceof ClientStorageServiceStore)) {
+                log.error("{} No storage object found in session", getLogPrefix());
+                return Collections.emptyList();
+            }
+
+            try {
+                return ((ClientStorageServiceStore) object).save(true);
+            } catch (final IOException e) {
+                log.error("{} Error while serializing storage data", getLogPrefix(), e);
+                return Collections.emptyList();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Get a prefix for log messages.
      * 
@@ -497,6 +680,10 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
     
     /**
      * Implements a session-bound backing store and locking mechanism for the {@link ClientStorageService}.
+     * 
+     * <p>When partitioned, the sealed data for each partition is retained as loaded and only decrypted
+     * when a context in that partition is first looked up, and modifications are tracked per partition
+     * according to the context modified.</p>
      */
     public class ClientStorageServiceStore {
         
@@ -509,6 +696,15 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         /** Dirty bit. */
         private boolean dirty;
         
+        /** Sealed data of partitions not yet decrypted, or null if not partitioned. */
+        @Nullable @NonnullElements private final Map<String,String> sealedPartitions;
+
+        /** Partitions modified since loading or saving. */
+        @Nonnull @NonnullElements private final Set<String> dirtyPartitions;
+
+        /** Partitions being decrypted by the thread holding this object's monitor. */
+        @Nonnull @NonnullElements private final Set<String> unsealing;
+        
         /**
          * Reconstitute stored data.
          * 
@@ -521,43 +717,16 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
         ClientStorageServiceStore(@Nullable @NotEmpty final String raw, @Nonnull final ClientStorageSource src) {
             contextMap = new HashMap<>();
             source = Constraint.isNotNull(src, "Data source cannot be null");
+            sealedPartitions = null;
+            dirtyPartitions = Collections.emptySet();
+            unsealing = Collections.emptySet();
             
             if (raw == null) {
                 return;
             }
             
             try {
-                final JsonReader reader = Json.createReader(new StringReader(raw));
-                final JsonStructure st = reader.read();
-                if (!(st instanceof JsonObject)) {
-                    throw new JsonException("Found invalid data structure while parsing context map");
-                }
-                final JsonObject obj = (JsonObject) st;
-                
-                for (final Map.Entry<String,JsonValue> context : obj.entrySet()) {
-                    if (context.getValue().getValueType() != JsonValue.ValueType.OBJECT) {
-                        throw new JsonException("Found invalid data structure while parsing context map");
-                    }
-                    
-                    // Create new context if necessary.
-                    Map<String,MutableStorageRecord> dataMap = contextMap.get(context.getKey());
-                    if (dataMap == null) {
-                        dataMap = new HashMap<>();
-                        contextMap.put(context.getKey(), dataMap);
-                    }
-                    
-                    final JsonObject contextRecords = (JsonObject) context.getValue();
-                    for (final Map.Entry<String,JsonValue> record : contextRecords.entrySet()) {
-                    
-                        final JsonObject fields = (JsonObject) record.getValue();
-                        Long exp = null;
-                        if (fields.containsKey("x")) {
-                            exp = fields.getJsonNumber("x").longValueExact();
-                        }
-                        
-                        dataMap.put(record.getKey(), new MutableStorageRecord(fields.getString("v"), exp));
-                    }
-                }
+                parse(raw, contextMap);
                 setDirty(false);
             } catch (final NullPointerException | ClassCastException | ArithmeticException | JsonException e) {
                 contextMap.clear();
@@ -567,6 +736,35 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
             }
         }
 
+        /**
+         * Retain partitioned data for decryption on first use.
+         * 
+         * <p>Data for partitions no longer in use is decrypted immediately, so that its contexts move to
+         * their current partitions, and if that succeeds, the orphaned partition is marked for clearing.</p>
+         * 
+         * @param raw map of partition names to sealed data
+         */
+        ClientStorageServiceStore(@Nonnull @NonnullElements final Map<String,String> raw) {
+            contextMap = new PartitionedContextMap();
+            source = ClientStorageSource.COOKIE;
+            sealedPartitions = new ConcurrentHashMap<>(raw);
+            dirtyPartitions = ConcurrentHashMap.newKeySet();
+            unsealing = new HashSet<>();
+            
+            for (final String partition : raw.keySet()) {
+                if (!DEFAULT_PARTITION.equals(partition) && !contextPartitions.containsValue(partition)) {
+                    log.debug("{} Migrating contexts out of orphaned storage partition '{}'", getLogPrefix(),
+                            partition);
+                    if (unseal(partition)) {
+                        dirtyPartitions.add(partition);
+                    } else {
+                        // Leave data that could not be read, and may not be ours, alone.
+                        dirtyPartitions.remove(partition);
+                    }
+                }
+            }
+        }
+
         /**
          * Get the map of contexts to manipulate during operations.
          * 
@@ -591,36 +789,266 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
          * @return  status of dirty bit
          */
         boolean isDirty() {
+            if (sealedPartitions != null) {
+                return !dirtyPartitions.isEmpty();
+            }
             return dirty;
         }
         
         /**
          * Set the dirty bit for the current data.
          * 
+         * <p>When partitioned, clearing the bit clears it for every partition, and setting it marks every
+         * partition holding a decrypted context.</p>
+         * 
          * @param flag  dirty bit to set
          */
         void setDirty(final boolean flag) {
-            dirty = flag;
+            if (sealedPartitions == null) {
+                dirty = flag;
+            } else if (!flag) {
+                dirtyPartitions.clear();
+            } else {
+                for (final String context : ((PartitionedContextMap) contextMap).delegate.keySet()) {
+                    dirtyPartitions.add(getPartition(context));
+                }
+            }
         }
 
-// Checkstyle: CyclomaticComplexity OFF        
         /**
-         * Serialize current state of stored data into a storage operation.
+         * Set the dirty bit for the data of a context.
+         * 
+         * <p>When partitioned, this marks only the partition in which the context is stored.</p>
+         * 
+         * @param context context name
+         */
+        void setDirty(@Nonnull final String context) {
+            if (sealedPartitions == null) {
+                dirty = true;
+            } else {
+                dirtyPartitions.add(getPartition(context));
+            }
+        }
+
+        /**
+         * Get the partition in which a context is stored.
+         * 
+         * @param context context name
+         * 
+         * @return partition name
+         */
+        @Nonnull private String getPartition(@Nonnull final String context) {
+            final String partition = contextPartitions.get(context);
+            return partition != null ? partition : DEFAULT_PARTITION;
+        }
+        
+        /**
+         * Decrypt and parse a partition if it has not yet been loaded.
          * 
-         * @return the operation, or a null if the data has not been modified since loading or saving
+         * <p>The service's lock may only be held for reading, so this is synchronized against other
+         * readers; the context map is safe for concurrent access. The partition's sealed data is only
+         * discarded once its contexts are in the context map, so a reader that finds no sealed data for
+         * a partition may rely on the map without entering this method.</p>
+         * 
+         * @param partition partition name
+         * 
+         * @return false iff the partition's data could not be decrypted and parsed
+         */
+        private synchronized boolean unseal(@Nonnull final String partition) {
+            final String raw = sealedPartitions.get(partition);
+            if (raw == null || !unsealing.add(partition)) {
+                return true;
+            }
+            
+            try {
+                return unseal(partition, raw);
+            } finally {
+                unsealing.remove(partition);
+                sealedPartitions.remove(partition);
+            }
+        }
+        
+        /**
+         * Decrypt and parse a partition's sealed data into the context map.
+         * 
+         * @param partition partition name
+         * @param raw sealed data
+         * 
+         * @return false iff the data could not be decrypted and parsed
+         */
+        private boolean unseal(@Nonnull final String partition, @Nonnull final String raw) {
+            log.trace("{} Decrypting storage partition '{}'", getLogPrefix(), partition);
+            final Map<String, Map<String, MutableStorageRecord>> loaded = new HashMap<>();
+            boolean success = false;
+            try {
+                final StringBuffer keyAliasUsed = new StringBuffer();
+                final String decrypted = dataSealer.unwrap(raw, keyAliasUsed);
+                parse(decrypted, loaded);
+                success = true;
+                
+                if (keyStrategy != null) {
+                    try {
+                        if (!keyStrategy.getDefaultKey().getFirst().equals(keyAliasUsed.toString())) {
+                            dirtyPartitions.add(partition);
+                        }
+                    } catch (final KeyException e) {
+                        log.error("{} Exception while accessing default key during stale key detection",
+                                getLogPrefix(), e);
+                    }
+                }
+            } catch (final DataExpiredException e) {
+                log.debug("{} Secured data or key has expired", getLogPrefix());
+                loaded.clear();
+                dirtyPartitions.add(partition);
+            } catch (final DataSealerException e) {
+                log.error("{} Exception unwrapping secured data", getLogPrefix(), e);
+                loaded.clear();
+                dirtyPartitions.add(partition);
+            } catch (final NullPointerException | ClassCastException | ArithmeticException | JsonException e) {
+                log.error("{} Found invalid data structure while parsing context map", getLogPrefix(), e);
+                loaded.clear();
+                dirtyPartitions.add(partition);
+            }
+            
+            for (final Map.Entry<String, Map<String, MutableStorageRecord>> entry : loaded.entrySet()) {
+                final String actual = getPartition(entry.getKey());
+                if (!actual.equals(partition)) {
+                    // Moved since it was stored, so both partitions need rewriting.
+                    unseal(actual);
+                    dirtyPartitions.add(partition);
+                    dirtyPartitions.add(actual);
+                    if (((PartitionedContextMap) contextMap).delegate.containsKey(entry.getKey())) {
+                        // The copy in the context's current partition was written since the move.
+                        continue;
+                    }
+                }
+                ((PartitionedContextMap) contextMap).delegate.put(entry.getKey(), entry.getValue());
+            }
+            return success;
+        }
+        
+        /**
+         * Parse serialized data into a map of contexts.
+         * 
+         * @param raw serialized data
+         * @param target map to populate
+         */
+        private void parse(@Nonnull final String raw,
+                @Nonnull @NonnullElements final Map<String, Map<String, MutableStorageRecord>> target) {
+
+            final JsonReader reader = Json.createReader(new StringReader(raw));
+            final JsonStructure st = reader.read();
+            if (!(st instanceof JsonObject)) {
+                throw new JsonException("Found invalid data structure while parsing context map");
+            }
+            final JsonObject obj = (JsonObject) st;
+            
+            for (final Map.Entry<String,JsonValue> context : obj.entrySet()) {
+                if (context.getValue().getValueType() != JsonValue.ValueType.OBJECT) {
+                    throw new JsonException("Found invalid data structure while parsing context map");
+                }
+                
+                // Create new context if necessary.
+                Map<String,MutableStorageRecord> dataMap = target.get(context.getKey());
+                if (dataMap == null) {
+                    dataMap = new HashMap<>();
+                    target.put(context.getKey(), dataMap);
+                }
+                
+                final JsonObject contextRecords = (JsonObject) context.getValue();
+                for (final Map.Entry<String,JsonValue> record : contextRecords.entrySet()) {
+                
+                    final JsonObject fields = (JsonObject) record.getValue();
+                    Long exp = null;
+                    if (fields.containsKey("x")) {
+                        exp = fields.getJsonNumber("x").longValueExact();
+                    }
+                    
+                    dataMap.put(record.getKey(), new MutableStorageRecord(fields.getString("v"), exp));
+                }
+            }
+        }
+
+        /**
+         * Serialize current state of stored data into storage operations.
+         * 
+         * <p>When partitioned, and not saving all partitions, only one modified partition is saved and
+         * only that partition ceases to be modified.</p>
+         * 
+         * @param all whether to save every modified partition
+         * 
+         * @return the operations, empty if the data has not been modified since loading or saving
          * 
          * @throws IOException if an error occurs
          */
-        @Nullable ClientStorageServiceOperation save() throws IOException {
+        @Nonnull @NonnullElements List<ClientStorageServiceOperation> save(final boolean all)
+                throws IOException {
             
             if (!isDirty()) {
                 log.trace("{} Storage state has not been modified, save operation skipped", getLogPrefix());
-                return null;
+                return Collections.emptyList();
+            }
+            
+            if (sealedPartitions == null) {
+                final ClientStorageServiceOperation operation = save(DEFAULT_PARTITION, contextMap.entrySet());
+                setDirty(false);
+                return Collections.singletonList(operation);
+            }
+            
+            if (!all) {
+                final String partition = dirtyPartitions.iterator().next();
+                final ClientStorageServiceOperation operation = save(partition, getPartitionContexts(partition));
+                dirtyPartitions.remove(partition);
+                return Collections.singletonList(operation);
+            }
+            
+            final List<ClientStorageServiceOperation> operations = new ArrayList<>(dirtyPartitions.size());
+            for (final String partition : dirtyPartitions) {
+                log.trace("{} Saving modified storage partition '{}'", getLogPrefix(), partition);
+                operations.add(save(partition, getPartitionContexts(partition)));
+            }
+            setDirty(false);
+            return operations;
+        }
+
+        /**
+         * Get the decrypted contexts stored in a partition.
+         * 
+         * @param partition partition name
+         * 
+         * @return the contexts
+         */
+        @Nonnull @NonnullElements private Collection<Map.Entry<String, Map<String, MutableStorageRecord>>>
+                getPartitionContexts(@Nonnull final String partition) {
+            final Collection<Map.Entry<String, Map<String, MutableStorageRecord>>> contexts = new ArrayList<>();
+            for (final Map.Entry<String, Map<String, MutableStorageRecord>> entry : contextMap.entrySet()) {
+                if (partition.equals(getPartition(entry.getKey()))) {
+                    contexts.add(entry);
+                }
             }
+            return contexts;
+        }
+
+// Checkstyle: CyclomaticComplexity OFF        
+        /**
+         * Serialize a set of contexts into a storage operation for a partition.
+         * 
+         * @param partition partition name
+         * @param contexts contexts to serialize
+         * 
+         * @return the operation
+         * 
+         * @throws IOException if an error occurs
+         */
+        @Nonnull private ClientStorageServiceOperation save(@Nonnull final String partition,
+                @Nonnull @NonnullElements final Collection<Map.Entry<String, Map<String, MutableStorageRecord>>>
+                    contexts) throws IOException {
             
-            if (contextMap.isEmpty()) {
+            final String storageKey = getPartitionStorageKey(partition);
+            
+            if (contexts.isEmpty()) {
                 log.trace("{} Data is empty", getLogPrefix());
-                return new ClientStorageServiceOperation(getId(), getStorageName(), null, source);
+                return new ClientStorageServiceOperation(getId(), storageKey, null, source);
             }
 
             long exp = 0L;
@@ -632,7 +1060,7 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
                 final JsonGenerator gen = Json.createGenerator(sink);
                 
                 gen.writeStartObject();
-                for (final Map.Entry<String,Map<String, MutableStorageRecord>> context : contextMap.entrySet()) {
+                for (final Map.Entry<String,Map<String, MutableStorageRecord>> context : contexts) {
                     if (!context.getValue().isEmpty()) {
                         gen.writeStartObject(context.getKey());
                         for (final Map.Entry<String,MutableStorageRecord> entry : context.getValue().entrySet()) {
@@ -656,7 +1084,7 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
 
                 if (empty) {
                     log.trace("{} Data is empty", getLogPrefix());
-                    return new ClientStorageServiceOperation(getId(), getStorageName(), null, source);
+                    return new ClientStorageServiceOperation(getId(), storageKey, null, source);
                 }
                 
                 final String raw = sink.toString();
@@ -667,8 +1095,7 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
                     final String wrapped = dataSealer.wrap(raw,
                             exp > 0 ? Instant.ofEpochMilli(exp) : Instant.now().plus(Duration.ofDays(1)));
                     log.trace("{} Size of data after encryption is {}", getLogPrefix(), wrapped.length());
-                    setDirty(false);
-                    return new ClientStorageServiceOperation(getId(), getStorageName(), wrapped, source);
+                    return new ClientStorageServiceOperation(getId(), storageKey, wrapped, source);
                 } catch (final DataSealerException e) {
                     throw new IOException(e);
                 }
@@ -676,7 +1103,77 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
                 throw new IOException(e);
             }
         }
-    }
 // Checkstyle: CyclomaticComplexity ON
-    
-}
\ No newline at end of file
+        
+        /**
+         * A context map that decrypts each partition on first lookup of one of its contexts, and
+         * tracks the partitions modified.
+         */
+        private class PartitionedContextMap extends AbstractMap<String, Map<String, MutableStorageRecord>> {
+            
+            /** The loaded contexts. */
+            @Nonnull @NonnullElements private final Map<String, Map<String, MutableStorageRecord>> delegate =
+                    new ConcurrentHashMap<>();
+            
+            /** {@inheritDoc} */
+            @Override
+            public Map<String, MutableStorageRecord> get(final Object key) {
+                access(key);
+                return delegate.get(key);
+            }
+
+            /** {@inheritDoc} */
+            @Override
+            public boolean containsKey(final Object key) {
+                access(key);
+                return delegate.containsKey(key);
+            }
+
+            /** {@inheritDoc} */
+            @Override
+            public Map<String, MutableStorageRecord> put(final String key,
+                    final Map<String, MutableStorageRecord> value) {
+                dirtyPartitions.add(access(key));
+                return delegate.put(key, value);
+            }
+
+            /** {@inheritDoc} */
+            @Override
+            public Map<String, MutableStorageRecord> remove(final Object key) {
+                final String partition = access(key);
+                if (partition != null) {
+                    dirtyPartitions.add(partition);
+                }
+                return delegate.remove(key);
+            }
+
+            /** {@inheritDoc} */
+            @Override
+            public Set<Map.Entry<String, Map<String, MutableStorageRecord>>> entrySet() {
+                return delegate.entrySet();
+            }
+            
+            /**
+             * Ensure the partition of a context is loaded.
+             * 
+             * <p>Sealed data is only discarded after its contexts have been added, so if none remains the
+             * partition is fully loaded, and otherwise {@link #unseal(String)} checks again under its monitor.</p>
+             * 
+             * @param key context name
+             * 
+             * @return the partition of the context, or null if the key is not a context name
+             */
+            @Nullable private String access(@Nullable final Object key) {
+                if (key instanceof String) {
+                    final String partition = getPartition((String) key);
+                    if (sealedPartitions.containsKey(partition)) {
+                        unseal(partition);
+                    }
+                    return partition;
+                }
+                return null;
+            }
+        }
+    }
+
+}
@@ -187,10 +187,15 @@ public class LoadClientStorageServices<InboundMessageType, OutboundMessageType>
     private void loadFromCookie(@Nonnull final ClientStorageService storageService,
             @Nonnull final ClientStorageSource source) {
         
+        final Cookie[] cookies = getHttpServletRequest().getCookies();
+        if (storageService.isPartitioned() && source == ClientStorageSource.COOKIE) {
+            loadFromPartitionedCookies(storageService, cookies);
+            return;
+        }
+        
         Optional<Cookie> cookie = Optional.absent();
         
         // Search for our cookie.
-        final Cookie[] cookies = getHttpServletRequest().getCookies();
         if (cookies != null) {
             cookie = Iterables.tryFind(
                     Arrays.asList(cookies),
@@ -207,6 +212,69 @@ public class LoadClientStorageServices<InboundMessageType, OutboundMessageType>
         }
     }
  
+    /**
+     * Load the specified partitioned storage service from the cookies for each of its partitions.
+     * 
+     * <p>The data is not decrypted until it is accessed. Cookies named as partitions of the service, but for
+     * partitions no longer in use, are also supplied, so that their contents can be migrated and the cookies
+     * cleared, unless the name belongs to another of the configured services.</p>
+     * 
+     * @param storageService service to load
+     * @param cookies cookies in the request
+     */
+    private void loadFromPartitionedCookies(@Nonnull final ClientStorageService storageService,
+            @Nullable final Cookie[] cookies) {
+        
+        final Map<String,String> partitionKeys = new HashMap<>();
+        partitionKeys.put(storageService.getPartitionStorageKey(null), ClientStorageService.DEFAULT_PARTITION);
+        for (final String partition : storageService.getPartitionNames()) {
+            partitionKeys.put(storageService.getPartitionStorageKey(partition), partition);
+        }
+        
+        final String orphanPrefix = storageService.getPartitionStorageKey(null) + '_';
+        
+        final Map<String,String> raw = new HashMap<>();
+        if (cookies != null) {
+            for (final Cookie c : cookies) {
+                if (c != null && !Strings.isNullOrEmpty(c.getValue())) {
+                    String partition = partitionKeys.get(c.getName());
+                    if (partition == null && c.getName().startsWith(orphanPrefix)
+                            && c.getName().length() > orphanPrefix.length() && !isClaimed(c.getName())) {
+                        partition = c.getName().substring(orphanPrefix.length());
+                    }
+                    if (partition != null) {
+                        raw.put(partition, URISupport.doURLDecode(c.getValue()));
+                    }
+                }
+            }
+        }
+        
+        log.debug("{} Initializing StorageService '{}' from {} partition cookie(s)", getLogPrefix(),
+                storageService.getId(), raw.size());
+        storageService.loadPartitioned(raw, ClientStorageSource.COOKIE);
+    }
+    
+    /**
+     * Get whether a cookie name is used by any of the configured services.
+     * 
+     * @param name cookie name
+     * 
+     * @return true iff the name is the storage key of a configured service or one of its partitions
+     */
+    private boolean isClaimed(@Nonnull final String name) {
+        for (final ClientStorageService service : storageServices.values()) {
+            if (name.equals(service.getStorageName())) {
+                return true;
+            }
+            for (final String partition : service.getPartitionNames()) {
+                if (name.equals(service.getPartitionStorageKey(partition))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
     /**
      * Load the specified storage service from local storage data supplied in the POST.
      * 
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+import org.opensaml.core.config.ConfigurationService;
+import org.opensaml.core.metrics.FilteredMetricRegistry;
+import org.opensaml.storage.InstrumentedStorageService;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.StorageOperationEvent;
+import org.opensaml.storage.StorageServiceTest;
+import org.opensaml.storage.VersionMismatchException;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Test of {@link InstrumentedStorageService} wrapping a {@link MemoryStorageService}.
+ */
+public class InstrumentedStorageServiceTest extends StorageServiceTest {
+
+    private MetricRegistry previousRegistry;
+
+    private MetricRegistry registry;
+
+    private MemoryStorageService memory;
+
+    @BeforeClass
+    public void setUpRegistry() {
+        previousRegistry = ConfigurationService.get(MetricRegistry.class);
+        registry = new MetricRegistry();
+        ConfigurationService.register(MetricRegistry.class, registry);
+    }
+
+    @AfterClass
+    public void tearDownRegistry() {
+        if (previousRegistry != null) {
+            ConfigurationService.register(MetricRegistry.class, previousRegistry);
+        } else {
+            ConfigurationService.deregister(MetricRegistry.class);
+        }
+        memory.destroy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull protected StorageService getStorageService() {
+        memory = new MemoryStorageService();
+        memory.setId("test");
+        try {
+            memory.initialize();
+        } catch (final ComponentInitializationException e) {
+            throw new IllegalStateException(e);
+        }
+        return new InstrumentedStorageService(memory, "test.storage");
+    }
+
+    @Test
+    public void testMetrics() throws IOException, VersionMismatchException {
+        final StorageService service = new InstrumentedStorageService(memory, "test.metrics");
+        final String context = "metrics";
+
+        Assert.assertTrue(service.create(context, "key", "value", null));
+        final StorageRecord record = service.read(context, "key");
+        Assert.assertNotNull(record);
+        Assert.assertNull(service.read(context, "missing"));
+
+        try {
+            service.updateWithVersion(record.getVersion() + 1, context, "key", "value2", null);
+            Assert.fail("Expected VersionMismatchException");
+        } catch (final VersionMismatchException e) {
+            // expected
+        }
+        Assert.assertTrue(service.delete(context, "key"));
+
+        Assert.assertEquals(registry.getTimers().get("test.metrics.metrics.timer.create").getCount(), 1);
+        Assert.assertEquals(registry.getTimers().get("test.metrics.metrics.timer.read").getCount(), 2);
+        Assert.assertEquals(registry.getTimers().get("test.metrics.metrics.timer.update").getCount(), 1);
+        Assert.assertEquals(registry.getTimers().get("test.metrics.metrics.timer.delete").getCount(), 1);
+        Assert.assertEquals(registry.getCounters().get("test.metrics.metrics.counter.update.error").getCount(), 0);
+        Assert.assertEquals(registry.getMeters().get("test.metrics.metrics.meter.versionMismatch").getCount(), 1);
+
+        // Written once, read once, and the failed update.
+        Assert.assertEquals(registry.getHistograms().get("test.metrics.metrics.histogram.valueSize").getCount(), 3);
+    }
+
+    @Test
+    public void testMaxContexts() throws IOException {
+        final InstrumentedStorageService service = new InstrumentedStorageService(memory, "test.limited");
+        service.setMaxContexts(1);
+
+        service.read("first", "key");
+        service.read("second", "key");
+        service.read("third", "key");
+
+        Assert.assertEquals(registry.getTimers().get("test.limited.first.timer.read").getCount(), 1);
+        Assert.assertEquals(registry.getTimers().get(
+                "test.limited." + InstrumentedStorageService.OTHER_CONTEXT + ".timer.read").getCount(), 2);
+        Assert.assertNull(registry.getTimers().get("test.limited.second.timer.read"));
+    }
+
+    @Test
+    public void testFilterToggle() throws IOException {
+        final FilteredMetricRegistry filtered = new FilteredMetricRegistry();
+        ConfigurationService.register(MetricRegistry.class, filtered);
+        try {
+            final StorageService service = new InstrumentedStorageService(memory, "test.filtered");
+            final String context = "filtered";
+
+            Assert.assertTrue(service.create(context, "key", "value", null));
+            Assert.assertNull(filtered.getTimers().get("test.filtered.filtered.timer.create"));
+
+            // Enabling the filter applies to a context already in use.
+            filtered.setMetricFilter(MetricFilter.ALL);
+            Assert.assertNotNull(service.read(context, "key"));
+            Assert.assertEquals(filtered.getTimers().get("test.filtered.filtered.timer.read").getCount(), 1);
+            Assert.assertEquals(
+                    filtered.getHistograms().get("test.filtered.filtered.histogram.valueSize").getCount(), 1);
+
+            filtered.setMetricFilter(null);
+            Assert.assertNotNull(service.read(context, "key"));
+            Assert.assertEquals(filtered.getTimers().get("test.filtered.filtered.timer.read").getCount(), 1);
+            Assert.assertEquals(
+                    filtered.getHistograms().get("test.filtered.filtered.histogram.valueSize").getCount(), 1);
+        } finally {
+            ConfigurationService.register(MetricRegistry.class, registry);
+        }
+    }
+
+    @Test
+    public void testEvents() throws IOException {
+        final StorageService service = new InstrumentedStorageService(memory, "test.events");
+        final Path dump = Files.createTempFile("storage-events", ".jfr");
+        try (final Recording recording = new Recording()) {
+            recording.enable(StorageOperationEvent.class);
+            recording.start();
+            service.create("events", "key", "value", null);
+            service.read("events", "key");
+            recording.stop();
+            recording.dump(dump);
+
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            Assert.assertEquals(events.size(), 2);
+            Assert.assertEquals(events.get(0).getString("storageContext"), "events");
+            Assert.assertEquals(events.get(0).getString("operation"), "create");
+            Assert.assertEquals(events.get(0).getLong("bytes"), 5);
+            Assert.assertEquals(events.get(0).getString("outcome"), "success");
+            Assert.assertEquals(events.get(1).getString("operation"), "read");
+        } finally {
+            Files.delete(dump);
+        }
+    }
+
+}
@@ -17,6 +17,8 @@
 
 package org.opensaml.storage.impl.client;
 
+import java.util.Map;
+
 import org.springframework.core.io.ClassPathResource;
 import org.testng.Assert;
 
@@ -48,7 +50,13 @@ public class AbstractBaseClientStorageServiceTest {
     }
 
     protected ClientStorageService getStorageService() throws ComponentInitializationException {
+        return getStorageService(null);
+    }
+
+    protected ClientStorageService getStorageService(final Map<String,String> partitions)
+            throws ComponentInitializationException {
         final ClientStorageService ss = new ClientStorageService();
+        ss.setContextPartitions(partitions);
         ss.setId("test");
         ss.setStorageName(STORAGE_NAME);
 
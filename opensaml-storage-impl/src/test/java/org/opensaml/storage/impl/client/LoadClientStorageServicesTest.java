@@ -19,6 +19,7 @@ package org.opensaml.storage.impl.client;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 
 import javax.servlet.http.Cookie;
@@ -37,6 +38,7 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.Sets;
 import com.google.common.net.UrlEscapers;
 
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
@@ -199,6 +201,120 @@ public class LoadClientStorageServicesTest extends AbstractBaseClientStorageServ
         checkStorageContent(ss);
     }
 
+    @Test public void testPartitionedCookieLoad() throws ComponentInitializationException, IOException {
+        final ClientStorageService ss = getStorageService(Collections.singletonMap("context1", "part"));
+        ss.loadPartitioned(Collections.<String,String>emptyMap(), ClientStorageSource.COOKIE);
+        ss.create("context1", "key1", "value1", null);
+        ss.create("context1", "key2", "value2", null);
+        ss.create("context2", "key", "value", null);
+        
+        final List<ClientStorageServiceOperation> saved = ss.saveAll();
+        Assert.assertEquals(saved.size(), 2);
+        Assert.assertTrue(ss.saveAll().isEmpty());
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final Cookie[] cookies = new Cookie[saved.size()];
+        for (int i = 0; i < cookies.length; i++) {
+            cookies[i] = new Cookie(saved.get(i).getKey(),
+                    UrlEscapers.urlFormParameterEscaper().escape(saved.get(i).getValue()));
+        }
+        ((MockHttpServletRequest) HttpServletRequestResponseContext.getRequest()).setCookies(cookies);
+
+        action.setStorageServices(Collections.singletonList(ss));
+        action.initialize();
+
+        action.execute(prc);
+        ActionTestingSupport.assertProceedEvent(prc);
+        
+        checkStorageContent(ss);
+        Assert.assertTrue(ss.saveAll().isEmpty());
+        
+        ss.update("context1", "key1", "changed", null);
+        final List<ClientStorageServiceOperation> resaved = ss.saveAll();
+        Assert.assertEquals(resaved.size(), 1);
+        Assert.assertEquals(resaved.get(0).getKey(), ss.getPartitionStorageKey("part"));
+        Assert.assertNotNull(resaved.get(0).getValue());
+    }
+
+    @Test public void testPartitionDirtyTracking() throws ComponentInitializationException, IOException {
+        final ClientStorageService ss = getStorageService(Collections.singletonMap("context1", "part"));
+        ss.loadPartitioned(Collections.<String,String>emptyMap(), ClientStorageSource.COOKIE);
+        ss.create("context1", "key1", "value1", null);
+        ss.create("context2", "key", "value", null);
+        Assert.assertEquals(ss.saveAll().size(), 2);
+
+        // The last context accessed is in another partition from the one deleted.
+        Assert.assertNotNull(ss.read("context2", "key"));
+        ss.deleteContext("context1");
+        
+        final List<ClientStorageServiceOperation> resaved = ss.saveAll();
+        Assert.assertEquals(resaved.size(), 1);
+        Assert.assertEquals(resaved.get(0).getKey(), ss.getPartitionStorageKey("part"));
+        Assert.assertNull(resaved.get(0).getValue());
+    }
+
+    @Test public void testPartitionedSingleSave() throws ComponentInitializationException, IOException {
+        final ClientStorageService ss = getStorageService(Collections.singletonMap("context1", "part"));
+        ss.loadPartitioned(Collections.<String,String>emptyMap(), ClientStorageSource.COOKIE);
+        ss.create("context1", "key1", "value1", null);
+        ss.create("context2", "key", "value", null);
+
+        // Each call saves one of the two modified partitions, and leaves the other modified.
+        final ClientStorageServiceOperation first = ss.save();
+        Assert.assertNotNull(first);
+        final ClientStorageServiceOperation second = ss.save();
+        Assert.assertNotNull(second);
+        Assert.assertNull(ss.save());
+        Assert.assertTrue(ss.saveAll().isEmpty());
+
+        Assert.assertEquals(Sets.newHashSet(first.getKey(), second.getKey()),
+                Sets.newHashSet(ss.getPartitionStorageKey(null), ss.getPartitionStorageKey("part")));
+        Assert.assertNotNull(first.getValue());
+        Assert.assertNotNull(second.getValue());
+    }
+
+    @Test public void testOrphanedPartitionCookie() throws ComponentInitializationException, IOException {
+        final ClientStorageService old = getStorageService(Collections.singletonMap("context1", "old"));
+        old.loadPartitioned(Collections.<String,String>emptyMap(), ClientStorageSource.COOKIE);
+        old.create("context1", "key1", "value1", null);
+        old.create("context1", "key2", "value2", null);
+        old.create("context2", "key", "value", null);
+        final List<ClientStorageServiceOperation> saved = old.saveAll();
+        Assert.assertEquals(saved.size(), 2);
+
+        HttpServletRequestResponseContext.loadCurrent(new MockHttpServletRequest(), new MockHttpServletResponse());
+
+        final Cookie[] cookies = new Cookie[saved.size()];
+        for (int i = 0; i < cookies.length; i++) {
+            cookies[i] = new Cookie(saved.get(i).getKey(),
+                    UrlEscapers.urlFormParameterEscaper().escape(saved.get(i).getValue()));
+        }
+        ((MockHttpServletRequest) HttpServletRequestResponseContext.getRequest()).setCookies(cookies);
+
+        // The context has since moved to a new partition.
+        final ClientStorageService ss = getStorageService(Collections.singletonMap("context1", "part"));
+        action.setStorageServices(Collections.singletonList(ss));
+        action.initialize();
+
+        action.execute(prc);
+        ActionTestingSupport.assertProceedEvent(prc);
+        
+        checkStorageContent(ss);
+        
+        String oldValue = "unset";
+        String newValue = null;
+        for (final ClientStorageServiceOperation op : ss.saveAll()) {
+            if (op.getKey().equals(ss.getPartitionStorageKey("old"))) {
+                oldValue = op.getValue();
+            } else if (op.getKey().equals(ss.getPartitionStorageKey("part"))) {
+                newValue = op.getValue();
+            }
+        }
+        Assert.assertNull(oldValue);
+        Assert.assertNotNull(newValue);
+    }
+
     private void checkStorageContent(final StorageService ss) throws IOException {
         Assert.assertNull(loadCtx.getParent());
 
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.ctx;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+
+/**
+ * Helper methods for batching decision requests using the XACML 2.0 Multiple Resource profile.
+ * 
+ * <p>
+ * A PEP needing decisions for several resources on behalf of the same subjects, action and environment can send
+ * a single request containing one <code>Resource</code> element per resource, instead of one request per
+ * resource. The PDP evaluates each resource as an individual request and returns one <code>Result</code> per
+ * resource, identified by its <code>ResourceId</code>, in a single response. Each resource in such a request
+ * must therefore carry a distinct {@link #RESOURCE_ID} attribute.
+ * </p>
+ * 
+ * @since 4.0.0
+ */
+public final class MultipleResourceSupport {
+
+    /** ID of the attribute identifying a resource. */
+    @Nonnull @NotEmpty public static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+
+    /** Constructor. */
+    private MultipleResourceSupport() {
+    }
+
+    /**
+     * Get the value of a resource's {@link #RESOURCE_ID} attribute.
+     * 
+     * @param resource the resource
+     * 
+     * @return the first value of the attribute, or null
+     */
+    @Nullable public static String getResourceId(@Nonnull final ResourceType resource) {
+        for (final AttributeType attribute : resource.getAttributes()) {
+            if (RESOURCE_ID.equals(StringSupport.trimOrNull(attribute.getAttributeId()))) {
+                for (final AttributeValueType value : attribute.getAttributeValues()) {
+                    final String resourceId = StringSupport.trimOrNull(value.getValue());
+                    if (resourceId != null) {
+                        return resourceId;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Build a resource identified only by its {@link #RESOURCE_ID} attribute.
+     * 
+     * @param resourceId the resource ID
+     * @param dataType the data type of the resource ID, usually <code>anyURI</code> or <code>string</code>
+     * 
+     * @return the resource
+     */
+    @Nonnull public static ResourceType buildResource(@Nonnull @NotEmpty final String resourceId,
+            @Nonnull @NotEmpty final String dataType) {
+        final AttributeValueType value = build(AttributeValueType.DEFAULT_ELEMENT_NAME);
+        value.setValue(Constraint.isNotNull(StringSupport.trimOrNull(resourceId), "Resource ID cannot be null"));
+
+        final AttributeType attribute = build(AttributeType.DEFAULT_ELEMENT_NAME);
+        attribute.setAttributeID(RESOURCE_ID);
+        attribute.setDataType(Constraint.isNotNull(StringSupport.trimOrNull(dataType), "Data type cannot be null"));
+        attribute.getAttributeValues().add(value);
+
+        final ResourceType resource = build(ResourceType.DEFAULT_ELEMENT_NAME);
+        resource.getAttributes().add(attribute);
+        return resource;
+    }
+
+    /**
+     * Build a request for decisions on several resources.
+     * 
+     * <p>
+     * The supplied objects become children of the new request, so must not already have a parent. A missing
+     * action or environment is replaced by an empty one, as the schema requires both.
+     * </p>
+     * 
+     * @param subjects the subjects
+     * @param resources the resources, each with a distinct {@link #RESOURCE_ID} if there is more than one
+     * @param action the action, or null
+     * @param environment the environment, or null
+     * 
+     * @return the request
+     */
+    @Nonnull public static RequestType buildRequest(@Nonnull @NonnullElements final List<SubjectType> subjects,
+            @Nonnull @NonnullElements final List<ResourceType> resources, @Nullable final ActionType action,
+            @Nullable final EnvironmentType environment) {
+        Constraint.isNotNull(subjects, "Subjects cannot be null");
+        Constraint.isNotNull(resources, "Resources cannot be null");
+        Constraint.isFalse(resources.isEmpty(), "At least one resource is required");
+
+        if (resources.size() > 1) {
+            final Set<String> resourceIds = new HashSet<>(resources.size());
+            for (final ResourceType resource : resources) {
+                final String resourceId = getResourceId(resource);
+                Constraint.isNotNull(resourceId, "Each of multiple resources must have a resource ID");
+                Constraint.isTrue(resourceIds.add(resourceId), "Duplicate resource ID " + resourceId);
+            }
+        }
+
+        final RequestType request = build(RequestType.DEFAULT_ELEMENT_NAME);
+        request.getSubjects().addAll(subjects);
+        request.getResources().addAll(resources);
+        request.setAction(action != null ? action : build(ActionType.DEFAULT_ELEMENT_NAME));
+        request.setEnvironment(environment != null ? environment : build(EnvironmentType.DEFAULT_ELEMENT_NAME));
+        return request;
+    }
+
+    /**
+     * Correlate the results in a response with the resources in the request to which it responds.
+     * 
+     * <p>
+     * Results are matched to resources by their <code>ResourceId</code>. The single result of a request for one
+     * resource is matched to that resource even if it has no <code>ResourceId</code>.
+     * </p>
+     * 
+     * @param request the request
+     * @param response the response
+     * 
+     * @return the results, keyed by resource ID in the order of the request's resources, omitting resources
+     *          without a result
+     */
+    @Nonnull @NonnullElements public static Map<String,ResultType> correlateResults(
+            @Nonnull final RequestType request, @Nonnull final ResponseType response) {
+        Constraint.isNotNull(request, "Request cannot be null");
+        Constraint.isNotNull(response, "Response cannot be null");
+
+        final Map<String,ResultType> results = new LinkedHashMap<>();
+        final List<ResourceType> resources = request.getResources();
+        if (resources.size() == 1 && response.getResults().size() == 1) {
+            final String resourceId = getResourceId(resources.get(0));
+            if (resourceId != null) {
+                results.put(resourceId, response.getResults().get(0));
+            }
+            return results;
+        }
+
+        final Map<String,ResultType> byResourceId = new LinkedHashMap<>();
+        for (final ResultType result : response.getResults()) {
+            final String resourceId = StringSupport.trimOrNull(result.getResourceId());
+            if (resourceId != null) {
+                byResourceId.putIfAbsent(resourceId, result);
+            }
+        }
+        for (final ResourceType resource : resources) {
+            final String resourceId = getResourceId(resource);
+            if (resourceId != null && byResourceId.containsKey(resourceId)) {
+                results.put(resourceId, byResourceId.get(resourceId));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Build an XML object.
+     * 
+     * @param <T> the type of object
+     * @param name the element name
+     * 
+     * @return the object
+     */
+    @Nonnull private static <T extends XMLObject> T build(@Nonnull final QName name) {
+        return XMLObjectProviderRegistrySupport.getBuilderFactory().<T>getBuilderOrThrow(name).buildObject(name);
+    }
+
+}
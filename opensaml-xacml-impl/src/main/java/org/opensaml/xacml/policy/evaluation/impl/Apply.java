@@ -0,0 +1,59 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A compiled function application.
+ */
+final class Apply implements Expression {
+
+    /** The function. */
+    @Nonnull private final Function function;
+
+    /** The arguments. */
+    @Nonnull private final Expression[] arguments;
+
+    /**
+     * Constructor.
+     * 
+     * @param applied the function
+     * @param args the arguments, already checked against the function's parameters
+     */
+    Apply(@Nonnull final Function applied, @Nonnull final Expression[] args) {
+        function = applied;
+        arguments = args;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public Object evaluate(@Nonnull final EvaluationContext context) {
+        return function.apply(arguments, context);
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public String getDataType() {
+        return function.getReturnType();
+    }
+
+    /** {@inheritDoc} */
+    public boolean isBag() {
+        return function.isReturnsBag();
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+
+/**
+ * A rule or policy combining algorithm.
+ */
+interface CombiningAlgorithm {
+
+    /**
+     * Combine the decisions of rules, policies or policy sets.
+     * 
+     * <p>
+     * Children which are not candidates cannot apply to the request and are treated as not applicable without
+     * being evaluated.
+     * </p>
+     * 
+     * @param children the children, in document order
+     * @param candidates which of the children may apply to the request, or null if all may
+     * @param context the evaluation context
+     * 
+     * @return the combined decision
+     */
+    @Nonnull DECISION combine(@Nonnull final Evaluable[] children, @Nullable final boolean[] candidates,
+            @Nonnull final EvaluationContext context);
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.policy.EffectType;
+
+/**
+ * Registry of the XACML 2.0 rule and policy combining algorithms.
+ * 
+ * <p>
+ * Children are always evaluated in document order, so the ordered variants of the overriding algorithms share
+ * the implementations of the unordered ones.
+ * </p>
+ */
+final class CombiningAlgorithms {
+
+    /** Prefix of XACML 1.0 rule combining algorithm IDs. */
+    @Nonnull private static final String RULE_1_0 = "urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:";
+
+    /** Prefix of XACML 1.1 rule combining algorithm IDs. */
+    @Nonnull private static final String RULE_1_1 = "urn:oasis:names:tc:xacml:1.1:rule-combining-algorithm:";
+
+    /** Prefix of XACML 1.0 policy combining algorithm IDs. */
+    @Nonnull private static final String POLICY_1_0 = "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:";
+
+    /** Prefix of XACML 1.1 policy combining algorithm IDs. */
+    @Nonnull private static final String POLICY_1_1 = "urn:oasis:names:tc:xacml:1.1:policy-combining-algorithm:";
+
+    /** The rule combining algorithms, indexed by ID. */
+    @Nonnull private static final Map<String,CombiningAlgorithm> RULE_ALGORITHMS;
+
+    /** The policy combining algorithms, indexed by ID. */
+    @Nonnull private static final Map<String,CombiningAlgorithm> POLICY_ALGORITHMS;
+
+    static {
+        final Map<String,CombiningAlgorithm> rules = new HashMap<>();
+        final CombiningAlgorithm ruleDenyOverrides = (c, s, ctx) -> ruleOverrides(c, s, ctx, DECISION.Deny);
+        final CombiningAlgorithm rulePermitOverrides = (c, s, ctx) -> ruleOverrides(c, s, ctx, DECISION.Permit);
+        rules.put(RULE_1_0 + "deny-overrides", ruleDenyOverrides);
+        rules.put(RULE_1_1 + "ordered-deny-overrides", ruleDenyOverrides);
+        rules.put(RULE_1_0 + "permit-overrides", rulePermitOverrides);
+        rules.put(RULE_1_1 + "ordered-permit-overrides", rulePermitOverrides);
+        rules.put(RULE_1_0 + "first-applicable", CombiningAlgorithms::firstApplicable);
+        RULE_ALGORITHMS = Collections.unmodifiableMap(rules);
+
+        final Map<String,CombiningAlgorithm> policies = new HashMap<>();
+        policies.put(POLICY_1_0 + "deny-overrides", CombiningAlgorithms::policyDenyOverrides);
+        policies.put(POLICY_1_1 + "ordered-deny-overrides", CombiningAlgorithms::policyDenyOverrides);
+        policies.put(POLICY_1_0 + "permit-overrides", CombiningAlgorithms::policyPermitOverrides);
+        policies.put(POLICY_1_1 + "ordered-permit-overrides", CombiningAlgorithms::policyPermitOverrides);
+        policies.put(POLICY_1_0 + "first-applicable", CombiningAlgorithms::firstApplicable);
+        policies.put(POLICY_1_0 + "only-one-applicable", CombiningAlgorithms::onlyOneApplicable);
+        POLICY_ALGORITHMS = Collections.unmodifiableMap(policies);
+    }
+
+    /** Constructor. */
+    private CombiningAlgorithms() {
+    }
+
+    /**
+     * Get a supported rule combining algorithm.
+     * 
+     * @param algorithmId the algorithm ID
+     * 
+     * @return the algorithm, or null if it is not supported
+     */
+    @Nullable static CombiningAlgorithm getRuleCombiningAlgorithm(@Nullable final String algorithmId) {
+        return algorithmId != null ? RULE_ALGORITHMS.get(algorithmId) : null;
+    }
+
+    /**
+     * Get a supported policy combining algorithm.
+     * 
+     * @param algorithmId the algorithm ID
+     * 
+     * @return the algorithm, or null if it is not supported
+     */
+    @Nullable static CombiningAlgorithm getPolicyCombiningAlgorithm(@Nullable final String algorithmId) {
+        return algorithmId != null ? POLICY_ALGORITHMS.get(algorithmId) : null;
+    }
+
+    /**
+     * The rule deny-overrides and permit-overrides algorithms.
+     * 
+     * @param rules the rules
+     * @param candidates the candidate rules, or null
+     * @param context the evaluation context
+     * @param overriding the overriding decision
+     * 
+     * @return the combined decision
+     */
+    @Nonnull private static DECISION ruleOverrides(@Nonnull final Evaluable[] rules,
+            @Nullable final boolean[] candidates, @Nonnull final EvaluationContext context,
+            @Nonnull final DECISION overriding) {
+        final EffectType overridingEffect = overriding == DECISION.Deny ? EffectType.Deny : EffectType.Permit;
+        final DECISION overridden = overriding == DECISION.Deny ? DECISION.Permit : DECISION.Deny;
+        boolean potentialOverride = false;
+        boolean atLeastOneOverridden = false;
+        boolean atLeastOneError = false;
+
+        for (int i = 0; i < rules.length; i++) {
+            if (candidates != null && !candidates[i]) {
+                continue;
+            }
+            final DECISION decision = rules[i].evaluate(context);
+            if (decision == overriding) {
+                return decision;
+            } else if (decision == overridden) {
+                atLeastOneOverridden = true;
+            } else if (decision == DECISION.Indeterminate) {
+                if (rules[i].getEffect() == overridingEffect) {
+                    potentialOverride = true;
+                } else {
+                    atLeastOneError = true;
+                }
+            }
+        }
+
+        if (potentialOverride) {
+            return DECISION.Indeterminate;
+        } else if (atLeastOneOverridden) {
+            return overridden;
+        } else if (atLeastOneError) {
+            return DECISION.Indeterminate;
+        }
+        return DECISION.NotApplicable;
+    }
+
+    /**
+     * The policy deny-overrides algorithm.
+     * 
+     * @param policies the policies
+     * @param candidates the candidate policies, or null
+     * @param context the evaluation context
+     * 
+     * @return the combined decision
+     */
+    @Nonnull private static DECISION policyDenyOverrides(@Nonnull final Evaluable[] policies,
+            @Nullable final boolean[] candidates, @Nonnull final EvaluationContext context) {
+        boolean atLeastOnePermit = false;
+
+        for (int i = 0; i < policies.length; i++) {
+            if (candidates != null && !candidates[i]) {
+                continue;
+            }
+            final DECISION decision = policies[i].evaluate(context);
+            if (decision == DECISION.Deny || decision == DECISION.Indeterminate) {
+                return DECISION.Deny;
+            } else if (decision == DECISION.Permit) {
+                atLeastOnePermit = true;
+            }
+        }
+        return atLeastOnePermit ? DECISION.Permit : DECISION.NotApplicable;
+    }
+
+    /**
+     * The policy permit-overrides algorithm.
+     * 
+     * @param policies the policies
+     * @param candidates the candidate policies, or null
+     * @param context the evaluation context
+     * 
+     * @return the combined decision
+     */
+    @Nonnull private static DECISION policyPermitOverrides(@Nonnull final Evaluable[] policies,
+            @Nullable final boolean[] candidates, @Nonnull final EvaluationContext context) {
+        boolean atLeastOneDeny = false;
+        boolean atLeastOneError = false;
+
+        for (int i = 0; i < policies.length; i++) {
+            if (candidates != null && !candidates[i]) {
+                continue;
+            }
+            final DECISION decision = policies[i].evaluate(context);
+            if (decision == DECISION.Permit) {
+                return decision;
+            } else if (decision == DECISION.Deny) {
+                atLeastOneDeny = true;
+            } else if (decision == DECISION.Indeterminate) {
+                atLeastOneError = true;
+            }
+        }
+
+        if (atLeastOneDeny) {
+            return DECISION.Deny;
+        } else if (atLeastOneError) {
+            return DECISION.Indeterminate;
+        }
+        return DECISION.NotApplicable;
+    }
+
+    /**
+     * The rule and policy first-applicable algorithms.
+     * 
+     * @param children the rules or policies
+     * @param candidates the candidate children, or null
+     * @param context the evaluation context
+     * 
+     * @return the combined decision
+     */
+    @Nonnull private static DECISION firstApplicable(@Nonnull final Evaluable[] children,
+            @Nullable final boolean[] candidates, @Nonnull final EvaluationContext context) {
+        for (int i = 0; i < children.length; i++) {
+            if (candidates != null && !candidates[i]) {
+                continue;
+            }
+            final DECISION decision = children[i].evaluate(context);
+            if (decision != DECISION.NotApplicable) {
+                return decision;
+            }
+        }
+        return DECISION.NotApplicable;
+    }
+
+    /**
+     * The policy only-one-applicable algorithm.
+     * 
+     * @param policies the policies
+     * @param candidates the candidate policies, or null
+     * @param context the evaluation context
+     * 
+     * @return the combined decision
+     */
+    @Nonnull private static DECISION onlyOneApplicable(@Nonnull final Evaluable[] policies,
+            @Nullable final boolean[] candidates, @Nonnull final EvaluationContext context) {
+        Evaluable selected = null;
+
+        for (int i = 0; i < policies.length; i++) {
+            if (candidates != null && !candidates[i]) {
+                continue;
+            }
+            final MatchResult match = policies[i].getTarget().evaluate(context);
+            if (match == MatchResult.INDETERMINATE) {
+                return DECISION.Indeterminate;
+            } else if (match == MatchResult.MATCH) {
+                if (selected != null) {
+                    return DECISION.Indeterminate;
+                }
+                selected = policies[i];
+            }
+        }
+        return selected != null ? selected.evaluate(context) : DECISION.NotApplicable;
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.namespace.QName;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.xacml.ctx.DecisionType;
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.ctx.MultipleResourceSupport;
+import org.opensaml.xacml.ctx.RequestType;
+import org.opensaml.xacml.ctx.ResourceType;
+import org.opensaml.xacml.ctx.ResponseType;
+import org.opensaml.xacml.ctx.ResultType;
+import org.opensaml.xacml.ctx.StatusCodeType;
+import org.opensaml.xacml.ctx.StatusMessageType;
+import org.opensaml.xacml.ctx.StatusType;
+import org.opensaml.xacml.policy.AttributeAssignmentType;
+import org.opensaml.xacml.policy.ObligationType;
+import org.opensaml.xacml.policy.ObligationsType;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * An immutable policy or policy set compiled by {@link PolicyCompiler}, which evaluates requests in memory.
+ * 
+ * <p>
+ * Evaluating a request indexes its attributes once and then walks the compiled structure, with no further lookups
+ * of functions, data types or combining algorithms and no intermediate objects beyond the index. Only the
+ * response itself is built as XML objects. For an <code>XACMLAuthzDecisionQuery</code>, evaluate the query's
+ * request.
+ * </p>
+ * 
+ * <p>
+ * A request on several resources is evaluated under the XACML 2.0 Multiple Resource profile, as one individual
+ * request per resource, with one result per resource identified by its resource ID. See
+ * {@link MultipleResourceSupport}.
+ * </p>
+ * 
+ * @since 4.0.0
+ */
+@ThreadSafe
+public final class CompiledPolicyEvaluator {
+
+    /** The compiled policy or policy set. */
+    @Nonnull private final Evaluable policy;
+
+    /**
+     * Constructor.
+     * 
+     * @param compiled the compiled policy or policy set
+     */
+    CompiledPolicyEvaluator(@Nonnull final Evaluable compiled) {
+        policy = compiled;
+    }
+
+    /**
+     * Evaluate a request, returning only the decision.
+     * 
+     * <p>
+     * The attributes of all the request's resources are evaluated together, as a single request.
+     * </p>
+     * 
+     * @param request the request
+     * 
+     * @return the decision
+     */
+    @Nonnull public DECISION decide(@Nonnull final RequestType request) {
+        Constraint.isNotNull(request, "Request cannot be null");
+        return policy.evaluate(new EvaluationContext(request));
+    }
+
+    /**
+     * Evaluate a request.
+     * 
+     * @param request the request
+     * 
+     * @return the response, containing one result per resource if the request has several, otherwise a single
+     *          result
+     */
+    @Nonnull public ResponseType evaluate(@Nonnull final RequestType request) {
+        Constraint.isNotNull(request, "Request cannot be null");
+        final ResponseType response = build(ResponseType.DEFAULT_ELEMENT_NAME);
+
+        final List<ResourceType> resources = request.getResources();
+        if (resources.size() <= 1) {
+            final EvaluationContext context = new EvaluationContext(request);
+            response.getResults().add(buildResult(policy.evaluate(context), context));
+            return response;
+        }
+
+        final EvaluationContext shared = new EvaluationContext(request, false);
+        for (final ResourceType resource : resources) {
+            final EvaluationContext context = new EvaluationContext(shared, resource);
+            final ResultType result = buildResult(policy.evaluate(context), context);
+            result.setResourceId(MultipleResourceSupport.getResourceId(resource));
+            response.getResults().add(result);
+        }
+        return response;
+    }
+
+    /**
+     * Build the result of an evaluation.
+     * 
+     * @param decision the decision
+     * @param context the evaluation context
+     * 
+     * @return the result
+     */
+    @Nonnull private ResultType buildResult(@Nonnull final DECISION decision,
+            @Nonnull final EvaluationContext context) {
+        final ResultType result = build(ResultType.DEFAULT_ELEMENT_NAME);
+
+        final DecisionType decisionType = build(DecisionType.DEFAULT_ELEMENT_NAME);
+        decisionType.setDecision(decision);
+        result.setDecision(decisionType);
+
+        final StatusType status = build(StatusType.DEFAULT_ELEMENT_NAME);
+        final StatusCodeType statusCode = build(StatusCodeType.DEFAULT_ELEMENT_NAME);
+        if (decision == DECISION.Indeterminate) {
+            statusCode.setValue(context.getStatusCode() != null ? context.getStatusCode()
+                    : StatusCodeType.SC_PROCESSING_ERROR);
+            if (context.getStatusMessage() != null) {
+                final StatusMessageType statusMessage = build(StatusMessageType.DEFAULT_ELEMENT_NAME);
+                statusMessage.setValue(context.getStatusMessage());
+                status.setStatusMessage(statusMessage);
+            }
+        } else {
+            statusCode.setValue(StatusCodeType.SC_OK);
+        }
+        status.setStatusCode(statusCode);
+        result.setStatus(status);
+
+        final List<Obligation> obligations = context.getObligations();
+        if (!obligations.isEmpty()) {
+            final ObligationsType obligationsType = build(ObligationsType.DEFAULT_ELEMENT_QNAME);
+            for (final Obligation obligation : obligations) {
+                obligationsType.getObligations().add(buildObligation(obligation));
+            }
+            result.setObligations(obligationsType);
+        }
+
+        return result;
+    }
+
+    /**
+     * Build an obligation.
+     * 
+     * @param obligation the compiled obligation
+     * 
+     * @return the obligation
+     */
+    @Nonnull private ObligationType buildObligation(@Nonnull final Obligation obligation) {
+        final ObligationType obligationType = build(ObligationType.DEFAULT_ELEMENT_QNAME);
+        obligationType.setObligationId(obligation.getObligationId());
+        obligationType.setFulfillOn(obligation.getFulfillOn());
+        for (int i = 0; i < obligation.getAssignmentCount(); i++) {
+            final AttributeAssignmentType assignment = build(AttributeAssignmentType.DEFAULT_ELEMENT_NAME);
+            assignment.setAttributeId(obligation.getAttributeId(i));
+            assignment.setDataType(obligation.getDataType(i));
+            assignment.setValue(obligation.getValue(i));
+            obligationType.getAttributeAssignments().add(assignment);
+        }
+        return obligationType;
+    }
+
+    /**
+     * Build an XML object.
+     * 
+     * @param <T> the type of object
+     * @param name the element name
+     * 
+     * @return the object
+     */
+    @Nonnull private static <T extends XMLObject> T build(@Nonnull final QName name) {
+        return XMLObjectProviderRegistrySupport.getBuilderFactory().<T>getBuilderOrThrow(name).buildObject(name);
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The XACML data types supported by compiled policies, and conversion of their lexical forms.
+ * 
+ * <p>
+ * Values are represented as {@link String} for <code>string</code> and <code>anyURI</code>, {@link Boolean},
+ * {@link Long} for <code>integer</code> and {@link Double}.
+ * </p>
+ */
+final class DataTypes {
+
+    /** String data type. */
+    @Nonnull static final String STRING = "http://www.w3.org/2001/XMLSchema#string";
+
+    /** Boolean data type. */
+    @Nonnull static final String BOOLEAN = "http://www.w3.org/2001/XMLSchema#boolean";
+
+    /** Integer data type. */
+    @Nonnull static final String INTEGER = "http://www.w3.org/2001/XMLSchema#integer";
+
+    /** Double data type. */
+    @Nonnull static final String DOUBLE = "http://www.w3.org/2001/XMLSchema#double";
+
+    /** AnyURI data type. */
+    @Nonnull static final String ANY_URI = "http://www.w3.org/2001/XMLSchema#anyURI";
+
+    /** Constructor. */
+    private DataTypes() {
+    }
+
+    /**
+     * Get whether a data type is supported.
+     * 
+     * @param dataType the data type
+     * 
+     * @return true iff values of the data type can be evaluated
+     */
+    static boolean isSupported(@Nullable final String dataType) {
+        return STRING.equals(dataType) || BOOLEAN.equals(dataType) || INTEGER.equals(dataType)
+                || DOUBLE.equals(dataType) || ANY_URI.equals(dataType);
+    }
+
+    /**
+     * Convert a lexical value to the representation of its data type.
+     * 
+     * <p>
+     * Values of unsupported data types are returned unconverted; no compiled policy refers to them.
+     * </p>
+     * 
+     * @param dataType the data type
+     * @param value the lexical value
+     * 
+     * @return the converted value, or null if the value is not valid for the data type
+     */
+    @Nullable static Object convert(@Nonnull final String dataType, @Nullable final String value) {
+        final String lexical = value != null ? value : "";
+        try {
+            switch (dataType) {
+                case BOOLEAN:
+                    final String trimmed = lexical.trim();
+                    if ("true".equals(trimmed) || "1".equals(trimmed)) {
+                        return Boolean.TRUE;
+                    } else if ("false".equals(trimmed) || "0".equals(trimmed)) {
+                        return Boolean.FALSE;
+                    }
+                    return null;
+                case INTEGER:
+                    return Long.valueOf(lexical.trim());
+                case DOUBLE:
+                    return Double.valueOf(lexical.trim());
+                case ANY_URI:
+                    return lexical.trim();
+                default:
+                    return lexical;
+            }
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.xacml.ctx.StatusCodeType;
+
+/**
+ * A compiled attribute designator, which looks up its bag by a key computed when the policy is compiled.
+ */
+final class Designator implements Expression {
+
+    /** The attribute ID. */
+    @Nonnull private final String attributeId;
+
+    /** The data type. */
+    @Nonnull private final String dataType;
+
+    /** The issuer, or null. */
+    @Nullable private final String issuer;
+
+    /** Whether the attribute must be present. */
+    private final boolean mustBePresent;
+
+    /** The key of the bag in the evaluation context. */
+    @Nonnull private final String key;
+
+    /**
+     * Constructor.
+     * 
+     * @param category the attribute category
+     * @param id the attribute ID
+     * @param type the data type
+     * @param attributeIssuer the issuer, or null
+     * @param required whether the attribute must be present
+     */
+    Designator(@Nonnull final String category, @Nonnull final String id, @Nonnull final String type,
+            @Nullable final String attributeIssuer, final boolean required) {
+        attributeId = id;
+        dataType = type;
+        issuer = attributeIssuer;
+        mustBePresent = required;
+        key = EvaluationContext.buildKey(category, id, type, attributeIssuer);
+    }
+
+    /**
+     * Get the key of the bag in the evaluation context.
+     * 
+     * @return the key
+     */
+    @Nonnull String getKey() {
+        return key;
+    }
+
+    /**
+     * Get whether the designator's bag may be used to index policies.
+     * 
+     * <p>
+     * That is the case if looking up the bag has no side effects on the evaluation.
+     * </p>
+     * 
+     * @return true iff the designator neither requires its attribute nor restricts its issuer
+     */
+    boolean isIndexable() {
+        return !mustBePresent && issuer == null;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public Object evaluate(@Nonnull final EvaluationContext context) {
+        final Object bag = context.getBag(key);
+        if (bag == EvaluationContext.INDETERMINATE) {
+            context.recordError(StatusCodeType.SC_SYNTAX_ERROR, "Invalid value of attribute " + attributeId);
+        } else if (mustBePresent && ((List<?>) bag).isEmpty()) {
+            context.missingAttribute(attributeId);
+            return EvaluationContext.INDETERMINATE;
+        }
+        return bag;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public String getDataType() {
+        return dataType;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isBag() {
+        return true;
+    }
+
+}
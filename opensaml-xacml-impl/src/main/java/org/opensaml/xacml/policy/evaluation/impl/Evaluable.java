@@ -0,0 +1,70 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.policy.EffectType;
+
+/**
+ * A compiled rule, policy or policy set.
+ */
+abstract class Evaluable {
+
+    /** The target. */
+    @Nonnull private final Target target;
+
+    /**
+     * Constructor.
+     * 
+     * @param evaluableTarget the target
+     */
+    Evaluable(@Nonnull final Target evaluableTarget) {
+        target = evaluableTarget;
+    }
+
+    /**
+     * Get the target.
+     * 
+     * @return the target
+     */
+    @Nonnull final Target getTarget() {
+        return target;
+    }
+
+    /**
+     * Get the effect of a rule.
+     * 
+     * @return the effect, or null for a policy or policy set
+     */
+    @Nullable EffectType getEffect() {
+        return null;
+    }
+
+    /**
+     * Evaluate against a request.
+     * 
+     * @param context the evaluation context
+     * 
+     * @return the decision
+     */
+    @Nonnull abstract DECISION evaluate(@Nonnull final EvaluationContext context);
+
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.xacml.ctx.ActionType;
+import org.opensaml.xacml.ctx.AttributeType;
+import org.opensaml.xacml.ctx.AttributeValueType;
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.ctx.EnvironmentType;
+import org.opensaml.xacml.ctx.RequestType;
+import org.opensaml.xacml.ctx.ResourceType;
+import org.opensaml.xacml.ctx.StatusCodeType;
+import org.opensaml.xacml.ctx.SubjectType;
+
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+/**
+ * State of a single evaluation of a compiled policy against a request.
+ * 
+ * <p>
+ * The request's attributes are indexed once, by category, attribute ID, data type and optionally issuer, with
+ * their values converted to their data type's representation. Compiled designators look up their bag with a
+ * key computed at compile time, so evaluating a policy against the request builds no intermediate structures.
+ * </p>
+ * 
+ * <p>
+ * For a request on several resources under the Multiple Resource profile, the attributes of the subjects, action
+ * and environment are indexed once in a shared context, and each resource is evaluated in its own context layered
+ * over it.
+ * </p>
+ * 
+ * <p>
+ * Instances are confined to the thread performing the evaluation.
+ * </p>
+ */
+final class EvaluationContext {
+
+    /** Result of an expression whose value could not be determined. */
+    @Nonnull static final Object INDETERMINATE = new Object();
+
+    /** Category of resource attributes. */
+    @Nonnull static final String CATEGORY_RESOURCE = "resource";
+
+    /** Category of action attributes. */
+    @Nonnull static final String CATEGORY_ACTION = "action";
+
+    /** Category of environment attributes. */
+    @Nonnull static final String CATEGORY_ENVIRONMENT = "environment";
+
+    /** Bags of request attribute values, or {@link #INDETERMINATE} for bags with an invalid value. */
+    @Nonnull private final Map<String,Object> attributes;
+
+    /** Bags of the attribute values of the single resource evaluated over a shared context, or null. */
+    @Nullable private final Map<String,Object> resourceAttributes;
+
+    /** Obligations gathered during evaluation. */
+    @Nonnull private final List<Obligation> obligations;
+
+    /** Status code of the first error encountered, or null. */
+    @Nullable private String statusCode;
+
+    /** Status message of the first error encountered, or null. */
+    @Nullable private String statusMessage;
+
+    /**
+     * Constructor.
+     * 
+     * @param request the request to evaluate
+     */
+    EvaluationContext(@Nonnull final RequestType request) {
+        this(request, true);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param request the request to evaluate
+     * @param includeResources whether to index the attributes of the request's resources, or only those shared
+     *          by all of them
+     */
+    EvaluationContext(@Nonnull final RequestType request, final boolean includeResources) {
+        attributes = new HashMap<>();
+        resourceAttributes = null;
+        obligations = new ArrayList<>(4);
+
+        for (final SubjectType subject : request.getSubjects()) {
+            String category = StringSupport.trimOrNull(subject.getSubjectCategory());
+            if (category == null) {
+                category = SubjectType.SUBJECT_CATEGORY_ATTTRIB_DEFAULT;
+            }
+            index(attributes, category, subject.getAttributes());
+        }
+        if (includeResources) {
+            for (final ResourceType resource : request.getResources()) {
+                index(attributes, CATEGORY_RESOURCE, resource.getAttributes());
+            }
+        }
+        final ActionType action = request.getAction();
+        if (action != null) {
+            index(attributes, CATEGORY_ACTION, action.getAttributes());
+        }
+        final EnvironmentType environment = request.getEnvironment();
+        if (environment != null) {
+            index(attributes, CATEGORY_ENVIRONMENT, environment.getAttributes());
+        }
+    }
+
+    /**
+     * Constructor for the evaluation of one resource of a request on several.
+     * 
+     * @param shared the context indexing the attributes shared by all the request's resources
+     * @param resource the resource to evaluate
+     */
+    EvaluationContext(@Nonnull final EvaluationContext shared, @Nonnull final ResourceType resource) {
+        attributes = shared.attributes;
+        resourceAttributes = new HashMap<>();
+        obligations = new ArrayList<>(4);
+        index(resourceAttributes, CATEGORY_RESOURCE, resource.getAttributes());
+    }
+
+    /**
+     * Build the key under which a bag of attribute values is indexed.
+     * 
+     * @param category the attribute category
+     * @param attributeId the attribute ID
+     * @param dataType the data type
+     * @param issuer the issuer, or null for values from any issuer
+     * 
+     * @return the key
+     */
+    @Nonnull static String buildKey(@Nonnull final String category, @Nonnull final String attributeId,
+            @Nonnull final String dataType, @Nullable final String issuer) {
+        final StringBuilder builder = new StringBuilder(category.length() + attributeId.length()
+                + dataType.length() + (issuer != null ? issuer.length() + 3 : 2));
+        builder.append(category).append('|').append(attributeId).append('|').append(dataType);
+        if (issuer != null) {
+            builder.append('|').append(issuer);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Get a bag of request attribute values.
+     * 
+     * @param key the key computed by {@link #buildKey(String, String, String, String)}
+     * 
+     * @return the bag, which may be empty, or {@link #INDETERMINATE}
+     */
+    @Nonnull Object getBag(@Nonnull final String key) {
+        Object bag = attributes.get(key);
+        if (bag == null && resourceAttributes != null) {
+            bag = resourceAttributes.get(key);
+        }
+        return bag != null ? bag : Collections.emptyList();
+    }
+
+    /**
+     * Record that an attribute required by the policy was missing from the request.
+     * 
+     * @param attributeId the missing attribute ID
+     */
+    void missingAttribute(@Nonnull final String attributeId) {
+        recordError(StatusCodeType.SC_MISSING_ATTRIBUTE, "Missing required attribute " + attributeId);
+    }
+
+    /**
+     * Record an error encountered during evaluation.
+     * 
+     * <p>
+     * Only the first error is retained.
+     * </p>
+     * 
+     * @param code the status code
+     * @param message the status message
+     */
+    void recordError(@Nonnull final String code, @Nonnull final String message) {
+        if (statusCode == null) {
+            statusCode = code;
+            statusMessage = message;
+        }
+    }
+
+    /**
+     * Get the status code of the first error encountered.
+     * 
+     * @return the status code, or null
+     */
+    @Nullable String getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Get the status message of the first error encountered.
+     * 
+     * @return the status message, or null
+     */
+    @Nullable String getStatusMessage() {
+        return statusMessage;
+    }
+
+    /**
+     * Get the obligations gathered so far.
+     * 
+     * @return the obligations
+     */
+    @Nonnull List<Obligation> getObligations() {
+        return obligations;
+    }
+
+    /**
+     * Get a mark identifying the obligations gathered so far.
+     * 
+     * @return the mark
+     */
+    int markObligations() {
+        return obligations.size();
+    }
+
+    /**
+     * Discard obligations gathered since a mark which do not apply to a combined decision.
+     * 
+     * <p>
+     * Every obligation retained by a policy applies to that policy's decision, so the obligations of the
+     * policies whose decision was combined into another are exactly those whose effect matches it.
+     * </p>
+     * 
+     * @param mark the mark
+     * @param decision the combined decision
+     */
+    void retainObligations(final int mark, @Nonnull final DECISION decision) {
+        if (decision != DECISION.Permit && decision != DECISION.Deny) {
+            obligations.subList(mark, obligations.size()).clear();
+            return;
+        }
+
+        int retained = mark;
+        for (int i = mark; i < obligations.size(); i++) {
+            final Obligation obligation = obligations.get(i);
+            if (obligation.appliesTo(decision)) {
+                obligations.set(retained++, obligation);
+            }
+        }
+        obligations.subList(retained, obligations.size()).clear();
+    }
+
+    /**
+     * Index the attributes of one request element.
+     * 
+     * @param bags the bags to index into
+     * @param category the attribute category
+     * @param requestAttributes the attributes
+     */
+    private static void index(@Nonnull final Map<String,Object> bags, @Nonnull final String category,
+            @Nonnull final List<AttributeType> requestAttributes) {
+        for (final AttributeType attribute : requestAttributes) {
+            final String attributeId = StringSupport.trimOrNull(attribute.getAttributeId());
+            final String dataType = StringSupport.trimOrNull(attribute.getDataType());
+            if (attributeId == null || dataType == null) {
+                continue;
+            }
+
+            final String key = buildKey(category, attributeId, dataType, null);
+            final String issuer = StringSupport.trimOrNull(attribute.getIssuer());
+            final String issuerKey = issuer != null ? buildKey(category, attributeId, dataType, issuer) : null;
+
+            for (final AttributeValueType value : attribute.getAttributeValues()) {
+                final Object converted = DataTypes.convert(dataType, value.getValue());
+                add(bags, key, converted);
+                if (issuerKey != null) {
+                    add(bags, issuerKey, converted);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a value to an indexed bag.
+     * 
+     * @param bags the indexed bags
+     * @param key the bag's key
+     * @param value the converted value, or null if the value was invalid for its data type
+     */
+    @SuppressWarnings("unchecked")
+    private static void add(@Nonnull final Map<String,Object> bags, @Nonnull final String key,
+            @Nullable final Object value) {
+        final Object bag = bags.get(key);
+        if (bag == INDETERMINATE) {
+            return;
+        } else if (value == null) {
+            bags.put(key, INDETERMINATE);
+        } else if (bag == null) {
+            final List<Object> values = new ArrayList<>(2);
+            values.add(value);
+            bags.put(key, values);
+        } else {
+            ((List<Object>) bag).add(value);
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A compiled XACML expression.
+ */
+interface Expression {
+
+    /**
+     * Evaluate the expression.
+     * 
+     * <p>
+     * A bag is returned as a {@link java.util.List}, and a single value in the representation of its data type.
+     * </p>
+     * 
+     * @param context the evaluation context
+     * 
+     * @return the value, or {@link EvaluationContext#INDETERMINATE}
+     */
+    @Nonnull Object evaluate(@Nonnull final EvaluationContext context);
+
+    /**
+     * Get the data type of the expression's value.
+     * 
+     * @return the data type
+     */
+    @Nonnull String getDataType();
+
+    /**
+     * Get whether the expression's value is a bag.
+     * 
+     * @return true iff the value is a bag
+     */
+    boolean isBag();
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Definition of an XACML function supported by compiled policies.
+ * 
+ * <p>
+ * Argument types are checked when a policy is compiled, so implementations may cast their arguments' values to
+ * the representations of the declared data types.
+ * </p>
+ */
+final class Function {
+
+    /** The function ID. */
+    @Nonnull private final String functionId;
+
+    /** The data type of the result. */
+    @Nonnull private final String returnType;
+
+    /** Whether the result is a bag. */
+    private final boolean returnsBag;
+
+    /** The data types of the parameters. */
+    @Nonnull private final String[] parameterTypes;
+
+    /** Whether each parameter is a bag. */
+    @Nonnull private final boolean[] parameterBags;
+
+    /** Whether the function takes any number of arguments of the single parameter type. */
+    private final boolean variadic;
+
+    /** The implementation. */
+    @Nonnull private final Implementation implementation;
+
+    /** The predicate applied by a two-argument boolean function, or null. */
+    @Nullable private final Predicate predicate;
+
+    /** Whether the function is an equality predicate. */
+    private final boolean equality;
+
+    /** Conversion applied to a literal first argument when the policy is compiled, or null. */
+    @Nullable private final LiteralPreparer literalPreparer;
+
+    /**
+     * Constructor.
+     * 
+     * @param id the function ID
+     * @param type the data type of the result
+     * @param bag whether the result is a bag
+     * @param types the data types of the parameters
+     * @param bags whether each parameter is a bag
+     * @param anyNumber whether the function takes any number of arguments of the single parameter type
+     * @param impl the implementation
+     * @param test the predicate applied by a two-argument boolean function, or null
+     * @param isEquality whether the function is an equality predicate
+     * @param preparer conversion applied to a literal first argument, or null
+     */
+    // Checkstyle: ParameterNumber OFF
+    Function(@Nonnull final String id, @Nonnull final String type, final boolean bag, @Nonnull final String[] types,
+            @Nonnull final boolean[] bags, final boolean anyNumber, @Nonnull final Implementation impl,
+            @Nullable final Predicate test, final boolean isEquality, @Nullable final LiteralPreparer preparer) {
+        functionId = id;
+        returnType = type;
+        returnsBag = bag;
+        parameterTypes = types;
+        parameterBags = bags;
+        variadic = anyNumber;
+        implementation = impl;
+        predicate = test;
+        equality = isEquality;
+        literalPreparer = preparer;
+    }
+    // Checkstyle: ParameterNumber ON
+
+    /**
+     * Get the function ID.
+     * 
+     * @return the function ID
+     */
+    @Nonnull String getFunctionId() {
+        return functionId;
+    }
+
+    /**
+     * Get the data type of the result.
+     * 
+     * @return the data type
+     */
+    @Nonnull String getReturnType() {
+        return returnType;
+    }
+
+    /**
+     * Get whether the result is a bag.
+     * 
+     * @return true iff the result is a bag
+     */
+    boolean isReturnsBag() {
+        return returnsBag;
+    }
+
+    /**
+     * Get the predicate applied by a two-argument boolean function.
+     * 
+     * @return the predicate, or null if the function is not a predicate of two single values
+     */
+    @Nullable Predicate getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * Get whether the function is an equality predicate.
+     * 
+     * @return true iff the function is an equality predicate
+     */
+    boolean isEquality() {
+        return equality;
+    }
+
+    /**
+     * Apply the function.
+     * 
+     * @param arguments the arguments
+     * @param context the evaluation context
+     * 
+     * @return the result, or {@link EvaluationContext#INDETERMINATE}
+     */
+    @Nonnull Object apply(@Nonnull final Expression[] arguments, @Nonnull final EvaluationContext context) {
+        return implementation.apply(arguments, context);
+    }
+
+    /**
+     * Check the number and types of the arguments to an application of the function.
+     * 
+     * @param arguments the arguments
+     * 
+     * @throws PolicyCompilationException if the arguments do not match the function's parameters
+     */
+    void checkArguments(@Nonnull final Expression[] arguments) throws PolicyCompilationException {
+        if (!variadic && arguments.length != parameterTypes.length) {
+            throw new PolicyCompilationException("Function " + functionId + " requires " + parameterTypes.length
+                    + " arguments, but was given " + arguments.length);
+        }
+
+        for (int i = 0; i < arguments.length; i++) {
+            final int parameter = variadic ? 0 : i;
+            if (!parameterTypes[parameter].equals(arguments[i].getDataType())
+                    || parameterBags[parameter] != arguments[i].isBag()) {
+                throw new PolicyCompilationException("Argument " + (i + 1) + " of function " + functionId
+                        + " must be " + (parameterBags[parameter] ? "a bag of " : "a single ")
+                        + parameterTypes[parameter] + ", but is " + (arguments[i].isBag() ? "a bag of " : "a single ")
+                        + arguments[i].getDataType());
+            }
+        }
+    }
+
+    /**
+     * Check the types of the values compared by a match using the function.
+     * 
+     * @param literalType the data type of the match's literal value
+     * @param attributeType the data type of the match's designator
+     * 
+     * @throws PolicyCompilationException if the function cannot be used by the match
+     */
+    void checkMatchArguments(@Nonnull final String literalType, @Nonnull final String attributeType)
+            throws PolicyCompilationException {
+        if (predicate == null) {
+            throw new PolicyCompilationException("Function " + functionId + " cannot be used as a match function");
+        } else if (!parameterTypes[0].equals(literalType) || !parameterTypes[1].equals(attributeType)) {
+            throw new PolicyCompilationException("Match function " + functionId + " compares " + parameterTypes[0]
+                    + " to " + parameterTypes[1] + ", but the match compares " + literalType + " to "
+                    + attributeType);
+        }
+    }
+
+    /**
+     * Convert the value of a literal first argument when the policy is compiled.
+     * 
+     * @param value the literal's value
+     * 
+     * @return the value to use in place of the literal's
+     * 
+     * @throws PolicyCompilationException if the value is not valid for the function
+     */
+    @Nonnull Object prepareLiteral(@Nonnull final Object value) throws PolicyCompilationException {
+        if (literalPreparer == null) {
+            return value;
+        }
+        try {
+            return literalPreparer.prepare(value);
+        } catch (final IllegalArgumentException e) {
+            throw new PolicyCompilationException("Invalid argument to function " + functionId, e);
+        }
+    }
+
+    /**
+     * Implementation of a function.
+     */
+    interface Implementation {
+
+        /**
+         * Apply the function.
+         * 
+         * @param arguments the arguments
+         * @param context the evaluation context
+         * 
+         * @return the result, or {@link EvaluationContext#INDETERMINATE}
+         */
+        @Nonnull Object apply(@Nonnull final Expression[] arguments, @Nonnull final EvaluationContext context);
+    }
+
+    /**
+     * Predicate of two single values.
+     */
+    interface Predicate {
+
+        /**
+         * Test the values.
+         * 
+         * @param first the first value
+         * @param second the second value
+         * 
+         * @return the result
+         * 
+         * @throws IllegalArgumentException if the predicate cannot be evaluated for the values
+         */
+        boolean test(@Nonnull final Object first, @Nonnull final Object second);
+    }
+
+    /**
+     * Conversion of a literal first argument.
+     */
+    interface LiteralPreparer {
+
+        /**
+         * Convert the value.
+         * 
+         * @param value the literal's value
+         * 
+         * @return the converted value
+         * 
+         * @throws IllegalArgumentException if the value is not valid for the function
+         */
+        @Nonnull Object prepare(@Nonnull final Object value);
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.xacml.ctx.StatusCodeType;
+
+/**
+ * Registry of the XACML functions supported by compiled policies.
+ * 
+ * <p>
+ * The equality, bag, set membership, comparison, logical, string normalization and regular expression functions
+ * of XACML 2.0 are supported for the data types in {@link DataTypes}. Higher-order bag functions are not.
+ * </p>
+ */
+final class Functions {
+
+    /** Prefix of XACML 1.0 function IDs. */
+    @Nonnull static final String PREFIX_1_0 = "urn:oasis:names:tc:xacml:1.0:function:";
+
+    /** Prefix of XACML 2.0 function IDs. */
+    @Nonnull static final String PREFIX_2_0 = "urn:oasis:names:tc:xacml:2.0:function:";
+
+    /** The supported functions, indexed by ID. */
+    @Nonnull private static final Map<String,Function> FUNCTIONS;
+
+    static {
+        final Map<String,Function> functions = new HashMap<>();
+
+        final String[][] types = {
+            {"string", DataTypes.STRING},
+            {"boolean", DataTypes.BOOLEAN},
+            {"integer", DataTypes.INTEGER},
+            {"double", DataTypes.DOUBLE},
+            {"anyURI", DataTypes.ANY_URI},
+        };
+        for (final String[] type : types) {
+            final String prefix = PREFIX_1_0 + type[0];
+            register(functions, predicate(prefix + "-equal", type[1], type[1], Objects::equals, true, null));
+            register(functions, oneAndOnly(prefix + "-one-and-only", type[1]));
+            register(functions, bagSize(prefix + "-bag-size", type[1]));
+            register(functions, isIn(prefix + "-is-in", type[1]));
+            register(functions, atLeastOneMemberOf(prefix + "-at-least-one-member-of", type[1]));
+            register(functions, bag(prefix + "-bag", type[1]));
+        }
+
+        for (final String[] type : new String[][] {types[0], types[2], types[3]}) {
+            final String prefix = PREFIX_1_0 + type[0];
+            register(functions, comparison(prefix + "-greater-than", type[1], c -> c > 0));
+            register(functions, comparison(prefix + "-greater-than-or-equal", type[1], c -> c >= 0));
+            register(functions, comparison(prefix + "-less-than", type[1], c -> c < 0));
+            register(functions, comparison(prefix + "-less-than-or-equal", type[1], c -> c <= 0));
+        }
+
+        register(functions, new Function(PREFIX_1_0 + "and", DataTypes.BOOLEAN, false,
+                new String[] {DataTypes.BOOLEAN}, new boolean[] {false}, true, (args, ctx) -> logical(args, ctx, false),
+                null, false, null));
+        register(functions, new Function(PREFIX_1_0 + "or", DataTypes.BOOLEAN, false,
+                new String[] {DataTypes.BOOLEAN}, new boolean[] {false}, true, (args, ctx) -> logical(args, ctx, true),
+                null, false, null));
+        register(functions, new Function(PREFIX_1_0 + "not", DataTypes.BOOLEAN, false,
+                new String[] {DataTypes.BOOLEAN}, new boolean[] {false}, false, Functions::not, null, false, null));
+
+        register(functions, new Function(PREFIX_1_0 + "string-normalize-space", DataTypes.STRING, false,
+                new String[] {DataTypes.STRING}, new boolean[] {false}, false,
+                (args, ctx) -> {
+                    final Object value = args[0].evaluate(ctx);
+                    return value == EvaluationContext.INDETERMINATE ? value : ((String) value).trim();
+                },
+                null, false, null));
+        register(functions, new Function(PREFIX_1_0 + "string-normalize-to-lower-case", DataTypes.STRING, false,
+                new String[] {DataTypes.STRING}, new boolean[] {false}, false,
+                (args, ctx) -> {
+                    final Object value = args[0].evaluate(ctx);
+                    return value == EvaluationContext.INDETERMINATE ? value
+                            : ((String) value).toLowerCase(Locale.ROOT);
+                },
+                null, false, null));
+
+        final Function.LiteralPreparer compilePattern = value -> Pattern.compile((String) value);
+        register(functions, predicate(PREFIX_1_0 + "regexp-string-match", DataTypes.STRING, DataTypes.STRING,
+                Functions::regexpMatch, false, compilePattern));
+        register(functions, predicate(PREFIX_2_0 + "anyURI-regexp-match", DataTypes.STRING, DataTypes.ANY_URI,
+                Functions::regexpMatch, false, compilePattern));
+
+        FUNCTIONS = Collections.unmodifiableMap(functions);
+    }
+
+    /** Constructor. */
+    private Functions() {
+    }
+
+    /**
+     * Get a supported function.
+     * 
+     * @param functionId the function ID
+     * 
+     * @return the function, or null if it is not supported
+     */
+    @Nullable static Function get(@Nullable final String functionId) {
+        return functionId != null ? FUNCTIONS.get(functionId) : null;
+    }
+
+    /**
+     * Register a function.
+     * 
+     * @param functions the registry
+     * @param function the function
+     */
+    private static void register(@Nonnull final Map<String,Function> functions, @Nonnull final Function function) {
+        functions.put(function.getFunctionId(), function);
+    }
+
+    /**
+     * Define a predicate of two single values.
+     * 
+     * @param id the function ID
+     * @param firstType the data type of the first argument
+     * @param secondType the data type of the second argument
+     * @param predicate the predicate
+     * @param equality whether the predicate is equality
+     * @param preparer conversion of a literal first argument, or null
+     * 
+     * @return the function
+     */
+    @Nonnull private static Function predicate(@Nonnull final String id, @Nonnull final String firstType,
+            @Nonnull final String secondType, @Nonnull final Function.Predicate predicate, final boolean equality,
+            @Nullable final Function.LiteralPreparer preparer) {
+        return new Function(id, DataTypes.BOOLEAN, false, new String[] {firstType, secondType},
+                new boolean[] {false, false}, false,
+                (args, ctx) -> {
+                    final Object first = args[0].evaluate(ctx);
+                    if (first == EvaluationContext.INDETERMINATE) {
+                        return first;
+                    }
+                    final Object second = args[1].evaluate(ctx);
+                    if (second == EvaluationContext.INDETERMINATE) {
+                        return second;
+                    }
+                    try {
+                        return predicate.test(first, second) ? Boolean.TRUE : Boolean.FALSE;
+                    } catch (final IllegalArgumentException e) {
+                        ctx.recordError(StatusCodeType.SC_PROCESSING_ERROR, "Unable to evaluate function " + id);
+                        return EvaluationContext.INDETERMINATE;
+                    }
+                },
+                predicate, equality, preparer);
+    }
+
+    /**
+     * Define a comparison of two single values.
+     * 
+     * @param id the function ID
+     * @param type the data type of the arguments
+     * @param test the test applied to the result of comparing the first argument to the second
+     * 
+     * @return the function
+     */
+    @Nonnull private static Function comparison(@Nonnull final String id, @Nonnull final String type,
+            @Nonnull final IntPredicate test) {
+        return predicate(id, type, type, (first, second) -> test.test(compare(first, second)), false, null);
+    }
+
+    /**
+     * Define a function extracting the single value of a bag.
+     * 
+     * @param id the function ID
+     * @param type the data type
+     * 
+     * @return the function
+     */
+    @Nonnull private static Function oneAndOnly(@Nonnull final String id, @Nonnull final String type) {
+        return new Function(id, type, false, new String[] {type}, new boolean[] {true}, false,
+                (args, ctx) -> {
+                    final Object bag = args[0].evaluate(ctx);
+                    if (bag == EvaluationContext.INDETERMINATE) {
+                        return bag;
+                    } else if (((List<?>) bag).size() != 1) {
+                        ctx.recordError(StatusCodeType.SC_PROCESSING_ERROR,
+                                "Function " + id + " requires a bag of exactly one value");
+                        return EvaluationContext.INDETERMINATE;
+                    }
+                    return ((List<?>) bag).get(0);
+                },
+                null, false, null);
+    }
+
+    /**
+     * Define a function returning the size of a bag.
+     * 
+     * @param id the function ID
+     * @param type the data type
+     * 
+     * @return the function
+     */
+    @Nonnull private static Function bagSize(@Nonnull final String id, @Nonnull final String type) {
+        return new Function(id, DataTypes.INTEGER, false, new String[] {type}, new boolean[] {true}, false,
+                (args, ctx) -> {
+                    final Object bag = args[0].evaluate(ctx);
+                    return bag == EvaluationContext.INDETERMINATE ? bag : Long.valueOf(((List<?>) bag).size());
+                },
+                null, false, null);
+    }
+
+    /**
+     * Define a function testing whether a value is in a bag.
+     * 
+     * @param id the function ID
+     * @param type the data type
+     * 
+     * @return the function
+     */
+    @Nonnull private static Function isIn(@Nonnull final String id, @Nonnull final String type) {
+        return new Function(id, DataTypes.BOOLEAN, false, new String[] {type, type}, new boolean[] {false, true},
+                false,
+                (args, ctx) -> {
+                    final Object value = args[0].evaluate(ctx);
+                    if (value == EvaluationContext.INDETERMINATE) {
+                        return value;
+                    }
+                    final Object bag = args[1].evaluate(ctx);
+                    if (bag == EvaluationContext.INDETERMINATE) {
+                        return bag;
+                    }
+                    return ((List<?>) bag).contains(value) ? Boolean.TRUE : Boolean.FALSE;
+                },
+                null, false, null);
+    }
+
+    /**
+     * Define a function testing whether two bags share a value.
+     * 
+     * @param id the function ID
+     * @param type the data type
+     * 
+     * @return the function
+     */
+    @Nonnull private static Function atLeastOneMemberOf(@Nonnull final String id, @Nonnull final String type) {
+        return new Function(id, DataTypes.BOOLEAN, false, new String[] {type, type}, new boolean[] {true, true},
+                false,
+                (args, ctx) -> {
+                    final Object first = args[0].evaluate(ctx);
+                    if (first == EvaluationContext.INDETERMINATE) {
+                        return first;
+                    }
+                    final Object second = args[1].evaluate(ctx);
+                    if (second == EvaluationContext.INDETERMINATE) {
+                        return second;
+                    }
+                    final List<?> firstBag = (List<?>) first;
+                    for (int i = 0; i < firstBag.size(); i++) {
+                        if (((List<?>) second).contains(firstBag.get(i))) {
+                            return Boolean.TRUE;
+                        }
+                    }
+                    return Boolean.FALSE;
+                },
+                null, false, null);
+    }
+
+    /**
+     * Define a function building a bag from its arguments.
+     * 
+     * @param id the function ID
+     * @param type the data type
+     * 
+     * @return the function
+     */
+    @Nonnull private static Function bag(@Nonnull final String id, @Nonnull final String type) {
+        return new Function(id, type, true, new String[] {type}, new boolean[] {false}, true,
+                (args, ctx) -> {
+                    final List<Object> bag = new ArrayList<>(args.length);
+                    for (final Expression arg : args) {
+                        final Object value = arg.evaluate(ctx);
+                        if (value == EvaluationContext.INDETERMINATE) {
+                            return value;
+                        }
+                        bag.add(value);
+                    }
+                    return bag;
+                },
+                null, false, null);
+    }
+
+    /**
+     * Apply the <code>and</code> or <code>or</code> function.
+     * 
+     * @param args the arguments
+     * @param context the evaluation context
+     * @param decisive the argument value which decides the result
+     * 
+     * @return the result
+     */
+    @Nonnull private static Object logical(@Nonnull final Expression[] args, @Nonnull final EvaluationContext context,
+            final boolean decisive) {
+        boolean indeterminate = false;
+        for (final Expression arg : args) {
+            final Object value = arg.evaluate(context);
+            if (value == EvaluationContext.INDETERMINATE) {
+                indeterminate = true;
+            } else if (((Boolean) value).booleanValue() == decisive) {
+                return value;
+            }
+        }
+        return indeterminate ? EvaluationContext.INDETERMINATE : Boolean.valueOf(!decisive);
+    }
+
+    /**
+     * Apply the <code>not</code> function.
+     * 
+     * @param args the arguments
+     * @param context the evaluation context
+     * 
+     * @return the result
+     */
+    @Nonnull private static Object not(@Nonnull final Expression[] args, @Nonnull final EvaluationContext context) {
+        final Object value = args[0].evaluate(context);
+        return value == EvaluationContext.INDETERMINATE ? value : Boolean.valueOf(!((Boolean) value).booleanValue());
+    }
+
+    /**
+     * Compare two values of the same data type.
+     * 
+     * @param first the first value
+     * @param second the second value
+     * 
+     * @return the result of comparing the first value to the second
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(@Nonnull final Object first, @Nonnull final Object second) {
+        return ((Comparable<Object>) first).compareTo(second);
+    }
+
+    /**
+     * Match a value against a regular expression.
+     * 
+     * <p>
+     * As in XML Schema, the expression must match the whole value.
+     * </p>
+     * 
+     * @param expression the regular expression, as a {@link Pattern} if it was a literal
+     * @param value the value
+     * 
+     * @return whether the value matches
+     */
+    private static boolean regexpMatch(@Nonnull final Object expression, @Nonnull final Object value) {
+        final Pattern pattern = expression instanceof Pattern ? (Pattern) expression
+                : Pattern.compile((String) expression);
+        return pattern.matcher((String) value).matches();
+    }
+
+}
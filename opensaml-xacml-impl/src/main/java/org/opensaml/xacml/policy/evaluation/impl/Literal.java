@@ -0,0 +1,68 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A literal attribute value, converted when the policy is compiled.
+ */
+final class Literal implements Expression {
+
+    /** The value. */
+    @Nonnull private final Object value;
+
+    /** The data type. */
+    @Nonnull private final String dataType;
+
+    /**
+     * Constructor.
+     * 
+     * @param literalValue the converted value
+     * @param type the data type
+     */
+    Literal(@Nonnull final Object literalValue, @Nonnull final String type) {
+        value = literalValue;
+        dataType = type;
+    }
+
+    /**
+     * Get the value.
+     * 
+     * @return the value
+     */
+    @Nonnull Object getValue() {
+        return value;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public Object evaluate(@Nonnull final EvaluationContext context) {
+        return value;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public String getDataType() {
+        return dataType;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isBag() {
+        return false;
+    }
+
+}
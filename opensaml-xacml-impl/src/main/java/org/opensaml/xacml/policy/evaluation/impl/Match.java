@@ -0,0 +1,116 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.xacml.ctx.StatusCodeType;
+
+/**
+ * A compiled subject, resource, action or environment match.
+ */
+final class Match {
+
+    /** The match function. */
+    @Nonnull private final Function function;
+
+    /** The literal value, prepared for the match function. */
+    @Nonnull private final Object literal;
+
+    /** The designator of the values matched. */
+    @Nonnull private final Designator designator;
+
+    /**
+     * Constructor.
+     * 
+     * @param matchFunction the match function, a predicate of two single values
+     * @param value the literal value, prepared for the match function
+     * @param attribute the designator of the values matched
+     */
+    Match(@Nonnull final Function matchFunction, @Nonnull final Object value, @Nonnull final Designator attribute) {
+        function = matchFunction;
+        literal = value;
+        designator = attribute;
+    }
+
+    /**
+     * Get the literal value.
+     * 
+     * @return the literal value
+     */
+    @Nonnull Object getLiteral() {
+        return literal;
+    }
+
+    /**
+     * Get the designator of the values matched.
+     * 
+     * @return the designator
+     */
+    @Nonnull Designator getDesignator() {
+        return designator;
+    }
+
+    /**
+     * Get whether the match may be used to index policies.
+     * 
+     * <p>
+     * That is the case for side-effect free equality matches of strings or URIs, for which the match holds exactly
+     * if the designator's bag contains the literal.
+     * </p>
+     * 
+     * @return true iff the match may be used to index policies
+     */
+    boolean isIndexable() {
+        return function.isEquality() && designator.isIndexable()
+                && (DataTypes.STRING.equals(designator.getDataType())
+                        || DataTypes.ANY_URI.equals(designator.getDataType()));
+    }
+
+    /**
+     * Evaluate the match.
+     * 
+     * @param context the evaluation context
+     * 
+     * @return the result
+     */
+    @Nonnull MatchResult evaluate(@Nonnull final EvaluationContext context) {
+        final Object bag = designator.evaluate(context);
+        if (bag == EvaluationContext.INDETERMINATE) {
+            return MatchResult.INDETERMINATE;
+        }
+
+        final List<?> values = (List<?>) bag;
+        final Function.Predicate predicate = function.getPredicate();
+        try {
+            for (int i = 0; i < values.size(); i++) {
+                if (predicate.test(literal, values.get(i))) {
+                    return MatchResult.MATCH;
+                }
+            }
+        } catch (final IllegalArgumentException e) {
+            context.recordError(StatusCodeType.SC_PROCESSING_ERROR,
+                    "Unable to evaluate match function " + function.getFunctionId());
+            return MatchResult.INDETERMINATE;
+        }
+        return MatchResult.NO_MATCH;
+    }
+
+}
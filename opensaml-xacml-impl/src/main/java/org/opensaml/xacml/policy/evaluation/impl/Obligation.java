@@ -0,0 +1,134 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.policy.EffectType;
+
+/**
+ * An obligation of a compiled policy, with its attribute assignments held as plain values.
+ */
+final class Obligation {
+
+    /** The obligation ID. */
+    @Nonnull private final String obligationId;
+
+    /** The effect on which the obligation is to be fulfilled. */
+    @Nonnull private final EffectType fulfillOn;
+
+    /** The IDs of the assigned attributes. */
+    @Nonnull private final String[] attributeIds;
+
+    /** The data types of the assigned values. */
+    @Nonnull private final String[] dataTypes;
+
+    /** The assigned values. */
+    @Nonnull private final String[] values;
+
+    /**
+     * Constructor.
+     * 
+     * @param id the obligation ID
+     * @param effect the effect on which the obligation is to be fulfilled
+     * @param ids the IDs of the assigned attributes
+     * @param types the data types of the assigned values
+     * @param assignedValues the assigned values
+     */
+    Obligation(@Nonnull final String id, @Nonnull final EffectType effect, @Nonnull final String[] ids,
+            @Nonnull final String[] types, @Nonnull final String[] assignedValues) {
+        obligationId = id;
+        fulfillOn = effect;
+        attributeIds = ids;
+        dataTypes = types;
+        values = assignedValues;
+    }
+
+    /**
+     * Get whether the obligation applies to a decision.
+     * 
+     * @param decision the decision
+     * 
+     * @return true iff the decision is the obligation's effect
+     */
+    boolean appliesTo(@Nonnull final DECISION decision) {
+        return fulfillOn == EffectType.Permit ? decision == DECISION.Permit : decision == DECISION.Deny;
+    }
+
+    /**
+     * Get the obligation ID.
+     * 
+     * @return the obligation ID
+     */
+    @Nonnull String getObligationId() {
+        return obligationId;
+    }
+
+    /**
+     * Get the effect on which the obligation is to be fulfilled.
+     * 
+     * @return the effect
+     */
+    @Nonnull EffectType getFulfillOn() {
+        return fulfillOn;
+    }
+
+    /**
+     * Get the number of attribute assignments.
+     * 
+     * @return the number of attribute assignments
+     */
+    int getAssignmentCount() {
+        return attributeIds.length;
+    }
+
+    /**
+     * Get the ID of an assigned attribute.
+     * 
+     * @param index the index of the assignment
+     * 
+     * @return the attribute ID
+     */
+    @Nonnull String getAttributeId(final int index) {
+        return attributeIds[index];
+    }
+
+    /**
+     * Get the data type of an assigned value.
+     * 
+     * @param index the index of the assignment
+     * 
+     * @return the data type
+     */
+    @Nonnull String getDataType(final int index) {
+        return dataTypes[index];
+    }
+
+    /**
+     * Get an assigned value.
+     * 
+     * @param index the index of the assignment
+     * 
+     * @return the value
+     */
+    @Nonnull String getValue(final int index) {
+        return values[index];
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+
+/**
+ * A compiled policy or policy set.
+ */
+final class Policy extends Evaluable {
+
+    /** The rules, policies or policy sets combined. */
+    @Nonnull private final Evaluable[] children;
+
+    /** The combining algorithm. */
+    @Nonnull private final CombiningAlgorithm algorithm;
+
+    /** Index of the children by target, or null. */
+    @Nullable private final TargetIndex index;
+
+    /** The obligations. */
+    @Nonnull private final Obligation[] obligations;
+
+    /**
+     * Constructor.
+     * 
+     * @param policyTarget the target
+     * @param combined the rules, policies or policy sets combined
+     * @param combiningAlgorithm the combining algorithm
+     * @param childIndex index of the children by target, or null
+     * @param policyObligations the obligations
+     */
+    Policy(@Nonnull final Target policyTarget, @Nonnull final Evaluable[] combined,
+            @Nonnull final CombiningAlgorithm combiningAlgorithm, @Nullable final TargetIndex childIndex,
+            @Nonnull final Obligation[] policyObligations) {
+        super(policyTarget);
+        children = combined;
+        algorithm = combiningAlgorithm;
+        index = childIndex;
+        obligations = policyObligations;
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull DECISION evaluate(@Nonnull final EvaluationContext context) {
+        final MatchResult match = getTarget().evaluate(context);
+        if (match == MatchResult.NO_MATCH) {
+            return DECISION.NotApplicable;
+        } else if (match == MatchResult.INDETERMINATE) {
+            return DECISION.Indeterminate;
+        }
+
+        final int mark = context.markObligations();
+        final DECISION decision =
+                algorithm.combine(children, index != null ? index.select(context) : null, context);
+        context.retainObligations(mark, decision);
+
+        if (decision == DECISION.Permit || decision == DECISION.Deny) {
+            for (final Obligation obligation : obligations) {
+                if (obligation.appliesTo(decision)) {
+                    context.getObligations().add(obligation);
+                }
+            }
+        }
+        return decision;
+    }
+
+}
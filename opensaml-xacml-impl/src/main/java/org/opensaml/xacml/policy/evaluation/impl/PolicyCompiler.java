@@ -0,0 +1,580 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.xacml.XACMLObject;
+import org.opensaml.xacml.policy.ActionMatchType;
+import org.opensaml.xacml.policy.ActionType;
+import org.opensaml.xacml.policy.ApplyType;
+import org.opensaml.xacml.policy.AttributeAssignmentType;
+import org.opensaml.xacml.policy.AttributeDesignatorType;
+import org.opensaml.xacml.policy.AttributeSelectorType;
+import org.opensaml.xacml.policy.AttributeValueType;
+import org.opensaml.xacml.policy.EffectType;
+import org.opensaml.xacml.policy.EnvironmentMatchType;
+import org.opensaml.xacml.policy.EnvironmentType;
+import org.opensaml.xacml.policy.ExpressionType;
+import org.opensaml.xacml.policy.FunctionType;
+import org.opensaml.xacml.policy.IdReferenceType;
+import org.opensaml.xacml.policy.ObligationType;
+import org.opensaml.xacml.policy.ObligationsType;
+import org.opensaml.xacml.policy.PolicySetType;
+import org.opensaml.xacml.policy.PolicyType;
+import org.opensaml.xacml.policy.ResourceMatchType;
+import org.opensaml.xacml.policy.ResourceType;
+import org.opensaml.xacml.policy.RuleType;
+import org.opensaml.xacml.policy.SubjectAttributeDesignatorType;
+import org.opensaml.xacml.policy.SubjectMatchType;
+import org.opensaml.xacml.policy.SubjectType;
+import org.opensaml.xacml.policy.TargetType;
+import org.opensaml.xacml.policy.VariableDefinitionType;
+import org.opensaml.xacml.policy.VariableReferenceType;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+/**
+ * Compiles XACML 2.0 policies and policy sets into immutable {@link CompiledPolicyEvaluator}s.
+ * 
+ * <p>
+ * All parsing, type checking and lookup of functions and combining algorithms happens here, once per policy, so
+ * that evaluation only walks pre-built structures. Literal values are converted to their data type's
+ * representation, literal regular expressions are compiled, and the children of a policy or policy set combining
+ * at least {@link #getIndexThreshold()} others are indexed by the attribute values their targets require.
+ * </p>
+ * 
+ * <p>
+ * The supported data types and functions are those of {@link DataTypes} and {@link Functions}, and all the
+ * XACML 2.0 combining algorithms are supported. Policies using attribute selectors, policy references,
+ * higher-order functions, or any other data type or function are rejected.
+ * </p>
+ * 
+ * @since 4.0.0
+ */
+@ThreadSafe
+public class PolicyCompiler {
+
+    /** Default minimum number of children of a policy or policy set for them to be indexed. */
+    public static final int DEFAULT_INDEX_THRESHOLD = 8;
+
+    /** Minimum number of children of a policy or policy set for them to be indexed. */
+    private final int indexThreshold;
+
+    /** Constructor. */
+    public PolicyCompiler() {
+        this(DEFAULT_INDEX_THRESHOLD);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param threshold minimum number of children of a policy or policy set for them to be indexed
+     */
+    public PolicyCompiler(final int threshold) {
+        indexThreshold = (int) Constraint.isGreaterThan(0, threshold, "Index threshold must be greater than 0");
+    }
+
+    /**
+     * Get the minimum number of children of a policy or policy set for them to be indexed.
+     * 
+     * @return the index threshold
+     */
+    public int getIndexThreshold() {
+        return indexThreshold;
+    }
+
+    /**
+     * Compile a policy set.
+     * 
+     * @param policySet the policy set
+     * 
+     * @return the compiled policy set
+     * 
+     * @throws PolicyCompilationException if the policy set is invalid or uses unsupported features
+     */
+    @Nonnull public CompiledPolicyEvaluator compile(@Nonnull final PolicySetType policySet)
+            throws PolicyCompilationException {
+        Constraint.isNotNull(policySet, "Policy set cannot be null");
+        return new CompiledPolicyEvaluator(compilePolicySet(policySet));
+    }
+
+    /**
+     * Compile a policy.
+     * 
+     * @param policy the policy
+     * 
+     * @return the compiled policy
+     * 
+     * @throws PolicyCompilationException if the policy is invalid or uses unsupported features
+     */
+    @Nonnull public CompiledPolicyEvaluator compile(@Nonnull final PolicyType policy)
+            throws PolicyCompilationException {
+        Constraint.isNotNull(policy, "Policy cannot be null");
+        return new CompiledPolicyEvaluator(compilePolicy(policy));
+    }
+
+    /**
+     * Compile a policy set.
+     * 
+     * @param policySet the policy set
+     * 
+     * @return the compiled policy set
+     * 
+     * @throws PolicyCompilationException if the policy set cannot be compiled
+     */
+    @Nonnull private Policy compilePolicySet(@Nonnull final PolicySetType policySet)
+            throws PolicyCompilationException {
+        final String algorithmId = StringSupport.trimOrNull(policySet.getPolicyCombiningAlgoId());
+        final CombiningAlgorithm algorithm = CombiningAlgorithms.getPolicyCombiningAlgorithm(algorithmId);
+        if (algorithm == null) {
+            throw new PolicyCompilationException("Policy set " + policySet.getPolicySetId()
+                    + " uses unsupported policy combining algorithm " + algorithmId);
+        }
+
+        final List<Evaluable> children = new ArrayList<>();
+        for (final XACMLObject child : policySet.getPolicyChoiceGroup()) {
+            if (child instanceof PolicySetType) {
+                children.add(compilePolicySet((PolicySetType) child));
+            } else if (child instanceof PolicyType) {
+                children.add(compilePolicy((PolicyType) child));
+            } else if (child instanceof IdReferenceType) {
+                throw new PolicyCompilationException("Policy set " + policySet.getPolicySetId()
+                        + " contains a policy reference, which is not supported");
+            }
+        }
+
+        return buildPolicy(compileTarget(policySet.getTarget()), children.toArray(new Evaluable[children.size()]),
+                algorithm, compileObligations(policySet.getObligations()));
+    }
+
+    /**
+     * Compile a policy.
+     * 
+     * @param policy the policy
+     * 
+     * @return the compiled policy
+     * 
+     * @throws PolicyCompilationException if the policy cannot be compiled
+     */
+    @Nonnull private Policy compilePolicy(@Nonnull final PolicyType policy) throws PolicyCompilationException {
+        final String algorithmId = StringSupport.trimOrNull(policy.getRuleCombiningAlgoId());
+        final CombiningAlgorithm algorithm = CombiningAlgorithms.getRuleCombiningAlgorithm(algorithmId);
+        if (algorithm == null) {
+            throw new PolicyCompilationException("Policy " + policy.getPolicyId()
+                    + " uses unsupported rule combining algorithm " + algorithmId);
+        }
+
+        final VariableScope scope = new VariableScope(policy.getVariableDefinitions());
+        final Evaluable[] rules = new Evaluable[policy.getRules().size()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = compileRule(policy.getRules().get(i), scope);
+        }
+
+        return buildPolicy(compileTarget(policy.getTarget()), rules, algorithm,
+                compileObligations(policy.getObligations()));
+    }
+
+    /**
+     * Build a compiled policy or policy set, indexing its children if there are enough of them.
+     * 
+     * @param target the target
+     * @param children the children
+     * @param algorithm the combining algorithm
+     * @param obligations the obligations
+     * 
+     * @return the compiled policy or policy set
+     */
+    @Nonnull private Policy buildPolicy(@Nonnull final Target target, @Nonnull final Evaluable[] children,
+            @Nonnull final CombiningAlgorithm algorithm, @Nonnull final Obligation[] obligations) {
+        final TargetIndex index = children.length >= indexThreshold ? TargetIndex.build(children) : null;
+        return new Policy(target, children, algorithm, index, obligations);
+    }
+
+    /**
+     * Compile a rule.
+     * 
+     * @param rule the rule
+     * @param scope the variable definitions of the policy containing the rule
+     * 
+     * @return the compiled rule
+     * 
+     * @throws PolicyCompilationException if the rule cannot be compiled
+     */
+    @Nonnull private Rule compileRule(@Nonnull final RuleType rule, @Nonnull final VariableScope scope)
+            throws PolicyCompilationException {
+        final EffectType effect = rule.getEffect();
+        if (effect == null) {
+            throw new PolicyCompilationException("Rule " + rule.getRuleId() + " has no effect");
+        }
+
+        Expression condition = null;
+        if (rule.getCondition() != null) {
+            condition = compileExpression(rule.getCondition().getExpression(), scope);
+            if (!DataTypes.BOOLEAN.equals(condition.getDataType()) || condition.isBag()) {
+                throw new PolicyCompilationException("Condition of rule " + rule.getRuleId()
+                        + " is not a single boolean");
+            }
+        }
+
+        return new Rule(compileTarget(rule.getTarget()), effect, condition);
+    }
+
+    /**
+     * Compile a target.
+     * 
+     * @param target the target, or null
+     * 
+     * @return the compiled target
+     * 
+     * @throws PolicyCompilationException if the target cannot be compiled
+     */
+    // Checkstyle: CyclomaticComplexity|MethodLength OFF
+    @Nonnull private Target compileTarget(@Nullable final TargetType target) throws PolicyCompilationException {
+        if (target == null) {
+            return Target.EMPTY;
+        }
+
+        final List<Match[][]> sections = new ArrayList<>(4);
+
+        if (target.getSubjects() != null && !target.getSubjects().getSubjects().isEmpty()) {
+            final List<SubjectType> subjects = target.getSubjects().getSubjects();
+            final Match[][] section = new Match[subjects.size()][];
+            for (int i = 0; i < section.length; i++) {
+                final List<SubjectMatchType> matches = subjects.get(i).getSubjectMatches();
+                section[i] = new Match[matches.size()];
+                for (int j = 0; j < section[i].length; j++) {
+                    final SubjectMatchType match = matches.get(j);
+                    section[i][j] = compileMatch(match.getMatchId(), match.getAttributeValue(),
+                            match.getSubjectAttributeDesignator(), match.getAttributeSelector());
+                }
+            }
+            sections.add(section);
+        }
+
+        if (target.getResources() != null && !target.getResources().getResources().isEmpty()) {
+            final List<ResourceType> resources = target.getResources().getResources();
+            final Match[][] section = new Match[resources.size()][];
+            for (int i = 0; i < section.length; i++) {
+                final List<ResourceMatchType> matches = resources.get(i).getResourceMatches();
+                section[i] = new Match[matches.size()];
+                for (int j = 0; j < section[i].length; j++) {
+                    final ResourceMatchType match = matches.get(j);
+                    section[i][j] = compileMatch(match.getMatchId(), match.getAttributeValue(),
+                            match.getResourceAttributeDesignator(), match.getAttributeSelector());
+                }
+            }
+            sections.add(section);
+        }
+
+        if (target.getActions() != null && !target.getActions().getActions().isEmpty()) {
+            final List<ActionType> actions = target.getActions().getActions();
+            final Match[][] section = new Match[actions.size()][];
+            for (int i = 0; i < section.length; i++) {
+                final List<ActionMatchType> matches = actions.get(i).getActionMatches();
+                section[i] = new Match[matches.size()];
+                for (int j = 0; j < section[i].length; j++) {
+                    final ActionMatchType match = matches.get(j);
+                    section[i][j] = compileMatch(match.getMatchId(), match.getAttributeValue(),
+                            match.getActionAttributeDesignator(), match.getAttributeSelector());
+                }
+            }
+            sections.add(section);
+        }
+
+        if (target.getEnvironments() != null && !target.getEnvironments().getEnvironments().isEmpty()) {
+            final List<EnvironmentType> environments = target.getEnvironments().getEnvironments();
+            final Match[][] section = new Match[environments.size()][];
+            for (int i = 0; i < section.length; i++) {
+                final List<EnvironmentMatchType> matches = environments.get(i).getEnvrionmentMatches();
+                section[i] = new Match[matches.size()];
+                for (int j = 0; j < section[i].length; j++) {
+                    final EnvironmentMatchType match = matches.get(j);
+                    section[i][j] = compileMatch(match.getMatchId(), match.getAttributeValue(),
+                            match.getEnvironmentAttributeDesignator(), match.getAttributeSelector());
+                }
+            }
+            sections.add(section);
+        }
+
+        return sections.isEmpty() ? Target.EMPTY : new Target(sections.toArray(new Match[sections.size()][][]));
+    }
+    // Checkstyle: CyclomaticComplexity|MethodLength ON
+
+    /**
+     * Compile a match.
+     * 
+     * @param matchId the match function ID
+     * @param value the literal value
+     * @param designator the designator, or null
+     * @param selector the selector, or null
+     * 
+     * @return the compiled match
+     * 
+     * @throws PolicyCompilationException if the match cannot be compiled
+     */
+    @Nonnull private Match compileMatch(@Nullable final String matchId, @Nullable final AttributeValueType value,
+            @Nullable final AttributeDesignatorType designator, @Nullable final AttributeSelectorType selector)
+                    throws PolicyCompilationException {
+        if (selector != null) {
+            throw new PolicyCompilationException("Attribute selectors are not supported");
+        } else if (value == null || designator == null) {
+            throw new PolicyCompilationException("Match " + matchId + " requires a value and a designator");
+        }
+
+        final Function function = Functions.get(StringSupport.trimOrNull(matchId));
+        if (function == null) {
+            throw new PolicyCompilationException("Unsupported match function " + matchId);
+        }
+
+        final Literal literal = compileLiteral(value);
+        final Designator compiledDesignator = compileDesignator(designator);
+        function.checkMatchArguments(literal.getDataType(), compiledDesignator.getDataType());
+        return new Match(function, function.prepareLiteral(literal.getValue()), compiledDesignator);
+    }
+
+    /**
+     * Compile an expression.
+     * 
+     * @param expression the expression
+     * @param scope the variable definitions in scope
+     * 
+     * @return the compiled expression
+     * 
+     * @throws PolicyCompilationException if the expression cannot be compiled
+     */
+    // Checkstyle: CyclomaticComplexity|ReturnCount OFF
+    @Nonnull private Expression compileExpression(@Nullable final ExpressionType expression,
+            @Nonnull final VariableScope scope) throws PolicyCompilationException {
+        if (expression instanceof ApplyType) {
+            final ApplyType apply = (ApplyType) expression;
+            final Function function = Functions.get(StringSupport.trimOrNull(apply.getFunctionId()));
+            if (function == null) {
+                throw new PolicyCompilationException("Unsupported function " + apply.getFunctionId());
+            }
+
+            final Expression[] arguments = new Expression[apply.getExpressions().size()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = compileExpression(apply.getExpressions().get(i), scope);
+            }
+            function.checkArguments(arguments);
+
+            if (arguments.length > 0 && arguments[0] instanceof Literal) {
+                final Literal literal = (Literal) arguments[0];
+                final Object prepared = function.prepareLiteral(literal.getValue());
+                if (prepared != literal.getValue()) {
+                    arguments[0] = new Literal(prepared, literal.getDataType());
+                }
+            }
+            return new Apply(function, arguments);
+        } else if (expression instanceof AttributeValueType) {
+            return compileLiteral((AttributeValueType) expression);
+        } else if (expression instanceof AttributeDesignatorType) {
+            return compileDesignator((AttributeDesignatorType) expression);
+        } else if (expression instanceof VariableReferenceType) {
+            return scope.resolve(((VariableReferenceType) expression).getVariableId());
+        } else if (expression instanceof AttributeSelectorType) {
+            throw new PolicyCompilationException("Attribute selectors are not supported");
+        } else if (expression instanceof FunctionType) {
+            throw new PolicyCompilationException("Higher-order functions are not supported");
+        } else if (expression == null) {
+            throw new PolicyCompilationException("Missing expression");
+        }
+        throw new PolicyCompilationException("Unsupported expression " + expression.getElementQName());
+    }
+    // Checkstyle: CyclomaticComplexity|ReturnCount ON
+
+    /**
+     * Compile a literal value.
+     * 
+     * @param value the value
+     * 
+     * @return the compiled literal
+     * 
+     * @throws PolicyCompilationException if the value cannot be compiled
+     */
+    @Nonnull private Literal compileLiteral(@Nonnull final AttributeValueType value)
+            throws PolicyCompilationException {
+        final String dataType = StringSupport.trimOrNull(value.getDataType());
+        if (!DataTypes.isSupported(dataType)) {
+            throw new PolicyCompilationException("Unsupported data type " + dataType);
+        }
+
+        final Object converted = DataTypes.convert(dataType, value.getValue());
+        if (converted == null) {
+            throw new PolicyCompilationException("Invalid value '" + value.getValue() + "' of type " + dataType);
+        }
+        return new Literal(converted, dataType);
+    }
+
+    /**
+     * Compile an attribute designator.
+     * 
+     * @param designator the designator
+     * 
+     * @return the compiled designator
+     * 
+     * @throws PolicyCompilationException if the designator cannot be compiled
+     */
+    @Nonnull private Designator compileDesignator(@Nonnull final AttributeDesignatorType designator)
+            throws PolicyCompilationException {
+        final String attributeId = StringSupport.trimOrNull(designator.getAttributeId());
+        final String dataType = StringSupport.trimOrNull(designator.getDataType());
+        if (attributeId == null) {
+            throw new PolicyCompilationException("Attribute designator has no attribute ID");
+        } else if (!DataTypes.isSupported(dataType)) {
+            throw new PolicyCompilationException("Attribute designator for " + attributeId
+                    + " uses unsupported data type " + dataType);
+        }
+
+        final String category;
+        switch (designator.getElementQName().getLocalPart()) {
+            case AttributeDesignatorType.SUBJECT_ATTRIBUTE_DESIGNATOR_ELEMENT_LOCAL_NAME:
+                final String subjectCategory = designator instanceof SubjectAttributeDesignatorType
+                        ? StringSupport.trimOrNull(((SubjectAttributeDesignatorType) designator).getSubjectCategory())
+                        : null;
+                category = subjectCategory != null ? subjectCategory
+                        : org.opensaml.xacml.ctx.SubjectType.SUBJECT_CATEGORY_ATTTRIB_DEFAULT;
+                break;
+            case AttributeDesignatorType.RESOURCE_ATTRIBUTE_DESIGNATOR_ELEMENT_LOCAL_NAME:
+                category = EvaluationContext.CATEGORY_RESOURCE;
+                break;
+            case AttributeDesignatorType.ACTION_ATTRIBUTE_DESIGNATOR_ELEMENT_LOCAL_NAME:
+                category = EvaluationContext.CATEGORY_ACTION;
+                break;
+            case AttributeDesignatorType.ENVIRONMENT_ATTRIBUTE_DESIGNATOR_ELEMENT_LOCAL_NAME:
+                category = EvaluationContext.CATEGORY_ENVIRONMENT;
+                break;
+            default:
+                throw new PolicyCompilationException("Unsupported attribute designator "
+                        + designator.getElementQName());
+        }
+
+        return new Designator(category, attributeId, dataType, StringSupport.trimOrNull(designator.getIssuer()),
+                Boolean.TRUE.equals(designator.getMustBePresent()));
+    }
+
+    /**
+     * Compile the obligations of a policy or policy set.
+     * 
+     * @param obligations the obligations, or null
+     * 
+     * @return the compiled obligations
+     * 
+     * @throws PolicyCompilationException if the obligations cannot be compiled
+     */
+    @Nonnull private Obligation[] compileObligations(@Nullable final ObligationsType obligations)
+            throws PolicyCompilationException {
+        if (obligations == null) {
+            return new Obligation[0];
+        }
+
+        final Obligation[] compiled = new Obligation[obligations.getObligations().size()];
+        for (int i = 0; i < compiled.length; i++) {
+            final ObligationType obligation = obligations.getObligations().get(i);
+            final String obligationId = StringSupport.trimOrNull(obligation.getObligationId());
+            if (obligationId == null || obligation.getFulfillOn() == null) {
+                throw new PolicyCompilationException("Obligation requires an ID and an effect");
+            }
+
+            final List<AttributeAssignmentType> assignments = obligation.getAttributeAssignments();
+            final String[] attributeIds = new String[assignments.size()];
+            final String[] dataTypes = new String[assignments.size()];
+            final String[] values = new String[assignments.size()];
+            for (int j = 0; j < attributeIds.length; j++) {
+                attributeIds[j] = StringSupport.trimOrNull(assignments.get(j).getAttributeId());
+                dataTypes[j] = StringSupport.trimOrNull(assignments.get(j).getDataType());
+                values[j] = assignments.get(j).getValue() != null ? assignments.get(j).getValue() : "";
+                if (attributeIds[j] == null || dataTypes[j] == null) {
+                    throw new PolicyCompilationException("Attribute assignment of obligation " + obligationId
+                            + " requires an attribute ID and a data type");
+                }
+            }
+            compiled[i] = new Obligation(obligationId, obligation.getFulfillOn(), attributeIds, dataTypes, values);
+        }
+        return compiled;
+    }
+
+    /**
+     * The variable definitions of a policy, compiled on first reference.
+     */
+    private final class VariableScope {
+
+        /** The definitions, by variable ID. */
+        @Nonnull private final Map<String,VariableDefinitionType> definitions;
+
+        /** The compiled definitions, by variable ID. */
+        @Nonnull private final Map<String,Expression> compiled;
+
+        /** The variables whose definitions are being compiled. */
+        @Nonnull private final Set<String> compiling;
+
+        /**
+         * Constructor.
+         * 
+         * @param variableDefinitions the variable definitions
+         */
+        private VariableScope(@Nonnull final List<VariableDefinitionType> variableDefinitions) {
+            definitions = new HashMap<>();
+            for (final VariableDefinitionType definition : variableDefinitions) {
+                definitions.put(StringSupport.trimOrNull(definition.getVariableId()), definition);
+            }
+            compiled = new HashMap<>();
+            compiling = new HashSet<>();
+        }
+
+        /**
+         * Resolve a variable reference.
+         * 
+         * @param variableId the variable ID
+         * 
+         * @return the compiled definition
+         * 
+         * @throws PolicyCompilationException if the definition cannot be compiled
+         */
+        @Nonnull private Expression resolve(@Nullable final String variableId) throws PolicyCompilationException {
+            final String id = StringSupport.trimOrNull(variableId);
+            Expression expression = compiled.get(id);
+            if (expression != null) {
+                return expression;
+            }
+
+            final VariableDefinitionType definition = definitions.get(id);
+            if (definition == null) {
+                throw new PolicyCompilationException("Reference to undefined variable " + id);
+            } else if (!compiling.add(id)) {
+                throw new PolicyCompilationException("Circular definition of variable " + id);
+            }
+            expression = compileExpression(definition.getExpression(), this);
+            compiling.remove(id);
+            compiled.put(id, expression);
+            return expression;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.policy.EffectType;
+
+/**
+ * A compiled rule.
+ */
+final class Rule extends Evaluable {
+
+    /** The effect. */
+    @Nonnull private final EffectType effect;
+
+    /** The decision made if the rule applies. */
+    @Nonnull private final DECISION decision;
+
+    /** The condition, or null. */
+    @Nullable private final Expression condition;
+
+    /**
+     * Constructor.
+     * 
+     * @param ruleTarget the target
+     * @param ruleEffect the effect
+     * @param ruleCondition the condition, a single boolean expression, or null
+     */
+    Rule(@Nonnull final Target ruleTarget, @Nonnull final EffectType ruleEffect,
+            @Nullable final Expression ruleCondition) {
+        super(ruleTarget);
+        effect = ruleEffect;
+        decision = ruleEffect == EffectType.Permit ? DECISION.Permit : DECISION.Deny;
+        condition = ruleCondition;
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull EffectType getEffect() {
+        return effect;
+    }
+
+    /** {@inheritDoc} */
+    @Override @Nonnull DECISION evaluate(@Nonnull final EvaluationContext context) {
+        final MatchResult match = getTarget().evaluate(context);
+        if (match == MatchResult.NO_MATCH) {
+            return DECISION.NotApplicable;
+        } else if (match == MatchResult.INDETERMINATE) {
+            return DECISION.Indeterminate;
+        }
+
+        if (condition != null) {
+            final Object result = condition.evaluate(context);
+            if (result == EvaluationContext.INDETERMINATE) {
+                return DECISION.Indeterminate;
+            } else if (!((Boolean) result).booleanValue()) {
+                return DECISION.NotApplicable;
+            }
+        }
+        return decision;
+    }
+
+}
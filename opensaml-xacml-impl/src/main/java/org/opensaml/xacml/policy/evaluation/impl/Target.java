@@ -0,0 +1,143 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A compiled target.
+ * 
+ * <p>
+ * The target is held as its non-empty sections (subjects, resources, actions and environments), each a
+ * disjunction of alternatives, each in turn a conjunction of matches. An empty target matches every request.
+ * </p>
+ */
+final class Target {
+
+    /** A target matching every request. */
+    @Nonnull static final Target EMPTY = new Target(new Match[0][][]);
+
+    /** The sections, each a disjunction of conjunctions of matches. */
+    @Nonnull private final Match[][][] sections;
+
+    /**
+     * Constructor.
+     * 
+     * @param targetSections the non-empty sections
+     */
+    Target(@Nonnull final Match[][][] targetSections) {
+        sections = targetSections;
+    }
+
+    /**
+     * Get the matches by which the policy owning the target may be indexed.
+     * 
+     * <p>
+     * These are taken from the first section in which every alternative contains an indexable match, one from each
+     * alternative. The target can only match a request satisfying at least one of them.
+     * </p>
+     * 
+     * @return the matches, or null if the target cannot be indexed
+     */
+    @Nullable Match[] getIndexMatches() {
+        for (final Match[][] section : sections) {
+            final Match[] indexMatches = getIndexMatches(section);
+            if (indexMatches != null) {
+                return indexMatches;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Match the target against a request.
+     * 
+     * @param context the evaluation context
+     * 
+     * @return the result
+     */
+    @Nonnull MatchResult evaluate(@Nonnull final EvaluationContext context) {
+        boolean indeterminate = false;
+        for (final Match[][] section : sections) {
+            MatchResult sectionResult = MatchResult.NO_MATCH;
+            for (final Match[] alternative : section) {
+                final MatchResult result = evaluateAll(alternative, context);
+                if (result == MatchResult.MATCH) {
+                    sectionResult = result;
+                    break;
+                } else if (result == MatchResult.INDETERMINATE) {
+                    sectionResult = result;
+                }
+            }
+
+            if (sectionResult == MatchResult.NO_MATCH) {
+                return sectionResult;
+            } else if (sectionResult == MatchResult.INDETERMINATE) {
+                indeterminate = true;
+            }
+        }
+        return indeterminate ? MatchResult.INDETERMINATE : MatchResult.MATCH;
+    }
+
+    /**
+     * Get one indexable match from each alternative of a section.
+     * 
+     * @param section the section
+     * 
+     * @return the matches, or null if some alternative has no indexable match
+     */
+    @Nullable private static Match[] getIndexMatches(@Nonnull final Match[][] section) {
+        final Match[] indexMatches = new Match[section.length];
+        for (int i = 0; i < section.length; i++) {
+            for (final Match match : section[i]) {
+                if (match.isIndexable()) {
+                    indexMatches[i] = match;
+                    break;
+                }
+            }
+            if (indexMatches[i] == null) {
+                return null;
+            }
+        }
+        return indexMatches;
+    }
+
+    /**
+     * Evaluate a conjunction of matches.
+     * 
+     * @param matches the matches
+     * @param context the evaluation context
+     * 
+     * @return the result
+     */
+    @Nonnull private static MatchResult evaluateAll(@Nonnull final Match[] matches,
+            @Nonnull final EvaluationContext context) {
+        boolean indeterminate = false;
+        for (final Match match : matches) {
+            final MatchResult result = match.evaluate(context);
+            if (result == MatchResult.NO_MATCH) {
+                return result;
+            } else if (result == MatchResult.INDETERMINATE) {
+                indeterminate = true;
+            }
+        }
+        return indeterminate ? MatchResult.INDETERMINATE : MatchResult.MATCH;
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Index of the rules, policies or policy sets combined by a policy, by the attribute values their targets require.
+ * 
+ * <p>
+ * A child is indexed by the equality matches returned by {@link Target#getIndexMatches()}, under the key of each
+ * match's designator and its literal value. Selecting candidates for a request then costs one lookup per value of
+ * each indexed attribute, rather than one target evaluation per child. Children whose targets cannot be indexed
+ * are always candidates.
+ * </p>
+ */
+final class TargetIndex {
+
+    /** The number of children. */
+    private final int size;
+
+    /** The children which are always candidates. */
+    @Nonnull private final int[] unindexed;
+
+    /** The index entries, one per designator key. */
+    @Nonnull private final Entry[] entries;
+
+    /**
+     * Constructor.
+     * 
+     * @param childCount the number of children
+     * @param unindexedChildren the children which are always candidates
+     * @param indexEntries the index entries
+     */
+    private TargetIndex(final int childCount, @Nonnull final int[] unindexedChildren,
+            @Nonnull final Entry[] indexEntries) {
+        size = childCount;
+        unindexed = unindexedChildren;
+        entries = indexEntries;
+    }
+
+    /**
+     * Build an index of children.
+     * 
+     * @param children the children
+     * 
+     * @return the index, or null if no child can be indexed
+     */
+    @Nullable static TargetIndex build(@Nonnull final Evaluable[] children) {
+        final Map<String,Map<Object,List<Integer>>> keys = new LinkedHashMap<>();
+        final List<Integer> unindexed = new ArrayList<>();
+
+        for (int i = 0; i < children.length; i++) {
+            final Match[] matches = children[i].getTarget().getIndexMatches();
+            if (matches == null) {
+                unindexed.add(i);
+                continue;
+            }
+            for (final Match match : matches) {
+                final List<Integer> indexed = keys.computeIfAbsent(match.getDesignator().getKey(),
+                        k -> new HashMap<>()).computeIfAbsent(match.getLiteral(), v -> new ArrayList<>());
+                if (indexed.isEmpty() || indexed.get(indexed.size() - 1).intValue() != i) {
+                    indexed.add(i);
+                }
+            }
+        }
+
+        if (keys.isEmpty()) {
+            return null;
+        }
+
+        final Entry[] entries = new Entry[keys.size()];
+        int e = 0;
+        for (final Map.Entry<String,Map<Object,List<Integer>>> key : keys.entrySet()) {
+            final Map<Object,int[]> values = new HashMap<>();
+            for (final Map.Entry<Object,List<Integer>> value : key.getValue().entrySet()) {
+                values.put(value.getKey(), toArray(value.getValue()));
+            }
+            entries[e++] = new Entry(key.getKey(), values);
+        }
+        return new TargetIndex(children.length, toArray(unindexed), entries);
+    }
+
+    /**
+     * Select the children which may apply to a request.
+     * 
+     * @param context the evaluation context
+     * 
+     * @return which of the children may apply
+     */
+    @Nonnull boolean[] select(@Nonnull final EvaluationContext context) {
+        final boolean[] candidates = new boolean[size];
+        for (final int child : unindexed) {
+            candidates[child] = true;
+        }
+
+        for (final Entry entry : entries) {
+            final Object bag = context.getBag(entry.key);
+            if (bag == EvaluationContext.INDETERMINATE) {
+                // Leave the children to report the invalid value when their targets are evaluated.
+                for (final int[] children : entry.children.values()) {
+                    mark(candidates, children);
+                }
+            } else {
+                final List<?> values = (List<?>) bag;
+                for (int i = 0; i < values.size(); i++) {
+                    final int[] children = entry.children.get(values.get(i));
+                    if (children != null) {
+                        mark(candidates, children);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Mark children as candidates.
+     * 
+     * @param candidates the candidates
+     * @param children the children to mark
+     */
+    private static void mark(@Nonnull final boolean[] candidates, @Nonnull final int[] children) {
+        for (final int child : children) {
+            candidates[child] = true;
+        }
+    }
+
+    /**
+     * Convert a list of child indexes to an array.
+     * 
+     * @param list the list
+     * 
+     * @return the array
+     */
+    @Nonnull private static int[] toArray(@Nonnull final List<Integer> list) {
+        final int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * The children indexed under one designator key.
+     */
+    private static final class Entry {
+
+        /** The designator key. */
+        @Nonnull private final String key;
+
+        /** The children, by the literal value their targets require. */
+        @Nonnull private final Map<Object,int[]> children;
+
+        /**
+         * Constructor.
+         * 
+         * @param designatorKey the designator key
+         * @param indexedChildren the children, by the literal value their targets require
+         */
+        private Entry(@Nonnull final String designatorKey, @Nonnull final Map<Object,int[]> indexedChildren) {
+            key = designatorKey;
+            children = indexedChildren;
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.ctx;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import net.shibboleth.utilities.java.support.logic.ConstraintViolationException;
+
+/**
+ * Test of {@link MultipleResourceSupport}.
+ */
+public class MultipleResourceSupportTest extends XMLObjectBaseTestCase {
+
+    private static final String ANY_URI = "http://www.w3.org/2001/XMLSchema#anyURI";
+
+    @Test
+    public void testBuildRequest() {
+        final RequestType request = MultipleResourceSupport.buildRequest(
+                Collections.singletonList((SubjectType) buildXMLObject(SubjectType.DEFAULT_ELEMENT_NAME)),
+                Arrays.asList(MultipleResourceSupport.buildResource("https://sp.example.org/a", ANY_URI),
+                        MultipleResourceSupport.buildResource("https://sp.example.org/b", ANY_URI)),
+                null, null);
+
+        Assert.assertEquals(request.getSubjects().size(), 1);
+        Assert.assertEquals(request.getResources().size(), 2);
+        Assert.assertEquals(MultipleResourceSupport.getResourceId(request.getResources().get(0)),
+                "https://sp.example.org/a");
+        Assert.assertEquals(MultipleResourceSupport.getResourceId(request.getResources().get(1)),
+                "https://sp.example.org/b");
+        Assert.assertNotNull(request.getAction());
+        Assert.assertNotNull(request.getEnvironment());
+    }
+
+    @Test(expectedExceptions = ConstraintViolationException.class)
+    public void testDuplicateResourceIds() {
+        MultipleResourceSupport.buildRequest(Collections.<SubjectType>emptyList(),
+                Arrays.asList(MultipleResourceSupport.buildResource("https://sp.example.org/a", ANY_URI),
+                        MultipleResourceSupport.buildResource("https://sp.example.org/a", ANY_URI)),
+                null, null);
+    }
+
+    @Test
+    public void testCorrelateResults() {
+        final RequestType request = MultipleResourceSupport.buildRequest(Collections.<SubjectType>emptyList(),
+                Arrays.asList(MultipleResourceSupport.buildResource("https://sp.example.org/a", ANY_URI),
+                        MultipleResourceSupport.buildResource("https://sp.example.org/b", ANY_URI),
+                        MultipleResourceSupport.buildResource("https://sp.example.org/c", ANY_URI)),
+                null, null);
+
+        final ResponseType response = buildXMLObject(ResponseType.DEFAULT_ELEMENT_NAME);
+        response.getResults().add(buildResult("https://sp.example.org/b", DECISION.Deny));
+        response.getResults().add(buildResult("https://sp.example.org/a", DECISION.Permit));
+
+        final Map<String,ResultType> results = MultipleResourceSupport.correlateResults(request, response);
+        Assert.assertEquals(results.size(), 2);
+        Assert.assertEquals(results.get("https://sp.example.org/a").getDecision().getDecision(), DECISION.Permit);
+        Assert.assertEquals(results.get("https://sp.example.org/b").getDecision().getDecision(), DECISION.Deny);
+        Assert.assertFalse(results.containsKey("https://sp.example.org/c"));
+    }
+
+    @Test
+    public void testCorrelateSingleResult() {
+        final RequestType request = MultipleResourceSupport.buildRequest(Collections.<SubjectType>emptyList(),
+                Collections.singletonList(MultipleResourceSupport.buildResource("https://sp.example.org/a", ANY_URI)),
+                null, null);
+
+        final ResponseType response = buildXMLObject(ResponseType.DEFAULT_ELEMENT_NAME);
+        response.getResults().add(buildResult(null, DECISION.Permit));
+
+        final Map<String,ResultType> results = MultipleResourceSupport.correlateResults(request, response);
+        Assert.assertEquals(results.size(), 1);
+        Assert.assertEquals(results.get("https://sp.example.org/a").getDecision().getDecision(), DECISION.Permit);
+    }
+
+    private ResultType buildResult(final String resourceId, final DECISION decision) {
+        final DecisionType decisionType = buildXMLObject(DecisionType.DEFAULT_ELEMENT_NAME);
+        decisionType.setDecision(decision);
+        final ResultType result = buildXMLObject(ResultType.DEFAULT_ELEMENT_NAME);
+        result.setDecision(decisionType);
+        result.setResourceId(resourceId);
+        return result;
+    }
+
+}
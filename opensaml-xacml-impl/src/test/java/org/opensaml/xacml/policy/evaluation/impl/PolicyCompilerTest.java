@@ -0,0 +1,159 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.policy.evaluation.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.ctx.MultipleResourceSupport;
+import org.opensaml.xacml.ctx.RequestType;
+import org.opensaml.xacml.ctx.ResponseType;
+import org.opensaml.xacml.ctx.ResultType;
+import org.opensaml.xacml.ctx.StatusCodeType;
+import org.opensaml.xacml.policy.EffectType;
+import org.opensaml.xacml.policy.ObligationType;
+import org.opensaml.xacml.policy.PolicySetType;
+import org.opensaml.xacml.policy.PolicyType;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test of {@link PolicyCompiler} and {@link CompiledPolicyEvaluator}.
+ */
+public class PolicyCompilerTest extends XMLObjectBaseTestCase {
+
+    private static final String DATA_PATH = "/org/opensaml/xacml/policy/evaluation/impl/";
+
+    private PolicySetType policySet;
+
+    @BeforeMethod
+    public void setUp() {
+        policySet = unmarshallElement(DATA_PATH + "PolicySet.xml");
+    }
+
+    @Test
+    public void testPermitWithObligation() throws PolicyCompilationException {
+        final ResultType result = evaluate(new PolicyCompiler(), "RequestAdmin.xml");
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Permit);
+        Assert.assertEquals(result.getStatus().getStatusCode().getValue(), StatusCodeType.SC_OK);
+
+        Assert.assertNotNull(result.getObligations());
+        Assert.assertEquals(result.getObligations().getObligations().size(), 1);
+        final ObligationType obligation = result.getObligations().getObligations().get(0);
+        Assert.assertEquals(obligation.getObligationId(), "urn:example:obligation:log");
+        Assert.assertEquals(obligation.getFulfillOn(), EffectType.Permit);
+        Assert.assertEquals(obligation.getAttributeAssignments().size(), 1);
+        Assert.assertEquals(obligation.getAttributeAssignments().get(0).getAttributeId(), "urn:example:message");
+        Assert.assertEquals(obligation.getAttributeAssignments().get(0).getValue(), "permitted");
+    }
+
+    @Test
+    public void testDenyWithObligation() throws PolicyCompilationException {
+        final ResultType result = evaluate(new PolicyCompiler(), "RequestGuest.xml");
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Deny);
+        Assert.assertEquals(result.getObligations().getObligations().size(), 1);
+        Assert.assertEquals(result.getObligations().getObligations().get(0).getObligationId(),
+                "urn:example:obligation:notify");
+    }
+
+    @Test
+    public void testRegexpMatch() throws PolicyCompilationException {
+        final ResultType result = evaluate(new PolicyCompiler(), "RequestOther.xml");
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Permit);
+        Assert.assertNull(result.getObligations());
+    }
+
+    @Test
+    public void testNotApplicable() throws PolicyCompilationException {
+        final ResultType result = evaluate(new PolicyCompiler(), "RequestUnknown.xml");
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.NotApplicable);
+        Assert.assertNull(result.getObligations());
+    }
+
+    @Test
+    public void testMissingAttribute() throws PolicyCompilationException {
+        final ResultType result = evaluate(new PolicyCompiler(), "RequestNoRole.xml");
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Indeterminate);
+        Assert.assertEquals(result.getStatus().getStatusCode().getValue(), StatusCodeType.SC_MISSING_ATTRIBUTE);
+        Assert.assertNotNull(result.getStatus().getStatusMessage());
+        Assert.assertNull(result.getObligations());
+    }
+
+    @Test
+    public void testIndexed() throws PolicyCompilationException {
+        final PolicyCompiler compiler = new PolicyCompiler(1);
+        Assert.assertEquals(evaluate(compiler, "RequestAdmin.xml").getDecision().getDecision(), DECISION.Permit);
+        Assert.assertEquals(evaluate(compiler, "RequestGuest.xml").getDecision().getDecision(), DECISION.Deny);
+        Assert.assertEquals(evaluate(compiler, "RequestOther.xml").getDecision().getDecision(), DECISION.Permit);
+        Assert.assertEquals(evaluate(compiler, "RequestUnknown.xml").getDecision().getDecision(),
+                DECISION.NotApplicable);
+        Assert.assertEquals(evaluate(compiler, "RequestNoRole.xml").getDecision().getDecision(),
+                DECISION.Indeterminate);
+    }
+
+    @Test
+    public void testDecide() throws PolicyCompilationException {
+        final CompiledPolicyEvaluator evaluator = new PolicyCompiler().compile(policySet);
+        final RequestType request = unmarshallElement(DATA_PATH + "RequestGuest.xml");
+        Assert.assertEquals(evaluator.decide(request), DECISION.Deny);
+    }
+
+    @Test
+    public void testMultipleResources() throws PolicyCompilationException {
+        final CompiledPolicyEvaluator evaluator = new PolicyCompiler().compile(policySet);
+        final RequestType request = unmarshallElement(DATA_PATH + "RequestMultiple.xml");
+        final ResponseType response = evaluator.evaluate(request);
+        Assert.assertEquals(response.getResults().size(), 3);
+
+        final Map<String,ResultType> results = MultipleResourceSupport.correlateResults(request, response);
+        Assert.assertEquals(new ArrayList<>(results.keySet()), Arrays.asList("https://unknown.example.org/doc",
+                "https://sp.example.org/doc", "https://other.example.org/page"));
+
+        final ResultType unknown = results.get("https://unknown.example.org/doc");
+        Assert.assertEquals(unknown.getDecision().getDecision(), DECISION.NotApplicable);
+        Assert.assertNull(unknown.getObligations());
+
+        final ResultType document = results.get("https://sp.example.org/doc");
+        Assert.assertEquals(document.getDecision().getDecision(), DECISION.Permit);
+        Assert.assertEquals(document.getObligations().getObligations().size(), 1);
+
+        final ResultType other = results.get("https://other.example.org/page");
+        Assert.assertEquals(other.getDecision().getDecision(), DECISION.Permit);
+        Assert.assertNull(other.getObligations());
+    }
+
+    @Test(expectedExceptions = PolicyCompilationException.class)
+    public void testUnsupportedFunction() throws PolicyCompilationException {
+        final PolicyType policy = unmarshallElement(DATA_PATH + "PolicyUnsupportedFunction.xml");
+        new PolicyCompiler().compile(policy);
+    }
+
+    private ResultType evaluate(final PolicyCompiler compiler, final String requestFile)
+            throws PolicyCompilationException {
+        final CompiledPolicyEvaluator evaluator = compiler.compile(policySet);
+        final RequestType request = unmarshallElement(DATA_PATH + requestFile);
+        final ResponseType response = evaluator.evaluate(request);
+        Assert.assertEquals(response.getResults().size(), 1);
+        return response.getResults().get(0);
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.encryption.support;
+
+import javax.annotation.Nullable;
+
+import org.opensaml.core.metrics.AbstractProcessingEvent;
+import org.opensaml.xmlsec.encryption.CipherData;
+import org.opensaml.xmlsec.encryption.EncryptedData;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+
+/**
+ * Base class for JDK Flight Recorder events for XML Encryption operations.
+ *
+ * @since 4.0.0
+ */
+public abstract class AbstractEncryptionEvent extends AbstractProcessingEvent {
+
+    /** The data encryption algorithm. */
+    @Label("Algorithm")
+    @Description("The data encryption algorithm URI")
+    private String algorithm;
+
+    /**
+     * Get the data encryption algorithm URI.
+     *
+     * @return the data encryption algorithm URI
+     */
+    @Nullable public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Set the data encryption algorithm URI.
+     *
+     * @param uri the data encryption algorithm URI
+     */
+    public void setAlgorithm(@Nullable final String uri) {
+        algorithm = uri;
+    }
+
+    /**
+     * Record the algorithm and the approximate size of the cipher text of an {@link EncryptedData}.
+     *
+     * @param encryptedData the encrypted data
+     */
+    public void setEncryptedData(@Nullable final EncryptedData encryptedData) {
+        if (encryptedData == null) {
+            return;
+        }
+        if (encryptedData.getEncryptionMethod() != null) {
+            setAlgorithm(encryptedData.getEncryptionMethod().getAlgorithm());
+        }
+        final CipherData cipherData = encryptedData.getCipherData();
+        if (cipherData != null && cipherData.getCipherValue() != null
+                && cipherData.getCipherValue().getValue() != null) {
+            // Decoded size of the base64 cipher value, ignoring padding and whitespace.
+            setBytes(cipherData.getCipherValue().getValue().length() * 3L / 4);
+        }
+    }
+
+}
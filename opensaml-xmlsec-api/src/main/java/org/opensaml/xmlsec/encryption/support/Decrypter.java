@@ -43,6 +43,7 @@ import org.apache.xml.security.Init;
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.opensaml.core.config.ConfigurationService;
+import org.opensaml.core.metrics.AbstractProcessingEvent;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.Marshaller;
@@ -445,6 +446,32 @@ public class Decrypter {
      */
     @Nonnull public List<XMLObject> decryptDataToList(@Nonnull final EncryptedData encryptedData,
             final boolean rootInNewDocument) throws DecryptionException {
+        final DecryptionEvent event = new DecryptionEvent();
+        event.begin();
+        String outcome = AbstractProcessingEvent.OUTCOME_ERROR;
+        try {
+            final List<XMLObject> xmlObjects = unmarshallDecryptedData(encryptedData, rootInNewDocument);
+            outcome = AbstractProcessingEvent.OUTCOME_SUCCESS;
+            return xmlObjects;
+        } finally {
+            if (event.shouldCommit()) {
+                event.setOutcome(outcome);
+                event.setEncryptedData(encryptedData);
+                event.commit();
+            }
+        }
+    }
+    
+    /**
+     * Decrypts the supplied EncryptedData and unmarshalls the resulting top-level elements.
+     * 
+     * @param encryptedData encrypted data element containing the data to be decrypted
+     * @param rootInNewDocument if true, root the underlying Elements of the returned XMLObjects in a new Document
+     * @return the list decrypted top-level XMLObjects
+     * @throws DecryptionException exception indicating a decryption error
+     */
+    @Nonnull private List<XMLObject> unmarshallDecryptedData(@Nonnull final EncryptedData encryptedData,
+            final boolean rootInNewDocument) throws DecryptionException {
         final List<XMLObject> xmlObjects = new LinkedList<>();
 
         final DocumentFragment docFragment = decryptDataToDOM(encryptedData);
@@ -583,11 +610,7 @@ public class Decrypter {
 
         final XMLCipher xmlCipher;
         try {
-            if (getJCAProviderName() != null) {
-                xmlCipher = XMLCipher.getProviderInstance(getJCAProviderName());
-            } else {
-                xmlCipher = XMLCipher.getInstance();
-            }
+            xmlCipher = XMLCipherCache.acquire(null, getJCAProviderName(), null);
             xmlCipher.init(XMLCipher.DECRYPT_MODE, dataEncKey);
         } catch (final XMLEncryptionException e) {
             log.error("Error initialzing cipher instance on data decryption", e);
@@ -609,6 +632,7 @@ public class Decrypter {
         if (bytes == null) {
             throw new DecryptionException("EncryptedData could not be decrypted");
         }
+        XMLCipherCache.release(xmlCipher, null, getJCAProviderName(), null);
         final ByteArrayInputStream input = new ByteArrayInputStream(bytes);
         final DocumentFragment docFragment = parseInputStream(input, encryptedData.getDOM().getOwnerDocument());
         return docFragment;
@@ -686,11 +710,7 @@ public class Decrypter {
         
         final XMLCipher xmlCipher;
         try {
-            if (getJCAProviderName() != null) {
-                xmlCipher = XMLCipher.getProviderInstance(getJCAProviderName());
-            } else {
-                xmlCipher = XMLCipher.getInstance();
-            }
+            xmlCipher = XMLCipherCache.acquire(null, getJCAProviderName(), null);
             xmlCipher.init(XMLCipher.UNWRAP_MODE, kek);
         } catch (final XMLEncryptionException e) {
             log.error("Error initialzing cipher instance on key decryption", e);
@@ -711,6 +731,7 @@ public class Decrypter {
             if (key == null) {
                 throw new DecryptionException("Key could not be decrypted");
             }
+            XMLCipherCache.release(xmlCipher, null, getJCAProviderName(), null);
             return key;
         } catch (final XMLEncryptionException e) {
             log.error("Error decrypting encrypted key", e);
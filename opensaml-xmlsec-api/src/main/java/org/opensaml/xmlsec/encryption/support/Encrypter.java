@@ -35,6 +35,7 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 import org.apache.xml.security.Init;
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLEncryptionException;
+import org.opensaml.core.metrics.AbstractProcessingEvent;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
@@ -368,8 +369,11 @@ public class Encrypter {
             throw new EncryptionException("Error encrypting element on key encryption", e);
         }
 
+        final Element encKeyElement = xmlCipher.martial(containingDocument, apacheEncryptedKey);
+        XMLCipherCache.release(xmlCipher, encryptionAlgorithmURI, getJCAProviderName(),
+                getCipherDigestMethod(encryptionAlgorithmURI, rsaOAEPParams));
+
         try {
-            final Element encKeyElement = xmlCipher.martial(containingDocument, apacheEncryptedKey);
             return (EncryptedKey) encryptedKeyUnmarshaller.unmarshall(encKeyElement);
         } catch (final UnmarshallingException e) {
             log.error("Error unmarshalling EncryptedKey element", e);
@@ -380,40 +384,44 @@ public class Encrypter {
     /**
      * Construct and return an instance of {@link XMLCipher} based on the given inputs.
      * 
+     * <p>
+     * The instance is obtained from the {@link XMLCipherCache} of the current thread, and is returned to
+     * it once the key has been encrypted.
+     * </p>
+     * 
      * @param encryptionKey the key transport encryption key with which to initialize the XMLCipher
      * @param encryptionAlgorithmURI the key transport encryption algorithm URI
      * @param rsaOAEPParams the optional RSA OAEP parameters instance
-     * @return new XMLCipher instance
+     * @return XMLCipher instance
      * @throws XMLEncryptionException if there is a problem constructing the XMLCipher instance
      */
     @Nonnull protected XMLCipher buildXMLCipher(@Nonnull final Key encryptionKey, 
             @Nonnull final String encryptionAlgorithmURI, @Nullable final RSAOAEPParameters rsaOAEPParams) 
                     throws XMLEncryptionException { 
         
-        final XMLCipher xmlCipher;
-        
-        if (getJCAProviderName() != null) {
-            if (AlgorithmSupport.isRSAOAEP(encryptionAlgorithmURI) && rsaOAEPParams != null 
-                    && rsaOAEPParams.getDigestMethod() != null) {
-                xmlCipher = XMLCipher.getProviderInstance(encryptionAlgorithmURI, getJCAProviderName(), 
-                        null, rsaOAEPParams.getDigestMethod());
-            } else {
-                xmlCipher = XMLCipher.getProviderInstance(encryptionAlgorithmURI, getJCAProviderName());
-            }
-        } else {
-            if (AlgorithmSupport.isRSAOAEP(encryptionAlgorithmURI) && rsaOAEPParams != null 
-                    && rsaOAEPParams.getDigestMethod() != null) {
-                xmlCipher = XMLCipher.getInstance(encryptionAlgorithmURI, null, rsaOAEPParams.getDigestMethod());
-            } else {
-                xmlCipher = XMLCipher.getInstance(encryptionAlgorithmURI);
-            }
-        }
+        final XMLCipher xmlCipher = XMLCipherCache.acquire(encryptionAlgorithmURI, getJCAProviderName(),
+                getCipherDigestMethod(encryptionAlgorithmURI, rsaOAEPParams));
         
         xmlCipher.init(XMLCipher.WRAP_MODE, encryptionKey);
         
         return xmlCipher;
     }
     
+    /**
+     * Get the RSA OAEP digest method with which a key transport cipher is configured.
+     * 
+     * @param encryptionAlgorithmURI the key transport encryption algorithm URI
+     * @param rsaOAEPParams the optional RSA OAEP parameters instance
+     * @return the digest method URI, or null
+     */
+    @Nullable private String getCipherDigestMethod(@Nonnull final String encryptionAlgorithmURI,
+            @Nullable final RSAOAEPParameters rsaOAEPParams) {
+        if (AlgorithmSupport.isRSAOAEP(encryptionAlgorithmURI) && rsaOAEPParams != null) {
+            return rsaOAEPParams.getDigestMethod();
+        }
+        return null;
+    }
+    
     /**
      * Get the effective RSA OAEP mask generation function (MGF) to use.
      * 
@@ -524,11 +532,7 @@ public class Encrypter {
 
         final XMLCipher xmlCipher;
         try {
-            if (getJCAProviderName() != null) {
-                xmlCipher = XMLCipher.getProviderInstance(encryptionAlgorithmURI, getJCAProviderName());
-            } else {
-                xmlCipher = XMLCipher.getInstance(encryptionAlgorithmURI);
-            }
+            xmlCipher = XMLCipherCache.acquire(encryptionAlgorithmURI, getJCAProviderName(), null);
             xmlCipher.init(XMLCipher.ENCRYPT_MODE, encryptionKey);
         } catch (final XMLEncryptionException e) {
             log.error("Error initializing cipher instance on XMLObject encryption", e);
@@ -543,8 +547,10 @@ public class Encrypter {
             throw new EncryptionException("Error encrypting XMLObject", e);
         }
 
+        final Element encDataElement = xmlCipher.martial(ownerDocument, apacheEncryptedData);
+        XMLCipherCache.release(xmlCipher, encryptionAlgorithmURI, getJCAProviderName(), null);
+
         try {
-            final Element encDataElement = xmlCipher.martial(ownerDocument, apacheEncryptedData);
             return (EncryptedData) encryptedDataUnmarshaller.unmarshall(encDataElement);
         } catch (final UnmarshallingException e) {
             log.error("Error unmarshalling EncryptedData element", e);
@@ -569,6 +575,59 @@ public class Encrypter {
             @Nonnull final List<KeyEncryptionParameters> kekParamsList, final boolean encryptContentMode)
                     throws EncryptionException {
 
+        final EncryptionEvent event = new EncryptionEvent();
+        event.begin();
+        EncryptedData encryptedData = null;
+        try {
+            encryptedData = encryptElementWithKeys(xmlObject, encParams, kekParamsList, encryptContentMode);
+            return encryptedData;
+        } finally {
+            if (event.shouldCommit()) {
+                event.setOutcome(encryptedData != null ? AbstractProcessingEvent.OUTCOME_SUCCESS
+                        : AbstractProcessingEvent.OUTCOME_ERROR);
+                event.setEncryptedData(encryptedData);
+                event.setEntityID(getRecipient(kekParamsList));
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Get the recipient of the first key encryption parameters which specify one, for event recording.
+     * 
+     * @param kekParamsList the key encryption parameters
+     * 
+     * @return the recipient, or null
+     * 
+     * @since 4.0.0
+     */
+    @Nullable protected String getRecipient(@Nullable final List<KeyEncryptionParameters> kekParamsList) {
+        if (kekParamsList != null) {
+            for (final KeyEncryptionParameters kekParams : kekParamsList) {
+                if (kekParams != null && kekParams.getRecipient() != null) {
+                    return kekParams.getRecipient();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encrypts the given XMLObject and places the resulting EncryptedKey(s) within the EncryptedData's KeyInfo.
+     * 
+     * @param xmlObject the XMLObject to be encrypted
+     * @param encParams the encryption parameters to use
+     * @param kekParamsList the key encryption parameters to use
+     * @param encryptContentMode whether just the content of the XMLObject should be encrypted
+     * 
+     * @return the resulting EncryptedData object
+     * @throws EncryptionException exception thrown on encryption errors
+     */
+    @Nonnull private EncryptedData encryptElementWithKeys(@Nonnull final XMLObject xmlObject,
+            @Nonnull final DataEncryptionParameters encParams,
+            @Nonnull final List<KeyEncryptionParameters> kekParamsList, final boolean encryptContentMode)
+                    throws EncryptionException {
+
         checkParams(encParams, kekParamsList);
 
         final String encryptionAlgorithmURI = encParams.getAlgorithm();
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.encryption.support;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.xml.security.encryption.ReferenceList;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.encryption.XMLEncryptionException;
+import org.w3c.dom.Document;
+
+/**
+ * A thread-confined cache of {@link XMLCipher} instances, keyed by algorithm URI, JCA provider name and
+ * RSA OAEP digest method.
+ *
+ * <p>
+ * Creating an {@link XMLCipher} involves provider lookups and the construction of a canonicalizer and
+ * serializer, which is wasted work when the same cipher configuration is used for every message. A cipher
+ * obtained by {@link #acquire(String, String, String)} belongs to the calling thread until it is handed back
+ * by {@link #release(XMLCipher, String, String, String)}, so nested use on one thread never shares an
+ * instance. Callers must still call {@link XMLCipher#init(int, java.security.Key)} on each use.
+ * </p>
+ *
+ * <p>
+ * Released ciphers are reset so that they do not retain the key they were last used with, nor the document
+ * they last processed, which may contain plaintext. A cipher which was in use when an exception occurred should
+ * simply not be released.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+public final class XMLCipherCache {
+
+    /** Maximum number of ciphers cached per thread. */
+    public static final int MAX_CACHED_CIPHERS = 8;
+
+    /** Ciphers cached by the current thread, in access order. */
+    @Nonnull private static final ThreadLocal<Map<String,XMLCipher>> CACHE =
+            ThreadLocal.withInitial(() -> new LinkedHashMap<>(MAX_CACHED_CIPHERS * 2, 0.75f, true) {
+
+                /** Serial version UID. */
+                private static final long serialVersionUID = -2471349725081683561L;
+
+                /** {@inheritDoc} */
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String,XMLCipher> eldest) {
+                    return size() > MAX_CACHED_CIPHERS;
+                }
+            });
+
+    /** Empty document of the current thread, to which released ciphers are pointed. */
+    @Nonnull private static final ThreadLocal<Document> EMPTY_DOCUMENT =
+            ThreadLocal.withInitial(XMLCipherCache::newEmptyDocument);
+
+    /** Constructor. */
+    private XMLCipherCache() {
+    }
+
+    /**
+     * Obtain a cipher for the current thread, creating one if none is cached.
+     *
+     * @param algorithmURI the encryption algorithm URI, or null for a cipher used only for decryption
+     * @param providerName the JCA provider name, or null for the default
+     * @param digestMethod the RSA OAEP digest method URI, or null
+     *
+     * @return an uninitialized cipher
+     *
+     * @throws XMLEncryptionException if a new cipher cannot be created
+     */
+    @Nonnull public static XMLCipher acquire(@Nullable final String algorithmURI,
+            @Nullable final String providerName, @Nullable final String digestMethod)
+                    throws XMLEncryptionException {
+
+        final XMLCipher cached = CACHE.get().remove(buildKey(algorithmURI, providerName, digestMethod));
+        if (cached != null) {
+            return cached;
+        }
+
+        if (providerName != null) {
+            if (algorithmURI == null) {
+                return XMLCipher.getProviderInstance(providerName);
+            } else if (digestMethod != null) {
+                return XMLCipher.getProviderInstance(algorithmURI, providerName, null, digestMethod);
+            } else {
+                return XMLCipher.getProviderInstance(algorithmURI, providerName);
+            }
+        } else {
+            if (algorithmURI == null) {
+                return XMLCipher.getInstance();
+            } else if (digestMethod != null) {
+                return XMLCipher.getInstance(algorithmURI, null, digestMethod);
+            } else {
+                return XMLCipher.getInstance(algorithmURI);
+            }
+        }
+    }
+
+    /**
+     * Return a cipher to the current thread's cache for later reuse.
+     *
+     * <p>
+     * The parameters must be those with which the cipher was acquired.
+     * </p>
+     *
+     * @param cipher the cipher to return
+     * @param algorithmURI the encryption algorithm URI
+     * @param providerName the JCA provider name
+     * @param digestMethod the RSA OAEP digest method URI
+     */
+    public static void release(@Nullable final XMLCipher cipher, @Nullable final String algorithmURI,
+            @Nullable final String providerName, @Nullable final String digestMethod) {
+
+        if (cipher == null) {
+            return;
+        }
+
+        final Document emptyDocument = EMPTY_DOCUMENT.get();
+        if (emptyDocument == null) {
+            return;
+        }
+
+        try {
+            // Drops the key and any partially built EncryptedData or EncryptedKey.
+            cipher.init(XMLCipher.UNWRAP_MODE, null);
+        } catch (final XMLEncryptionException e) {
+            return;
+        }
+        // Replaces the reference to the last document encrypted or decrypted.
+        cipher.martial(emptyDocument, cipher.createReferenceList(ReferenceList.DATA_REFERENCE));
+
+        CACHE.get().put(buildKey(algorithmURI, providerName, digestMethod), cipher);
+    }
+
+    /**
+     * Discard all ciphers cached by the current thread.
+     */
+    public static void clear() {
+        CACHE.remove();
+        EMPTY_DOCUMENT.remove();
+    }
+
+    /**
+     * Create an empty document.
+     *
+     * @return the new document, or null if one cannot be created
+     */
+    @Nullable private static Document newEmptyDocument() {
+        try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        } catch (final ParserConfigurationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Build the cache key for a cipher configuration.
+     *
+     * @param algorithmURI the encryption algorithm URI
+     * @param providerName the JCA provider name
+     * @param digestMethod the RSA OAEP digest method URI
+     *
+     * @return the cache key
+     */
+    @Nonnull private static String buildKey(@Nullable final String algorithmURI,
+            @Nullable final String providerName, @Nullable final String digestMethod) {
+        final StringBuilder builder = new StringBuilder(128);
+        if (algorithmURI != null) {
+            builder.append(algorithmURI);
+        }
+        builder.append('|');
+        if (providerName != null) {
+            builder.append(providerName);
+        }
+        builder.append('|');
+        if (digestMethod != null) {
+            builder.append(digestMethod);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensaml.xmlsec.signature.support;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.signature.Signature;
+
+/**
+ * Component which cryptographically validates a single XML Signature {@link Signature}
+ * against one or more candidate validation {@link Credential}s.
+ * 
+ * <p>
+ * Implementations may perform the key-independent parts of the validation, such as the canonicalization
+ * of the SignedInfo and the verification of the Reference digests, only once for the signature, so that
+ * evaluating several candidate credentials costs little more than evaluating one.
+ * </p>
+ * 
+ * <p>
+ * Instances are obtained via {@link SignatureValidationProvider#prepare(Signature)} or
+ * {@link SignatureValidator#prepare(Signature)}, and are intended to be used by a single thread
+ * for the duration of one signature evaluation.
+ * </p>
+ */
+@NotThreadSafe
+public interface PreparedSignatureValidator {
+
+    /**
+     * Validate the prepared XML Signature using the given candidate validation Credential.
+     * 
+     * @param validationCredential the candidate validation Credential
+     * @throws SignatureException if the signature does not validate using the candidate Credential,
+     *                              or if there is otherwise an error during the validation operation
+     */
+    void validate(@Nonnull final Credential validationCredential) throws SignatureException;
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.signature.support;
+
+import javax.annotation.Nullable;
+
+import org.opensaml.core.metrics.AbstractProcessingEvent;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for the validation and trust evaluation of a signature by a
+ * {@link SignatureTrustEngine}.
+ *
+ * @since 4.0.0
+ */
+@Name("org.opensaml.SignatureValidation")
+@Label("Signature Validation")
+@Description("Validation and trust evaluation of a signature")
+public class SignatureValidationEvent extends AbstractProcessingEvent {
+
+    /** The signature algorithm. */
+    @Label("Algorithm")
+    @Description("The signature algorithm URI")
+    private String algorithm;
+
+    /**
+     * Get the signature algorithm URI.
+     *
+     * @return the signature algorithm URI
+     */
+    @Nullable public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Set the signature algorithm URI.
+     *
+     * @param uri the signature algorithm URI
+     */
+    public void setAlgorithm(@Nullable final String uri) {
+        algorithm = uri;
+    }
+
+}
@@ -20,6 +20,8 @@ package org.opensaml.xmlsec.signature.support;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
 
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
 import org.opensaml.security.credential.Credential;
 import org.opensaml.xmlsec.signature.Signature;
 
@@ -49,5 +51,25 @@ public interface SignatureValidationProvider {
      */
     public void validate(@Nonnull final Signature signature, @Nonnull final Credential validationCredential) 
             throws SignatureException;
+    
+    /**
+     * Prepare the given XML Signature for validation against one or more candidate validation Credentials.
+     * 
+     * <p>
+     * The default implementation simply performs a full {@link #validate(Signature, Credential)} for each
+     * candidate. Implementations should override this to perform key-independent processing only once.
+     * </p>
+     * 
+     * @param signature the XMLSignature to validate
+     * @return the prepared validator
+     * @throws SignatureException if the signature can not be prepared for validation
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull default PreparedSignatureValidator prepare(@Nonnull final Signature signature) 
+            throws SignatureException {
+        Constraint.isNotNull(signature, "Signature cannot be null");
+        return validationCredential -> validate(signature, validationCredential);
+    }
 
 }
\ No newline at end of file
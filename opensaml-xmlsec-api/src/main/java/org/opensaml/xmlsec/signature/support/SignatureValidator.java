@@ -54,6 +54,27 @@ public final class SignatureValidator {
         validator.validate(signature, validationCredential);
     }
     
+    /**
+     * Prepare the given XML Signature for validation against one or more candidate validation Credentials.
+     * 
+     * <p>
+     * Key-independent processing may be performed once for the signature, so this should be preferred over
+     * repeated calls to {@link #validate(Signature, Credential)} when several candidates are to be evaluated.
+     * </p>
+     * 
+     * @param signature the XMLSignature to validate
+     * @return the prepared validator, which must be used only by the calling thread
+     * @throws SignatureException if the signature can not be prepared for validation
+     * 
+     * @since 4.0.0
+     */
+    @Nonnull public static PreparedSignatureValidator prepare(@Nonnull final Signature signature) 
+            throws SignatureException {
+        final SignatureValidationProvider validator = getSignatureValidationProvider();
+        getLogger().debug("Using a validation provider of implementation: {}", validator.getClass().getName());
+        return validator.prepare(signature);
+    }
+    
     /**
      * Obtain the {@link SignatureValidationProvider} instance to be used.
      * 
@@ -24,6 +24,8 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.metrics.AbstractProcessingEvent;
 import org.opensaml.security.SecurityException;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.xmlsec.SignatureValidationParameters;
@@ -31,8 +33,10 @@ import org.opensaml.xmlsec.algorithm.AlgorithmSupport;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCriterion;
 import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.PreparedSignatureValidator;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import org.opensaml.xmlsec.signature.support.SignatureTrustEngine;
+import org.opensaml.xmlsec.signature.support.SignatureValidationEvent;
 import org.opensaml.xmlsec.signature.support.SignatureValidationParametersCriterion;
 import org.opensaml.xmlsec.signature.support.SignatureValidator;
 import org.slf4j.Logger;
@@ -86,6 +90,35 @@ public abstract class BaseSignatureTrustEngine<TrustBasisType> implements Signat
     public final boolean validate(@Nonnull final Signature signature, @Nullable final CriteriaSet trustBasisCriteria)
             throws SecurityException {
         
+        final SignatureValidationEvent event = new SignatureValidationEvent();
+        event.begin();
+        String outcome = AbstractProcessingEvent.OUTCOME_ERROR;
+        try {
+            final boolean result = validateXML(signature, trustBasisCriteria);
+            outcome = result ? AbstractProcessingEvent.OUTCOME_SUCCESS : AbstractProcessingEvent.OUTCOME_FAILURE;
+            return result;
+        } finally {
+            if (event.shouldCommit()) {
+                event.setOutcome(outcome);
+                event.setAlgorithm(signature != null ? signature.getSignatureAlgorithm() : null);
+                event.setEntityID(getEntityID(trustBasisCriteria));
+                event.commit();
+            }
+        }
+    }
+    
+    /**
+     * Validate an XML signature, checking its algorithm against the supplied criteria.
+     * 
+     * @param signature the signature to validate
+     * @param trustBasisCriteria criteria used to describe and/or resolve the information
+     *          which serves as the basis for trust evaluation
+     * @return true if signature is valid and trusted, false otherwise
+     * @throws SecurityException if there is a fatal error evaluating the signature
+     */
+    private boolean validateXML(@Nonnull final Signature signature, @Nullable final CriteriaSet trustBasisCriteria)
+            throws SecurityException {
+        
         checkParams(signature, trustBasisCriteria);
         
         final SignatureValidationParametersCriterion validationCriterion = 
@@ -105,6 +138,23 @@ public abstract class BaseSignatureTrustEngine<TrustBasisType> implements Signat
         return doValidate(signature, trustBasisCriteria);
     }
     
+    /**
+     * Get the entityID for which trust is being evaluated, for event recording.
+     * 
+     * @param trustBasisCriteria the trust criteria
+     * 
+     * @return the entityID, or null
+     */
+    @Nullable private String getEntityID(@Nullable final CriteriaSet trustBasisCriteria) {
+        if (trustBasisCriteria != null) {
+            final EntityIdCriterion criterion = trustBasisCriteria.get(EntityIdCriterion.class);
+            if (criterion != null) {
+                return criterion.getEntityId();
+            }
+        }
+        return null;
+    }
+    
     /**
      * Validate the signature using the supplied trust criteria.
      * 
@@ -123,6 +173,44 @@ public abstract class BaseSignatureTrustEngine<TrustBasisType> implements Signat
             @Nonnull final String algorithmURI, @Nullable final CriteriaSet trustBasisCriteria,
             @Nullable final Credential candidateCredential) throws SecurityException {
         
+        final SignatureValidationEvent event = new SignatureValidationEvent();
+        event.begin();
+        String outcome = AbstractProcessingEvent.OUTCOME_ERROR;
+        try {
+            final boolean result = validateRaw(signature, content, algorithmURI, trustBasisCriteria,
+                    candidateCredential);
+            outcome = result ? AbstractProcessingEvent.OUTCOME_SUCCESS : AbstractProcessingEvent.OUTCOME_FAILURE;
+            return result;
+        } finally {
+            if (event.shouldCommit()) {
+                event.setOutcome(outcome);
+                event.setAlgorithm(algorithmURI);
+                event.setBytes(content != null ? content.length : 0);
+                event.setEntityID(getEntityID(trustBasisCriteria));
+                event.commit();
+            }
+        }
+    }
+    
+    /**
+     * Validate a raw signature, checking its algorithm against the supplied criteria.
+     * 
+     * @param signature the signature value
+     * @param content the content that was signed
+     * @param algorithmURI the signature algorithm URI which was used to sign the content
+     * @param trustBasisCriteria criteria used to describe and/or resolve the information
+     *          which serves as the basis for trust evaluation
+     * @param candidateCredential the untrusted candidate credential containing the validation key
+     *          for the signature (optional)
+     * @return true if the signature was valid for the provided content and was signed by a key
+     *          contained within a credential established as trusted based on the supplied criteria,
+     *          otherwise false
+     * @throws SecurityException thrown if there is a fatal error during trust engine evaluation processing
+     */
+    private boolean validateRaw(@Nonnull final byte[] signature, @Nonnull final byte[] content,
+            @Nonnull final String algorithmURI, @Nullable final CriteriaSet trustBasisCriteria,
+            @Nullable final Credential candidateCredential) throws SecurityException {
+        
         checkParamsRaw(signature, content, algorithmURI, trustBasisCriteria);
         
         final SignatureValidationParametersCriterion validationCriterion = 
@@ -185,6 +273,35 @@ public abstract class BaseSignatureTrustEngine<TrustBasisType> implements Signat
      */
     protected boolean validate(@Nonnull final Signature signature, @Nullable final TrustBasisType trustBasis)
             throws SecurityException {
+        
+        final PreparedSignatureValidator validator = prepareSignatureValidation(signature);
+        if (validator == null) {
+            return false;
+        }
+        return validate(signature, validator, trustBasis);
+    }
+    
+    /**
+     * Attempt to establish trust by resolving signature verification credentials from the Signature's KeyInfo. If any
+     * credentials so resolved correctly verify the signature, attempt to establish trust using subclass-specific trust
+     * logic against trusted information as implemented in {@link #evaluateTrust(Credential, Object)}.
+     * 
+     * <p>
+     * Candidate credentials are verified using the supplied prepared validator, which should be reused
+     * by the caller for any further candidates for the same signature.
+     * </p>
+     * 
+     * @param signature the Signature to evaluate
+     * @param validator the prepared validator for the signature
+     * @param trustBasis the information which serves as the basis for trust evaluation
+     * @return true if the signature is verified by any KeyInfo-derived credential which can be established as trusted,
+     *         otherwise false
+     * @throws SecurityException if an error occurs during signature verification or trust processing
+     * 
+     * @since 4.0.0
+     */
+    protected boolean validate(@Nonnull final Signature signature, @Nonnull final PreparedSignatureValidator validator,
+            @Nullable final TrustBasisType trustBasis) throws SecurityException {
 
         log.debug("Attempting to verify signature and establish trust using KeyInfo-derived credentials");
 
@@ -195,7 +312,7 @@ public abstract class BaseSignatureTrustEngine<TrustBasisType> implements Signat
 
             try {
                 for (final Credential kiCred : getKeyInfoResolver().resolve(keyInfoCriteriaSet)) {
-                    if (verifySignature(signature, kiCred)) {
+                    if (verifySignature(validator, kiCred)) {
                         log.debug("Successfully verified signature using KeyInfo-derived credential");
                         log.debug("Attempting to establish trust of KeyInfo-derived credential");
                         if (evaluateTrust(kiCred, trustBasis)) {
@@ -249,6 +366,46 @@ public abstract class BaseSignatureTrustEngine<TrustBasisType> implements Signat
         return true;
     }
 
+    /**
+     * Attempt to verify a prepared signature using the key from the supplied credential.
+     * 
+     * @param validator the prepared validator for the signature on which to attempt verification
+     * @param credential the credential containing the candidate validation key
+     * @return true if the signature can be verified using the key from the credential, otherwise false
+     * 
+     * @since 4.0.0
+     */
+    protected boolean verifySignature(@Nonnull final PreparedSignatureValidator validator, 
+            @Nonnull final Credential credential) {
+        try {
+            validator.validate(credential);
+        } catch (final SignatureException e) {
+            log.debug("Signature validation using candidate validation credential failed", e);
+            return false;
+        }
+        
+        log.debug("Signature validation using candidate credential was successful");
+        return true;
+    }
+    
+    /**
+     * Prepare the signature for validation against one or more candidate credentials, such that
+     * key-independent processing is performed only once.
+     * 
+     * @param signature the signature to prepare
+     * @return the prepared validator, or null if the signature could not be prepared
+     * 
+     * @since 4.0.0
+     */
+    @Nullable protected PreparedSignatureValidator prepareSignatureValidation(@Nonnull final Signature signature) {
+        try {
+            return SignatureValidator.prepare(signature);
+        } catch (final SignatureException e) {
+            log.debug("Unable to prepare signature for validation", e);
+            return null;
+        }
+    }
+
     /**
      * Check the signature and credential criteria for required values.
      * 
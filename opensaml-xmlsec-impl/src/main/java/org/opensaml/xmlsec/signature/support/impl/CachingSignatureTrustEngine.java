@@ -0,0 +1,485 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.signature.support.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.Criterion;
+
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.signature.XMLSignature;
+import org.opensaml.security.SecurityException;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.security.trust.TrustedCredentialTrustEngine;
+import org.opensaml.security.x509.PKIXTrustEngine;
+import org.opensaml.xmlsec.SignatureValidationParameters;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.impl.SignatureImpl;
+import org.opensaml.xmlsec.signature.support.SignatureTrustEngine;
+import org.opensaml.xmlsec.signature.support.SignatureValidationParametersCriterion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A {@link SignatureTrustEngine} which decorates another engine, remembering positive trust outcomes so that
+ * repeated evaluation of the same signature under the same trust basis criteria may skip the signature value
+ * check and the trust evaluation entirely.
+ *
+ * <p>
+ * XML signatures are identified by a digest over the canonical form of their SignedInfo and their SignatureValue.
+ * Since the SignedInfo only asserts the digests of the signed content, a cache hit still verifies the Reference
+ * digests against the current content before reporting success. Raw signatures are identified by a digest over
+ * the signature, the signed content, the algorithm URI and the key of any candidate credential.
+ * </p>
+ *
+ * <p>
+ * Only positive outcomes are cached; negative outcomes and errors are always re-evaluated. Entries are bounded
+ * by count and by a time-to-live, the latter also bounding how long a result may outlive time-dependent aspects
+ * of trust such as certificate validity or revocation status. All entries are discarded whenever the trusted
+ * {@link org.opensaml.security.credential.CredentialResolver} or
+ * {@link org.opensaml.security.x509.PKIXValidationInformationResolver} of the wrapped engine (or of any member
+ * of a wrapped {@link ChainingSignatureTrustEngine}) changes, or whenever the value returned by an optional
+ * {@link #setTrustBasisVersionStrategy(Supplier)} changes, allowing deployers to tie the cache to the
+ * refresh of the underlying trusted information.
+ * </p>
+ *
+ * <p>
+ * Criteria are compared by value. A {@link SignatureValidationParametersCriterion}, which compares its parameters
+ * by identity and is typically built afresh for each message, is compared by the contents of its algorithm
+ * whitelist and blacklist and by the identity of its trust engine.
+ * </p>
+ *
+ * @since 4.0.0
+ */
+public class CachingSignatureTrustEngine implements SignatureTrustEngine {
+
+    /** Digest algorithm used to build cache keys. */
+    @Nonnull private static final String KEY_DIGEST_ALGORITHM = "SHA-256";
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(CachingSignatureTrustEngine.class);
+
+    /** The wrapped engine. */
+    @Nonnull private final SignatureTrustEngine engine;
+
+    /** Cache of positive outcomes. */
+    @Nonnull private final Cache<CacheKey, Boolean> trustedCache;
+
+    /** Optional strategy returning a value that changes whenever the trusted information changes. */
+    @Nullable private volatile Supplier<?> trustBasisVersionStrategy;
+
+    /** The trust basis state against which the current cache contents were established. */
+    @Nonnull private volatile List<Object> trustBasisState;
+
+    /**
+     * Constructor.
+     *
+     * @param wrappedEngine the engine to decorate
+     * @param maxSize the maximum number of cached outcomes
+     * @param ttl the time-to-live of cached outcomes
+     */
+    public CachingSignatureTrustEngine(@Nonnull final SignatureTrustEngine wrappedEngine, final long maxSize,
+            @Nonnull final Duration ttl) {
+        engine = Constraint.isNotNull(wrappedEngine, "Wrapped SignatureTrustEngine cannot be null");
+        Constraint.isGreaterThan(0, maxSize, "Maximum cache size must be greater than 0");
+        Constraint.isNotNull(ttl, "Cache TTL cannot be null");
+        Constraint.isFalse(ttl.isNegative() || ttl.isZero(), "Cache TTL must be positive");
+
+        trustedCache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        trustBasisState = currentTrustBasisState();
+    }
+
+    /**
+     * Get the wrapped engine.
+     *
+     * @return the wrapped engine
+     */
+    @Nonnull public SignatureTrustEngine getWrappedEngine() {
+        return engine;
+    }
+
+    /**
+     * Get the strategy returning a value that changes whenever the trusted information changes.
+     *
+     * @return the strategy, or null
+     */
+    @Nullable public Supplier<?> getTrustBasisVersionStrategy() {
+        return trustBasisVersionStrategy;
+    }
+
+    /**
+     * Set a strategy returning a value that changes whenever the trusted information changes, for example the
+     * last update time of the metadata from which trusted credentials are resolved.
+     *
+     * @param strategy the strategy, or null
+     */
+    public void setTrustBasisVersionStrategy(@Nullable final Supplier<?> strategy) {
+        trustBasisVersionStrategy = strategy;
+        invalidateAll();
+    }
+
+    /**
+     * Get the number of cached outcomes.
+     *
+     * @return the approximate number of cached outcomes
+     */
+    public long getCacheSize() {
+        return trustedCache.size();
+    }
+
+    /**
+     * Discard all cached outcomes.
+     */
+    public void invalidateAll() {
+        trustedCache.invalidateAll();
+        trustBasisState = currentTrustBasisState();
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public KeyInfoCredentialResolver getKeyInfoResolver() {
+        return engine.getKeyInfoResolver();
+    }
+
+    /** {@inheritDoc} */
+    public boolean validate(@Nonnull final Signature token, @Nullable final CriteriaSet trustBasisCriteria)
+            throws SecurityException {
+        checkForTrustBasisChange();
+
+        final XMLSignature xmlSig = token instanceof SignatureImpl ? ((SignatureImpl) token).getXMLSignature() : null;
+        final CacheKey key = xmlSig != null ? buildKey(xmlSig, trustBasisCriteria) : null;
+        if (key == null) {
+            return engine.validate(token, trustBasisCriteria);
+        }
+
+        if (trustedCache.getIfPresent(key) != null) {
+            if (verifyReferences(xmlSig)) {
+                log.debug("Signature was previously established as trusted, Reference digests verified");
+                return true;
+            }
+            log.debug("Signature was previously established as trusted, but Reference digests did not verify");
+            return false;
+        }
+
+        final boolean trusted = engine.validate(token, trustBasisCriteria);
+        if (trusted) {
+            trustedCache.put(key, Boolean.TRUE);
+        }
+        return trusted;
+    }
+
+    /** {@inheritDoc} */
+    public boolean validate(@Nonnull final byte[] signature, @Nonnull final byte[] content,
+            @Nonnull final String algorithmURI, @Nullable final CriteriaSet trustBasisCriteria,
+            @Nullable final Credential candidateCredential) throws SecurityException {
+        checkForTrustBasisChange();
+
+        final CacheKey key = buildKey(signature, content, algorithmURI, trustBasisCriteria, candidateCredential);
+        if (key == null) {
+            return engine.validate(signature, content, algorithmURI, trustBasisCriteria, candidateCredential);
+        }
+
+        if (trustedCache.getIfPresent(key) != null) {
+            log.debug("Raw signature was previously established as trusted");
+            return true;
+        }
+
+        final boolean trusted =
+                engine.validate(signature, content, algorithmURI, trustBasisCriteria, candidateCredential);
+        if (trusted) {
+            trustedCache.put(key, Boolean.TRUE);
+        }
+        return trusted;
+    }
+
+    /**
+     * Discard all cached outcomes if the trusted information has changed since they were established.
+     */
+    protected void checkForTrustBasisChange() {
+        final List<Object> current = currentTrustBasisState();
+        if (!current.equals(trustBasisState)) {
+            log.debug("Trusted information changed, invalidating cached signature trust outcomes");
+            trustedCache.invalidateAll();
+            trustBasisState = current;
+        }
+    }
+
+    /**
+     * Get the current state of the trusted information.
+     *
+     * <p>
+     * Resolvers are compared by identity, so a replacement resolver is always detected as a change.
+     * </p>
+     *
+     * @return the current state
+     */
+    @Nonnull private List<Object> currentTrustBasisState() {
+        final List<Object> state = new ArrayList<>();
+        collectResolvers(engine, state);
+        final Supplier<?> strategy = trustBasisVersionStrategy;
+        if (strategy != null) {
+            state.add(strategy.get());
+        }
+        return state;
+    }
+
+    /**
+     * Collect the trusted information resolvers of the supplied engine.
+     *
+     * @param trustEngine the engine
+     * @param state the list to which to add the resolvers
+     */
+    private void collectResolvers(@Nonnull final SignatureTrustEngine trustEngine,
+            @Nonnull final List<Object> state) {
+        if (trustEngine instanceof TrustedCredentialTrustEngine) {
+            state.add(new IdentityToken(((TrustedCredentialTrustEngine<?>) trustEngine).getCredentialResolver()));
+        }
+        if (trustEngine instanceof PKIXTrustEngine) {
+            state.add(new IdentityToken(((PKIXTrustEngine<?>) trustEngine).getPKIXResolver()));
+        }
+        if (trustEngine instanceof ChainingSignatureTrustEngine) {
+            for (final SignatureTrustEngine member : ((ChainingSignatureTrustEngine) trustEngine).getChain()) {
+                collectResolvers(member, state);
+            }
+        }
+    }
+
+    /**
+     * Build the cache key for an XML signature.
+     *
+     * @param xmlSig the native signature
+     * @param criteria the trust basis criteria
+     *
+     * @return the key, or null if one could not be built
+     */
+    @Nullable private CacheKey buildKey(@Nonnull final XMLSignature xmlSig, @Nullable final CriteriaSet criteria) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(KEY_DIGEST_ALGORITHM);
+            digest.update(xmlSig.getSignedInfo().getCanonicalizedOctetStream());
+            final byte[] signatureValue = xmlSig.getSignatureValue();
+            if (signatureValue == null) {
+                return null;
+            }
+            digest.update(signatureValue);
+            return new CacheKey(digest.digest(), criteria);
+        } catch (final XMLSecurityException | NoSuchAlgorithmException e) {
+            log.debug("Unable to build signature cache key, signature will not be cached", e);
+            return null;
+        }
+    }
+
+    /**
+     * Build the cache key for a raw signature.
+     *
+     * @param signature the signature value
+     * @param content the signed content
+     * @param algorithmURI the signature algorithm URI
+     * @param criteria the trust basis criteria
+     * @param candidateCredential the candidate credential, if any
+     *
+     * @return the key, or null if one could not be built
+     */
+    @Nullable private CacheKey buildKey(@Nonnull final byte[] signature, @Nonnull final byte[] content,
+            @Nonnull final String algorithmURI, @Nullable final CriteriaSet criteria,
+            @Nullable final Credential candidateCredential) {
+        if (signature == null || content == null || algorithmURI == null) {
+            return null;
+        }
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(KEY_DIGEST_ALGORITHM);
+            digest.update(algorithmURI.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(signature);
+            digest.update((byte) 0);
+            digest.update(content);
+            if (candidateCredential != null) {
+                final Key key = CredentialSupport.extractVerificationKey(candidateCredential);
+                final byte[] encoded = key != null ? key.getEncoded() : null;
+                if (encoded == null) {
+                    return null;
+                }
+                digest.update((byte) 0);
+                digest.update(encoded);
+            }
+            return new CacheKey(digest.digest(), criteria);
+        } catch (final NoSuchAlgorithmException e) {
+            log.debug("Unable to build signature cache key, signature will not be cached", e);
+            return null;
+        }
+    }
+
+    /**
+     * Verify the Reference digests of a previously trusted signature against the current content.
+     *
+     * @param xmlSig the native signature
+     *
+     * @return true if all references verified, false otherwise
+     */
+    private boolean verifyReferences(@Nonnull final XMLSignature xmlSig) {
+        try {
+            return xmlSig.getSignedInfo().verify(false);
+        } catch (final XMLSecurityException e) {
+            log.debug("Error verifying Reference digests of previously trusted signature", e);
+            return false;
+        }
+    }
+
+    /** Wrapper comparing an object by identity. */
+    private static final class IdentityToken {
+
+        /** The wrapped object. */
+        @Nullable private final Object object;
+
+        /**
+         * Constructor.
+         *
+         * @param obj the wrapped object
+         */
+        private IdentityToken(@Nullable final Object obj) {
+            object = obj;
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(final Object obj) {
+            return obj instanceof IdentityToken && ((IdentityToken) obj).object == object;
+        }
+    }
+
+    /** Value token standing in for a {@link SignatureValidationParametersCriterion}. */
+    private static final class ValidationParametersToken {
+
+        /** The whitelisted algorithm URIs. */
+        @Nonnull private final Set<String> whitelist;
+
+        /** The blacklisted algorithm URIs. */
+        @Nonnull private final Set<String> blacklist;
+
+        /** The trust engine, compared by identity. */
+        @Nonnull private final IdentityToken trustEngine;
+
+        /**
+         * Constructor.
+         *
+         * @param params the signature validation parameters
+         */
+        private ValidationParametersToken(@Nonnull final SignatureValidationParameters params) {
+            whitelist = new HashSet<>(params.getWhitelistedAlgorithms());
+            blacklist = new HashSet<>(params.getBlacklistedAlgorithms());
+            trustEngine = new IdentityToken(params.getSignatureTrustEngine());
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return Objects.hash(whitelist, blacklist, trustEngine);
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof ValidationParametersToken) {
+                final ValidationParametersToken other = (ValidationParametersToken) obj;
+                return whitelist.equals(other.whitelist) && blacklist.equals(other.blacklist)
+                        && trustEngine.equals(other.trustEngine);
+            }
+            return false;
+        }
+    }
+
+    /** Cache key combining the signature digest with the trust basis criteria. */
+    private static final class CacheKey {
+
+        /** The signature digest. */
+        @Nonnull private final byte[] digest;
+
+        /** The trust basis criteria, or value tokens standing in for them. */
+        @Nonnull private final Set<Object> criteria;
+
+        /**
+         * Constructor.
+         *
+         * @param signatureDigest the signature digest
+         * @param criteriaSet the trust basis criteria
+         */
+        private CacheKey(@Nonnull final byte[] signatureDigest, @Nullable final CriteriaSet criteriaSet) {
+            digest = signatureDigest;
+            if (criteriaSet == null || criteriaSet.isEmpty()) {
+                criteria = Collections.emptySet();
+            } else {
+                criteria = new HashSet<>(criteriaSet.size());
+                for (final Criterion criterion : criteriaSet) {
+                    if (criterion instanceof SignatureValidationParametersCriterion) {
+                        criteria.add(new ValidationParametersToken(((SignatureValidationParametersCriterion) criterion)
+                                .getSignatureValidationParameters()));
+                    } else {
+                        criteria.add(criterion);
+                    }
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return Objects.hash(Arrays.hashCode(digest), criteria);
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof CacheKey) {
+                final CacheKey other = (CacheKey) obj;
+                return Arrays.equals(digest, other.digest) && criteria.equals(other.criteria);
+            }
+            return false;
+        }
+    }
+
+}
@@ -37,6 +37,7 @@ import org.opensaml.xmlsec.algorithm.AlgorithmSupport;
 import org.opensaml.xmlsec.crypto.XMLSigningUtil;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
 import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.PreparedSignatureValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -106,7 +107,13 @@ public class ExplicitKeySignatureTrustEngine extends BaseSignatureTrustEngine<It
             throw new SecurityException("Error resolving trusted credentials", e);
         }
 
-        if (validate(signature, trustedCredentials)) {
+        // Prepared once, so that key-independent processing is shared by all the candidate credentials.
+        final PreparedSignatureValidator validator = prepareSignatureValidation(signature);
+        if (validator == null) {
+            return false;
+        }
+
+        if (validate(signature, validator, trustedCredentials)) {
             return true;
         }
 
@@ -116,7 +123,7 @@ public class ExplicitKeySignatureTrustEngine extends BaseSignatureTrustEngine<It
         log.debug("Attempting to verify signature using trusted credentials");
 
         for (final Credential trustedCredential : trustedCredentials) {
-            if (verifySignature(signature, trustedCredential)) {
+            if (verifySignature(validator, trustedCredential)) {
                 log.debug("Successfully verified signature using resolved trusted credential");
                 return true;
             }
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.encryption.support;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.KeyGenerator;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.xml.security.encryption.XMLCipher;
+import org.opensaml.core.OpenSAMLInitBaseTestCase;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Test of {@link XMLCipherCache}.
+ */
+public class XMLCipherCacheTest extends OpenSAMLInitBaseTestCase {
+
+    @AfterMethod
+    public void tearDown() {
+        XMLCipherCache.clear();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        final XMLCipher first = XMLCipherCache.acquire(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128, null, null);
+        final XMLCipher nested = XMLCipherCache.acquire(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128, null, null);
+        Assert.assertNotSame(first, nested);
+
+        XMLCipherCache.release(first, EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128, null, null);
+        Assert.assertSame(XMLCipherCache.acquire(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128, null, null), first);
+    }
+
+    @Test
+    public void testKeyedByConfiguration() throws Exception {
+        final XMLCipher aes = XMLCipherCache.acquire(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128, null, null);
+        XMLCipherCache.release(aes, EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128, null, null);
+
+        Assert.assertNotSame(XMLCipherCache.acquire(null, null, null), aes);
+        Assert.assertNotSame(XMLCipherCache.acquire(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP, null,
+                EncryptionConstants.ALGO_ID_DIGEST_SHA256), aes);
+        Assert.assertSame(XMLCipherCache.acquire(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128, null, null), aes);
+    }
+
+    @Test
+    public void testThreadConfinement() throws Exception {
+        final XMLCipher cipher = XMLCipherCache.acquire(null, null, null);
+        XMLCipherCache.release(cipher, null, null, null);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<XMLCipher> other = executor.submit(() -> XMLCipherCache.acquire(null, null, null));
+            Assert.assertNotSame(other.get(), cipher);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        final XMLCipher cipher = XMLCipherCache.acquire(null, null, null);
+        XMLCipherCache.release(cipher, null, null, null);
+
+        for (int i = 0; i < XMLCipherCache.MAX_CACHED_CIPHERS; i++) {
+            XMLCipherCache.release(XMLCipher.getInstance(), null, "provider" + i, null);
+        }
+
+        Assert.assertNotSame(XMLCipherCache.acquire(null, null, null), cipher);
+    }
+
+    @Test
+    public void testReleaseDropsDocument() throws Exception {
+        final KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        final Element element = document.createElementNS("urn:test", "Secret");
+        element.setTextContent("plaintext");
+        document.appendChild(element);
+
+        XMLCipher cipher = XMLCipherCache.acquire(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128, null, null);
+        cipher.init(XMLCipher.ENCRYPT_MODE, generator.generateKey());
+        cipher.encryptData(document, element);
+        XMLCipherCache.release(cipher, EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128, null, null);
+
+        final WeakReference<Document> reference = new WeakReference<>(document);
+        document = null;
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(reference.get());
+
+        // The cached cipher must still be usable.
+        cipher = XMLCipherCache.acquire(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128, null, null);
+        document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        document.appendChild(document.createElementNS("urn:test", "Secret"));
+        cipher.init(XMLCipher.ENCRYPT_MODE, generator.generateKey());
+        Assert.assertNotNull(cipher.encryptData(document, document.getDocumentElement()));
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.signature.support.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.security.SecurityException;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialResolver;
+import org.opensaml.security.credential.impl.CollectionCredentialResolver;
+import org.opensaml.security.trust.TrustedCredentialTrustEngine;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.mock.SignableSimpleXMLObject;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.SignatureTrustEngine;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Element;
+
+/**
+ * Test the caching signature trust engine.
+ */
+public class CachingSignatureTrustEngineTest extends XMLObjectBaseTestCase {
+
+    private MockTrustEngine mockEngine;
+
+    private CachingSignatureTrustEngine engine;
+
+    private CriteriaSet criteriaSet;
+
+    private AtomicLong version;
+
+    @BeforeMethod
+    protected void setUp() {
+        mockEngine = new MockTrustEngine();
+        engine = new CachingSignatureTrustEngine(mockEngine, 10, Duration.ofMinutes(5));
+        criteriaSet = new CriteriaSet(new EntityIdCriterion("signing-entity-ID"));
+        version = new AtomicLong();
+    }
+
+    @Test
+    public void testPositiveCached() throws SecurityException {
+        Assert.assertTrue(engine.validate(getSignedObject().getSignature(), criteriaSet));
+        Assert.assertTrue(engine.validate(getSignedObject().getSignature(), criteriaSet));
+        Assert.assertTrue(engine.validate(getSignedObject().getSignature(),
+                new CriteriaSet(new EntityIdCriterion("signing-entity-ID"))));
+        Assert.assertEquals(mockEngine.calls, 1);
+        Assert.assertEquals(engine.getCacheSize(), 1);
+
+        Assert.assertTrue(engine.validate(getSignedObject().getSignature(),
+                new CriteriaSet(new EntityIdCriterion("other-entity-ID"))));
+        Assert.assertEquals(mockEngine.calls, 2);
+    }
+
+    @Test
+    public void testNegativeNotCached() throws SecurityException {
+        mockEngine.result = false;
+        Assert.assertFalse(engine.validate(getSignedObject().getSignature(), criteriaSet));
+        Assert.assertFalse(engine.validate(getSignedObject().getSignature(), criteriaSet));
+        Assert.assertEquals(mockEngine.calls, 2);
+        Assert.assertEquals(engine.getCacheSize(), 0);
+    }
+
+    @Test
+    public void testModifiedContent() throws SecurityException {
+        Assert.assertTrue(engine.validate(getSignedObject().getSignature(), criteriaSet));
+
+        final SignableSimpleXMLObject sxo = getSignedObject();
+        final Element child = (Element) sxo.getDOM().getFirstChild();
+        child.setTextContent("SomeSimpleValueAsTextContent-MODIFIED");
+        Assert.assertFalse(engine.validate(sxo.getSignature(), criteriaSet),
+                "Signed content was modified, cached outcome should not apply");
+        Assert.assertEquals(mockEngine.calls, 1);
+    }
+
+    @Test
+    public void testResolverChange() throws SecurityException {
+        Assert.assertTrue(engine.validate(getSignedObject().getSignature(), criteriaSet));
+        Assert.assertTrue(engine.validate(getSignedObject().getSignature(), criteriaSet));
+        Assert.assertEquals(mockEngine.calls, 1);
+
+        mockEngine.resolver = new CollectionCredentialResolver(new ArrayList<Credential>());
+        Assert.assertTrue(engine.validate(getSignedObject().getSignature(), criteriaSet));
+        Assert.assertEquals(mockEngine.calls, 2);
+    }
+
+    @Test
+    public void testVersionStrategy() throws SecurityException {
+        engine.setTrustBasisVersionStrategy(version::get);
+
+        Assert.assertTrue(engine.validate(getSignedObject().getSignature(), criteriaSet));
+        Assert.assertTrue(engine.validate(getSignedObject().getSignature(), criteriaSet));
+        Assert.assertEquals(mockEngine.calls, 1);
+
+        version.incrementAndGet();
+        Assert.assertTrue(engine.validate(getSignedObject().getSignature(), criteriaSet));
+        Assert.assertEquals(mockEngine.calls, 2);
+    }
+
+    @Test
+    public void testRaw() throws SecurityException {
+        final byte[] signature = "signature".getBytes();
+        final byte[] content = "content".getBytes();
+        final String algorithm = "urn:test:algorithm";
+
+        Assert.assertTrue(engine.validate(signature, content, algorithm, criteriaSet, null));
+        Assert.assertTrue(engine.validate(signature, content, algorithm, criteriaSet, null));
+        Assert.assertEquals(mockEngine.calls, 1);
+
+        Assert.assertTrue(engine.validate(signature, "other".getBytes(), algorithm, criteriaSet, null));
+        Assert.assertEquals(mockEngine.calls, 2);
+
+        mockEngine.result = false;
+        Assert.assertFalse(engine.validate(signature, "another".getBytes(), algorithm, criteriaSet, null));
+        Assert.assertFalse(engine.validate(signature, "another".getBytes(), algorithm, criteriaSet, null));
+        Assert.assertEquals(mockEngine.calls, 4);
+    }
+
+    private SignableSimpleXMLObject getSignedObject() {
+        return (SignableSimpleXMLObject) unmarshallElement("/org/opensaml/xmlsec/signature/support/Signed-SimpleObject.xml");
+    }
+
+    /** Trust engine which counts invocations and returns a fixed outcome. */
+    private static class MockTrustEngine implements SignatureTrustEngine, TrustedCredentialTrustEngine<Signature> {
+
+        private int calls;
+
+        private boolean result = true;
+
+        private CredentialResolver resolver = new CollectionCredentialResolver(new ArrayList<Credential>());
+
+        /** {@inheritDoc} */
+        public boolean validate(@Nonnull final Signature token, @Nullable final CriteriaSet trustBasisCriteria) {
+            calls++;
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        public CredentialResolver getCredentialResolver() {
+            return resolver;
+        }
+
+        /** {@inheritDoc} */
+        public KeyInfoCredentialResolver getKeyInfoResolver() {
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public boolean validate(@Nonnull final byte[] signature, @Nonnull final byte[] content,
+                @Nonnull final String algorithmURI, @Nullable final CriteriaSet trustBasisCriteria,
+                @Nullable final Credential candidateCredential) {
+            calls++;
+            return result;
+        }
+    }
+
+}
@@ -30,6 +30,7 @@ import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.security.SecurityException;
+import org.opensaml.security.credential.BasicCredential;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.impl.CollectionCredentialResolver;
 import org.opensaml.security.crypto.KeySupport;
@@ -45,9 +46,11 @@ import org.opensaml.xmlsec.signature.KeyInfo;
 import org.opensaml.xmlsec.signature.SignableXMLObject;
 import org.opensaml.xmlsec.signature.Signature;
 import org.opensaml.xmlsec.signature.support.DocumentInternalIDContentReference;
+import org.opensaml.xmlsec.signature.support.PreparedSignatureValidator;
 import org.opensaml.xmlsec.signature.support.SignatureConstants;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import org.opensaml.xmlsec.signature.support.SignatureValidationParametersCriterion;
+import org.opensaml.xmlsec.signature.support.SignatureValidator;
 import org.opensaml.xmlsec.signature.support.Signer;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -200,6 +203,54 @@ public class ExplicitKeySignatureTrustEngineTest extends XMLObjectBaseTestCase {
         Assert.assertTrue(engine.validate(signature, criteriaSet), "Signature was valid and signing cred was trusted");
     }
     
+    /**
+     * Test valid signature, signing cred trusted along with several other rollover keys.
+     * 
+     * @throws SecurityException 
+     */
+    @Test
+    public void testSuccessMultipleTrustedKeys() throws SecurityException {
+        trustedCredentials.add(new BasicCredential(KeySupport.generateKeyPair("RSA", 1024, null).getPublic()));
+        trustedCredentials.add(new BasicCredential(KeySupport.generateKeyPair("RSA", 1024, null).getPublic()));
+        trustedCredentials.add(signingX509Cred);
+        
+        SignableXMLObject signableXO = getValidSignedObject();
+        Signature signature = signableXO.getSignature();
+        Assert.assertTrue(engine.validate(signature, criteriaSet), "Signature was valid and signing cred was trusted");
+    }
+    
+    /**
+     * Test prepared signature validation against several candidate credentials.
+     * 
+     * @throws Exception 
+     */
+    @Test
+    public void testPreparedValidator() throws Exception {
+        final Credential otherCred = 
+                new BasicCredential(KeySupport.generateKeyPair("RSA", 1024, null).getPublic());
+        
+        final PreparedSignatureValidator validator = 
+                SignatureValidator.prepare(getValidSignedObject().getSignature());
+        for (int i = 0; i < 2; i++) {
+            try {
+                validator.validate(otherCred);
+                Assert.fail("Signature should not have validated with other credential");
+            } catch (final SignatureException e) {
+                // expected
+            }
+            validator.validate(signingX509Cred);
+        }
+        
+        final PreparedSignatureValidator invalidValidator = 
+                SignatureValidator.prepare(getInvalidSignedObject().getSignature());
+        try {
+            invalidValidator.validate(signingX509Cred);
+            Assert.fail("Signature was invalid due to document modification");
+        } catch (final SignatureException e) {
+            // expected
+        }
+    }
+    
     /**
      * Test valid signature, untrusted signing credential.
      * 